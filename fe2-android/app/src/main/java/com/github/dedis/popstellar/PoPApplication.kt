@@ -1,8 +1,12 @@
 package com.github.dedis.popstellar
 
 import android.app.Application
+import com.github.dedis.popstellar.model.network.serializer.JsonUtils
 import com.github.dedis.popstellar.utility.NetworkLogger
+import com.github.dedis.popstellar.utility.scheduler.SchedulerProvider
 import dagger.hilt.android.HiltAndroidApp
+import io.reactivex.Completable
+import javax.inject.Inject
 import timber.log.Timber
 
 /**
@@ -12,11 +16,23 @@ import timber.log.Timber
  */
 @HiltAndroidApp
 class PoPApplication : Application() {
+
+  @Inject lateinit var schedulerProvider: SchedulerProvider
+
   override fun onCreate() {
     super.onCreate()
 
     // Associate the custom logger to Timber
     NetworkLogger.loadFromPersistPreference(this)
     Timber.plant(NetworkLogger())
+
+    // Load all the json schemas in background, before the first message has to be validated
+    Completable.fromAction { JsonUtils.preloadSchemas() }
+        .subscribeOn(schedulerProvider.io())
+        .subscribe({}, { error: Throwable -> Timber.tag(TAG).e(error, "Could not load schemas") })
+  }
+
+  companion object {
+    private val TAG = PoPApplication::class.java.simpleName
   }
 }
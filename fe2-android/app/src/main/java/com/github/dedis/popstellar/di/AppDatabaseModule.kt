@@ -2,8 +2,13 @@ package com.github.dedis.popstellar.di
 
 import android.app.Application
 import androidx.room.Room.databaseBuilder
+import com.github.dedis.popstellar.model.network.serializer.ValidationPolicy
 import com.github.dedis.popstellar.repository.database.AppDatabase
+import com.github.dedis.popstellar.repository.database.BinaryStorageMigration
+import com.github.dedis.popstellar.repository.database.CatchupWatermarksMigration
 import com.github.dedis.popstellar.repository.database.CustomTypeConverters
+import com.github.dedis.popstellar.repository.database.ElectionVotesMigration
+import com.github.dedis.popstellar.repository.database.OutboxMigration
 import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
@@ -23,12 +28,24 @@ object AppDatabaseModule {
         Injecting the DataRegistry (or the Gson directly) would create a dependency cycle,
         since AppDatabase -> Gson -> DataRegistry -> Handlers -> Repositories -> AppDatabase.
         In order to avoid overcomplicated solutions here it's created a DataRegistry with null handlers,
-        as the only function needed is the one to get the object's type for the Gson serializer
+        as the only function needed is the one to get the object's type for the Gson serializer.
+
+        The content of the database was validated when received or built locally, so it is not
+        validated again when reloaded
     */
     return databaseBuilder(application, AppDatabase::class.java, DATABASE_NAME)
         .addTypeConverter(
             CustomTypeConverters(
-                JsonModule.provideGson(DataRegistryModule.provideDataRegistryForGson())))
+                JsonModule.provideGson(
+                    DataRegistryModule.provideDataRegistryForGson(),
+                    ValidationPolicy(ValidationPolicy.Mode.OFF))))
+        // Every version since the one of the released app must have a migration, otherwise the
+        // upgrade falls back to wiping the database, wallet seed included
+        .addMigrations(
+            OutboxMigration(),
+            CatchupWatermarksMigration(),
+            BinaryStorageMigration(),
+            ElectionVotesMigration())
         .fallbackToDestructiveMigration()
         .allowMainThreadQueries()
         .build()
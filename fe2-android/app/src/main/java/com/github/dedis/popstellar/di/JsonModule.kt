@@ -1,16 +1,18 @@
 package com.github.dedis.popstellar.di
 
-import com.github.dedis.popstellar.model.network.GenericMessage
 import com.github.dedis.popstellar.model.network.answer.Answer
 import com.github.dedis.popstellar.model.network.answer.Result
 import com.github.dedis.popstellar.model.network.answer.ResultMessages
 import com.github.dedis.popstellar.model.network.method.Message
-import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
 import com.github.dedis.popstellar.model.network.method.message.data.Data
 import com.github.dedis.popstellar.model.network.method.message.data.DataRegistry
 import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
+import com.github.dedis.popstellar.model.network.serializer.ValidationPolicy
 import com.github.dedis.popstellar.model.network.serializer.base64.JsonBase64DataSerializer
+import com.github.dedis.popstellar.model.network.serializer.data.JsonAddChirpSerializer
+import com.github.dedis.popstellar.model.network.serializer.data.JsonCastVoteSerializer
 import com.github.dedis.popstellar.model.network.serializer.data.JsonDataSerializer
+import com.github.dedis.popstellar.model.network.serializer.data.JsonPostTransactionCoinSerializer
 import com.github.dedis.popstellar.model.network.serializer.data.JsonVoteSerializer
 import com.github.dedis.popstellar.model.network.serializer.database.JsonElectionSerializer
 import com.github.dedis.popstellar.model.network.serializer.database.JsonLaoSerializer
@@ -41,30 +43,50 @@ import javax.inject.Singleton
 @InstallIn(SingletonComponent::class)
 object JsonModule {
 
+  /**
+   * Validation applied to the messages exchanged with the network.
+   *
+   * [ValidationPolicy.Mode.SAMPLED] can be used to reduce the validation cost, its counters are
+   * available through the provided [ValidationPolicy].
+   */
+  private val NETWORK_VALIDATION_MODE = ValidationPolicy.Mode.STRICT
+
   @JvmStatic
   @Provides
   @Singleton
-  fun provideGson(dataRegistry: DataRegistry): Gson {
+  fun provideValidationPolicy(): ValidationPolicy {
+    return ValidationPolicy(NETWORK_VALIDATION_MODE)
+  }
+
+  @JvmStatic
+  @Provides
+  @Singleton
+  fun provideGson(dataRegistry: DataRegistry, validationPolicy: ValidationPolicy): Gson {
     return GsonBuilder()
-        .registerTypeAdapter(GenericMessage::class.java, JsonGenericMessageDeserializer())
+        .registerTypeAdapterFactory(JsonGenericMessageDeserializer())
         .registerTypeAdapter(Message::class.java, JsonMessageSerializer())
-        .registerTypeAdapter(Data::class.java, JsonDataSerializer(dataRegistry))
+        .registerTypeAdapter(Data::class.java, JsonDataSerializer(dataRegistry, validationPolicy))
         .registerTypeAdapter(Vote::class.java, JsonVoteSerializer())
+        // Data streamed as they are the most frequent ones
+        .registerTypeAdapterFactory(JsonCastVoteSerializer())
+        .registerTypeAdapterFactory(JsonAddChirpSerializer())
+        .registerTypeAdapterFactory(JsonPostTransactionCoinSerializer())
         .registerTypeAdapter(Result::class.java, JsonResultSerializer())
         .registerTypeAdapter(ResultMessages::class.java, JsonResultSerializer())
-        .registerTypeAdapter(Answer::class.java, JsonAnswerSerializer())
-        .registerTypeAdapter(MessageGeneral::class.java, JsonMessageGeneralSerializer())
+        .registerTypeAdapter(Answer::class.java, JsonAnswerSerializer(validationPolicy))
+        .registerTypeAdapterFactory(JsonMessageGeneralSerializer(validationPolicy))
         .registerTypeAdapter(Channel::class.java, JsonChannelSerializer())
         // Objects serializer for database
         .registerTypeAdapter(Lao::class.java, JsonLaoSerializer())
         .registerTypeAdapter(Election::class.java, JsonElectionSerializer())
         .registerTypeAdapter(TransactionObject::class.java, JsonTransactionObjectSerializer())
-        // Base64URLData serializers
+        // Base64URLData serializers, streamed as they are the most frequent values
         .registerTypeAdapter(
             Base64URLData::class.java,
             JsonBase64DataSerializer { data: String -> Base64URLData(data) })
         .registerTypeAdapter(
-            PublicKey::class.java, JsonBase64DataSerializer { data: String -> PublicKey(data) })
+            PublicKey::class.java,
+            JsonBase64DataSerializer { data: String -> PublicKey.intern(data) })
         .registerTypeAdapter(
             Signature::class.java, JsonBase64DataSerializer { data: String -> Signature(data) })
         .registerTypeAdapter(
@@ -72,4 +94,15 @@ object JsonModule {
         .disableHtmlEscaping()
         .create()
   }
+
+  /**
+   * Build a Gson validating every message, for the places where no policy is injected.
+   *
+   * @param dataRegistry used to find the type of the data
+   * @return the Gson
+   */
+  @JvmStatic
+  fun provideGson(dataRegistry: DataRegistry): Gson {
+    return provideGson(dataRegistry, ValidationPolicy(ValidationPolicy.Mode.STRICT))
+  }
 }
@@ -1,5 +1,6 @@
 package com.github.dedis.popstellar.di
 
+import com.github.dedis.popstellar.repository.remote.SignatureVerifier
 import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
@@ -12,6 +13,8 @@ import okhttp3.logging.HttpLoggingInterceptor
 @Module
 @InstallIn(SingletonComponent::class)
 object NetworkModule {
+  /** Received messages with an invalid signature are dropped */
+  private val SIGNATURE_VERIFICATION_MODE = SignatureVerifier.Mode.ENFORCE
 
   @JvmStatic
   @Provides
@@ -21,4 +24,11 @@ object NetworkModule {
         .addInterceptor(HttpLoggingInterceptor().setLevel(HttpLoggingInterceptor.Level.BASIC))
         .build()
   }
+
+  @JvmStatic
+  @Provides
+  @Singleton
+  fun provideSignatureVerifier(): SignatureVerifier {
+    return SignatureVerifier(SIGNATURE_VERIFICATION_MODE)
+  }
 }
@@ -32,30 +32,6 @@ fun interface Copyable<T> {
       return source.entries.stream().collect(Collectors.toMap({ it.key }, { it.value.copy() }))
     }
 
-    /**
-     * Create a copy of a map containing lists
-     *
-     * @param source map
-     * @param <E> type of key
-     * @param <T> type of value inside the list (assumed to be immutable)
-     * @return the copy
-     */
-    fun <E, T> copyMapOfList(source: Map<E, List<T>>): Map<E, List<T>> {
-      return source.entries.stream().collect(Collectors.toMap({ it.key }, { ArrayList(it.value) }))
-    }
-
-    /**
-     * Create a copy of a map containing sets
-     *
-     * @param source map
-     * @param <E> type of key
-     * @param <T> type of value inside the set (assumed to be immutable)
-     * @return the copy
-     */
-    fun <E, T> copyMapOfSet(source: Map<E, Set<T>>): Map<E, Set<T>> {
-      return source.entries.stream().collect(Collectors.toMap({ it.key }, { HashSet(it.value) }))
-    }
-
     /**
      * Create a copy of a map preserving it's order
      *
@@ -0,0 +1,157 @@
+package com.github.dedis.popstellar.model.network.answer
+
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.serializer.JsonUtils
+import com.github.dedis.popstellar.model.network.serializer.ValidationPolicy
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.google.gson.Gson
+import com.google.gson.JsonElement
+import com.google.gson.JsonParseException
+import com.google.gson.JsonSyntaxException
+import com.google.gson.TypeAdapter
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import java.io.IOException
+import java.io.StringReader
+
+/**
+ * A succeed query's answer with a list of MessageGeneral that are decoded on demand.
+ *
+ * Unlike [ResultMessages], the messages are not materialized when the answer is received : they
+ * are read one at a time from the raw frame with a pull parser, so that a large catchup can be
+ * processed while it is being decoded, without holding all the messages in memory.
+ *
+ * The frame is not validated as a whole against the protocol schemas. Instead, each message is
+ * validated against the schema of the messages, if the [validationPolicy] requires it, when it is
+ * decoded.
+ *
+ * @param id of the answer
+ * @param frame raw json of the answer
+ * @param gson used to decode each message
+ * @param validationPolicy deciding which messages are validated
+ */
+class StreamedResultMessages(
+    id: Int,
+    private val frame: String,
+    private val gson: Gson,
+    private val validationPolicy: ValidationPolicy
+) : Result(id) {
+
+  /** Reads the messages directly from the pull parser, without building their json tree */
+  private val messageAdapter: TypeAdapter<MessageGeneral> by lazy {
+    gson.getAdapter(MessageGeneral::class.java)
+  }
+
+  /** Reads the tree of the messages that have to be validated */
+  private val elementAdapter: TypeAdapter<JsonElement> by lazy {
+    gson.getAdapter(JsonElement::class.java)
+  }
+
+  /** Ids of the messages, in order, read without decoding the messages */
+  val messageIds: List<MessageID> by lazy {
+    val ids = ArrayList<MessageID>()
+    readResult { reader ->
+      while (reader.hasNext()) {
+        ids.add(MessageID(readMessageId(reader)))
+      }
+    }
+    ids
+  }
+
+  /**
+   * Decode the messages lazily. The frame is parsed as the iterator advances, and only the message
+   * being decoded is held in memory.
+   *
+   * @param from position of the first message to decode, the preceding ones are skipped
+   * @return an iterator over the messages starting at the given position
+   * @throws JsonParseException while iterating, if a message is malformed
+   */
+  fun decode(from: Int = 0): Iterator<MessageGeneral> {
+    val reader = JsonReader(StringReader(frame))
+    moveToResult(reader)
+    repeat(from) {
+      if (reader.hasNext()) {
+        reader.skipValue()
+      }
+    }
+
+    return object : Iterator<MessageGeneral> {
+      override fun hasNext(): Boolean {
+        val hasNext = reader.hasNext()
+        if (!hasNext) {
+          reader.close()
+        }
+        return hasNext
+      }
+
+      override fun next(): MessageGeneral {
+        if (!reader.hasNext()) {
+          throw NoSuchElementException()
+        }
+        try {
+          return readMessage(reader) ?: throw JsonParseException("The message is null")
+        } catch (e: IOException) {
+          throw JsonSyntaxException(e)
+        }
+      }
+    }
+  }
+
+  private fun readMessage(reader: JsonReader): MessageGeneral? {
+    // The tree of a message is only built when it has to be validated
+    if (!validationPolicy.shouldVerifyInbound(MESSAGE_KIND)) {
+      return messageAdapter.read(reader)
+    }
+
+    val tree = elementAdapter.read(reader)
+    validationPolicy.verifySelectedInbound(JsonUtils.GENERAL_MESSAGE_SCHEMA, tree)
+    return messageAdapter.fromJsonTree(tree)
+  }
+
+  private fun readResult(action: (JsonReader) -> Unit) {
+    JsonReader(StringReader(frame)).use { reader ->
+      moveToResult(reader)
+      action(reader)
+      reader.endArray()
+    }
+  }
+
+  override fun toString(): String {
+    return "StreamedResultMessages{id=$id, size=${frame.length}}"
+  }
+
+  companion object {
+    private const val RESULT = "result"
+    private const val MESSAGE_ID = "message_id"
+
+    /** Kind of the streamed messages, for the sampling of the validation */
+    private const val MESSAGE_KIND = "streamed_message"
+
+    /** Position the reader at the beginning of the content of the result array */
+    private fun moveToResult(reader: JsonReader) {
+      reader.beginObject()
+      while (reader.hasNext()) {
+        if (reader.nextName() == RESULT && reader.peek() == JsonToken.BEGIN_ARRAY) {
+          reader.beginArray()
+          return
+        }
+        reader.skipValue()
+      }
+      throw JsonParseException("The answer does not contain a list of messages")
+    }
+
+    private fun readMessageId(reader: JsonReader): String {
+      var messageId: String? = null
+      reader.beginObject()
+      while (reader.hasNext()) {
+        if (reader.nextName() == MESSAGE_ID && reader.peek() == JsonToken.STRING) {
+          messageId = reader.nextString()
+        } else {
+          reader.skipValue()
+        }
+      }
+      reader.endObject()
+      return messageId ?: throw JsonParseException("A message does not have a message_id")
+    }
+  }
+}
@@ -1,7 +1,5 @@
 package com.github.dedis.popstellar.model.network.method
 
-import java.util.Collections
-
 /** Enumerate the different low level messages' method */
 enum class Method
 /**
@@ -30,7 +28,9 @@ enum class Method
   }
 
   companion object {
-    private val ALL = values().toList().let(Collections::unmodifiableList)
+    /** The values by name, so that finding one neither iterates nor allocates */
+    private val BY_NAME: Map<String, Method> =
+        values().associateBy { method: Method -> method.method }
 
     /**
      * Find a given Method
@@ -40,10 +40,7 @@ enum class Method
      */
     @JvmStatic
     fun find(searched: String): Method? {
-      return ALL.stream()
-          .filter { method: Method -> method.method == searched }
-          .findFirst()
-          .orElse(null)
+      return BY_NAME[searched]
     }
   }
 }
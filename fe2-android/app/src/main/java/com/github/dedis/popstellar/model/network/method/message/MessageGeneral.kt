@@ -10,6 +10,7 @@ import com.github.dedis.popstellar.model.objects.security.PrivateKey
 import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.model.objects.security.Signature
 import com.google.gson.Gson
+import java.nio.ByteBuffer
 import java.nio.charset.StandardCharsets
 import java.security.GeneralSecurityException
 import java.util.Objects
@@ -24,10 +25,19 @@ import timber.log.Timber
 class MessageGeneral {
   val sender: PublicKey
   val dataEncoded: Base64URLData
-  val data: Data
   val messageId: MessageID
   val signature: Signature
 
+  /** Decoded data, only decoded when first accessed for the messages received */
+  private val lazyData: Lazy<Data>
+
+  /**
+   * Data of the message. For a received message, it is decoded from [dataEncoded] on first access,
+   * which may throw a JsonParseException if it is invalid
+   */
+  val data: Data
+    get() = lazyData.value
+
   var witnessSignatures: List<PublicKeySignaturePair> = ArrayList()
     get() = ArrayList(field)
     private set
@@ -41,10 +51,34 @@ class MessageGeneral {
       signature: Signature,
       messageID: MessageID,
       witnessSignatures: List<PublicKeySignaturePair>
+  ) : this(sender, dataBuf, lazyOf(data), signature, messageID, witnessSignatures)
+
+  /**
+   * Constructor of a received message, whose data is only decoded when first accessed. This avoids
+   * decoding the data of the messages that turn out to be already handled.
+   *
+   * @param decoder decoding the data from the encoded one
+   */
+  constructor(
+      sender: PublicKey,
+      dataBuf: Base64URLData,
+      decoder: () -> Data,
+      signature: Signature,
+      messageID: MessageID,
+      witnessSignatures: List<PublicKeySignaturePair>
+  ) : this(sender, dataBuf, lazy(decoder), signature, messageID, witnessSignatures)
+
+  private constructor(
+      sender: PublicKey,
+      dataBuf: Base64URLData,
+      data: Lazy<Data>,
+      signature: Signature,
+      messageID: MessageID,
+      witnessSignatures: List<PublicKeySignaturePair>
   ) {
     this.sender = sender
     this.dataEncoded = dataBuf
-    this.data = data
+    this.lazyData = data
     this.messageId = messageID
     this.signature = signature
     this.witnessSignatures = ArrayList(witnessSignatures)
@@ -54,7 +88,7 @@ class MessageGeneral {
     requireNotNull(data)
 
     this.sender = keyPair.publicKey
-    this.data = data
+    this.lazyData = lazyOf(data)
 
     val dataJson = gson.toJson(data, Data::class.java)
     Timber.tag(TAG).d(dataJson)
@@ -87,6 +121,12 @@ class MessageGeneral {
       return false
     }
 
+    // Only a witness signature holds a second signature to verify
+    if (!mayBeWitnessSignature()) {
+      return true
+    }
+
+    val data = data
     if (data is WitnessMessageSignature) {
       val witness = data
       val witnessSignature = witness.signature
@@ -97,6 +137,24 @@ class MessageGeneral {
     return true
   }
 
+  /**
+   * Tell whether the data may be a witness signature, without decoding it when it cannot be one.
+   * Unless it is escaped, the action of a witness signature appears as is in the json of the data.
+   */
+  private fun mayBeWitnessSignature(): Boolean {
+    if (lazyData.isInitialized()) {
+      return lazyData.value is WitnessMessageSignature
+    }
+
+    val json = dataEncoded.asReadOnlyBuffer()
+    for (i in 0 until json.limit()) {
+      if (json[i] == ESCAPE || matchesAt(json, i, WITNESS_ACTION)) {
+        return true
+      }
+    }
+    return false
+  }
+
   override fun equals(other: Any?): Boolean {
     if (this === other) {
       return true
@@ -104,21 +162,22 @@ class MessageGeneral {
     if (other == null || javaClass != other.javaClass) {
       return false
     }
+    // The data is not compared, it is decoded from the encoded data which is compared instead
     val that = other as MessageGeneral
     return sender == that.sender &&
         dataEncoded == that.dataEncoded &&
-        data == that.data &&
         messageId == that.messageId &&
         signature == that.signature &&
         witnessSignatures == that.witnessSignatures
   }
 
   override fun hashCode(): Int {
-    return Objects.hash(sender, dataEncoded, data, messageId, signature, witnessSignatures)
+    return Objects.hash(sender, dataEncoded, messageId, signature, witnessSignatures)
   }
 
   override fun toString(): String {
-    return "MessageGeneral{sender='$sender', data='$data', signature='$signature', messageId='$messageId', witnessSignatures='${
+    // The encoded data is printed instead of the data, which would have to be decoded
+    return "MessageGeneral{sender='$sender', dataEncoded='$dataEncoded', signature='$signature', messageId='$messageId', witnessSignatures='${
       witnessSignatures.toTypedArray().contentToString()
     }'}"
   }
@@ -126,5 +185,15 @@ class MessageGeneral {
   companion object {
     private val TAG = MessageGeneral::class.java.simpleName
     val EMPTY = Object()
+
+    private val ESCAPE = '\\'.code.toByte()
+    private val WITNESS_ACTION = "witness".toByteArray(StandardCharsets.US_ASCII)
+
+    private fun matchesAt(buffer: ByteBuffer, index: Int, bytes: ByteArray): Boolean {
+      if (index + bytes.size > buffer.limit()) {
+        return false
+      }
+      return bytes.indices.all { i: Int -> buffer[index + i] == bytes[i] }
+    }
   }
 }
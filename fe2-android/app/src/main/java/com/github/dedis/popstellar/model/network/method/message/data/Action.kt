@@ -1,7 +1,5 @@
 package com.github.dedis.popstellar.model.network.method.message.data
 
-import java.util.Collections
-
 /** Enumerates all possible messages actions */
 enum class Action
 /**
@@ -59,7 +57,9 @@ enum class Action
     action == CAST_VOTE.action
 
   companion object {
-    private val ALL = values().toList().let(Collections::unmodifiableList)
+    /** The values by name, so that finding one neither iterates nor allocates */
+    private val BY_NAME: Map<String, Action> =
+        values().associateBy { action: Action -> action.action }
 
     /**
      * Find a given Action
@@ -68,10 +68,7 @@ enum class Action
      * @return the corresponding enum action
      */
     fun find(searched: String): Action? {
-      return ALL.stream()
-          .filter { action: Action -> action.action == searched }
-          .findFirst()
-          .orElse(null)
+      return BY_NAME[searched]
     }
   }
 }
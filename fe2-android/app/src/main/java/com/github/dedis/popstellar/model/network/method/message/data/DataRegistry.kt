@@ -9,25 +9,32 @@ import com.github.dedis.popstellar.utility.error.UnknownWitnessMessageException
 import com.github.dedis.popstellar.utility.error.keys.NoRollCallException
 import com.github.dedis.popstellar.utility.handler.data.DataHandler
 import com.github.dedis.popstellar.utility.handler.data.HandlerContext
-import java.util.Collections
-import java.util.Optional
-import timber.log.Timber
 
-/** A registry of Data classes and handlers */
+/**
+ * A registry of Data classes and handlers
+ *
+ * The entries are held in a table indexed by the ordinals of the (object, action) pair, so that
+ * looking up the entry of a message neither hashes nor allocates.
+ */
 class DataRegistry private constructor(mapping: Map<EntryPair, Entry<out Data>>) {
-  /** A mapping of (object, action) -> (class, handler) */
-  private val mapping: Map<EntryPair, Entry<out Data>> = Collections.unmodifiableMap(mapping)
+  /** A table of (object, action) -> (class, handler), indexed by [indexOf] */
+  private val table: Array<Entry<out Data>?> = arrayOfNulls(OBJECT_COUNT * ACTION_COUNT)
+
+  init {
+    for ((key, entry) in mapping) {
+      table[indexOf(key.`object`, key.action)] = entry
+    }
+  }
 
   /**
    * Return the class assigned to the pair (obj, action)
    *
    * @param obj of the entry
    * @param action of the entry
-   * @return the class assigned to the pair or empty if none are defined
+   * @return the class assigned to the pair or null if none are defined
    */
-  fun getType(obj: Objects, action: Action): Optional<Class<out Data?>> {
-    Timber.tag(TAG).d("getting data type")
-    return Optional.ofNullable(mapping[pair(obj, action)]).map { it.dataClass }
+  fun getType(obj: Objects, action: Action): Class<out Data>? {
+    return table[indexOf(obj, action)]?.dataClass
   }
 
   /**
@@ -48,9 +55,9 @@ class DataRegistry private constructor(mapping: Map<EntryPair, Entry<out Data>>)
       NoRollCallException::class,
       UnknownWitnessMessageException::class)
   fun handle(context: HandlerContext, data: Data, obj: Objects, action: Action) {
-    Optional.ofNullable(mapping[pair(obj, action)])
-        .orElseThrow { UnhandledDataTypeException(data, "$obj#$action") }
-        .handleData(context, data)
+    val entry =
+        table[indexOf(obj, action)] ?: throw UnhandledDataTypeException(data, "$obj#$action")
+    entry.handleData(context, data)
   }
 
   /** Entry of the messages map. A pair of (Objects, Action) */
@@ -74,7 +81,7 @@ class DataRegistry private constructor(mapping: Map<EntryPair, Entry<out Data>>)
     }
 
     override fun hashCode(): Int {
-      return java.util.Objects.hash(`object`, action)
+      return 31 * `object`.hashCode() + action.hashCode()
     }
   }
 
@@ -156,7 +163,13 @@ class DataRegistry private constructor(mapping: Map<EntryPair, Entry<out Data>>)
   }
 
   companion object {
-    private val TAG = DataRegistry::class.java.simpleName
+    private val OBJECT_COUNT = Objects.values().size
+    private val ACTION_COUNT = Action.values().size
+
+    /** @return the index of the pair (obj, action) in the table */
+    private fun indexOf(obj: Objects, action: Action): Int {
+      return obj.ordinal * ACTION_COUNT + action.ordinal
+    }
 
     /**
      * Create an entry pair given obj and action
@@ -1,7 +1,5 @@
 package com.github.dedis.popstellar.model.network.method.message.data
 
-import java.util.Collections
-
 /** Enumerates all possible messages objects */
 enum class Objects
 /**
@@ -48,7 +46,9 @@ enum class Objects
   }
 
   companion object {
-    private val ALL = values().toList().let(Collections::unmodifiableList)
+    /** The values by name, so that finding one neither iterates nor allocates */
+    private val BY_NAME: Map<String, Objects> =
+        values().associateBy { obj: Objects -> obj.`object` }
 
     /**
      * Find a given Object
@@ -57,10 +57,7 @@ enum class Objects
      * @return the corresponding enum object
      */
     fun find(searched: String): Objects? {
-      return ALL.stream()
-          .filter { obj: Objects -> obj.`object` == searched }
-          .findFirst()
-          .orElse(null)
+      return BY_NAME[searched]
     }
   }
 }
@@ -7,13 +7,19 @@ import com.google.gson.annotations.SerializedName
 import java.util.Objects
 
 @Immutable
-class PostTransactionCoin( // the transaction object // String
-    @field:SerializedName(value = "transaction") val transaction: Transaction
+class PostTransactionCoin
+/**
+ * Constructor used by the json adapter, keeping the id received with the transaction
+ *
+ * @param transaction the transaction object
+ * @param transactionId TxOutHash SHA256 over base64encode(transaction)
+ */
+internal constructor(
+    @field:SerializedName(value = "transaction") val transaction: Transaction,
+    @field:SerializedName(value = "transaction_id") val transactionId: String
 ) : Data {
-  @SerializedName(value = "transaction_id")
-  val transactionId // TxOutHash SHA256 over base64encode(transaction)
-  : String =
-      transaction.computeId()
+
+  constructor(transaction: Transaction) : this(transaction, transaction.computeId())
 
   override fun equals(other: Any?): Boolean {
     if (this === other) {
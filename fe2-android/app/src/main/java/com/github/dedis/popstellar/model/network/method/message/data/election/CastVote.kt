@@ -66,6 +66,23 @@ class CastVote : Data {
     this.votes = votes
   }
 
+  /**
+   * Constructor used by the json adapter. Like the reflective deserialization it replaced, it does
+   * not check the values : a vote cast long ago is still received on a catchup, and the election
+   * handler checks its time against the election.
+   *
+   * @param createdAt timestamp for creation
+   * @param laoId lao id
+   * @param electionId election id
+   * @param votes list of the votes to cast
+   */
+  internal constructor(createdAt: Long, laoId: String, electionId: String, votes: List<Vote>) {
+    this.creation = createdAt
+    this.electionId = electionId
+    this.laoId = laoId
+    this.votes = votes
+  }
+
   override val `object`: String
     get() = Objects.ELECTION.`object`
 
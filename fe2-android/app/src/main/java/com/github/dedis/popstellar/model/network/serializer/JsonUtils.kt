@@ -1,15 +1,17 @@
 package com.github.dedis.popstellar.model.network.serializer
 
 import com.fasterxml.jackson.core.JsonProcessingException
+import com.fasterxml.jackson.databind.JsonNode
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.JsonNodeFactory
+import com.fasterxml.jackson.databind.node.ObjectNode
+import com.google.gson.JsonArray
+import com.google.gson.JsonElement
 import com.google.gson.JsonObject
 import com.google.gson.JsonParseException
+import com.google.gson.JsonPrimitive
 import com.networknt.schema.JsonSchema
-import com.networknt.schema.JsonSchemaFactory
-import com.networknt.schema.SpecVersion
-import java.net.URI
-import java.util.concurrent.ConcurrentHashMap
-import timber.log.Timber
+import java.math.BigInteger
 
 /** Json utility class */
 object JsonUtils {
@@ -18,10 +20,9 @@ object JsonUtils {
   const val JSON_RPC_VERSION = "2.0"
   const val JSON_REQUEST_ID = "id"
 
-  private val TAG = JsonUtils::class.java.simpleName
-
   private val OBJECT_MAPPER = ObjectMapper()
-  private val FACTORY = JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7)
+  private val NODE_FACTORY = JsonNodeFactory.instance
+  private val REGISTRY = SchemaRegistry.fromBundle()
 
   const val ROOT_SCHEMA = "protocol/jsonRPC.json"
 
@@ -32,7 +33,16 @@ object JsonUtils {
   const val MAIN_PK_SCHEME = "protocol/qrcode/main_public_key.json"
   const val FEDERATION_DETAILS = "protocol/qrcode/federation_exchange.json"
 
-  private val schemas: MutableMap<String, JsonSchema> = ConcurrentHashMap()
+  /** Schemas against which the messages and the scanned QR codes are validated */
+  private val ENTRY_SCHEMAS =
+      listOf(
+          ROOT_SCHEMA,
+          GENERAL_MESSAGE_SCHEMA,
+          DATA_SCHEMA,
+          CONNECT_TO_LAO_SCHEMA,
+          POP_TOKEN_SCHEME,
+          MAIN_PK_SCHEME,
+          FEDERATION_DETAILS)
 
   /**
    * Test the JsonRPC version of the given object
@@ -75,7 +85,6 @@ object JsonUtils {
   @JvmStatic
   @Throws(JsonParseException::class)
   fun verifyJson(schemaPath: String, json: String?) {
-    Timber.tag(TAG).d("verifyJson for : %s", json)
     val schema = loadSchema(schemaPath)
 
     try {
@@ -89,6 +98,76 @@ object JsonUtils {
     }
   }
 
+  /**
+   * Verify an already parsed json against the given schema.
+   *
+   * The Gson tree is converted node by node to the tree expected by the validator, which avoids
+   * serializing it back to a String only to parse it again.
+   *
+   * @param schemaPath the path of the schema resource
+   * @param json the parsed json
+   * @throws JsonParseException if the json is invalid
+   */
+  @JvmStatic
+  @Throws(JsonParseException::class)
+  fun verifyJson(schemaPath: String, json: JsonElement) {
+    val schema = loadSchema(schemaPath)
+
+    val errors = schema.validate(toJsonNode(json))
+    if (errors.isNotEmpty()) {
+      throw JsonParseException(
+          "Json : $json\nValidationMessage errors : ${errors.toTypedArray().contentToString()}")
+    }
+  }
+
+  /**
+   * Convert a Gson tree to the equivalent Jackson tree, with the same node types Jackson would have
+   * produced by parsing its String representation.
+   *
+   * @param element to convert
+   * @return the converted tree
+   */
+  @JvmStatic
+  fun toJsonNode(element: JsonElement): JsonNode {
+    return when (element) {
+      is JsonObject -> {
+        val node: ObjectNode = NODE_FACTORY.objectNode()
+        for ((key, value) in element.entrySet()) {
+          node.replace(key, toJsonNode(value))
+        }
+        node
+      }
+      is JsonArray -> {
+        val node = NODE_FACTORY.arrayNode(element.size())
+        for (value in element) {
+          node.add(toJsonNode(value))
+        }
+        node
+      }
+      is JsonPrimitive ->
+          when {
+            element.isBoolean -> NODE_FACTORY.booleanNode(element.asBoolean)
+            element.isString -> NODE_FACTORY.textNode(element.asString)
+            else -> toNumberNode(element.asString)
+          }
+      else -> NODE_FACTORY.nullNode()
+    }
+  }
+
+  private fun toNumberNode(number: String): JsonNode {
+    // Like Jackson, integers are kept integral and everything else is read as a double
+    if (number.any { c: Char -> c == '.' || c == 'e' || c == 'E' }) {
+      return NODE_FACTORY.numberNode(number.toDouble())
+    }
+
+    val value = BigInteger(number)
+    return when (value.bitLength()) {
+      in 0 until Int.SIZE_BITS -> NODE_FACTORY.numberNode(value.toInt())
+      in 0 until Long.SIZE_BITS -> NODE_FACTORY.numberNode(value.toLong())
+      else -> NODE_FACTORY.numberNode(value)
+    }
+  }
+
   /**
    * Load a json schema from the resources directory
    *
@@ -97,8 +176,15 @@ object JsonUtils {
    */
   @JvmStatic
   fun loadSchema(resourcePath: String): JsonSchema {
-    return schemas.computeIfAbsent(resourcePath) {
-      FACTORY.getSchema(URI.create("resource:/$resourcePath"))
-    }
+    return REGISTRY.get(resourcePath)
+  }
+
+  /**
+   * Load all the schemas used by the app and the schemas they refer to. This is meant to be called
+   * in background when the app starts, so that the first message received is not delayed by it.
+   */
+  @JvmStatic
+  fun preloadSchemas() {
+    REGISTRY.preload(ENTRY_SCHEMAS)
   }
 }
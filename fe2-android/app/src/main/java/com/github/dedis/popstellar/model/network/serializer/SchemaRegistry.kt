@@ -0,0 +1,121 @@
+package com.github.dedis.popstellar.model.network.serializer
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.networknt.schema.JsonSchema
+import com.networknt.schema.JsonSchemaFactory
+import com.networknt.schema.SpecVersion
+import com.networknt.schema.uri.URIFetcher
+import java.io.ByteArrayInputStream
+import java.io.FileNotFoundException
+import java.io.IOException
+import java.io.InputStream
+import java.net.URI
+import java.util.concurrent.ConcurrentHashMap
+import timber.log.Timber
+
+/**
+ * Loader and cache of the json schemas of the protocol.
+ *
+ * The schemas are addressed by their path in the resources. Each schema is built on first use,
+ * along with the schemas it refers to, unless it was [preloaded][preload] beforehand.
+ *
+ * The registry built by [fromBundle] reads all the schemas from the bundle generated by the build,
+ * which is read at once instead of looking each referenced schema up in the resources of the app.
+ */
+class SchemaRegistry private constructor(private val factory: JsonSchemaFactory) {
+
+  private val schemas: MutableMap<String, JsonSchema> = ConcurrentHashMap()
+
+  /**
+   * @param resourcePath relative path of the schema inside resources directory
+   * @return the JsonSchema
+   */
+  fun get(resourcePath: String): JsonSchema {
+    return schemas.computeIfAbsent(resourcePath) {
+      factory.getSchema(URI.create("$RESOURCE_SCHEME:/$resourcePath"))
+    }
+  }
+
+  /**
+   * Build the given schemas and all the schemas they refer to, so that no schema is left to load
+   * when a message is first validated against them.
+   *
+   * @param resourcePaths relative paths of the schemas inside resources directory
+   */
+  fun preload(resourcePaths: Collection<String>) {
+    val start = System.nanoTime()
+    resourcePaths.forEach { path: String -> get(path).initializeValidators() }
+    Timber.tag(TAG)
+        .d(
+            "Preloaded %d schemas in %d ms",
+            resourcePaths.size,
+            (System.nanoTime() - start) / 1_000_000)
+  }
+
+  /** Serves the schemas from the bundle, the missing ones are still read from the resources */
+  private class BundleFetcher(private val bundle: Map<String, JsonNode>) : URIFetcher {
+    @Throws(IOException::class)
+    override fun fetch(uri: URI): InputStream {
+      val path = uri.normalize().path.removePrefix("/")
+      val schema = bundle[path]
+      if (schema != null) {
+        return ByteArrayInputStream(OBJECT_MAPPER.writeValueAsBytes(schema))
+      }
+
+      Timber.tag(TAG).w("Schema %s is not in the bundle", path)
+      return SchemaRegistry::class.java.classLoader?.getResourceAsStream(path)
+          ?: throw FileNotFoundException("Unable to find schema $uri")
+    }
+  }
+
+  companion object {
+    private val TAG = SchemaRegistry::class.java.simpleName
+
+    /** Resource generated by the build, mapping the path of each protocol schema to its content */
+    const val BUNDLE = "protocol/schemas.bundle.json"
+
+    private const val RESOURCE_SCHEME = "resource"
+
+    private val OBJECT_MAPPER = ObjectMapper()
+
+    /** @return a registry loading each schema from the resources when it is first referenced */
+    @JvmStatic
+    fun fromResources(): SchemaRegistry {
+      return SchemaRegistry(JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7))
+    }
+
+    /**
+     * @return a registry loading the schemas from the bundle, or from the resources if the bundle
+     *   is missing
+     */
+    @JvmStatic
+    fun fromBundle(): SchemaRegistry {
+      val bundle = readBundle() ?: return fromResources()
+
+      val factory =
+          JsonSchemaFactory.builder(JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7))
+              .uriFetcher(BundleFetcher(bundle), RESOURCE_SCHEME)
+              .build()
+      return SchemaRegistry(factory)
+    }
+
+    private fun readBundle(): Map<String, JsonNode>? {
+      val stream = SchemaRegistry::class.java.classLoader?.getResourceAsStream(BUNDLE)
+      if (stream == null) {
+        Timber.tag(TAG).w("Schema bundle %s not found, the schemas are loaded one by one", BUNDLE)
+        return null
+      }
+
+      return try {
+        val root = stream.use { input: InputStream -> OBJECT_MAPPER.readTree(input) }
+        val bundle = HashMap<String, JsonNode>(root.size())
+        root.fields().forEach { (path, schema) -> bundle[path] = schema }
+        bundle
+      } catch (e: IOException) {
+        Timber.tag(TAG).e(e, "Could not read the schema bundle %s", BUNDLE)
+        null
+      }
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package com.github.dedis.popstellar.model.network.serializer
+
+import com.google.gson.JsonElement
+import com.google.gson.JsonParseException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Policy deciding which json are validated against the protocol schemas by the serializers, along
+ * with counters on the validations performed.
+ *
+ * @param mode of validation
+ * @param sampleRate in [Mode.SAMPLED], one inbound json out of this many is validated
+ */
+class ValidationPolicy
+@JvmOverloads
+constructor(val mode: Mode, private val sampleRate: Int = DEFAULT_SAMPLE_RATE) {
+
+  init {
+    require(sampleRate > 0) { "The sample rate must be positive" }
+  }
+
+  enum class Mode {
+    /** Every json is validated, inbound and outbound */
+    STRICT,
+
+    /**
+     * The json built locally are not validated, as their data already went through the
+     * MessageValidator when constructed. Every inbound json is validated
+     */
+    SKIP_OUTBOUND,
+
+    /**
+     * Like [SKIP_OUTBOUND], but only a sample of the inbound json is validated : one out of
+     * `sampleRate` and the first one of each kind (e.g. each object/action pair)
+     */
+    SAMPLED,
+
+    /** Nothing is validated. This is meant for the json reloaded from the local database */
+    OFF
+  }
+
+  /** Kinds of inbound json already seen, in [Mode.SAMPLED] */
+  private val seenKinds: MutableSet<String> = ConcurrentHashMap.newKeySet()
+  private val inboundCount = AtomicLong()
+
+  private val validated = AtomicLong()
+  private val skipped = AtomicLong()
+  private val failures = AtomicLong()
+  private val validationNanos = AtomicLong()
+
+  /**
+   * Validate, if the policy requires it, a json received from the outside.
+   *
+   * @param schemaPath the path of the schema resource
+   * @param json the parsed json
+   * @param kind of the json, the first json of each kind is always validated in [Mode.SAMPLED]
+   * @throws JsonParseException if the json is validated and invalid
+   */
+  @Throws(JsonParseException::class)
+  fun verifyInbound(schemaPath: String, json: JsonElement, kind: String) {
+    verifyIf(isInboundSelected(kind), schemaPath, json)
+  }
+
+  /**
+   * Check whether a json received from the outside has to be validated, counting it as skipped if
+   * not. This lets a reader avoid building the tree of a json that would not be validated.
+   *
+   * @param kind of the json, the first json of each kind is always validated in [Mode.SAMPLED]
+   * @return true if the json has to be given to [verifySelectedInbound]
+   */
+  fun shouldVerifyInbound(kind: String): Boolean {
+    if (!isInboundSelected(kind)) {
+      skipped.incrementAndGet()
+      return false
+    }
+    return true
+  }
+
+  /**
+   * Validate a json received from the outside, once [shouldVerifyInbound] selected it.
+   *
+   * @param schemaPath the path of the schema resource
+   * @param json the parsed json
+   * @throws JsonParseException if the json is invalid
+   */
+  @Throws(JsonParseException::class)
+  fun verifySelectedInbound(schemaPath: String, json: JsonElement) {
+    verifyIf(true, schemaPath, json)
+  }
+
+  private fun isInboundSelected(kind: String): Boolean {
+    return when (mode) {
+      Mode.STRICT,
+      Mode.SKIP_OUTBOUND -> true
+      Mode.SAMPLED ->
+          // Both are evaluated so that a new kind does not shift the sampling
+          seenKinds.add(kind) or (inboundCount.incrementAndGet() % sampleRate == 0L)
+      Mode.OFF -> false
+    }
+  }
+
+  /**
+   * Validate, if the policy requires it, a json built locally.
+   *
+   * @param schemaPath the path of the schema resource
+   * @param json the built json
+   * @throws JsonParseException if the json is validated and invalid
+   */
+  @Throws(JsonParseException::class)
+  fun verifyOutbound(schemaPath: String, json: JsonElement) {
+    verifyIf(mode == Mode.STRICT, schemaPath, json)
+  }
+
+  /**
+   * Check whether a json built locally has to be validated, counting it as skipped if not. This
+   * lets a serializer avoid building the tree of a json that would not be validated.
+   *
+   * @return true if the json has to be given to [verifyOutbound]
+   */
+  fun shouldVerifyOutbound(): Boolean {
+    if (mode != Mode.STRICT) {
+      skipped.incrementAndGet()
+      return false
+    }
+    return true
+  }
+
+  private fun verifyIf(validate: Boolean, schemaPath: String, json: JsonElement) {
+    if (!validate) {
+      skipped.incrementAndGet()
+      return
+    }
+
+    val start = System.nanoTime()
+    try {
+      JsonUtils.verifyJson(schemaPath, json)
+    } catch (e: JsonParseException) {
+      failures.incrementAndGet()
+      throw e
+    } finally {
+      validationNanos.addAndGet(System.nanoTime() - start)
+      validated.incrementAndGet()
+    }
+  }
+
+  /** @return a snapshot of the validation counters */
+  val stats: ValidationStats
+    get() = ValidationStats(validated.get(), skipped.get(), failures.get(), validationNanos.get())
+
+  /** Counters of the validations performed under a policy */
+  class ValidationStats(
+      /** Number of json validated */
+      val validated: Long,
+      /** Number of json the policy did not validate */
+      val skipped: Long,
+      /** Number of validated json that were invalid */
+      val failures: Long,
+      /** Total time spent validating, in nanoseconds */
+      val validationNanos: Long
+  ) {
+    override fun toString(): String {
+      return "ValidationStats{validated=$validated, skipped=$skipped, failures=$failures, " +
+          "validationNanos=$validationNanos}"
+    }
+  }
+
+  companion object {
+    /** Default sampling rate of the inbound json in [Mode.SAMPLED] */
+    const val DEFAULT_SAMPLE_RATE = 16
+  }
+}
@@ -1,32 +1,43 @@
 package com.github.dedis.popstellar.model.network.serializer.base64
 
 import com.github.dedis.popstellar.model.objects.security.Base64URLData
-import com.google.gson.JsonDeserializationContext
-import com.google.gson.JsonDeserializer
-import com.google.gson.JsonElement
 import com.google.gson.JsonParseException
-import com.google.gson.JsonPrimitive
-import com.google.gson.JsonSerializationContext
-import com.google.gson.JsonSerializer
-import java.lang.reflect.Type
+import com.google.gson.TypeAdapter
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+import java.io.IOException
 import java.util.function.Function
 
+/**
+ * Streaming adapter of the base64 encoded values. Those are the most frequent values of the
+ * protocol (ids, keys, signatures, ...), reading them straight from the stream avoids building a
+ * json element for each of them.
+ */
 class JsonBase64DataSerializer<T : Base64URLData>(private val constructor: Function<String, T>) :
-    JsonSerializer<T>, JsonDeserializer<T> {
-  @Throws(JsonParseException::class)
-  override fun deserialize(
-      json: JsonElement,
-      typeOfT: Type,
-      context: JsonDeserializationContext
-  ): T {
+    TypeAdapter<T>() {
+
+  @Throws(IOException::class)
+  override fun read(reader: JsonReader): T? {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull()
+      return null
+    }
+
+    val encoded = reader.nextString()
     return try {
-      constructor.apply(json.asString)
+      constructor.apply(encoded)
     } catch (e: Exception) {
       throw JsonParseException(e)
     }
   }
 
-  override fun serialize(src: T, typeOfSrc: Type, context: JsonSerializationContext): JsonElement {
-    return JsonPrimitive(src.encoded)
+  @Throws(IOException::class)
+  override fun write(writer: JsonWriter, value: T?) {
+    if (value == null) {
+      writer.nullValue()
+    } else {
+      writer.value(value.encoded)
+    }
   }
 }
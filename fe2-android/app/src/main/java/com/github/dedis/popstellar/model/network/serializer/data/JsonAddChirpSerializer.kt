@@ -0,0 +1,81 @@
+package com.github.dedis.popstellar.model.network.serializer.data
+
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.google.gson.Gson
+import com.google.gson.JsonParseException
+import com.google.gson.TypeAdapter
+import com.google.gson.TypeAdapterFactory
+import com.google.gson.reflect.TypeToken
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonWriter
+import java.io.IOException
+
+/**
+ * Streaming json adapter of the chirps, the most frequent data of the social media.
+ *
+ * The chirps are read and written field by field, instead of going through the reflective adapter.
+ * The object and action are handled by the [JsonDataSerializer].
+ */
+class JsonAddChirpSerializer : TypeAdapterFactory {
+
+  override fun <T> create(gson: Gson, type: TypeToken<T>): TypeAdapter<T>? {
+    if (type.rawType != AddChirp::class.java) {
+      return null
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    return AddChirpAdapter(gson).nullSafe() as TypeAdapter<T>
+  }
+
+  private class AddChirpAdapter(gson: Gson) : TypeAdapter<AddChirp>() {
+    private val messageIdAdapter = gson.getAdapter(MessageID::class.java)
+
+    @Throws(IOException::class)
+    override fun read(reader: JsonReader): AddChirp {
+      var text: String? = null
+      var parentId: MessageID? = null
+      var timestamp: Long? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          TEXT -> text = reader.nextString()
+          PARENT_ID -> parentId = messageIdAdapter.read(reader)
+          TIMESTAMP -> timestamp = reader.nextLong()
+          else -> reader.skipValue()
+        }
+      }
+      reader.endObject()
+
+      if (text == null || timestamp == null) {
+        throw JsonParseException("The chirp is missing one of its mandatory fields")
+      }
+
+      return try {
+        AddChirp(text, parentId, timestamp)
+      } catch (e: IllegalArgumentException) {
+        throw JsonParseException(e)
+      }
+    }
+
+    @Throws(IOException::class)
+    override fun write(writer: JsonWriter, value: AddChirp) {
+      writer.beginObject()
+      writer.name(TEXT).value(value.text)
+      // A chirp that is not a reply has no parent field
+      value.getParentId().ifPresent { parentId: MessageID ->
+        writer.name(PARENT_ID)
+        messageIdAdapter.write(writer, parentId)
+      }
+      writer.name(TIMESTAMP).value(value.timestamp)
+      writer.endObject()
+    }
+  }
+
+  companion object {
+    private const val TEXT = "text"
+    private const val PARENT_ID = "parent_id"
+    private const val TIMESTAMP = "timestamp"
+  }
+}
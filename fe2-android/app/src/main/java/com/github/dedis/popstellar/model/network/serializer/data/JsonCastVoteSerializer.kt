@@ -0,0 +1,155 @@
+package com.github.dedis.popstellar.model.network.serializer.data
+
+import com.github.dedis.popstellar.model.network.method.message.data.election.CastVote
+import com.github.dedis.popstellar.model.network.method.message.data.election.EncryptedVote
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
+import com.google.gson.Gson
+import com.google.gson.JsonParseException
+import com.google.gson.TypeAdapter
+import com.google.gson.TypeAdapterFactory
+import com.google.gson.reflect.TypeToken
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+import java.io.IOException
+
+/**
+ * Streaming json adapter of the cast votes, the most frequent data of an election.
+ *
+ * The votes are read and written field by field, instead of going through the reflective adapter
+ * and a tree for each vote. The object and action are handled by the [JsonDataSerializer].
+ */
+class JsonCastVoteSerializer : TypeAdapterFactory {
+
+  override fun <T> create(gson: Gson, type: TypeToken<T>): TypeAdapter<T>? {
+    if (type.rawType != CastVote::class.java) {
+      return null
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    return CastVoteAdapter(gson).nullSafe() as TypeAdapter<T>
+  }
+
+  private class CastVoteAdapter(gson: Gson) : TypeAdapter<CastVote>() {
+    private val voteAdapter = gson.getAdapter(Vote::class.java)
+
+    @Throws(IOException::class)
+    override fun read(reader: JsonReader): CastVote {
+      var createdAt: Long? = null
+      var laoId: String? = null
+      var electionId: String? = null
+      var votes: List<Vote>? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          CREATED_AT -> createdAt = reader.nextLong()
+          LAO -> laoId = reader.nextString()
+          ELECTION -> electionId = reader.nextString()
+          VOTES -> votes = readVotes(reader)
+          else -> reader.skipValue()
+        }
+      }
+      reader.endObject()
+
+      if (createdAt == null || laoId == null || electionId == null || votes == null) {
+        throw JsonParseException("The cast vote is missing one of its mandatory fields")
+      }
+
+      return CastVote(createdAt, laoId, electionId, votes)
+    }
+
+    private fun readVotes(reader: JsonReader): List<Vote> {
+      val votes = ArrayList<Vote>()
+
+      reader.beginArray()
+      while (reader.hasNext()) {
+        votes.add(readVote(reader))
+      }
+      reader.endArray()
+
+      return votes
+    }
+
+    private fun readVote(reader: JsonReader): Vote {
+      var id: String? = null
+      var question: String? = null
+      var plainVote: Int? = null
+      var encryptedVote: String? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          ID -> id = reader.nextString()
+          QUESTION -> question = reader.nextString()
+          VOTE ->
+              when (reader.peek()) {
+                JsonToken.STRING -> encryptedVote = reader.nextString()
+                JsonToken.NUMBER -> plainVote = reader.nextInt()
+                else -> throw JsonParseException("Unknown vote type")
+              }
+          else -> reader.skipValue()
+        }
+      }
+      reader.endObject()
+
+      if (id == null || question == null) {
+        throw JsonParseException("A vote is missing one of its mandatory fields")
+      }
+
+      return try {
+        when {
+          encryptedVote != null -> EncryptedVote(id, question, encryptedVote)
+          plainVote != null -> PlainVote(id, question, plainVote)
+          else -> throw JsonParseException("Unknown vote type")
+        }
+      } catch (e: IllegalArgumentException) {
+        throw JsonParseException(e)
+      }
+    }
+
+    @Throws(IOException::class)
+    override fun write(writer: JsonWriter, value: CastVote) {
+      writer.beginObject()
+      writer.name(CREATED_AT).value(value.creation)
+      writer.name(LAO).value(value.laoId)
+      writer.name(ELECTION).value(value.electionId)
+      writer.name(VOTES)
+      writer.beginArray()
+      for (vote in value.votes) {
+        writeVote(writer, vote)
+      }
+      writer.endArray()
+      writer.endObject()
+    }
+
+    private fun writeVote(writer: JsonWriter, vote: Vote) {
+      if (vote !is PlainVote && vote !is EncryptedVote) {
+        voteAdapter.write(writer, vote)
+        return
+      }
+
+      writer.beginObject()
+      writer.name(ID).value(vote.id)
+      writer.name(QUESTION).value(vote.questionId)
+      // A vote written in, without index, has no vote field
+      when (vote) {
+        is PlainVote -> vote.vote?.let { index: Int -> writer.name(VOTE).value(index.toLong()) }
+        is EncryptedVote ->
+            vote.vote?.let { encrypted: String -> writer.name(VOTE).value(encrypted) }
+      }
+      writer.endObject()
+    }
+  }
+
+  companion object {
+    private const val CREATED_AT = "created_at"
+    private const val LAO = "lao"
+    private const val ELECTION = "election"
+    private const val VOTES = "votes"
+    private const val ID = "id"
+    private const val QUESTION = "question"
+    private const val VOTE = "vote"
+  }
+}
@@ -5,7 +5,7 @@ import com.github.dedis.popstellar.model.network.method.message.data.Data
 import com.github.dedis.popstellar.model.network.method.message.data.DataRegistry
 import com.github.dedis.popstellar.model.network.method.message.data.Objects
 import com.github.dedis.popstellar.model.network.serializer.JsonUtils
-import com.github.dedis.popstellar.model.network.serializer.JsonUtils.verifyJson
+import com.github.dedis.popstellar.model.network.serializer.ValidationPolicy
 import com.google.gson.JsonDeserializationContext
 import com.google.gson.JsonDeserializer
 import com.google.gson.JsonElement
@@ -15,8 +15,12 @@ import com.google.gson.JsonSerializer
 import java.lang.reflect.Type
 
 /** Json serializer and deserializer for the data messages */
-class JsonDataSerializer(private val dataRegistry: DataRegistry) :
-    JsonSerializer<Data>, JsonDeserializer<Data> {
+class JsonDataSerializer
+@JvmOverloads
+constructor(
+    private val dataRegistry: DataRegistry,
+    private val validationPolicy: ValidationPolicy = ValidationPolicy(ValidationPolicy.Mode.STRICT)
+) : JsonSerializer<Data>, JsonDeserializer<Data> {
   @Throws(JsonParseException::class)
   override fun deserialize(
       json: JsonElement,
@@ -24,7 +28,7 @@ class JsonDataSerializer(private val dataRegistry: DataRegistry) :
       context: JsonDeserializationContext
   ): Data {
     val obj = json.asJsonObject
-    verifyJson(JsonUtils.DATA_SCHEMA, obj.toString())
+    validationPolicy.verifyInbound(JsonUtils.DATA_SCHEMA, obj, "${obj[OBJECT]}#${obj[ACTION]}")
 
     val `object` = Objects.find(obj[OBJECT].asString)
     val action = Action.find(obj[ACTION].asString)
@@ -36,13 +40,12 @@ class JsonDataSerializer(private val dataRegistry: DataRegistry) :
       throw JsonParseException("Unknown action type : " + obj[ACTION].asString)
     }
 
-    val clazz = dataRegistry.getType(`object`, action)
-    if (!clazz.isPresent) {
-      throw JsonParseException(
-          "The pair (${`object`.`object`}, ${action.action}) does not exists in the protocol")
-    }
+    val clazz =
+        dataRegistry.getType(`object`, action)
+            ?: throw JsonParseException(
+                "The pair (${`object`.`object`}, ${action.action}) does not exists in the protocol")
 
-    return context.deserialize(json, clazz.get())
+    return context.deserialize(json, clazz)
   }
 
   override fun serialize(
@@ -55,7 +58,7 @@ class JsonDataSerializer(private val dataRegistry: DataRegistry) :
     obj.addProperty(OBJECT, src.`object`)
     obj.addProperty(ACTION, src.action)
 
-    verifyJson(JsonUtils.DATA_SCHEMA, obj.toString())
+    validationPolicy.verifyOutbound(JsonUtils.DATA_SCHEMA, obj)
 
     return obj
   }
@@ -0,0 +1,264 @@
+package com.github.dedis.popstellar.model.network.serializer.data
+
+import com.github.dedis.popstellar.model.network.method.message.data.digitalcash.Input
+import com.github.dedis.popstellar.model.network.method.message.data.digitalcash.Output
+import com.github.dedis.popstellar.model.network.method.message.data.digitalcash.PostTransactionCoin
+import com.github.dedis.popstellar.model.network.method.message.data.digitalcash.ScriptInput
+import com.github.dedis.popstellar.model.network.method.message.data.digitalcash.ScriptOutput
+import com.github.dedis.popstellar.model.network.method.message.data.digitalcash.Transaction
+import com.github.dedis.popstellar.model.objects.security.PublicKey
+import com.github.dedis.popstellar.model.objects.security.Signature
+import com.google.gson.Gson
+import com.google.gson.JsonParseException
+import com.google.gson.TypeAdapter
+import com.google.gson.TypeAdapterFactory
+import com.google.gson.reflect.TypeToken
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+import java.io.IOException
+
+/**
+ * Streaming json adapter of the transactions, the most frequent data of the digital cash.
+ *
+ * The transactions are read and written field by field, with their inputs and outputs, instead of
+ * going through the reflective adapter. The id received with a transaction is kept as is, the
+ * handler storing it. The object and action are handled by the [JsonDataSerializer].
+ */
+class JsonPostTransactionCoinSerializer : TypeAdapterFactory {
+
+  override fun <T> create(gson: Gson, type: TypeToken<T>): TypeAdapter<T>? {
+    if (type.rawType != PostTransactionCoin::class.java) {
+      return null
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    return PostTransactionCoinAdapter(gson).nullSafe() as TypeAdapter<T>
+  }
+
+  private class PostTransactionCoinAdapter(gson: Gson) : TypeAdapter<PostTransactionCoin>() {
+    private val publicKeyAdapter = gson.getAdapter(PublicKey::class.java)
+    private val signatureAdapter = gson.getAdapter(Signature::class.java)
+
+    @Throws(IOException::class)
+    override fun read(reader: JsonReader): PostTransactionCoin {
+      var transaction: Transaction? = null
+      var transactionId: String? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          TRANSACTION -> transaction = readTransaction(reader)
+          TRANSACTION_ID -> transactionId = reader.nextString()
+          else -> reader.skipValue()
+        }
+      }
+      reader.endObject()
+
+      if (transaction == null || transactionId == null) {
+        throw JsonParseException("The transaction is missing one of its mandatory fields")
+      }
+
+      return PostTransactionCoin(transaction, transactionId)
+    }
+
+    private fun readTransaction(reader: JsonReader): Transaction {
+      var version: Int? = null
+      var inputs: List<Input>? = null
+      var outputs: List<Output>? = null
+      var lockTime: Long? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          VERSION -> version = reader.nextInt()
+          INPUTS -> inputs = readArray(reader) { readInput(reader) }
+          OUTPUTS -> outputs = readArray(reader) { readOutput(reader) }
+          LOCK_TIME -> lockTime = reader.nextLong()
+          else -> reader.skipValue()
+        }
+      }
+      reader.endObject()
+
+      if (version == null || inputs == null || outputs == null || lockTime == null) {
+        throw JsonParseException("The transaction is missing one of its mandatory fields")
+      }
+
+      return Transaction(version, inputs, outputs, lockTime)
+    }
+
+    private fun readInput(reader: JsonReader): Input {
+      var txOutHash: String? = null
+      var txOutIndex: Int? = null
+      var script: ScriptInput? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          TX_OUT_HASH -> txOutHash = reader.nextString()
+          TX_OUT_INDEX -> txOutIndex = readNullableInt(reader)
+          SCRIPT -> script = readScriptInput(reader)
+          else -> reader.skipValue()
+        }
+      }
+      reader.endObject()
+
+      if (txOutHash == null || script == null) {
+        throw JsonParseException("An input is missing one of its mandatory fields")
+      }
+
+      return Input(txOutHash, txOutIndex, script)
+    }
+
+    private fun readScriptInput(reader: JsonReader): ScriptInput {
+      var type: String? = null
+      var pubkey: PublicKey? = null
+      var sig: Signature? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          TYPE -> type = reader.nextString()
+          PUBKEY -> pubkey = publicKeyAdapter.read(reader)
+          SIG -> sig = signatureAdapter.read(reader)
+          else -> reader.skipValue()
+        }
+      }
+      reader.endObject()
+
+      if (type == null || pubkey == null || sig == null) {
+        throw JsonParseException("An input script is missing one of its mandatory fields")
+      }
+
+      return ScriptInput(type, pubkey, sig)
+    }
+
+    private fun readOutput(reader: JsonReader): Output {
+      var value: Long? = null
+      var script: ScriptOutput? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          VALUE -> value = reader.nextLong()
+          SCRIPT -> script = readScriptOutput(reader)
+          else -> reader.skipValue()
+        }
+      }
+      reader.endObject()
+
+      if (value == null || script == null) {
+        throw JsonParseException("An output is missing one of its mandatory fields")
+      }
+
+      return Output(value, script)
+    }
+
+    private fun readScriptOutput(reader: JsonReader): ScriptOutput {
+      var type: String? = null
+      var pubKeyHash: String? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          TYPE -> type = reader.nextString()
+          PUBKEY_HASH -> pubKeyHash = reader.nextString()
+          else -> reader.skipValue()
+        }
+      }
+      reader.endObject()
+
+      if (type == null || pubKeyHash == null) {
+        throw JsonParseException("An output script is missing one of its mandatory fields")
+      }
+
+      return ScriptOutput(type, pubKeyHash)
+    }
+
+    private fun readNullableInt(reader: JsonReader): Int? {
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull()
+        return null
+      }
+      return reader.nextInt()
+    }
+
+    private fun <E> readArray(reader: JsonReader, readElement: () -> E): List<E> {
+      val elements = ArrayList<E>()
+
+      reader.beginArray()
+      while (reader.hasNext()) {
+        elements.add(readElement())
+      }
+      reader.endArray()
+
+      return elements
+    }
+
+    @Throws(IOException::class)
+    override fun write(writer: JsonWriter, value: PostTransactionCoin) {
+      writer.beginObject()
+      writer.name(TRANSACTION)
+      writeTransaction(writer, value.transaction)
+      writer.name(TRANSACTION_ID).value(value.transactionId)
+      writer.endObject()
+    }
+
+    private fun writeTransaction(writer: JsonWriter, transaction: Transaction) {
+      writer.beginObject()
+      writer.name(VERSION).value(transaction.version.toLong())
+
+      writer.name(INPUTS)
+      writer.beginArray()
+      for (input in transaction.inputs) {
+        writer.beginObject()
+        writer.name(TX_OUT_HASH).value(input.txOutHash)
+        input.txOutIndex?.let { index: Int -> writer.name(TX_OUT_INDEX).value(index.toLong()) }
+        writer.name(SCRIPT)
+        writer.beginObject()
+        writer.name(TYPE).value(input.script.type)
+        writer.name(PUBKEY)
+        publicKeyAdapter.write(writer, input.script.pubkey)
+        writer.name(SIG)
+        signatureAdapter.write(writer, input.script.sig)
+        writer.endObject()
+        writer.endObject()
+      }
+      writer.endArray()
+
+      writer.name(OUTPUTS)
+      writer.beginArray()
+      for (output in transaction.outputs) {
+        writer.beginObject()
+        writer.name(VALUE).value(output.value)
+        writer.name(SCRIPT)
+        writer.beginObject()
+        writer.name(TYPE).value(output.script.type)
+        writer.name(PUBKEY_HASH).value(output.script.pubKeyHash)
+        writer.endObject()
+        writer.endObject()
+      }
+      writer.endArray()
+
+      writer.name(LOCK_TIME).value(transaction.lockTime)
+      writer.endObject()
+    }
+  }
+
+  companion object {
+    private const val TRANSACTION = "transaction"
+    private const val TRANSACTION_ID = "transaction_id"
+    private const val VERSION = "version"
+    private const val INPUTS = "inputs"
+    private const val OUTPUTS = "outputs"
+    private const val LOCK_TIME = "lock_time"
+    private const val TX_OUT_HASH = "tx_out_hash"
+    private const val TX_OUT_INDEX = "tx_out_index"
+    private const val SCRIPT = "script"
+    private const val TYPE = "type"
+    private const val PUBKEY = "pubkey"
+    private const val SIG = "sig"
+    private const val VALUE = "value"
+    private const val PUBKEY_HASH = "pubkey_hash"
+  }
+}
@@ -58,7 +58,7 @@ class JsonElectionSerializer : JsonSerializer<Election>, JsonDeserializer<Electi
     val votesBySender: MutableMap<PublicKey, List<Vote>> = HashMap()
     val votesBySenderObject = jsonObject["votesBySender"].asJsonObject
     for ((key, value) in votesBySenderObject.entrySet()) {
-      val senderPublicKey = PublicKey(key)
+      val senderPublicKey = PublicKey.intern(key)
       val votesBySenderJsonArray = value.asJsonArray
       // Deserialize the value of the map (list of votes)
       val votesBySenderPk: MutableList<Vote> = ArrayList()
@@ -72,7 +72,7 @@ class JsonElectionSerializer : JsonSerializer<Election>, JsonDeserializer<Electi
     val messageMap: MutableMap<PublicKey, MessageID> = HashMap()
     val messageMapObject = jsonObject["messageMap"].asJsonObject
     for ((key, value) in messageMapObject.entrySet()) {
-      val senderPublicKey = PublicKey(key)
+      val senderPublicKey = PublicKey.intern(key)
       val messageId = MessageID(value.asString)
       messageMap[senderPublicKey] = messageId
     }
@@ -5,7 +5,7 @@ import com.github.dedis.popstellar.model.network.answer.Error
 import com.github.dedis.popstellar.model.network.answer.Result
 import com.github.dedis.popstellar.model.network.serializer.JsonUtils
 import com.github.dedis.popstellar.model.network.serializer.JsonUtils.testRPCVersion
-import com.github.dedis.popstellar.model.network.serializer.JsonUtils.verifyJson
+import com.github.dedis.popstellar.model.network.serializer.ValidationPolicy
 import com.google.gson.JsonDeserializationContext
 import com.google.gson.JsonDeserializer
 import com.google.gson.JsonElement
@@ -15,7 +15,11 @@ import com.google.gson.JsonSerializer
 import java.lang.reflect.Type
 
 /** Json serializer and deserializer for the answer */
-class JsonAnswerSerializer : JsonSerializer<Answer?>, JsonDeserializer<Answer> {
+class JsonAnswerSerializer
+@JvmOverloads
+constructor(
+    private val validationPolicy: ValidationPolicy = ValidationPolicy(ValidationPolicy.Mode.STRICT)
+) : JsonSerializer<Answer?>, JsonDeserializer<Answer> {
   @Throws(JsonParseException::class)
   override fun deserialize(
       json: JsonElement,
@@ -25,7 +29,7 @@ class JsonAnswerSerializer : JsonSerializer<Answer?>, JsonDeserializer<Answer> {
     val obj = json.asJsonObject
 
     testRPCVersion(obj)
-    verifyJson(JsonUtils.ROOT_SCHEMA, json.toString())
+    validationPolicy.verifyInbound(JsonUtils.ROOT_SCHEMA, json, ANSWER)
 
     return if (obj.has(RESULT)) {
       context.deserialize(json, Result::class.java)
@@ -44,7 +48,7 @@ class JsonAnswerSerializer : JsonSerializer<Answer?>, JsonDeserializer<Answer> {
     val obj = context.serialize(src).asJsonObject
     obj.addProperty(JsonUtils.JSON_RPC, JsonUtils.JSON_RPC_VERSION)
 
-    verifyJson(JsonUtils.ROOT_SCHEMA, obj.toString())
+    validationPolicy.verifyOutbound(JsonUtils.ROOT_SCHEMA, obj)
 
     return obj
   }
@@ -52,5 +56,6 @@ class JsonAnswerSerializer : JsonSerializer<Answer?>, JsonDeserializer<Answer> {
   companion object {
     private const val RESULT = "result"
     private const val ERROR = "error"
+    private const val ANSWER = "answer"
   }
 }
@@ -3,32 +3,94 @@ package com.github.dedis.popstellar.model.network.serializer.network
 import com.github.dedis.popstellar.model.network.GenericMessage
 import com.github.dedis.popstellar.model.network.answer.Answer
 import com.github.dedis.popstellar.model.network.method.Message
-import com.google.gson.JsonDeserializationContext
-import com.google.gson.JsonDeserializer
+import com.github.dedis.popstellar.model.network.method.Method
+import com.github.dedis.popstellar.model.network.serializer.JsonUtils
+import com.google.gson.Gson
 import com.google.gson.JsonElement
+import com.google.gson.JsonObject
 import com.google.gson.JsonParseException
-import java.lang.reflect.Type
+import com.google.gson.TypeAdapter
+import com.google.gson.TypeAdapterFactory
+import com.google.gson.reflect.TypeToken
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonWriter
+import java.io.IOException
 import timber.log.Timber
 
-/** Json deserializer for the generic messages */
-class JsonGenericMessageDeserializer : JsonDeserializer<GenericMessage> {
-  @Throws(JsonParseException::class)
-  override fun deserialize(
-      json: JsonElement,
-      typeOfT: Type,
-      context: JsonDeserializationContext
-  ): GenericMessage {
-    Timber.tag(TAG).d("deserializing generic message")
-
-    return if (json.asJsonObject.has(METHOD)) {
-      context.deserialize(json, Message::class.java)
-    } else {
-      context.deserialize(json, Answer::class.java)
+/**
+ * Streaming json adapter of the generic messages.
+ *
+ * The messages that do not expect a result, the broadcasts, are read straight from the stream when
+ * their method comes before their params, as the servers write them. The other messages, whose
+ * params need the id of the request, and the answers, which are validated against the protocol
+ * schema, are read as a tree and given to the [Message] and [Answer] adapters.
+ */
+class JsonGenericMessageDeserializer : TypeAdapterFactory {
+
+  override fun <T> create(gson: Gson, type: TypeToken<T>): TypeAdapter<T>? {
+    if (type.rawType != GenericMessage::class.java) {
+      return null
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    return GenericMessageAdapter(gson).nullSafe() as TypeAdapter<T>
+  }
+
+  private class GenericMessageAdapter(private val gson: Gson) : TypeAdapter<GenericMessage>() {
+    private val messageAdapter = gson.getAdapter(Message::class.java)
+    private val answerAdapter = gson.getAdapter(Answer::class.java)
+    private val elementAdapter = gson.getAdapter(JsonElement::class.java)
+
+    @Throws(IOException::class)
+    override fun read(reader: JsonReader): GenericMessage {
+      Timber.tag(TAG).d("deserializing generic message")
+
+      // The fields not streamed, kept to check the version or to decode the message from them
+      val fields = JsonObject()
+      var method: Method? = null
+      var streamed: Message? = null
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        val name = reader.nextName()
+        val known = method
+        if (name == PARAMS && known != null && !known.expectResult()) {
+          streamed = gson.getAdapter(known.dataClass).read(reader)
+        } else {
+          val value = elementAdapter.read(reader)
+          if (name == METHOD && value.isJsonPrimitive) {
+            method = Method.find(value.asString)
+          }
+          fields.add(name, value)
+        }
+      }
+      reader.endObject()
+
+      if (streamed != null) {
+        JsonUtils.testRPCVersion(fields)
+        return streamed
+      }
+
+      return if (fields.has(METHOD)) {
+        messageAdapter.fromJsonTree(fields)
+      } else {
+        answerAdapter.fromJsonTree(fields)
+      }
+    }
+
+    @Throws(IOException::class)
+    override fun write(writer: JsonWriter, value: GenericMessage) {
+      when (value) {
+        is Message -> messageAdapter.write(writer, value)
+        is Answer -> answerAdapter.write(writer, value)
+        else -> throw JsonParseException("Unknown generic message type ${value.javaClass}")
+      }
     }
   }
 
   companion object {
     val TAG: String = JsonGenericMessageDeserializer::class.java.simpleName
     private const val METHOD = "method"
+    private const val PARAMS = "params"
   }
 }
@@ -4,64 +4,174 @@ import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
 import com.github.dedis.popstellar.model.network.method.message.PublicKeySignaturePair
 import com.github.dedis.popstellar.model.network.method.message.data.Data
 import com.github.dedis.popstellar.model.network.serializer.JsonUtils
-import com.github.dedis.popstellar.model.network.serializer.JsonUtils.verifyJson
+import com.github.dedis.popstellar.model.network.serializer.ValidationPolicy
 import com.github.dedis.popstellar.model.objects.security.Base64URLData
 import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.model.objects.security.Signature
-import com.google.gson.JsonDeserializationContext
-import com.google.gson.JsonDeserializer
+import com.google.gson.Gson
 import com.google.gson.JsonElement
 import com.google.gson.JsonParseException
 import com.google.gson.JsonParser
-import com.google.gson.JsonSerializationContext
-import com.google.gson.JsonSerializer
-import com.google.gson.annotations.SerializedName
-import java.lang.reflect.Type
+import com.google.gson.TypeAdapter
+import com.google.gson.TypeAdapterFactory
+import com.google.gson.reflect.TypeToken
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonWriter
+import java.io.IOException
 import java.nio.charset.StandardCharsets
 
-class JsonMessageGeneralSerializer :
-    JsonSerializer<MessageGeneral>, JsonDeserializer<MessageGeneral> {
-  @Throws(JsonParseException::class)
-  override fun deserialize(
-      json: JsonElement,
-      typeOfT: Type,
-      context: JsonDeserializationContext
-  ): MessageGeneral {
-    val jsonObject = context.deserialize<JsonMessageData>(json, JsonMessageData::class.java)
-    val dataElement = JsonParser.parseString(jsonObject.data.data.toString(StandardCharsets.UTF_8))
-    val data = context.deserialize<Data>(dataElement, Data::class.java)
-
-    return MessageGeneral(
-        jsonObject.sender,
-        jsonObject.data,
-        data,
-        jsonObject.signature,
-        jsonObject.messageID,
-        jsonObject.witnessSignatures)
+/**
+ * Streaming json adapter of the general messages.
+ *
+ * The messages are read and written field by field, without materializing them as a json tree.
+ * Only their data, which has to be validated and dispatched on its object and action, goes through
+ * the [Data] adapter, when it is first accessed. A tree is only built to write a message when the
+ * [validationPolicy] requires its validation.
+ */
+class JsonMessageGeneralSerializer
+@JvmOverloads
+constructor(
+    private val validationPolicy: ValidationPolicy = ValidationPolicy(ValidationPolicy.Mode.STRICT)
+) : TypeAdapterFactory {
+
+  override fun <T> create(gson: Gson, type: TypeToken<T>): TypeAdapter<T>? {
+    if (type.rawType != MessageGeneral::class.java) {
+      return null
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    return MessageGeneralAdapter(gson).nullSafe() as TypeAdapter<T>
   }
 
-  override fun serialize(
-      src: MessageGeneral,
-      typeOfSrc: Type,
-      context: JsonSerializationContext
-  ): JsonElement {
-    val jsonObject =
-        JsonMessageData(
-            src.dataEncoded, src.sender, src.signature, src.messageId, src.witnessSignatures)
-    val result = context.serialize(jsonObject)
+  private inner class MessageGeneralAdapter(gson: Gson) : TypeAdapter<MessageGeneral>() {
+    private val base64Adapter = gson.getAdapter(Base64URLData::class.java)
+    private val publicKeyAdapter = gson.getAdapter(PublicKey::class.java)
+    private val signatureAdapter = gson.getAdapter(Signature::class.java)
+    private val messageIdAdapter = gson.getAdapter(MessageID::class.java)
+    private val dataAdapter = gson.getAdapter(Data::class.java)
+    private val elementAdapter = gson.getAdapter(JsonElement::class.java)
+
+    /** Writes the fields of a message, used to build its tree when it has to be validated */
+    private val fieldsAdapter =
+        object : TypeAdapter<MessageGeneral>() {
+          override fun write(writer: JsonWriter, message: MessageGeneral) {
+            writeFields(writer, message)
+          }
+
+          override fun read(reader: JsonReader): MessageGeneral {
+            throw UnsupportedOperationException("Only used to write messages")
+          }
+        }
+
+    @Throws(IOException::class)
+    override fun read(reader: JsonReader): MessageGeneral {
+      var dataEncoded: Base64URLData? = null
+      var sender: PublicKey? = null
+      var signature: Signature? = null
+      var messageId: MessageID? = null
+      var witnessSignatures: List<PublicKeySignaturePair> = emptyList()
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+        when (reader.nextName()) {
+          DATA -> dataEncoded = base64Adapter.read(reader)
+          SENDER -> sender = publicKeyAdapter.read(reader)
+          SIGNATURE -> signature = signatureAdapter.read(reader)
+          MESSAGE_ID -> messageId = messageIdAdapter.read(reader)
+          WITNESS_SIGNATURES -> witnessSignatures = readWitnessSignatures(reader)
+          else -> reader.skipValue()
+        }
+      }
+      reader.endObject()
+
+      if (dataEncoded == null || sender == null || signature == null || messageId == null) {
+        throw JsonParseException("The message is missing one of its mandatory fields")
+      }
+
+      // The data is only decoded when needed, a duplicated message is discarded before
+      val encoded: Base64URLData = dataEncoded
+      return MessageGeneral(
+          sender, encoded, { decodeData(encoded) }, signature, messageId, witnessSignatures)
+    }
 
-    verifyJson(JsonUtils.GENERAL_MESSAGE_SCHEMA, result.toString())
+    private fun decodeData(dataEncoded: Base64URLData): Data {
+      val dataElement = JsonParser.parseString(String(dataEncoded.data, StandardCharsets.UTF_8))
+      return dataAdapter.fromJsonTree(dataElement)
+          ?: throw JsonParseException("The data of the message is null")
+    }
 
-    return result
+    private fun readWitnessSignatures(reader: JsonReader): List<PublicKeySignaturePair> {
+      val signatures = ArrayList<PublicKeySignaturePair>()
+
+      reader.beginArray()
+      while (reader.hasNext()) {
+        var witness: PublicKey? = null
+        var signature: Signature? = null
+
+        reader.beginObject()
+        while (reader.hasNext()) {
+          when (reader.nextName()) {
+            WITNESS -> witness = publicKeyAdapter.read(reader)
+            SIGNATURE -> signature = signatureAdapter.read(reader)
+            else -> reader.skipValue()
+          }
+        }
+        reader.endObject()
+
+        if (witness == null || signature == null) {
+          throw JsonParseException("A witness signature is missing one of its fields")
+        }
+        signatures.add(PublicKeySignaturePair(witness, signature))
+      }
+      reader.endArray()
+
+      return signatures
+    }
+
+    @Throws(IOException::class)
+    override fun write(writer: JsonWriter, value: MessageGeneral) {
+      if (!validationPolicy.shouldVerifyOutbound()) {
+        writeFields(writer, value)
+        return
+      }
+
+      val tree = fieldsAdapter.toJsonTree(value)
+      validationPolicy.verifyOutbound(JsonUtils.GENERAL_MESSAGE_SCHEMA, tree)
+      elementAdapter.write(writer, tree)
+    }
+
+    private fun writeFields(writer: JsonWriter, value: MessageGeneral) {
+      writer.beginObject()
+      writer.name(DATA)
+      base64Adapter.write(writer, value.dataEncoded)
+      writer.name(SENDER)
+      publicKeyAdapter.write(writer, value.sender)
+      writer.name(SIGNATURE)
+      signatureAdapter.write(writer, value.signature)
+      writer.name(MESSAGE_ID)
+      messageIdAdapter.write(writer, value.messageId)
+      writer.name(WITNESS_SIGNATURES)
+      writer.beginArray()
+      for (pair in value.witnessSignatures) {
+        writer.beginObject()
+        writer.name(WITNESS)
+        publicKeyAdapter.write(writer, pair.witness)
+        writer.name(SIGNATURE)
+        signatureAdapter.write(writer, pair.signature)
+        writer.endObject()
+      }
+      writer.endArray()
+      writer.endObject()
+    }
   }
 
-  private class JsonMessageData(
-      val data: Base64URLData,
-      val sender: PublicKey,
-      val signature: Signature,
-      @field:SerializedName("message_id") val messageID: MessageID,
-      @field:SerializedName("witness_signatures")
-      val witnessSignatures: List<PublicKeySignaturePair>
-  )
+  companion object {
+    private const val DATA = "data"
+    private const val SENDER = "sender"
+    private const val SIGNATURE = "signature"
+    private const val MESSAGE_ID = "message_id"
+    private const val WITNESS_SIGNATURES = "witness_signatures"
+    private const val WITNESS = "witness"
+  }
 }
@@ -1,7 +1,5 @@
 package com.github.dedis.popstellar.model.objects
 
-import com.github.dedis.popstellar.model.Copyable.Companion.copyMapOfList
-import com.github.dedis.popstellar.model.Copyable.Companion.copyMapOfSet
 import com.github.dedis.popstellar.model.Immutable
 import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionQuestion
 import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
@@ -19,23 +17,38 @@ import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.model.objects.security.elGamal.ElectionPublicKey
 import com.github.dedis.popstellar.utility.security.HashSHA256.hash
 import java.util.Objects
-
+import kotlinx.collections.immutable.PersistentList
+import kotlinx.collections.immutable.PersistentMap
+import kotlinx.collections.immutable.persistentHashMapOf
+import kotlinx.collections.immutable.persistentListOf
+import kotlinx.collections.immutable.toPersistentHashMap
+import kotlinx.collections.immutable.toPersistentHashSet
+import kotlinx.collections.immutable.toPersistentList
+
+/**
+ * State of an election.
+ *
+ * The collections of an election are persistent collections: reading them does not copy them, and
+ * the [builder] of an election shares them with the election it is built from, so that updating
+ * the votes of a sender only allocates the nodes that change instead of copying all the votes.
+ */
 @Immutable
 @Suppress("LongParameterList")
-class Election(
+class Election
+private constructor(
     id: String,
     name: String,
     creation: Long,
     channel: Channel,
     start: Long,
     end: Long,
-    electionQuestions: List<ElectionQuestion>,
+    electionQuestions: PersistentList<ElectionQuestion>,
     electionKey: String?,
     electionVersion: ElectionVersion,
-    votesBySender: Map<PublicKey, List<Vote>>,
-    messageMap: Map<PublicKey, MessageID>,
+    votesBySender: PersistentMap<PublicKey, List<Vote>>,
+    messageMap: PersistentMap<PublicKey, MessageID>,
     state: EventState?,
-    results: Map<String, Set<QuestionResult>>
+    results: PersistentMap<String, Set<QuestionResult>>
 ) : Event() {
   val channel: Channel
   val id: String
@@ -57,24 +70,17 @@ class Election(
   val electionVersion: ElectionVersion
 
   val electionQuestions: List<ElectionQuestion>
-    get() = ArrayList(field)
 
   // Map that associates each sender pk to their votes
   val votesBySender: Map<PublicKey, List<Vote>>
-    get() = copyMapOfList(field)
 
   // Map that associates each messageId to its sender
   val messageMap: Map<PublicKey, MessageID>
-    get() = HashMap(field)
 
   // Results of an election (associated to a question id)
   val results: Map<String, Set<QuestionResult>>
-    get() = copyMapOfSet(field)
 
   init {
-    // Make sure the vote are encrypted in a secret election and plain in an open election
-    validateVotesTypes(votesBySender, electionVersion)
-
     this.id = id
     this.name = name
     this.creation = creation
@@ -85,11 +91,43 @@ class Election(
     this.electionKey = electionKey
     this.electionVersion = electionVersion
 
-    // Defensive copies
-    this.electionQuestions = ArrayList(electionQuestions)
-    this.votesBySender = copyMapOfList(votesBySender)
-    this.results = copyMapOfSet(results)
-    this.messageMap = HashMap(messageMap)
+    // Immutable, no defensive copy is needed
+    this.electionQuestions = electionQuestions
+    this.votesBySender = votesBySender
+    this.results = results
+    this.messageMap = messageMap
+  }
+
+  constructor(
+      id: String,
+      name: String,
+      creation: Long,
+      channel: Channel,
+      start: Long,
+      end: Long,
+      electionQuestions: List<ElectionQuestion>,
+      electionKey: String?,
+      electionVersion: ElectionVersion,
+      votesBySender: Map<PublicKey, List<Vote>>,
+      messageMap: Map<PublicKey, MessageID>,
+      state: EventState?,
+      results: Map<String, Set<QuestionResult>>
+  ) : this(
+      id,
+      name,
+      creation,
+      channel,
+      start,
+      end,
+      electionQuestions.toPersistentList(),
+      electionKey,
+      electionVersion,
+      toPersistentVotes(votesBySender),
+      messageMap.toPersistentHashMap(),
+      state,
+      toPersistentResults(results)) {
+    // Make sure the vote are encrypted in a secret election and plain in an open election
+    validateVotesTypes(votesBySender, electionVersion)
   }
 
   val creationInMillis: Long
@@ -196,6 +234,24 @@ class Election(
     return ElectionBuilder(this)
   }
 
+  /** @return this election without its votes, as they are stored apart from it */
+  fun withoutVotes(): Election {
+    return Election(
+        id,
+        name,
+        creation,
+        channel,
+        startTimestamp,
+        endTimestamp,
+        electionQuestions.toPersistentList(),
+        electionKey,
+        electionVersion,
+        persistentHashMapOf(),
+        persistentHashMapOf(),
+        state,
+        results.toPersistentHashMap())
+  }
+
   class ElectionBuilder {
     private val id: String
     private var name: String
@@ -203,13 +259,17 @@ class Election(
     private val channel: Channel
     private var start: Long = 0
     private var end: Long = 0
-    private var electionQuestions: List<ElectionQuestion>
+    private var electionQuestions: PersistentList<ElectionQuestion>
     private var electionKey: String? = null
     private var electionVersion: ElectionVersion? = null
-    private val votesBySender: MutableMap<PublicKey, List<Vote>>
-    private val messageMap: MutableMap<PublicKey, MessageID>
+    private var votesBySender: PersistentMap<PublicKey, List<Vote>>
+    private var messageMap: PersistentMap<PublicKey, MessageID>
     private var state: EventState? = null
-    private var results: Map<String, Set<QuestionResult>>
+    private var results: PersistentMap<String, Set<QuestionResult>>
+
+    // The votes of the election the builder starts from are already validated
+    private val updatedSenders: MutableSet<PublicKey> = HashSet()
+    private var versionChanged = false
 
     /**
      * This is a special builder that can be used to generate the default values of an election
@@ -224,10 +284,10 @@ class Election(
       this.name = name
       this.creation = creation
       this.channel = getLaoChannel(laoId).subChannel(id)
-      this.results = HashMap()
-      this.electionQuestions = ArrayList()
-      this.votesBySender = HashMap()
-      this.messageMap = HashMap()
+      this.results = persistentHashMapOf()
+      this.electionQuestions = persistentListOf()
+      this.votesBySender = persistentHashMapOf()
+      this.messageMap = persistentHashMapOf()
     }
 
     constructor(election: Election) {
@@ -238,14 +298,14 @@ class Election(
       start = election.startTimestamp
       end = election.endTimestamp
       electionKey = election.electionKey
-      electionQuestions = election.electionQuestions
       electionVersion = election.electionVersion
 
-      // We might modify the maps, for safety reason, we need to create a copy
-      votesBySender = HashMap(election.votesBySender)
-      messageMap = HashMap(election.messageMap)
+      // The collections are shared with the election, updating them does not modify it
+      electionQuestions = election.electionQuestions.toPersistentList()
+      votesBySender = election.votesBySender.toPersistentHashMap()
+      messageMap = election.messageMap.toPersistentHashMap()
       state = election.state
-      results = election.results
+      results = election.results.toPersistentHashMap()
     }
 
     fun setName(name: String): ElectionBuilder {
@@ -264,7 +324,7 @@ class Election(
     }
 
     fun setElectionQuestions(electionQuestions: List<ElectionQuestion>): ElectionBuilder {
-      this.electionQuestions = electionQuestions
+      this.electionQuestions = electionQuestions.toPersistentList()
       return this
     }
 
@@ -275,16 +335,18 @@ class Election(
 
     fun setElectionVersion(electionVersion: ElectionVersion): ElectionBuilder {
       this.electionVersion = electionVersion
+      versionChanged = true
       return this
     }
 
     fun updateVotes(senderPk: PublicKey, votes: List<Vote>): ElectionBuilder {
-      votesBySender[senderPk] = ArrayList(votes)
+      votesBySender = votesBySender.put(senderPk, votes.toPersistentList())
+      updatedSenders.add(senderPk)
       return this
     }
 
     fun updateMessageMap(senderPk: PublicKey, messageID: MessageID): ElectionBuilder {
-      messageMap[senderPk] = messageID
+      messageMap = messageMap.put(senderPk, messageID)
       return this
     }
 
@@ -294,12 +356,19 @@ class Election(
     }
 
     fun setResults(results: Map<String, Set<QuestionResult>>): ElectionBuilder {
-      this.results = results
+      this.results = toPersistentResults(results)
       return this
     }
 
     fun build(): Election {
       checkNotNull(electionVersion) { "Election version is null " }
+
+      // Only the votes that were not part of a built election are left to validate
+      val senders = if (versionChanged) votesBySender.keys else updatedSenders
+      senders.forEach { sender: PublicKey ->
+        votesBySender[sender]?.forEach { vote: Vote -> validateVoteType(vote, electionVersion) }
+      }
+
       return Election(
           id,
           name,
@@ -318,6 +387,26 @@ class Election(
   }
 
   companion object {
+    private fun toPersistentVotes(
+        votesBySender: Map<PublicKey, List<Vote>>
+    ): PersistentMap<PublicKey, List<Vote>> {
+      val votes = persistentHashMapOf<PublicKey, List<Vote>>().builder()
+      votesBySender.forEach { (sender, senderVotes) ->
+        votes[sender] = senderVotes.toPersistentList()
+      }
+      return votes.build()
+    }
+
+    private fun toPersistentResults(
+        results: Map<String, Set<QuestionResult>>
+    ): PersistentMap<String, Set<QuestionResult>> {
+      val persistentResults = persistentHashMapOf<String, Set<QuestionResult>>().builder()
+      results.forEach { (questionId, questionResults) ->
+        persistentResults[questionId] = questionResults.toPersistentHashSet()
+      }
+      return persistentResults.build()
+    }
+
     private fun validateVotesTypes(
         votesBySender: Map<PublicKey, List<Vote>>,
         version: ElectionVersion?
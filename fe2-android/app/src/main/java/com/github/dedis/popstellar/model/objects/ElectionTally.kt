@@ -0,0 +1,158 @@
+package com.github.dedis.popstellar.model.objects
+
+import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionQuestion
+import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
+import com.github.dedis.popstellar.model.network.method.message.data.election.QuestionResult
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
+import com.github.dedis.popstellar.model.objects.security.PublicKey
+import com.github.dedis.popstellar.utility.security.HashSHA256.hash
+import java.util.TreeMap
+
+/**
+ * Running tally of the votes of an election, updated with the votes of each sender as they are
+ * received.
+ *
+ * It keeps the number of votes of each ballot option and the ids of the votes in sorted order, so
+ * that neither the local results nor the hash of the registered votes need to go over all the
+ * votes again. The hash is computed on the first read after the votes changed and kept until the
+ * next change.
+ *
+ * The votes of a secret ballot election are encrypted, only their ids are tallied.
+ *
+ * The tally is thread-safe.
+ */
+class ElectionTally(questions: List<ElectionQuestion>, private val version: ElectionVersion) {
+  private val lock = Any()
+
+  /** Ballot options of each question, by question id */
+  private val ballotOptions: Map<String, List<String>> =
+      questions.associate { question: ElectionQuestion -> question.id to question.ballotOptions }
+
+  /** Number of votes of each ballot option, in the order of the options, by question id */
+  private val counts: Map<String, IntArray> =
+      questions.associate { question: ElectionQuestion ->
+        question.id to IntArray(question.ballotOptions.size)
+      }
+
+  /** Votes currently counted for each sender */
+  private val votesBySender = HashMap<PublicKey, List<Vote>>()
+
+  /** Ids of the counted votes, sorted, with the number of votes having each id */
+  private val voteIds = TreeMap<String, Int>()
+
+  /** Hash of the registered votes, null if it has to be computed again */
+  private var votesHash: String? = null
+
+  /**
+   * Count the votes of a sender, in place of their previous votes
+   *
+   * @param sender of the votes
+   * @param votes the votes of the sender
+   */
+  fun update(sender: PublicKey, votes: List<Vote>) {
+    synchronized(lock) {
+      votesBySender.put(sender, votes)?.forEach { vote: Vote -> count(vote, -1) }
+      votes.forEach { vote: Vote -> count(vote, 1) }
+      votesHash = null
+    }
+  }
+
+  /** @return the number of senders whose votes are counted */
+  val voters: Int
+    get() = synchronized(lock) { votesBySender.size }
+
+  /**
+   * The hash of the ids of all the votes, sorted, as sent in the ElectionEnd message
+   *
+   * @return the hash of the registered votes, or an empty string if there is no vote
+   */
+  val registeredVotesHash: String
+    get() =
+        synchronized(lock) {
+          votesHash ?: computeVotesHash().also { computed: String -> votesHash = computed }
+        }
+
+  /**
+   * @return the number of votes of each ballot option by question id, or null for a secret ballot
+   *   election as its votes are encrypted
+   */
+  fun results(): Map<String, Set<QuestionResult>>? {
+    if (version != ElectionVersion.OPEN_BALLOT) {
+      return null
+    }
+
+    synchronized(lock) {
+      return counts.mapValues { (questionId, questionCounts) ->
+        val options = ballotOptions.getValue(questionId)
+        options.indices
+            .filter { option: Int -> questionCounts[option] > 0 }
+            .map { option: Int -> QuestionResult(options[option], questionCounts[option]) }
+            .toSet()
+      }
+    }
+  }
+
+  /**
+   * Compare the local tally to the results of the election. The ballot options without votes may
+   * be left out of the results.
+   *
+   * @param results the results of the election, by question id
+   * @return false if the results differ from the local tally, true if they match or if the votes
+   *   cannot be tallied locally
+   */
+  fun matches(results: Map<String, Set<QuestionResult>>): Boolean {
+    val local = results() ?: return true
+    return local.keys.union(results.keys).all { questionId: String ->
+      nonZeroCounts(local[questionId].orEmpty()) == nonZeroCounts(results[questionId].orEmpty())
+    }
+  }
+
+  private fun count(vote: Vote, delta: Int) {
+    voteIds.merge(vote.id, delta) { previous: Int, added: Int ->
+      (previous + added).takeIf { count: Int -> count > 0 }
+    }
+
+    // Write-in votes and votes for unknown options are not counted in the options
+    val option = (vote as? PlainVote)?.vote ?: return
+    val questionCounts = counts[vote.questionId] ?: return
+    if (option in questionCounts.indices) {
+      questionCounts[option] += delta
+    }
+  }
+
+  @Suppress("SpreadOperator")
+  private fun computeVotesHash(): String {
+    if (voteIds.isEmpty()) {
+      return ""
+    }
+
+    val ids = ArrayList<String>()
+    voteIds.forEach { (id, count) -> repeat(count) { ids.add(id) } }
+    return hash(*ids.toTypedArray())
+  }
+
+  companion object {
+    /**
+     * @param election of the tally
+     * @return a tally of the votes of the election
+     */
+    @JvmStatic
+    fun of(election: Election): ElectionTally {
+      val tally = ElectionTally(election.electionQuestions, election.electionVersion)
+      val votesBySender = election.votesBySender
+      // Only the votes with a message are registered, as in the hash of the election
+      election.messageMap.keys.forEach { sender: PublicKey ->
+        votesBySender[sender]?.let { votes: List<Vote> -> tally.update(sender, votes) }
+      }
+      return tally
+    }
+
+    private fun nonZeroCounts(results: Set<QuestionResult>): Map<String, Int> {
+      return results
+          .filter { result: QuestionResult -> result.count > 0 }
+          .groupBy(QuestionResult::ballot)
+          .mapValues { (_, ballotResults) -> ballotResults.sumOf(QuestionResult::count) }
+    }
+  }
+}
@@ -7,6 +7,9 @@ import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.utility.security.HashSHA256.hash
 import java.util.Objects
+import kotlinx.collections.immutable.PersistentSet
+import kotlinx.collections.immutable.persistentSetOf
+import kotlinx.collections.immutable.toPersistentSet
 
 /** Class modeling a Local Autonomous Organization (LAO) */
 class Lao : Copyable<Lao> {
@@ -17,7 +20,14 @@ class Lao : Copyable<Lao> {
       field = id
     }
 
-  var pendingUpdates: MutableSet<PendingUpdate>
+  // Persistent, so that the copies of the lao share it instead of copying it
+  private var updates: PersistentSet<PendingUpdate>
+
+  var pendingUpdates: Set<PendingUpdate>
+    get() = updates
+    set(pendingUpdates) {
+      updates = pendingUpdates.toPersistentSet()
+    }
 
   var name: String? = null
     private set
@@ -32,7 +42,7 @@ class Lao : Copyable<Lao> {
 
     this.channel = getLaoChannel(id)
     this.id = id
-    this.pendingUpdates = HashSet()
+    this.updates = persistentSetOf()
   }
 
   constructor(createLao: CreateLao) : this(createLao.id) {
@@ -70,7 +80,7 @@ class Lao : Copyable<Lao> {
     this.creation = creation
     this.organizer = organizer
     this.modificationId = modificationId
-    this.pendingUpdates = HashSet(pendingUpdates)
+    this.updates = pendingUpdates.toPersistentSet()
   }
 
   /**
@@ -86,7 +96,7 @@ class Lao : Copyable<Lao> {
     creation = lao.creation
     organizer = lao.organizer
     modificationId = lao.modificationId
-    pendingUpdates = HashSet(lao.pendingUpdates)
+    updates = lao.updates
   }
 
   fun setName(name: String?) {
@@ -97,7 +107,18 @@ class Lao : Copyable<Lao> {
   }
 
   fun addPendingUpdate(pendingUpdate: PendingUpdate) {
-    pendingUpdates.add(pendingUpdate)
+    updates = updates.add(pendingUpdate)
+  }
+
+  /**
+   * Remove the pending updates that are not more recent than the given time
+   *
+   * @param modificationTime time of the most recent update to remove
+   */
+  fun removePendingUpdatesUntil(modificationTime: Long) {
+    updates = updates.removeAll { pendingUpdate: PendingUpdate ->
+      pendingUpdate.modificationTime <= modificationTime
+    }
   }
 
   override fun copy(): Lao {
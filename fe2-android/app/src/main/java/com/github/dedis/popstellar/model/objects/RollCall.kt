@@ -8,7 +8,14 @@ import com.github.dedis.popstellar.model.objects.event.RollCallBuilder
 import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.utility.security.HashSHA256.hash
 import java.util.Objects
+import kotlinx.collections.immutable.toPersistentSet
 
+/**
+ * State of a roll-call.
+ *
+ * The attendees are kept in a persistent set, in the order they were added, so that the roll-call
+ * and the [RollCallBuilder] built from it share them instead of copying them.
+ */
 @Immutable
 class RollCall(
     val id: String,
@@ -18,11 +25,13 @@ class RollCall(
     override val startTimestamp: Long,
     val end: Long,
     override val state: EventState,
-    val attendees: MutableSet<PublicKey>,
+    attendees: Set<PublicKey>,
     val location: String,
     val description: String
 ) : Event() {
 
+  val attendees: Set<PublicKey> = attendees.toPersistentSet()
+
   override val type: EventType
     get() = EventType.ROLL_CALL
 
@@ -2,6 +2,9 @@ package com.github.dedis.popstellar.model.objects.event
 
 import com.github.dedis.popstellar.model.objects.RollCall
 import com.github.dedis.popstellar.model.objects.security.PublicKey
+import kotlinx.collections.immutable.PersistentSet
+import kotlinx.collections.immutable.persistentSetOf
+import kotlinx.collections.immutable.toPersistentSet
 
 class RollCallBuilder {
   private var id: String? = null
@@ -11,7 +14,7 @@ class RollCallBuilder {
   private var start: Long = 0
   private var end: Long = 0
   private var state: EventState? = null
-  private var attendees: MutableSet<PublicKey>? = null
+  private var attendees: PersistentSet<PublicKey>? = null
   private var location: String? = null
   private var description: String? = null
 
@@ -30,7 +33,8 @@ class RollCallBuilder {
     start = rollCall.startTimestamp
     end = rollCall.end
     state = rollCall.state
-    attendees = LinkedHashSet(rollCall.attendees)
+    // Shared with the roll-call, as it is immutable
+    attendees = rollCall.attendees.toPersistentSet()
     location = rollCall.location
     description = rollCall.description
   }
@@ -66,12 +70,12 @@ class RollCallBuilder {
   }
 
   fun setAttendees(attendees: Set<PublicKey>): RollCallBuilder {
-    this.attendees = LinkedHashSet(attendees)
+    this.attendees = attendees.toPersistentSet()
     return this
   }
 
   fun setEmptyAttendees(): RollCallBuilder {
-    attendees = LinkedHashSet()
+    attendees = persistentSetOf()
     return this
   }
 
@@ -102,7 +106,7 @@ class RollCallBuilder {
         start,
         end,
         state!!,
-        LinkedHashSet(attendees),
+        attendees!!,
         location!!,
         description!!)
   }
@@ -1,21 +1,68 @@
 package com.github.dedis.popstellar.model.objects.security
 
 import com.github.dedis.popstellar.model.Immutable
+import java.nio.ByteBuffer
 import java.nio.charset.StandardCharsets
 import java.util.Base64
 
-/** Represents a data that can be encoded into a Base64 form */
+/**
+ * Represents a data that can be encoded into a Base64 form
+ *
+ * These objects are used as keys of the maps of most repositories. The bytes are thus held in a
+ * single array that is never handed out, and the encoded form and the hash code are computed once,
+ * so that comparing and hashing them does not allocate.
+ */
 @Immutable
-open class Base64URLData(data: ByteArray) {
-  // Deep copy of byte array
-  val data: ByteArray = data.copyOf(data.size)
-    get() = field.copyOf(field.size)
+open class Base64URLData {
+  // Single copy of the bytes, never modified nor exposed
+  private val bytes: ByteArray
 
-  constructor(data: String) : this(decode(data))
+  // Caches, transient so that they are not serialized
+  @Transient private var encodedCache: String? = null
+  @Transient private var hash = 0
+
+  constructor(data: ByteArray) {
+    // Deep copy of byte array
+    bytes = data.copyOf(data.size)
+  }
+
+  constructor(data: String) {
+    // The decoded array is not shared, no need to copy it
+    bytes = decode(data)
+  }
+
+  /** @return a copy of the data, prefer the read-only views when no copy is needed */
+  val data: ByteArray
+    get() = bytes.copyOf(bytes.size)
+
+  /** @return the number of bytes of the data */
+  val size: Int
+    get() = bytes.size
+
+  /** @return a read-only view of the data, without copying it */
+  fun asReadOnlyBuffer(): ByteBuffer {
+    return ByteBuffer.wrap(bytes).asReadOnlyBuffer()
+  }
+
+  /**
+   * @param other bytes to compare to
+   * @return true if the data is made of the given bytes
+   */
+  fun contentEquals(other: ByteArray): Boolean {
+    return bytes.contentEquals(other)
+  }
 
   val encoded: String
     /** @return the Base64 - encoded string representation of the data */
-    get() = encode(data)
+    get() {
+      // Racy single-check, computing it twice is harmless as the result is the same
+      var result = encodedCache
+      if (result == null) {
+        result = encode(bytes)
+        encodedCache = result
+      }
+      return result
+    }
 
   override fun toString(): String {
     return "${javaClass.simpleName}($encoded)"
@@ -29,11 +76,17 @@ open class Base64URLData(data: ByteArray) {
       return false
     }
     val that = other as Base64URLData
-    return data.contentEquals(that.data)
+    return hashCode() == that.hashCode() && bytes.contentEquals(that.bytes)
   }
 
   override fun hashCode(): Int {
-    return data.contentHashCode()
+    // Like String, 0 marks a hash not computed yet
+    var result = hash
+    if (result == 0) {
+      result = bytes.contentHashCode()
+      hash = result
+    }
+    return result
   }
 
   companion object {
@@ -4,32 +4,42 @@ import com.github.dedis.popstellar.model.Immutable
 import com.github.dedis.popstellar.utility.GeneralUtils
 import com.google.crypto.tink.PublicKeyVerify
 import com.google.crypto.tink.subtle.Ed25519Verify
+import java.lang.ref.WeakReference
 import java.security.GeneralSecurityException
 import java.security.MessageDigest
 import java.security.NoSuchAlgorithmException
 import java.util.Arrays
 import java.util.Base64
+import java.util.WeakHashMap
 import timber.log.Timber
 
-/** A public key that can be used to verify a signature */
+/**
+ * A public key that can be used to verify a signature
+ *
+ * The verifier, the label and the hash of the key are only computed when first needed, and then
+ * kept. Use [intern] to share a single instance between all the occurrences of a key.
+ */
 @Immutable
 class PublicKey : Base64URLData {
-  private val verifier: PublicKeyVerify
-  @Transient private var label: String
+  // Computed on first use, transient so that they are not serialized
+  @Transient private var verifier: PublicKeyVerify? = null
+  @Transient private var label: String? = null
+  @Transient private var pubKeyHash: String? = null
 
-  constructor(data: ByteArray) : super(data) {
-    verifier = Ed25519Verify(data)
-    label = GeneralUtils.generateUsernameFromBase64(this.encoded)
-  }
+  constructor(data: ByteArray) : super(data)
+
+  constructor(data: String) : super(data)
 
-  constructor(data: String) : super(data) {
-    verifier = Ed25519Verify(this.data)
-    label = GeneralUtils.generateUsernameFromBase64(this.encoded)
+  init {
+    // Checked here, as the verifier that would reject it is only built when first used
+    require(size == Ed25519Verify.PUBLIC_KEY_LEN) {
+      "Given public key's length is not ${Ed25519Verify.PUBLIC_KEY_LEN}."
+    }
   }
 
   fun verify(signature: Signature, data: Base64URLData): Boolean {
     return try {
-      verifier.verify(signature.data, data.data)
+      getVerifier().verify(signature.data, data.data)
       true
     } catch (e: GeneralSecurityException) {
       Timber.tag(TAG).e("Failed to verify witness signature %s", e.message)
@@ -37,12 +47,27 @@ class PublicKey : Base64URLData {
     }
   }
 
+  private fun getVerifier(): PublicKeyVerify {
+    // Racy single-check, as for the caches of Base64URLData
+    var result = verifier
+    if (result == null) {
+      result = Ed25519Verify(data)
+      verifier = result
+    }
+    return result
+  }
+
   /**
    * Function that return the username of the public key The username is deterministic and is
    * computed from the hash of the public key
    */
   fun getLabel(): String {
-    return label
+    var result = label
+    if (result == null) {
+      result = GeneralUtils.generateUsernameFromBase64(encoded)
+      label = result
+    }
+    return result
   }
 
   /**
@@ -51,6 +76,15 @@ class PublicKey : Base64URLData {
    * @return String which correspond to the SHA256 Hash
    */
   fun computeHash(): String {
+    var result = pubKeyHash
+    if (result == null) {
+      result = sha256()
+      pubKeyHash = result
+    }
+    return result
+  }
+
+  private fun sha256(): String {
     try {
       val digest = MessageDigest.getInstance("SHA-256")
       val hash = digest.digest(data)
@@ -65,6 +99,41 @@ class PublicKey : Base64URLData {
   companion object {
     private val TAG = PublicKey::class.java.simpleName
 
+    /**
+     * Pool of the keys in use, by encoded form. The keys of the map are the cached encoded strings
+     * of the public keys, so an entry lives as long as its public key is referenced elsewhere.
+     */
+    private val pool = WeakHashMap<String, WeakReference<PublicKey>>()
+
+    /**
+     * Return the public key of the given encoded form, reusing the instance already in use for this
+     * key if there is one. The keys of the attendees appear in many messages, this keeps a single
+     * instance of each, along with its verifier, label and hash.
+     *
+     * @param data the Base64 encoded key
+     * @return the shared instance of the key
+     */
+    @JvmStatic
+    fun intern(data: String): PublicKey {
+      synchronized(pool) { pool[data]?.get()?.let { key: PublicKey -> return key } }
+
+      // Decoded outside of the lock, the input may also not be in the canonical encoded form
+      val candidate = PublicKey(data)
+      synchronized(pool) {
+        val existing = pool[candidate.encoded]?.get()
+        if (existing != null) {
+          return existing
+        }
+        pool[candidate.encoded] = WeakReference(candidate)
+        return candidate
+      }
+    }
+
+    /** @return the number of distinct keys currently interned */
+    @JvmStatic
+    val internedCount: Int
+      get() = synchronized(pool) { pool.size }
+
     fun findPublicKeyFromUsername(
         username: String,
         publicKeys: List<PublicKey>,
@@ -0,0 +1,114 @@
+package com.github.dedis.popstellar.repository
+
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.repository.database.AppDatabase
+import com.github.dedis.popstellar.repository.database.catchup.CatchupWatermarkDao
+import com.github.dedis.popstellar.repository.database.catchup.CatchupWatermarkEntity
+import io.reactivex.schedulers.Schedulers
+import java.security.MessageDigest
+import java.util.Base64
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+import timber.log.Timber
+
+/**
+ * This class remembers, for each channel, up to which message of its catchup the messages were
+ * fully applied. This allows a new catchup of the channel to only process the messages that were
+ * not applied yet.
+ *
+ * A server returns the messages of a channel in the order it stored them, but two servers may store
+ * them in different orders, and a catchup may be answered by any of them. The high-water mark is
+ * therefore checked against a digest of the ids of all the messages up to it : if any of them
+ * differs, or is at another position, the history is processed entirely as before.
+ */
+@Singleton
+class CatchupWatermarkRepository @Inject constructor(appDatabase: AppDatabase) {
+  private val watermarkDao: CatchupWatermarkDao = appDatabase.catchupWatermarkDao()
+
+  /** In-memory copy of the table, by channel */
+  private val watermarks = ConcurrentHashMap<String, CatchupWatermarkEntity>()
+
+  init {
+    watermarkDao
+        .getAll()
+        .subscribeOn(Schedulers.io())
+        .subscribe(
+            { entities: List<CatchupWatermarkEntity> ->
+              entities.forEach { entity: CatchupWatermarkEntity ->
+                watermarks.putIfAbsent(entity.channel, entity)
+              }
+            },
+            { err: Throwable -> Timber.tag(TAG).e(err, "Error loading the catchup watermarks") })
+  }
+
+  /**
+   * Retrieve the position of the first message of a catchup that was not applied yet.
+   *
+   * @param channel on which the catchup was made
+   * @param messageIds ids of the messages returned by the catchup, in the order of the server
+   * @return the position of the first message to process, 0 if the whole catchup has to be
+   *   processed
+   */
+  fun firstUnappliedPosition(channel: Channel, messageIds: List<MessageID>): Int {
+    val watermark = watermarks[channel.asString] ?: return 0
+    val position = watermark.position
+    return if (position < messageIds.size &&
+        prefixDigest(messageIds, position) == watermark.prefixDigest) {
+      position + 1
+    } else {
+      Timber.tag(TAG).d("The history of %s changed, processing its whole catchup", channel)
+      0
+    }
+  }
+
+  /**
+   * Raise the high-water mark of a channel.
+   *
+   * @param channel on which the catchup was made
+   * @param messageIds ids of the messages returned by the catchup, in the order of the server
+   * @param position of the last message of the catchup such that it and all the preceding ones are
+   *   applied
+   */
+  fun updateWatermark(channel: Channel, messageIds: List<MessageID>, position: Int) {
+    val watermark =
+        CatchupWatermarkEntity(channel.asString, position, prefixDigest(messageIds, position))
+    watermarks[channel.asString] = watermark
+
+    watermarkDao
+        .insert(watermark)
+        .subscribeOn(Schedulers.io())
+        .subscribe(
+            { Timber.tag(TAG).d("Watermark of %s raised to %d", channel, position) },
+            { err: Throwable ->
+              Timber.tag(TAG).e(err, "Error persisting the watermark of %s", channel)
+            })
+  }
+
+  /**
+   * Forget the high-water marks, once the tables of the database were cleared. The next catchup of
+   * each channel then processes its whole history again.
+   */
+  fun clear() {
+    watermarks.clear()
+  }
+
+  companion object {
+    private val TAG = CatchupWatermarkRepository::class.java.simpleName
+
+    /**
+     * @param messageIds ids of the messages of a catchup
+     * @param position of the last message to include
+     * @return the SHA-256 digest of the ids of the messages up to this position, included
+     */
+    private fun prefixDigest(messageIds: List<MessageID>, position: Int): String {
+      val digest = MessageDigest.getInstance("SHA-256")
+      for (i in 0..position) {
+        // The ids all have the same size, so their concatenation is unambiguous
+        digest.update(messageIds[i].asReadOnlyBuffer())
+      }
+      return Base64.getUrlEncoder().encodeToString(digest.digest())
+    }
+  }
+}
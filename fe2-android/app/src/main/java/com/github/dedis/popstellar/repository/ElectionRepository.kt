@@ -3,16 +3,24 @@ package com.github.dedis.popstellar.repository
 import android.app.Activity
 import android.app.Application
 import androidx.lifecycle.Lifecycle
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
 import com.github.dedis.popstellar.model.objects.Channel
 import com.github.dedis.popstellar.model.objects.Election
+import com.github.dedis.popstellar.model.objects.ElectionTally
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.repository.database.AppDatabase
 import com.github.dedis.popstellar.repository.database.event.election.ElectionDao
 import com.github.dedis.popstellar.repository.database.event.election.ElectionEntity
+import com.github.dedis.popstellar.repository.database.event.election.ElectionVoteDao
+import com.github.dedis.popstellar.repository.database.event.election.ElectionVoteEntity
 import com.github.dedis.popstellar.utility.GeneralUtils.buildLifecycleCallback
 import com.github.dedis.popstellar.utility.error.UnknownElectionException
 import io.reactivex.Observable
+import io.reactivex.Single
 import io.reactivex.android.schedulers.AndroidSchedulers
 import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.functions.BiFunction
 import io.reactivex.schedulers.Schedulers
 import io.reactivex.subjects.BehaviorSubject
 import io.reactivex.subjects.Subject
@@ -33,6 +41,7 @@ import timber.log.Timber
 class ElectionRepository @Inject constructor(appDatabase: AppDatabase, application: Application) {
   private val electionsByLao: MutableMap<String, LaoElections> = HashMap()
   private val electionDao: ElectionDao = appDatabase.electionDao()
+  private val electionVoteDao: ElectionVoteDao = appDatabase.electionVoteDao()
   private val disposables = CompositeDisposable()
 
   init {
@@ -50,10 +59,10 @@ class ElectionRepository @Inject constructor(appDatabase: AppDatabase, applicati
    * @param election the election to update
    */
   fun updateElection(election: Election) {
-    // Persist the election
+    // Persist the election, its votes are persisted apart from it
     disposables.add(
         electionDao
-            .insert(ElectionEntity(election))
+            .insert(ElectionEntity(election.withoutVotes()))
             .subscribeOn(Schedulers.io())
             .observeOn(AndroidSchedulers.mainThread())
             .subscribe(
@@ -66,6 +75,50 @@ class ElectionRepository @Inject constructor(appDatabase: AppDatabase, applicati
     getLaoElections(election.channel.extractLaoId()).updateElection(election)
   }
 
+  /**
+   * Update the votes of a sender in an election.
+   *
+   * Only the new votes are persisted, instead of the whole election with all its votes.
+   *
+   * @param election the election the votes are cast in
+   * @param sender of the votes
+   * @param messageId id of the message of the votes
+   * @param votes the new votes of the sender, which replace the previous ones
+   */
+  fun updateVotes(election: Election, sender: PublicKey, messageId: MessageID, votes: List<Vote>) {
+    val laoId = election.channel.extractLaoId()
+
+    // Persist the votes
+    disposables.add(
+        electionVoteDao
+            .insert(ElectionVoteEntity(election.id, laoId, sender, messageId, votes))
+            .subscribeOn(Schedulers.io())
+            .observeOn(AndroidSchedulers.mainThread())
+            .subscribe(
+                { Timber.tag(TAG).d("Successfully persisted votes of %s", messageId) },
+                { err: Throwable ->
+                  Timber.tag(TAG).e(err, "Error in persisting votes of %s", messageId)
+                }))
+
+    // Get the lao state and update the election
+    val updated =
+        election.builder().updateMessageMap(sender, messageId).updateVotes(sender, votes).build()
+    getLaoElections(laoId).updateVotes(updated, sender, votes)
+  }
+
+  /**
+   * Retrieve the running tally of the votes of an election
+   *
+   * @param laoId the id of the Lao containing the election
+   * @param electionId the id of the election
+   * @return the tally of the election
+   * @throws UnknownElectionException if no election with this id exist in the lao
+   */
+  @Throws(UnknownElectionException::class)
+  fun getTally(laoId: String, electionId: String): ElectionTally {
+    return getLaoElections(laoId).getTally(electionId)
+  }
+
   /**
    * Retrieve an election state given its Lao and its ID
    *
@@ -135,11 +188,36 @@ class ElectionRepository @Inject constructor(appDatabase: AppDatabase, applicati
     /** Observable of all the election set */
     private val electionsSubject = BehaviorSubject.createDefault(emptySet<Election>())
 
+    /** Thread-safe map that stores the tally of the votes of each election by its identifier */
+    private val tallyById = ConcurrentHashMap<String, ElectionTally>()
+
     init {
       loadStorage()
     }
 
     fun updateElection(election: Election) {
+      // The votes of the election may not be the ones of the tally, it is counted again
+      tallyById[election.id] = ElectionTally.of(election)
+      publish(election)
+    }
+
+    fun updateVotes(election: Election, sender: PublicKey, votes: List<Vote>) {
+      val tally = tallyById[election.id]
+      if (tally == null) {
+        tallyById[election.id] = ElectionTally.of(election)
+      } else {
+        // Only the votes of the sender changed, the tally is updated with them
+        tally.update(sender, votes)
+      }
+      publish(election)
+    }
+
+    @Throws(UnknownElectionException::class)
+    fun getTally(electionId: String): ElectionTally {
+      return tallyById[electionId] ?: throw UnknownElectionException(electionId)
+    }
+
+    private fun publish(election: Election) {
       val id = election.id
       electionById[id] = election
       electionSubjects.putIfAbsent(id, BehaviorSubject.create())
@@ -169,13 +247,17 @@ class ElectionRepository @Inject constructor(appDatabase: AppDatabase, applicati
      */
     private fun loadStorage() {
       repository.disposables.add(
-          repository.electionDao
-              .getElectionsByLaoId(laoId)
+          Single.zip(
+                  repository.electionDao.getElectionsByLaoId(laoId),
+                  repository.electionVoteDao.getVotesByLaoId(laoId),
+                  BiFunction { elections: List<Election>?, votes: List<ElectionVoteEntity> ->
+                    withVotes(elections.orEmpty(), votes)
+                  })
               .subscribeOn(Schedulers.io())
               .observeOn(AndroidSchedulers.mainThread())
               .subscribe(
-                  { elections: List<Election>? ->
-                    elections?.forEach(
+                  { elections: List<Election> ->
+                    elections.forEach(
                         Consumer { election: Election ->
                           updateElection(election)
                           Timber.tag(TAG).d("Retrieved from db election %s", election.id)
@@ -189,5 +271,28 @@ class ElectionRepository @Inject constructor(appDatabase: AppDatabase, applicati
 
   companion object {
     private val TAG = ElectionRepository::class.java.simpleName
+
+    /**
+     * Build the elections from their stored state and their votes, stored apart from them.
+     *
+     * @param elections as stored, without their votes
+     * @param votes of the elections
+     * @return the elections with their votes
+     */
+    private fun withVotes(
+        elections: List<Election>,
+        votes: List<ElectionVoteEntity>
+    ): List<Election> {
+      val votesByElection = votes.groupBy { vote: ElectionVoteEntity -> vote.electionId }
+      return elections.map { election: Election ->
+        val electionVotes = votesByElection[election.id] ?: return@map election
+        // A single builder for all the votes, the election is only copied once
+        val builder = election.builder()
+        electionVotes.forEach { vote: ElectionVoteEntity ->
+          builder.updateMessageMap(vote.sender, vote.messageId).updateVotes(vote.sender, vote.votes)
+        }
+        builder.build()
+      }
+    }
   }
 }
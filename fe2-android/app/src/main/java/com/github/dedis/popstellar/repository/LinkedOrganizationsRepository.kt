@@ -8,6 +8,7 @@ import com.github.dedis.popstellar.utility.GeneralUtils
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.disposables.Disposable
 import java.util.EnumMap
+import java.util.concurrent.ConcurrentHashMap
 import java.util.function.Consumer
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -19,16 +20,20 @@ import javax.inject.Singleton
  */
 @Singleton
 class LinkedOrganizationsRepository @Inject constructor(application: Application) {
-  private var challenge: Challenge? = null
-  private var onChallengeUpdatedCallback: ((Challenge) -> Unit)? = null
-  private var linkedLaos: MutableMap<String, MutableMap<String, Array<String>>> = mutableMapOf()
+  // Updated by the handlers of the broadcasts, which run in parallel, and read by the UI
+  @Volatile private var challenge: Challenge? = null
+  @Volatile private var onChallengeUpdatedCallback: ((Challenge) -> Unit)? = null
+  private val linkedLaos: MutableMap<String, MutableMap<String, Array<String>>> =
+      ConcurrentHashMap()
+  @Volatile
   private var onLinkedLaosUpdatedCallback: ((String, MutableMap<String, Array<String>>) -> Unit)? =
       null
+  @Volatile
   private var newTokensNotifyFunction: ((String, String, String, Array<String>) -> Unit)? = null
   private val disposables = CompositeDisposable()
-  var otherLaoId: String? = null
-  var otherServerAddr: String? = null
-  var otherPublicKey: String? = null
+  @Volatile var otherLaoId: String? = null
+  @Volatile var otherServerAddr: String? = null
+  @Volatile var otherPublicKey: String? = null
 
   init {
     val consumerMap: MutableMap<Lifecycle.Event, Consumer<Activity>> =
@@ -51,7 +56,7 @@ class LinkedOrganizationsRepository @Inject constructor(application: Application
   }
 
   fun addLinkedLao(laoId: String, otherLaoId: String, tokens: Array<String>) {
-    val laoMap = linkedLaos.getOrPut(laoId) { mutableMapOf() }
+    val laoMap = linkedLaos.computeIfAbsent(laoId) { ConcurrentHashMap() }
     laoMap[otherLaoId] = tokens
     onLinkedLaosUpdatedCallback?.invoke(laoId, laoMap)
   }
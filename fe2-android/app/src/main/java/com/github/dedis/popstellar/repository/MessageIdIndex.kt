@@ -0,0 +1,192 @@
+package com.github.dedis.popstellar.repository
+
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * Set of the ids of the messages received, kept in memory to know whether a message was already
+ * processed without querying the database.
+ *
+ * The message ids are SHA-256 hashes, so instead of a set of [MessageID] objects each id is stored
+ * as 4 longs in a single open-addressing table, probed linearly. The table is kept between 3/8
+ * and 3/4 full, which takes between 43 and 86 bytes per id, see [memoryBytes]. The ids of another
+ * length, which are not produced by the protocol, are kept in a regular set.
+ *
+ * The set is thread-safe, lookups only take a read lock.
+ */
+class MessageIdIndex {
+  private val lock = ReentrantReadWriteLock()
+
+  /** Ids of [ID_BYTES] bytes, the slot `i` spans the longs `4i` to `4i + 3`, 0 is an empty slot */
+  private var table = LongArray(INITIAL_SLOTS * LONGS_PER_ID)
+  private var slots = INITIAL_SLOTS
+  private var count = 0
+
+  /** The id made of zeros, which cannot be stored in the table as it marks the empty slots */
+  private var hasZeroId = false
+
+  private val otherIds = HashSet<MessageID>()
+
+  /** @return the number of ids in the set */
+  val size: Int
+    get() = lock.read { count + otherIds.size + if (hasZeroId) 1 else 0 }
+
+  /** @return the memory used by the table of the set, in bytes */
+  val memoryBytes: Long
+    get() = lock.read { table.size.toLong() * Long.SIZE_BYTES }
+
+  /**
+   * @param id of a message
+   * @return true if the id was not already in the set
+   */
+  fun add(id: MessageID): Boolean {
+    if (id.size != ID_BYTES) {
+      return lock.write { otherIds.add(id) }
+    }
+
+    val key = id.asReadOnlyBuffer()
+    return lock.write { addKey(key.getLong(0), key.getLong(8), key.getLong(16), key.getLong(24)) }
+  }
+
+  /**
+   * Add all the given ids, under a single lock
+   *
+   * @param ids of messages
+   */
+  fun addAll(ids: Collection<MessageID>) {
+    // The lock is reentrant
+    lock.write { ids.forEach { id: MessageID -> add(id) } }
+  }
+
+  /**
+   * @param id of a message
+   * @return true if the id is in the set
+   */
+  operator fun contains(id: MessageID): Boolean {
+    if (id.size != ID_BYTES) {
+      return lock.read { otherIds.contains(id) }
+    }
+
+    val key = id.asReadOnlyBuffer()
+    val k0 = key.getLong(0)
+    val k1 = key.getLong(8)
+    val k2 = key.getLong(16)
+    val k3 = key.getLong(24)
+    return lock.read {
+      if (isZero(k0, k1, k2, k3)) hasZeroId else find(table, slots - 1, k0, k1, k2, k3)
+    }
+  }
+
+  /** Remove all the ids of the set */
+  fun clear() {
+    lock.write {
+      table = LongArray(INITIAL_SLOTS * LONGS_PER_ID)
+      slots = INITIAL_SLOTS
+      count = 0
+      hasZeroId = false
+      otherIds.clear()
+    }
+  }
+
+  private fun addKey(k0: Long, k1: Long, k2: Long, k3: Long): Boolean {
+    if (isZero(k0, k1, k2, k3)) {
+      val added = !hasZeroId
+      hasZeroId = true
+      return added
+    }
+
+    if ((count + 1) * MAX_LOAD_DENOMINATOR > slots * MAX_LOAD_NUMERATOR) {
+      grow()
+    }
+    val added = put(table, slots - 1, k0, k1, k2, k3)
+    if (added) {
+      count++
+    }
+    return added
+  }
+
+  private fun grow() {
+    val newSlots = slots * 2
+    val newTable = LongArray(newSlots * LONGS_PER_ID)
+    for (slot in 0 until slots) {
+      val base = slot * LONGS_PER_ID
+      if (!isEmpty(table, base)) {
+        put(newTable, newSlots - 1, table[base], table[base + 1], table[base + 2], table[base + 3])
+      }
+    }
+    table = newTable
+    slots = newSlots
+  }
+
+  companion object {
+    /** Length of the ids produced by the protocol, the size of a SHA-256 hash */
+    const val ID_BYTES = 32
+
+    private const val LONGS_PER_ID = ID_BYTES / Long.SIZE_BYTES
+    private const val INITIAL_SLOTS = 1024
+
+    // The table is grown when it is 3/4 full
+    private const val MAX_LOAD_NUMERATOR = 3
+    private const val MAX_LOAD_DENOMINATOR = 4
+
+    /** @return true if the id is in the table */
+    private fun find(table: LongArray, mask: Int, k0: Long, k1: Long, k2: Long, k3: Long): Boolean {
+      var slot = slotOf(k0, mask)
+      while (!isEmpty(table, slot * LONGS_PER_ID)) {
+        if (matches(table, slot * LONGS_PER_ID, k0, k1, k2, k3)) {
+          return true
+        }
+        slot = (slot + 1) and mask
+      }
+      return false
+    }
+
+    /** @return true if the id was added, false if it was already in the table */
+    private fun put(table: LongArray, mask: Int, k0: Long, k1: Long, k2: Long, k3: Long): Boolean {
+      var slot = slotOf(k0, mask)
+      while (!isEmpty(table, slot * LONGS_PER_ID)) {
+        if (matches(table, slot * LONGS_PER_ID, k0, k1, k2, k3)) {
+          return false
+        }
+        slot = (slot + 1) and mask
+      }
+
+      val base = slot * LONGS_PER_ID
+      table[base] = k0
+      table[base + 1] = k1
+      table[base + 2] = k2
+      table[base + 3] = k3
+      return true
+    }
+
+    private fun matches(
+        table: LongArray,
+        base: Int,
+        k0: Long,
+        k1: Long,
+        k2: Long,
+        k3: Long
+    ): Boolean {
+      return table[base] == k0 &&
+          table[base + 1] == k1 &&
+          table[base + 2] == k2 &&
+          table[base + 3] == k3
+    }
+
+    private fun slotOf(k0: Long, mask: Int): Int {
+      // The ids are hashes already, this only spreads the ids that would not be
+      val mixed = k0 * -0x61c8864680b583ebL
+      return (mixed xor (mixed ushr 32)).toInt() and mask
+    }
+
+    private fun isEmpty(table: LongArray, base: Int): Boolean {
+      return isZero(table[base], table[base + 1], table[base + 2], table[base + 3])
+    }
+
+    private fun isZero(k0: Long, k1: Long, k2: Long, k3: Long): Boolean {
+      return (k0 or k1 or k2 or k3) == 0L
+    }
+  }
+}
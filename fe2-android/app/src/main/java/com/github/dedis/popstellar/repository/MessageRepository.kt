@@ -7,11 +7,13 @@ import androidx.lifecycle.Lifecycle
 import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
 import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.repository.database.AppDatabase
+import com.github.dedis.popstellar.repository.database.WriteBehindQueue
 import com.github.dedis.popstellar.repository.database.message.MessageDao
 import com.github.dedis.popstellar.repository.database.message.MessageEntity
 import com.github.dedis.popstellar.utility.GeneralUtils.buildLifecycleCallback
 import io.reactivex.android.schedulers.AndroidSchedulers
 import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.disposables.Disposable
 import io.reactivex.schedulers.Schedulers
 import java.util.EnumMap
 import java.util.concurrent.ConcurrentHashMap
@@ -36,16 +38,37 @@ class MessageRepository @Inject constructor(appDatabase: AppDatabase, applicatio
 
   /** Cache for efficient lookups and for avoiding I/O operations */
   private val messageCache = LruCache<MessageID, Any>(CACHED_MESSAGES)
+
+  /**
+   * Ids of all the persisted messages. Once it is loaded, a message absent from it is known not to
+   * be in the db, so the lookups of new messages never perform an I/O operation.
+   */
+  private val persistedIds = MessageIdIndex()
+  @Volatile private var isIndexLoaded = false
+  private var indexLoading: Disposable? = null
+
   private val messageDao: MessageDao = appDatabase.messageDao()
   private val disposables = CompositeDisposable()
 
+  /** Messages waiting to be persisted, written to the db in batches */
+  private val pendingWrites =
+      WriteBehindQueue<MessageID, MessageEntity>(
+          Schedulers.io(), WRITE_BATCH_SIZE, WRITE_DELAY_MS) { messages: List<MessageEntity> ->
+            messageDao.insertAll(messages)
+          }
+
   init {
     val consumerMap: MutableMap<Lifecycle.Event, Consumer<Activity>> =
         EnumMap(Lifecycle.Event::class.java)
-    consumerMap[Lifecycle.Event.ON_STOP] = Consumer { disposables.clear() }
+    consumerMap[Lifecycle.Event.ON_STOP] = Consumer {
+      disposables.clear()
+      // Persist the queued messages, the app may not be resumed
+      pendingWrites.flush()
+    }
     application.registerActivityLifecycleCallbacks(buildLifecycleCallback(consumerMap))
     // Full the cache at starting time
     loadCache()
+    loadIndex()
   }
 
   /** This function is called at creation to fill the cache asynchronously */
@@ -70,6 +93,31 @@ class MessageRepository @Inject constructor(appDatabase: AppDatabase, applicatio
                 }))
   }
 
+  /**
+   * This function is called at creation to load the ids of the persisted messages asynchronously.
+   * It is not bound to the lifecycle of the activities, the index being needed as long as the app
+   * runs. Until it is loaded, the lookups fall back to the db.
+   */
+  private fun loadIndex() {
+    indexLoading =
+        messageDao
+            .getAllMessageIds()
+            .subscribeOn(Schedulers.io())
+            .subscribe(
+                { ids: List<MessageID> ->
+                  persistedIds.addAll(ids)
+                  isIndexLoaded = true
+                  Timber.tag(TAG)
+                      .d(
+                          "Indexed %d message ids in %d bytes",
+                          persistedIds.size,
+                          persistedIds.memoryBytes)
+                },
+                { err: Throwable ->
+                  Timber.tag(TAG).e(err, "Error loading the message ids, using the db instead")
+                })
+  }
+
   /**
    * This function gets a message from the repository given its unique identifier.
    *
@@ -91,6 +139,17 @@ class MessageRepository @Inject constructor(appDatabase: AppDatabase, applicatio
       }
     }
 
+    // No need to search in the db if the message was never persisted
+    if (isIndexLoaded && messageID !in persistedIds) {
+      return null
+    }
+
+    // The message may not be written to the db yet
+    val pendingMessage = pendingWrites[messageID]
+    if (pendingMessage != null) {
+      return pendingMessage.content ?: MessageGeneral.EMPTY
+    }
+
     // Search in the db
     val messageEntity = messageDao.getMessageById(messageID)
     if (messageEntity != null) {
@@ -124,22 +183,17 @@ class MessageRepository @Inject constructor(appDatabase: AppDatabase, applicatio
     if (!toPersist) {
       ephemeralMessages[messageID] = message
     } else {
+      // Indexed before being persisted, so that a copy received meanwhile is not processed again
+      persistedIds.add(messageID)
+
       // Add the message to the cache (cache cannot accept a null value)
       synchronized(messageCache) {
         messageCache.put(messageID, if (message.isEmpty) MessageGeneral.EMPTY else message)
       }
 
-      // Add asynchronously the messages to the database
-      disposables.add(
-          messageDao
-              .insert(MessageEntity(messageID, if (message.isEmpty) null else message))
-              .subscribeOn(Schedulers.io())
-              .observeOn(AndroidSchedulers.mainThread())
-              .subscribe(
-                  { Timber.tag(TAG).d("Persisted message %s", messageID) },
-                  { err: Throwable ->
-                    Timber.tag(TAG).e(err, "Error persisting the message %s", messageID)
-                  }))
+      // Add asynchronously the messages to the database, in batches
+      val entity = MessageEntity(messageID, if (message.isEmpty) null else message)
+      pendingWrites.offer(messageID, entity)
     }
   }
 
@@ -158,6 +212,11 @@ class MessageRepository @Inject constructor(appDatabase: AppDatabase, applicatio
       return ephemeralMessages.containsKey(messageID)
     }
 
+    // The index holds all the persisted messages once loaded
+    if (isIndexLoaded) {
+      return messageID in persistedIds
+    }
+
     // Check if it's already in cache
     synchronized(messageCache) {
       val messageGeneral = messageCache[messageID]
@@ -166,13 +225,54 @@ class MessageRepository @Inject constructor(appDatabase: AppDatabase, applicatio
       }
     }
 
-    // Otherwise perform an I/O operation
+    // Otherwise perform an I/O operation, unless the message is not written to the db yet
+    if (pendingWrites[messageID] != null) {
+      return true
+    }
     return messageDao.getMessageById(messageID) != null
   }
 
+  /**
+   * This function searches if a given message is stored in the repository, in memory or on disk.
+   * Unlike [isMessagePresent], it does not need the data of the message to know where to search, so
+   * it can be used before decoding the data.
+   *
+   * @param messageID identifier of the message
+   * @return true if the message is present, false otherwise
+   */
+  fun isMessagePresent(messageID: MessageID): Boolean {
+    return ephemeralMessages.containsKey(messageID) || isMessagePresent(messageID, true)
+  }
+
+  /**
+   * This function clears the messages kept in memory, when the db is cleared. It waits for the
+   * batch of messages being written, so it must be called before clearing the db and not on the
+   * main thread.
+   */
+  fun clearRepository() {
+    Timber.tag(TAG).d("Clearing MessageRepository...")
+    ephemeralMessages.clear()
+    synchronized(messageCache) { messageCache.evictAll() }
+    pendingWrites.clear()
+    // The ids being loaded are those of the db that is emptied, the empty index is up to date
+    indexLoading?.dispose()
+    persistedIds.clear()
+    isIndexLoaded = true
+  }
+
+  /** @return the counters of the batches of messages persisted */
+  val writeStats: WriteBehindQueue.WriteStats
+    get() = pendingWrites.stats
+
   companion object {
     private val TAG = MessageRepository::class.java.simpleName
 
+    /** Number of messages persisted in a single transaction */
+    private const val WRITE_BATCH_SIZE = 500
+
+    /** Maximum time a message waits before being persisted */
+    private const val WRITE_DELAY_MS = 200L
+
     /** Size of the LRU cache */
     private const val CACHED_MESSAGES = 100
   }
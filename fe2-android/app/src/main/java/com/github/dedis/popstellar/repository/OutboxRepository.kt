@@ -0,0 +1,92 @@
+package com.github.dedis.popstellar.repository
+
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.repository.database.AppDatabase
+import com.github.dedis.popstellar.repository.database.outbox.OutboxDao
+import com.github.dedis.popstellar.repository.database.outbox.OutboxEntity
+import io.reactivex.Completable
+import io.reactivex.Single
+import io.reactivex.schedulers.Schedulers
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+import timber.log.Timber
+
+/**
+ * This class stores the messages published by the user until the server acknowledges them, so that
+ * they survive a lost connection or a restart of the app.
+ */
+@Singleton
+class OutboxRepository @Inject constructor(appDatabase: AppDatabase) {
+  private val outboxDao: OutboxDao = appDatabase.outboxDao()
+
+  /** Ids of the messages in the outbox, to know without any I/O whether a message is pending */
+  private val pendingIds: MutableSet<MessageID> = ConcurrentHashMap.newKeySet()
+
+  init {
+    // Load the ids of the messages left over from a previous run
+    outboxDao
+        .getAll()
+        .subscribeOn(Schedulers.io())
+        .subscribe(
+            { entities: List<OutboxEntity> ->
+              entities.forEach { entity: OutboxEntity -> pendingIds.add(entity.messageId) }
+            },
+            { err: Throwable -> Timber.tag(TAG).e(err, "Error loading the outbox") })
+  }
+
+  /**
+   * Add a message to the outbox. A message already in the outbox keeps its original position.
+   *
+   * @param channel on which the message is published
+   * @param message to publish
+   * @return a [Completable] completing once the message is persisted
+   */
+  fun add(channel: Channel, message: MessageGeneral): Completable {
+    pendingIds.add(message.messageId)
+    return outboxDao.insert(OutboxEntity(message.messageId, channel.asString, message))
+  }
+
+  /**
+   * Retrieve the messages in the outbox.
+   *
+   * @return a [Single] emitting the channels and messages, in the order they were added
+   */
+  fun getPending(): Single<List<Pair<Channel, MessageGeneral>>> {
+    return outboxDao.getAll().map { entities: List<OutboxEntity> ->
+      entities.map { entity: OutboxEntity ->
+        Pair(Channel.fromString(entity.channel), entity.message)
+      }
+    }
+  }
+
+  /**
+   * Remove a message from the outbox, typically because the server acknowledged it.
+   *
+   * @param messageId of the message to remove
+   * @return a [Completable] completing once the message is removed
+   */
+  fun remove(messageId: MessageID): Completable {
+    return if (pendingIds.remove(messageId)) outboxDao.delete(messageId)
+    else Completable.complete()
+  }
+
+  /**
+   * @param messageId of the message
+   * @return true if the message is waiting to be acknowledged by the server
+   */
+  fun isPending(messageId: MessageID): Boolean {
+    return pendingIds.contains(messageId)
+  }
+
+  /** Forget the messages in the outbox, once the tables of the database were cleared */
+  fun clear() {
+    pendingIds.clear()
+  }
+
+  companion object {
+    private val TAG = OutboxRepository::class.java.simpleName
+  }
+}
@@ -1,6 +1,7 @@
 package com.github.dedis.popstellar.repository
 
 import com.github.dedis.popstellar.model.objects.Server
+import java.util.concurrent.ConcurrentHashMap
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -10,7 +11,8 @@ import javax.inject.Singleton
  */
 @Singleton
 class ServerRepository @Inject constructor() {
-  private val serverByLaoId: MutableMap<String, Server> = HashMap()
+  // Accessed by the handlers of the broadcasts, which run in parallel
+  private val serverByLaoId: MutableMap<String, Server> = ConcurrentHashMap()
 
   /** Add a server to the repository */
   fun addServer(laoId: String, server: Server) {
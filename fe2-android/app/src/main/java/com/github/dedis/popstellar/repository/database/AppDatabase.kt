@@ -3,12 +3,16 @@ package com.github.dedis.popstellar.repository.database
 import androidx.room.Database
 import androidx.room.RoomDatabase
 import androidx.room.TypeConverters
+import com.github.dedis.popstellar.repository.database.catchup.CatchupWatermarkDao
+import com.github.dedis.popstellar.repository.database.catchup.CatchupWatermarkEntity
 import com.github.dedis.popstellar.repository.database.digitalcash.HashDao
 import com.github.dedis.popstellar.repository.database.digitalcash.HashEntity
 import com.github.dedis.popstellar.repository.database.digitalcash.TransactionDao
 import com.github.dedis.popstellar.repository.database.digitalcash.TransactionEntity
 import com.github.dedis.popstellar.repository.database.event.election.ElectionDao
 import com.github.dedis.popstellar.repository.database.event.election.ElectionEntity
+import com.github.dedis.popstellar.repository.database.event.election.ElectionVoteDao
+import com.github.dedis.popstellar.repository.database.event.election.ElectionVoteEntity
 import com.github.dedis.popstellar.repository.database.event.meeting.MeetingDao
 import com.github.dedis.popstellar.repository.database.event.meeting.MeetingEntity
 import com.github.dedis.popstellar.repository.database.event.rollcall.RollCallDao
@@ -17,6 +21,8 @@ import com.github.dedis.popstellar.repository.database.lao.LAODao
 import com.github.dedis.popstellar.repository.database.lao.LAOEntity
 import com.github.dedis.popstellar.repository.database.message.MessageDao
 import com.github.dedis.popstellar.repository.database.message.MessageEntity
+import com.github.dedis.popstellar.repository.database.outbox.OutboxDao
+import com.github.dedis.popstellar.repository.database.outbox.OutboxEntity
 import com.github.dedis.popstellar.repository.database.socialmedia.ChirpDao
 import com.github.dedis.popstellar.repository.database.socialmedia.ChirpEntity
 import com.github.dedis.popstellar.repository.database.socialmedia.ReactionDao
@@ -42,6 +48,7 @@ import javax.inject.Singleton
             WalletEntity::class,
             SubscriptionsEntity::class,
             ElectionEntity::class,
+            ElectionVoteEntity::class,
             RollCallEntity::class,
             MeetingEntity::class,
             ChirpEntity::class,
@@ -50,8 +57,10 @@ import javax.inject.Singleton
             HashEntity::class,
             WitnessingEntity::class,
             WitnessEntity::class,
-            PendingEntity::class],
-    version = 4)
+            PendingEntity::class,
+            OutboxEntity::class,
+            CatchupWatermarkEntity::class],
+    version = 8)
 @TypeConverters(CustomTypeConverters::class)
 abstract class AppDatabase : RoomDatabase() {
   abstract fun messageDao(): MessageDao
@@ -70,6 +79,8 @@ abstract class AppDatabase : RoomDatabase() {
 
   abstract fun electionDao(): ElectionDao
 
+  abstract fun electionVoteDao(): ElectionVoteDao
+
   abstract fun rollCallDao(): RollCallDao
 
   abstract fun meetingDao(): MeetingDao
@@ -81,4 +92,8 @@ abstract class AppDatabase : RoomDatabase() {
   abstract fun transactionDao(): TransactionDao
 
   abstract fun hashDao(): HashDao
+
+  abstract fun outboxDao(): OutboxDao
+
+  abstract fun catchupWatermarkDao(): CatchupWatermarkDao
 }
@@ -0,0 +1,143 @@
+package com.github.dedis.popstellar.repository.database
+
+import android.content.ContentValues
+import android.database.Cursor
+import android.database.sqlite.SQLiteDatabase
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+import com.google.gson.JsonParser
+import timber.log.Timber
+
+/**
+ * Migration of the objects stored as json text to the binary form of [StorageCodec].
+ *
+ * The type of a column cannot be altered in SQLite, so each table holding objects is recreated
+ * with BLOB columns and its rows are copied, the objects being converted on the way.
+ */
+class BinaryStorageMigration : Migration(6, 7) {
+
+  override fun migrate(db: SupportSQLiteDatabase) {
+    for (table in TABLES) {
+      migrateTable(db, table)
+    }
+  }
+
+  private fun migrateTable(db: SupportSQLiteDatabase, table: Table) {
+    val old = "${table.name}_json"
+    db.execSQL("ALTER TABLE `${table.name}` RENAME TO `$old`")
+    db.execSQL("CREATE TABLE IF NOT EXISTS `${table.name}` (${table.columns})")
+
+    // Copied in the order of insertion, which the outbox relies on
+    var count = 0
+    db.query("SELECT * FROM `$old` ORDER BY rowid").use { cursor: Cursor ->
+      while (cursor.moveToNext()) {
+        db.insert(table.name, SQLiteDatabase.CONFLICT_ABORT, convertRow(cursor, table))
+        count++
+      }
+    }
+
+    // Dropping the old table also drops its indices, which can then be created again
+    db.execSQL("DROP TABLE `$old`")
+    table.indexed?.let { column: String ->
+      db.execSQL(
+          "CREATE INDEX IF NOT EXISTS `index_${table.name}_$column` ON `${table.name}` (`$column`)")
+    }
+    Timber.tag(TAG).d("Converted %d rows of %s to the binary storage", count, table.name)
+  }
+
+  private fun convertRow(cursor: Cursor, table: Table): ContentValues {
+    val values = ContentValues()
+    for (i in 0 until cursor.columnCount) {
+      val column = cursor.getColumnName(i)
+      when {
+        cursor.isNull(i) -> values.putNull(column)
+        column in table.objects ->
+            values.put(column, StorageCodec.encode(JsonParser.parseString(cursor.getString(i))))
+        cursor.getType(i) == Cursor.FIELD_TYPE_INTEGER -> values.put(column, cursor.getLong(i))
+        else -> values.put(column, cursor.getString(i))
+      }
+    }
+    return values
+  }
+
+  /**
+   * A table to migrate
+   *
+   * @param name of the table
+   * @param columns definition of the columns of the new table, as generated by Room
+   * @param objects names of the columns holding objects
+   * @param indexed name of the indexed column, if any
+   */
+  private class Table(
+      val name: String,
+      val columns: String,
+      val objects: Set<String>,
+      val indexed: String? = null
+  )
+
+  companion object {
+    private val TAG = BinaryStorageMigration::class.java.simpleName
+
+    private val TABLES =
+        listOf(
+            Table(
+                "messages",
+                "`message_id` TEXT NOT NULL, `message` BLOB, PRIMARY KEY(`message_id`)",
+                setOf("message")),
+            Table(
+                "laos",
+                "`lao_id` TEXT NOT NULL, `lao` BLOB NOT NULL, PRIMARY KEY(`lao_id`)",
+                setOf("lao")),
+            Table(
+                "elections",
+                "`election_id` TEXT NOT NULL, `lao_id` TEXT NOT NULL, `election` BLOB NOT NULL, " +
+                    "PRIMARY KEY(`election_id`)",
+                setOf("election"),
+                "lao_id"),
+            Table(
+                "rollcalls",
+                "`rollcall_id` TEXT NOT NULL, `lao_id` TEXT NOT NULL, `rollcall` BLOB NOT NULL, " +
+                    "PRIMARY KEY(`rollcall_id`)",
+                setOf("rollcall"),
+                "lao_id"),
+            Table(
+                "meetings",
+                "`meeting_id` TEXT NOT NULL, `lao_id` TEXT NOT NULL, `meeting` BLOB NOT NULL, " +
+                    "PRIMARY KEY(`meeting_id`)",
+                setOf("meeting"),
+                "lao_id"),
+            Table(
+                "chirps",
+                "`chirp_id` TEXT NOT NULL, `lao_id` TEXT NOT NULL, `chirp` BLOB NOT NULL, " +
+                    "PRIMARY KEY(`chirp_id`)",
+                setOf("chirp"),
+                "lao_id"),
+            Table(
+                "reactions",
+                "`reaction_id` TEXT NOT NULL, `chirp_id` TEXT NOT NULL, " +
+                    "`reaction` BLOB NOT NULL, PRIMARY KEY(`reaction_id`)",
+                setOf("reaction"),
+                "chirp_id"),
+            Table(
+                "transactions",
+                "`transaction_id` TEXT NOT NULL, `lao_id` TEXT NOT NULL, " +
+                    "`transaction` BLOB NOT NULL, PRIMARY KEY(`transaction_id`)",
+                setOf("transaction"),
+                "lao_id"),
+            Table(
+                "witness_messages",
+                "`lao_id` TEXT NOT NULL, `id` TEXT NOT NULL, `message` BLOB NOT NULL, " +
+                    "PRIMARY KEY(`id`)",
+                setOf("message")),
+            Table(
+                "pending_objects",
+                "`id` TEXT NOT NULL, `lao_id` TEXT NOT NULL, `rollcall` BLOB, `election` BLOB, " +
+                    "`meeting` BLOB, PRIMARY KEY(`id`)",
+                setOf("rollcall", "election", "meeting")),
+            Table(
+                "outbox",
+                "`message_id` TEXT NOT NULL, `channel` TEXT NOT NULL, `message` BLOB NOT NULL, " +
+                    "PRIMARY KEY(`message_id`)",
+                setOf("message")))
+  }
+}
@@ -0,0 +1,24 @@
+package com.github.dedis.popstellar.repository.database
+
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * Migration adding the catchup_watermarks table, which holds the position of the last catchup
+ * message applied on each channel.
+ *
+ * The table starts empty, so the next catchup of each channel goes over its whole history once.
+ */
+class CatchupWatermarksMigration : Migration(5, 6) {
+
+  override fun migrate(db: SupportSQLiteDatabase) {
+    db.execSQL("CREATE TABLE IF NOT EXISTS `catchup_watermarks` ($COLUMNS)")
+  }
+
+  companion object {
+    /** Definition of the columns of the table, as generated by Room */
+    private const val COLUMNS =
+        "`channel` TEXT NOT NULL, `position` INTEGER NOT NULL, `prefix_digest` TEXT NOT NULL, " +
+            "PRIMARY KEY(`channel`)"
+  }
+}
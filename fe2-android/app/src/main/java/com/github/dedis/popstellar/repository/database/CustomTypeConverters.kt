@@ -3,6 +3,7 @@ package com.github.dedis.popstellar.repository.database
 import androidx.room.ProvidedTypeConverter
 import androidx.room.TypeConverter
 import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
 import com.github.dedis.popstellar.model.objects.Channel
 import com.github.dedis.popstellar.model.objects.Chirp
 import com.github.dedis.popstellar.model.objects.Election
@@ -15,28 +16,24 @@ import com.github.dedis.popstellar.model.objects.digitalcash.TransactionObject
 import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.google.gson.Gson
+import com.google.gson.JsonParseException
 import com.google.gson.reflect.TypeToken
 
-/** Class used by the database to convert all the fields in Entities into Strings and vice versa */
+/**
+ * Class used by the database to convert all the fields in Entities into Strings and vice versa
+ *
+ * The objects, which make most of the database, are stored in the compact binary form of their json
+ * tree given by [StorageCodec] rather than as json text.
+ */
 @ProvidedTypeConverter
 @Suppress("TooManyFunctions")
 class CustomTypeConverters(private val gson: Gson) {
   /* ----  From String to Object  ---- */
-  @TypeConverter
-  fun messageFromString(value: String): MessageGeneral? {
-    return gson.fromJson(value, MessageGeneral::class.java)
-  }
-
   @TypeConverter
   fun messageIDFromString(value: String): MessageID {
     return gson.fromJson(value, MessageID::class.java)
   }
 
-  @TypeConverter
-  fun laoFromString(value: String): Lao {
-    return gson.fromJson(value, Lao::class.java)
-  }
-
   @TypeConverter
   fun listOfStringsFromString(value: String): List<String> {
     return gson.fromJson(value, object : TypeToken<List<String>>() {}.type)
@@ -48,108 +45,139 @@ class CustomTypeConverters(private val gson: Gson) {
   }
 
   @TypeConverter
-  fun electionFromString(value: String): Election? {
-    return gson.fromJson(value, Election::class.java)
+  fun publicKeyFromString(value: String): PublicKey {
+    return gson.fromJson(value, PublicKey::class.java)
   }
 
+  /* ----  From Object to String  ---- */
   @TypeConverter
-  fun rollcallFromString(value: String): RollCall? {
-    return gson.fromJson(value, RollCall::class.java)
+  fun messageIDToString(messageID: MessageID?): String {
+    return gson.toJson(messageID, MessageID::class.java)
   }
 
   @TypeConverter
-  fun meetingFromString(value: String): Meeting? {
-    return gson.fromJson(value, Meeting::class.java)
+  fun listOfStringsToString(seed: List<String>?): String {
+    return gson.toJson(seed, object : TypeToken<List<String>?>() {}.type)
   }
 
   @TypeConverter
-  fun chirpFromString(value: String): Chirp {
-    return gson.fromJson(value, Chirp::class.java)
+  fun setOfChannelsToString(channels: Set<Channel>?): String {
+    return gson.toJson(channels, object : TypeToken<Set<Channel>?>() {}.type)
   }
 
   @TypeConverter
-  fun reactionFromString(value: String): Reaction {
-    return gson.fromJson(value, Reaction::class.java)
+  fun publicKeyToString(publicKey: PublicKey?): String {
+    return gson.toJson(publicKey, PublicKey::class.java)
   }
 
+  /* ----  From binary to Object  ---- */
   @TypeConverter
-  fun publicKeyFromString(value: String): PublicKey {
-    return gson.fromJson(value, PublicKey::class.java)
+  fun messageFromBytes(value: ByteArray): MessageGeneral? {
+    return fromBytes(value, MessageGeneral::class.java)
   }
 
   @TypeConverter
-  fun transactionObjectFromString(value: String): TransactionObject {
-    return gson.fromJson(value, TransactionObject::class.java)
+  fun laoFromBytes(value: ByteArray): Lao {
+    return fromBytes(value, Lao::class.java)
   }
 
   @TypeConverter
-  fun witnessMessageFromString(value: String): WitnessMessage {
-    return gson.fromJson(value, WitnessMessage::class.java)
+  fun electionFromBytes(value: ByteArray): Election? {
+    return fromBytes(value, Election::class.java)
   }
 
-  /* ----  From Object to String  ---- */
   @TypeConverter
-  fun messageToString(messageGeneral: MessageGeneral?): String {
-    return gson.toJson(messageGeneral, MessageGeneral::class.java)
+  fun rollcallFromBytes(value: ByteArray): RollCall? {
+    return fromBytes(value, RollCall::class.java)
   }
 
   @TypeConverter
-  fun messageIDToString(messageID: MessageID?): String {
-    return gson.toJson(messageID, MessageID::class.java)
+  fun meetingFromBytes(value: ByteArray): Meeting? {
+    return fromBytes(value, Meeting::class.java)
   }
 
   @TypeConverter
-  fun laoToString(lao: Lao?): String {
-    return gson.toJson(lao, Lao::class.java)
+  fun chirpFromBytes(value: ByteArray): Chirp {
+    return fromBytes(value, Chirp::class.java)
   }
 
   @TypeConverter
-  fun listOfStringsToString(seed: List<String>?): String {
-    return gson.toJson(seed, object : TypeToken<List<String>?>() {}.type)
+  fun reactionFromBytes(value: ByteArray): Reaction {
+    return fromBytes(value, Reaction::class.java)
   }
 
   @TypeConverter
-  fun setOfChannelsToString(channels: Set<Channel>?): String {
-    return gson.toJson(channels, object : TypeToken<Set<Channel>?>() {}.type)
+  fun transactionObjectFromBytes(value: ByteArray): TransactionObject {
+    return fromBytes(value, TransactionObject::class.java)
   }
 
   @TypeConverter
-  fun electionToString(election: Election?): String {
-    return gson.toJson(election, Election::class.java)
+  fun witnessMessageFromBytes(value: ByteArray): WitnessMessage {
+    return fromBytes(value, WitnessMessage::class.java)
   }
 
   @TypeConverter
-  fun rollcallToString(rollCall: RollCall?): String {
-    return gson.toJson(rollCall, RollCall::class.java)
+  fun votesFromBytes(value: ByteArray): List<Vote> {
+    return gson.fromJson(StorageCodec.decode(value), object : TypeToken<List<Vote>>() {}.type)
   }
 
+  /* ----  From Object to binary  ---- */
   @TypeConverter
-  fun meetingToString(meeting: Meeting?): String {
-    return gson.toJson(meeting, Meeting::class.java)
+  fun messageToBytes(messageGeneral: MessageGeneral?): ByteArray {
+    return toBytes(messageGeneral, MessageGeneral::class.java)
   }
 
   @TypeConverter
-  fun chirpToString(chirp: Chirp?): String {
-    return gson.toJson(chirp, Chirp::class.java)
+  fun laoToBytes(lao: Lao?): ByteArray {
+    return toBytes(lao, Lao::class.java)
   }
 
   @TypeConverter
-  fun reactionToString(reaction: Reaction?): String {
-    return gson.toJson(reaction, Reaction::class.java)
+  fun electionToBytes(election: Election?): ByteArray {
+    return toBytes(election, Election::class.java)
   }
 
   @TypeConverter
-  fun publicKeyToString(publicKey: PublicKey?): String {
-    return gson.toJson(publicKey, PublicKey::class.java)
+  fun rollcallToBytes(rollCall: RollCall?): ByteArray {
+    return toBytes(rollCall, RollCall::class.java)
+  }
+
+  @TypeConverter
+  fun meetingToBytes(meeting: Meeting?): ByteArray {
+    return toBytes(meeting, Meeting::class.java)
+  }
+
+  @TypeConverter
+  fun chirpToBytes(chirp: Chirp?): ByteArray {
+    return toBytes(chirp, Chirp::class.java)
+  }
+
+  @TypeConverter
+  fun reactionToBytes(reaction: Reaction?): ByteArray {
+    return toBytes(reaction, Reaction::class.java)
   }
 
   @TypeConverter
-  fun transactionObjectToString(transactionObject: TransactionObject?): String {
-    return gson.toJson(transactionObject, TransactionObject::class.java)
+  fun transactionObjectToBytes(transactionObject: TransactionObject?): ByteArray {
+    return toBytes(transactionObject, TransactionObject::class.java)
   }
 
   @TypeConverter
-  fun witnessMessageToString(witnessMessage: WitnessMessage?): String {
-    return gson.toJson(witnessMessage, WitnessMessage::class.java)
+  fun witnessMessageToBytes(witnessMessage: WitnessMessage?): ByteArray {
+    return toBytes(witnessMessage, WitnessMessage::class.java)
+  }
+
+  @TypeConverter
+  fun votesToBytes(votes: List<@JvmSuppressWildcards Vote>?): ByteArray {
+    return StorageCodec.encode(gson.toJsonTree(votes, object : TypeToken<List<Vote>?>() {}.type))
+  }
+
+  @Throws(JsonParseException::class)
+  private fun <T> fromBytes(value: ByteArray, type: Class<T>): T {
+    return gson.fromJson(StorageCodec.decode(value), type)
+  }
+
+  private fun toBytes(value: Any?, type: Class<*>): ByteArray {
+    return StorageCodec.encode(gson.toJsonTree(value, type))
   }
 }
@@ -0,0 +1,81 @@
+package com.github.dedis.popstellar.repository.database
+
+import android.content.ContentValues
+import android.database.Cursor
+import android.database.sqlite.SQLiteDatabase
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+import com.google.gson.JsonElement
+import com.google.gson.JsonObject
+import timber.log.Timber
+
+/**
+ * Migration of the votes stored inside their election to the election_votes table.
+ *
+ * Each vote of a stored election becomes a row of the new table, and the election is stored again
+ * without its votes. The votes keep the binary form of [StorageCodec].
+ */
+class ElectionVotesMigration : Migration(7, 8) {
+
+  override fun migrate(db: SupportSQLiteDatabase) {
+    db.execSQL("CREATE TABLE IF NOT EXISTS `election_votes` ($COLUMNS)")
+    db.execSQL(
+        "CREATE INDEX IF NOT EXISTS `index_election_votes_lao_id` ON `election_votes` (`lao_id`)")
+
+    var count = 0
+    db.query("SELECT election_id, lao_id, election FROM elections").use { cursor: Cursor ->
+      while (cursor.moveToNext()) {
+        count += moveVotes(db, cursor.getString(0), cursor.getString(1), cursor.getBlob(2))
+      }
+    }
+    Timber.tag(TAG).d("Moved %d election votes to their own table", count)
+  }
+
+  /** @return the number of senders whose votes were moved */
+  private fun moveVotes(
+      db: SupportSQLiteDatabase,
+      electionId: String,
+      laoId: String,
+      row: ByteArray
+  ): Int {
+    val election = StorageCodec.decode(row).asJsonObject
+    val votesBySender = election.getAsJsonObject(VOTES_BY_SENDER) ?: return 0
+    val messageMap = election.getAsJsonObject(MESSAGE_MAP) ?: return 0
+
+    var count = 0
+    for ((sender, votes) in votesBySender.entrySet()) {
+      // The votes are only kept with the message they came from
+      val messageId: JsonElement = messageMap[sender] ?: continue
+      val values = ContentValues()
+      values.put("election_id", electionId)
+      values.put("lao_id", laoId)
+      // Stored as their json text by the converter of the public keys and message ids
+      values.put("sender", "\"$sender\"")
+      values.put("message_id", "\"${messageId.asString}\"")
+      values.put("votes", StorageCodec.encode(votes))
+      db.insert("election_votes", SQLiteDatabase.CONFLICT_REPLACE, values)
+      count++
+    }
+
+    election.add(VOTES_BY_SENDER, JsonObject())
+    election.add(MESSAGE_MAP, JsonObject())
+    val values = ContentValues()
+    values.put("election", StorageCodec.encode(election))
+    db.update(
+        "elections", SQLiteDatabase.CONFLICT_ABORT, values, "election_id = ?", arrayOf(electionId))
+    return count
+  }
+
+  companion object {
+    private val TAG = ElectionVotesMigration::class.java.simpleName
+
+    private const val VOTES_BY_SENDER = "votesBySender"
+    private const val MESSAGE_MAP = "messageMap"
+
+    /** Definition of the columns of the table, as generated by Room */
+    private const val COLUMNS =
+        "`election_id` TEXT NOT NULL, `lao_id` TEXT NOT NULL, `sender` TEXT NOT NULL, " +
+            "`message_id` TEXT NOT NULL, `votes` BLOB NOT NULL, " +
+            "PRIMARY KEY(`election_id`, `sender`)"
+  }
+}
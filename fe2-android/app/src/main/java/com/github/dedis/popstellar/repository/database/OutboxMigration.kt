@@ -0,0 +1,24 @@
+package com.github.dedis.popstellar.repository.database
+
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * Migration adding the outbox table, which holds the messages published by the user until the
+ * server acknowledges them.
+ *
+ * The messages are stored as json text, as all the objects were at this version.
+ */
+class OutboxMigration : Migration(4, 5) {
+
+  override fun migrate(db: SupportSQLiteDatabase) {
+    db.execSQL("CREATE TABLE IF NOT EXISTS `outbox` ($COLUMNS)")
+  }
+
+  companion object {
+    /** Definition of the columns of the table, as generated by Room */
+    private const val COLUMNS =
+        "`message_id` TEXT NOT NULL, `channel` TEXT NOT NULL, `message` TEXT NOT NULL, " +
+            "PRIMARY KEY(`message_id`)"
+  }
+}
@@ -0,0 +1,310 @@
+package com.github.dedis.popstellar.repository.database
+
+import com.google.gson.JsonArray
+import com.google.gson.JsonElement
+import com.google.gson.JsonNull
+import com.google.gson.JsonObject
+import com.google.gson.JsonParseException
+import com.google.gson.JsonParser
+import com.google.gson.JsonPrimitive
+import com.google.gson.internal.LazilyParsedNumber
+import java.nio.charset.StandardCharsets
+import java.util.Base64
+
+/**
+ * Compact binary encoding of the json trees stored in the database.
+ *
+ * The objects of the database are still converted by Gson, but their json tree is stored in a
+ * versioned binary form instead of text :
+ * - a header made of [MAGIC] and [VERSION]
+ * - then the tree, each value being a tag byte followed by its content. Integers are stored as
+ *   zigzag varints, the Base64 strings (keys, ids, signatures, message data, ...) as their raw
+ *   bytes and the names of the object members once per row, later occurrences referring to the
+ *   first one.
+ *
+ * The conversion is lossless : decoding gives back the exact json tree that was encoded. The json
+ * text stored by the previous versions of the database is still accepted by [decode].
+ */
+object StorageCodec {
+  /** First byte of the binary rows, it can never start a UTF-8 json text */
+  const val MAGIC: Byte = 0xFF.toByte()
+
+  /** Version of the encoding, written after [MAGIC] */
+  const val VERSION: Byte = 1
+
+  private const val TAG_NULL = 0
+  private const val TAG_FALSE = 1
+  private const val TAG_TRUE = 2
+  private const val TAG_INTEGER = 3
+  private const val TAG_NUMBER = 4
+  private const val TAG_STRING = 5
+  private const val TAG_BASE64 = 6
+  private const val TAG_ARRAY = 7
+  private const val TAG_OBJECT = 8
+
+  /** Strings shorter than this are never stored as Base64, as they would not get smaller */
+  private const val MIN_BASE64_LENGTH = 8
+
+  private const val INITIAL_CAPACITY = 256
+
+  /**
+   * @param json the tree to encode
+   * @return its binary form
+   */
+  fun encode(json: JsonElement): ByteArray {
+    val writer = Writer()
+    writer.writeByte(MAGIC.toInt())
+    writer.writeByte(VERSION.toInt())
+    writer.writeElement(json)
+    return writer.toByteArray()
+  }
+
+  /**
+   * @param bytes a binary form built by [encode], or a UTF-8 json text
+   * @return the decoded tree
+   * @throws JsonParseException if the bytes are not a valid encoding
+   */
+  @Throws(JsonParseException::class)
+  fun decode(bytes: ByteArray): JsonElement {
+    if (!isBinary(bytes)) {
+      // Row written as text before the binary encoding was introduced
+      return JsonParser.parseString(String(bytes, StandardCharsets.UTF_8))
+    }
+    if (bytes[1] != VERSION) {
+      throw JsonParseException("Unsupported storage encoding version ${bytes[1]}")
+    }
+
+    try {
+      val reader = Reader(bytes, 2)
+      val json = reader.readElement()
+      if (reader.position != bytes.size) {
+        throw JsonParseException("Trailing bytes after the encoded value")
+      }
+      return json
+    } catch (e: IndexOutOfBoundsException) {
+      throw JsonParseException("Truncated storage encoding", e)
+    }
+  }
+
+  /**
+   * @param bytes a stored value
+   * @return true if the value is in the binary form, false if it is a json text
+   */
+  fun isBinary(bytes: ByteArray): Boolean {
+    return bytes.size >= 2 && bytes[0] == MAGIC
+  }
+
+  /**
+   * @param value a string of the tree
+   * @return the bytes of the string if it is the canonical url-safe Base64 encoding of them
+   */
+  private fun asBase64(value: String): ByteArray? {
+    if (value.length < MIN_BASE64_LENGTH || value.length % 4 != 0) {
+      return null
+    }
+    for (c in value) {
+      if (!(c in 'A'..'Z' || c in 'a'..'z' || c in '0'..'9' || c == '-' || c == '_' || c == '=')) {
+        return null
+      }
+    }
+
+    val decoded =
+        try {
+          Base64.getUrlDecoder().decode(value)
+        } catch (e: IllegalArgumentException) {
+          return null
+        }
+    // Only stored as bytes if encoding them gives back the exact same string
+    return if (Base64.getUrlEncoder().encodeToString(decoded) == value) decoded else null
+  }
+
+  private class Writer {
+    private var buffer = ByteArray(INITIAL_CAPACITY)
+    private var size = 0
+    private val names = HashMap<String, Int>()
+
+    fun writeElement(json: JsonElement) {
+      when {
+        json.isJsonNull -> writeByte(TAG_NULL)
+        json.isJsonArray -> {
+          val array = json.asJsonArray
+          writeByte(TAG_ARRAY)
+          writeVarint(array.size().toLong())
+          array.forEach { element: JsonElement -> writeElement(element) }
+        }
+        json.isJsonObject -> {
+          val members = json.asJsonObject.entrySet()
+          writeByte(TAG_OBJECT)
+          writeVarint(members.size.toLong())
+          for ((name, value) in members) {
+            writeName(name)
+            writeElement(value)
+          }
+        }
+        else -> writePrimitive(json.asJsonPrimitive)
+      }
+    }
+
+    private fun writePrimitive(primitive: JsonPrimitive) {
+      when {
+        primitive.isBoolean -> writeByte(if (primitive.asBoolean) TAG_TRUE else TAG_FALSE)
+        primitive.isNumber -> {
+          val text = primitive.asString
+          val integer = text.toLongOrNull()
+          // Numbers that would not be written back identically keep their text
+          if (integer != null && integer.toString() == text) {
+            writeByte(TAG_INTEGER)
+            writeVarint((integer shl 1) xor (integer shr 63))
+          } else {
+            writeByte(TAG_NUMBER)
+            writeString(text)
+          }
+        }
+        else -> {
+          val text = primitive.asString
+          val base64 = asBase64(text)
+          if (base64 != null) {
+            writeByte(TAG_BASE64)
+            writeVarint(base64.size.toLong())
+            writeBytes(base64)
+          } else {
+            writeByte(TAG_STRING)
+            writeString(text)
+          }
+        }
+      }
+    }
+
+    /** Names are written once, then referred to by their index, starting at 1 */
+    private fun writeName(name: String) {
+      val index = names[name]
+      if (index != null) {
+        writeVarint(index.toLong())
+      } else {
+        names[name] = names.size + 1
+        writeVarint(0)
+        writeString(name)
+      }
+    }
+
+    private fun writeString(value: String) {
+      val bytes = value.toByteArray(StandardCharsets.UTF_8)
+      writeVarint(bytes.size.toLong())
+      writeBytes(bytes)
+    }
+
+    fun writeVarint(value: Long) {
+      var remaining = value
+      while (remaining and 0x7FL.inv() != 0L) {
+        writeByte(((remaining and 0x7F) or 0x80).toInt())
+        remaining = remaining ushr 7
+      }
+      writeByte(remaining.toInt())
+    }
+
+    fun writeByte(value: Int) {
+      ensureCapacity(1)
+      buffer[size++] = value.toByte()
+    }
+
+    private fun writeBytes(bytes: ByteArray) {
+      ensureCapacity(bytes.size)
+      System.arraycopy(bytes, 0, buffer, size, bytes.size)
+      size += bytes.size
+    }
+
+    private fun ensureCapacity(extra: Int) {
+      if (size + extra > buffer.size) {
+        buffer = buffer.copyOf(maxOf(buffer.size * 2, size + extra))
+      }
+    }
+
+    fun toByteArray(): ByteArray {
+      return buffer.copyOf(size)
+    }
+  }
+
+  private class Reader(private val bytes: ByteArray, var position: Int) {
+    private val names = ArrayList<String>()
+
+    fun readElement(): JsonElement {
+      return when (val tag = bytes[position++].toInt()) {
+        TAG_NULL -> JsonNull.INSTANCE
+        TAG_FALSE -> JsonPrimitive(false)
+        TAG_TRUE -> JsonPrimitive(true)
+        TAG_INTEGER -> {
+          val zigzag = readVarint()
+          JsonPrimitive((zigzag ushr 1) xor -(zigzag and 1))
+        }
+        TAG_NUMBER -> JsonPrimitive(LazilyParsedNumber(readString()))
+        TAG_STRING -> JsonPrimitive(readString())
+        TAG_BASE64 -> JsonPrimitive(Base64.getUrlEncoder().encodeToString(readBytes()))
+        TAG_ARRAY -> {
+          val count = readLength()
+          val array = JsonArray(count)
+          repeat(count) { array.add(readElement()) }
+          array
+        }
+        TAG_OBJECT -> {
+          val count = readLength()
+          val obj = JsonObject()
+          repeat(count) {
+            val name = readName()
+            obj.add(name, readElement())
+          }
+          obj
+        }
+        else -> throw JsonParseException("Unknown storage encoding tag $tag")
+      }
+    }
+
+    private fun readName(): String {
+      val index = readLength()
+      if (index == 0) {
+        val name = readString()
+        names.add(name)
+        return name
+      }
+      if (index > names.size) {
+        throw JsonParseException("Reference to an unknown member name $index")
+      }
+      return names[index - 1]
+    }
+
+    private fun readString(): String {
+      return String(readBytes(), StandardCharsets.UTF_8)
+    }
+
+    private fun readBytes(): ByteArray {
+      val length = readLength()
+      if (length > bytes.size - position) {
+        throw JsonParseException("Truncated storage encoding")
+      }
+      val result = bytes.copyOfRange(position, position + length)
+      position += length
+      return result
+    }
+
+    private fun readLength(): Int {
+      val length = readVarint()
+      if (length < 0 || length > Int.MAX_VALUE) {
+        throw JsonParseException("Invalid length $length in the storage encoding")
+      }
+      return length.toInt()
+    }
+
+    private fun readVarint(): Long {
+      var result = 0L
+      var shift = 0
+      while (shift < Long.SIZE_BITS) {
+        val b = bytes[position++].toInt()
+        result = result or ((b and 0x7F).toLong() shl shift)
+        if (b and 0x80 == 0) {
+          return result
+        }
+        shift += 7
+      }
+      throw JsonParseException("Malformed varint in the storage encoding")
+    }
+  }
+}
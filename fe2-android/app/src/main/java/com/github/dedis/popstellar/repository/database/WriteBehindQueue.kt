@@ -0,0 +1,243 @@
+package com.github.dedis.popstellar.repository.database
+
+import io.reactivex.Completable
+import io.reactivex.Scheduler
+import java.util.ArrayDeque
+import java.util.concurrent.TimeUnit
+import timber.log.Timber
+
+/**
+ * Queue of the rows waiting to be written to the database.
+ *
+ * Instead of a transaction per row, the rows are written in batches, each in a single transaction:
+ * a batch is closed once it holds [maxBatchSize] rows, [maxDelayMillis] after its first row was
+ * queued, or when [flush] is called. The batches are written one after the other, in the order the
+ * rows were queued. A row queued again in the same batch replaces the previous one.
+ *
+ * The rows not written yet can be read with [get], so that they are found before they reach the
+ * database. A batch that fails to be written is written again, before the following ones, up to
+ * [maxAttempts] times. Its rows are only dropped after that.
+ *
+ * @param scheduler on which the batches are written
+ * @param maxBatchSize number of rows after which a batch is written
+ * @param maxDelayMillis maximum time a row waits before its batch is written
+ * @param maxAttempts number of times a batch is written before its rows are dropped
+ * @param writer writing a batch of rows in a single transaction
+ */
+class WriteBehindQueue<K, V>(
+    private val scheduler: Scheduler,
+    private val maxBatchSize: Int,
+    private val maxDelayMillis: Long,
+    private val maxAttempts: Int = MAX_ATTEMPTS,
+    private val writer: (List<V>) -> Completable
+) {
+  private val lock = Any()
+  private val writeLock = Any()
+
+  /** Batch receiving the rows queued, null until a row is queued */
+  private var pending: Batch<K, V>? = null
+  /** Full batches waiting to be written, the oldest first */
+  private val ready = ArrayDeque<Batch<K, V>>()
+  /** Batch being written */
+  private var writing: Batch<K, V>? = null
+
+  private var batches = 0L
+  private var rows = 0L
+  private var largestBatch = 0
+  private var totalLatencyNanos = 0L
+  private var maxLatencyNanos = 0L
+  private var retriedBatches = 0L
+  private var failedBatches = 0L
+
+  /**
+   * Queue a row to be written
+   *
+   * @param key identifying the row
+   * @param value the row
+   */
+  fun offer(key: K, value: V) {
+    synchronized(lock) {
+      var batch = pending
+      if (batch == null) {
+        batch = Batch(scheduler.now(TimeUnit.NANOSECONDS))
+        pending = batch
+        scheduler.scheduleDirect({ writeBatch() }, maxDelayMillis, TimeUnit.MILLISECONDS)
+      }
+      batch.rows[key] = value
+      if (batch.rows.size == maxBatchSize) {
+        sealPending()
+      }
+    }
+  }
+
+  /**
+   * @param key identifying a row
+   * @return the row if it is not written yet, null otherwise
+   */
+  operator fun get(key: K): V? {
+    synchronized(lock) {
+      // The most recent row first, the same key may be in several batches
+      pending?.rows?.get(key)?.let { row: V ->
+        return row
+      }
+      for (batch in ready.descendingIterator()) {
+        batch.rows[key]?.let { row: V ->
+          return row
+        }
+      }
+      return writing?.rows?.get(key)
+    }
+  }
+
+  /** Write the pending rows without waiting for their batch to be full */
+  fun flush() {
+    synchronized(lock) { sealPending() }
+  }
+
+  /**
+   * Drop the rows not written yet and wait for the end of the batch being written, so that no row
+   * reaches the database once this returns
+   */
+  fun clear() {
+    synchronized(lock) {
+      pending = null
+      ready.clear()
+    }
+    // Held by the write of a batch until it ends
+    synchronized(writeLock) {}
+  }
+
+  /** Move the pending batch to the batches ready to be written, must hold the lock */
+  private fun sealPending() {
+    val batch = pending ?: return
+    pending = null
+    ready.addLast(batch)
+    scheduler.scheduleDirect { writeBatch() }
+  }
+
+  private fun writeBatch() {
+    // Held while the batch is written, so that the batches are written in order
+    synchronized(writeLock) {
+      val batch =
+          synchronized(lock) {
+            // The batch this write was scheduled for may already be written, by a previous write
+            val next = ready.pollFirst() ?: pending ?: return
+            if (next === pending) {
+              pending = null
+            }
+            writing = next
+            next
+          }
+
+      val size = batch.rows.size
+      try {
+        writer(ArrayList(batch.rows.values)).blockingAwait()
+        record(size, scheduler.now(TimeUnit.NANOSECONDS) - batch.start)
+        Timber.tag(TAG).d("Wrote a batch of %d rows", size)
+      } catch (e: Exception) {
+        // Not thrown, that would crash the scheduler
+        Timber.tag(TAG).e(e, "Error writing a batch of %d rows", size)
+        retryOrDrop(batch)
+      } finally {
+        synchronized(lock) { writing = null }
+      }
+    }
+  }
+
+  /** Queue a batch that failed to be written again, unless it was attempted too many times */
+  private fun retryOrDrop(batch: Batch<K, V>) {
+    synchronized(lock) {
+      batch.attempts++
+      if (batch.attempts >= maxAttempts) {
+        failedBatches++
+        Timber.tag(TAG)
+            .e("Dropping a batch of %d rows after %d attempts", batch.rows.size, maxAttempts)
+        return
+      }
+
+      // Written again before the following batches, so that the order of the rows is kept. Its
+      // rows can still be read meanwhile
+      retriedBatches++
+      ready.addFirst(batch)
+      scheduler.scheduleDirect(
+          { writeBatch() }, maxDelayMillis * batch.attempts, TimeUnit.MILLISECONDS)
+    }
+  }
+
+  private fun record(size: Int, latencyNanos: Long) {
+    synchronized(lock) {
+      batches++
+      rows += size
+      largestBatch = maxOf(largestBatch, size)
+      totalLatencyNanos += latencyNanos
+      maxLatencyNanos = maxOf(maxLatencyNanos, latencyNanos)
+    }
+  }
+
+  /** @return a snapshot of the counters of the written batches */
+  val stats: WriteStats
+    get() =
+        synchronized(lock) {
+          WriteStats(
+              batches,
+              rows,
+              largestBatch,
+              totalLatencyNanos,
+              maxLatencyNanos,
+              retriedBatches,
+              failedBatches)
+        }
+
+  /**
+   * Rows written in a single transaction
+   *
+   * @param start time at which its first row was queued
+   */
+  private class Batch<K, V>(val start: Long) {
+    val rows = LinkedHashMap<K, V>()
+    /** Number of failed attempts to write it */
+    var attempts = 0
+  }
+
+  /** Counters of the batches written */
+  class WriteStats(
+      /** Number of batches written */
+      val batches: Long,
+      /** Number of rows written */
+      val rows: Long,
+      /** Number of rows of the largest batch */
+      val largestBatch: Int,
+      /**
+       * Time between the queuing of the first row of each batch and the end of its write, in
+       * nanoseconds, summed over all the batches
+       */
+      val totalLatencyNanos: Long,
+      /** Longest time between the queuing of the first row of a batch and the end of its write */
+      val maxLatencyNanos: Long,
+      /** Number of times a batch was queued again after failing to be written */
+      val retriedBatches: Long,
+      /** Number of batches that could not be written, their rows being dropped */
+      val failedBatches: Long
+  ) {
+    /** @return the average number of rows of a batch */
+    val averageBatchSize: Double
+      get() = if (batches == 0L) 0.0 else rows.toDouble() / batches
+
+    /** @return the average latency of a batch, in nanoseconds */
+    val averageLatencyNanos: Long
+      get() = if (batches == 0L) 0 else totalLatencyNanos / batches
+
+    override fun toString(): String {
+      return "WriteStats{batches=$batches, rows=$rows, largestBatch=$largestBatch, " +
+          "averageLatencyNanos=$averageLatencyNanos, maxLatencyNanos=$maxLatencyNanos, " +
+          "retriedBatches=$retriedBatches, failedBatches=$failedBatches}"
+    }
+  }
+
+  companion object {
+    private val TAG = WriteBehindQueue::class.java.simpleName
+
+    /** Default number of times a batch is written before its rows are dropped */
+    const val MAX_ATTEMPTS = 3
+  }
+}
@@ -0,0 +1,17 @@
+package com.github.dedis.popstellar.repository.database.catchup
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import io.reactivex.Completable
+import io.reactivex.Single
+
+/** Interface to query the table containing the catchup high-water mark of each channel. */
+@Dao
+interface CatchupWatermarkDao {
+  @Insert(onConflict = OnConflictStrategy.REPLACE)
+  fun insert(watermark: CatchupWatermarkEntity): Completable
+
+  @Query("SELECT * FROM catchup_watermarks") fun getAll(): Single<List<CatchupWatermarkEntity>>
+}
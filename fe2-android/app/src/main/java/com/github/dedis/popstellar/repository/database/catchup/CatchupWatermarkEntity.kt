@@ -0,0 +1,19 @@
+package com.github.dedis.popstellar.repository.database.catchup
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+import com.github.dedis.popstellar.model.Immutable
+
+/**
+ * The high-water mark of a channel : every message of its catchup up to this position, included,
+ * was already applied. The messages up to this position are identified by a digest of their ids,
+ * in order.
+ */
+@Entity(tableName = "catchup_watermarks")
+@Immutable
+class CatchupWatermarkEntity(
+    @field:PrimaryKey @field:ColumnInfo(name = "channel") val channel: String,
+    @field:ColumnInfo(name = "position") val position: Int,
+    @field:ColumnInfo(name = "prefix_digest") val prefixDigest: String
+)
@@ -0,0 +1,24 @@
+package com.github.dedis.popstellar.repository.database.event.election
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import io.reactivex.Completable
+import io.reactivex.Single
+
+@Dao
+interface ElectionVoteDao {
+  /** The votes replace the previous votes of the same sender in the same election */
+  @Insert(onConflict = OnConflictStrategy.REPLACE)
+  fun insert(voteEntity: ElectionVoteEntity): Completable
+
+  /**
+   * This function is a query execution to search for the votes of the elections of a given lao.
+   *
+   * @param laoId identifier of the lao where to search the votes
+   * @return an emitter of a list of votes
+   */
+  @Query("SELECT * FROM election_votes WHERE lao_id = :laoId")
+  fun getVotesByLaoId(laoId: String): Single<List<ElectionVoteEntity>>
+}
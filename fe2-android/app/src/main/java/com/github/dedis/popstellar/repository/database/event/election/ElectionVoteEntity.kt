@@ -0,0 +1,24 @@
+package com.github.dedis.popstellar.repository.database.event.election
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import com.github.dedis.popstellar.model.Immutable
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.model.objects.security.PublicKey
+
+/**
+ * The last votes cast by a sender in an election.
+ *
+ * The votes are stored apart from their election, so that a new vote only writes its own row
+ * instead of the whole election with all its votes.
+ */
+@Entity(tableName = "election_votes", primaryKeys = ["election_id", "sender"])
+@Immutable
+class ElectionVoteEntity(
+    @field:ColumnInfo(name = "election_id") val electionId: String,
+    @field:ColumnInfo(name = "lao_id", index = true) val laoId: String,
+    @field:ColumnInfo(name = "sender") val sender: PublicKey,
+    @field:ColumnInfo(name = "message_id") val messageId: MessageID,
+    @field:ColumnInfo(name = "votes") val votes: List<Vote>
+)
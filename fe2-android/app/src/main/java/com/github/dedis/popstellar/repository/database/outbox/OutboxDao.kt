@@ -0,0 +1,23 @@
+package com.github.dedis.popstellar.repository.database.outbox
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import io.reactivex.Completable
+import io.reactivex.Single
+
+/** Interface to query the table containing the messages waiting to be published. */
+@Dao
+interface OutboxDao {
+  /** A message already in the outbox is ignored, so that it keeps its place in the queue */
+  @Insert(onConflict = OnConflictStrategy.IGNORE)
+  fun insert(outboxEntity: OutboxEntity): Completable
+
+  /** The messages are returned in the order they were added to the outbox */
+  @Query("SELECT * FROM outbox ORDER BY rowid") fun getAll(): Single<List<OutboxEntity>>
+
+  @Query("DELETE FROM outbox WHERE message_id = :messageId")
+  fun delete(messageId: MessageID): Completable
+}
@@ -0,0 +1,17 @@
+package com.github.dedis.popstellar.repository.database.outbox
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+import com.github.dedis.popstellar.model.Immutable
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.objects.security.MessageID
+
+/** A message published by the user that was not acknowledged by the server yet */
+@Entity(tableName = "outbox")
+@Immutable
+class OutboxEntity(
+    @field:PrimaryKey @field:ColumnInfo(name = "message_id") val messageId: MessageID,
+    @field:ColumnInfo(name = "channel") val channel: String,
+    @field:ColumnInfo(name = "message") val message: MessageGeneral
+)
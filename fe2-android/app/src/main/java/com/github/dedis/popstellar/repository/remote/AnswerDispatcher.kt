@@ -0,0 +1,172 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.answer.Answer
+import io.reactivex.Observable
+import io.reactivex.Scheduler
+import io.reactivex.Single
+import io.reactivex.disposables.Disposable
+import io.reactivex.subjects.SingleSubject
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicLong
+import timber.log.Timber
+
+/**
+ * This class routes the answers received on the connection to the requests waiting for them.
+ *
+ * Pending requests are stored in a map indexed by their JSON-RPC id, so dispatching an answer costs
+ * a single lookup no matter how many requests are in flight. Instead of starting one timer per
+ * request, the timeouts are handled by a single timer wheel : a ring of buckets that is advanced
+ * every [TICK_MS] milliseconds and that expires the requests of the bucket it reaches. The wheel
+ * only turns while requests are pending.
+ */
+class AnswerDispatcher(private val scheduler: Scheduler, timeout: Long, unit: TimeUnit) :
+    Disposable {
+  private val pendingRequests = ConcurrentHashMap<Int, PendingRequest>()
+
+  /** Number of ticks after which a pending request is expired */
+  private val timeoutTicks: Long = maxOf(1L, (unit.toMillis(timeout) + TICK_MS - 1) / TICK_MS)
+
+  /** The wheel spans one more tick than the timeout so that a bucket is never reused too early */
+  private val wheel: Array<ConcurrentLinkedQueue<Int>> =
+      Array((timeoutTicks + 1).toInt()) { ConcurrentLinkedQueue() }
+  private val currentTick = AtomicLong()
+
+  /** Guards the starting and stopping of the [ticker] */
+  private val lock = Any()
+  private var ticker: Disposable? = null
+  @Volatile private var disposed = false
+
+  /** @return the number of requests currently waiting for an answer */
+  val pendingCount: Int
+    get() = pendingRequests.size
+
+  /**
+   * Register a request that is about to be sent.
+   *
+   * It must be called before sending the request, to make sure the answer cannot be received
+   * before the request is known.
+   *
+   * @param id JSON-RPC id of the request
+   * @return a [Single] that will succeed with the answer to the request, or fail with a
+   *   [TimeoutException] if no answer is received in time, or with a [CancellationException] if
+   *   the dispatcher is disposed first
+   */
+  fun register(id: Int): Single<Answer> {
+    val subject = SingleSubject.create<Answer>()
+    if (disposed) {
+      subject.onError(CancellationException("The answers are not dispatched anymore"))
+      return subject
+    }
+
+    val deadline = currentTick.get() + timeoutTicks
+    val request = PendingRequest(subject, deadline)
+    pendingRequests[id] = request
+    wheel[bucketOf(deadline)].add(id)
+    startTicker()
+
+    // The dispatcher may have been disposed meanwhile, after failing the pending requests
+    if (disposed && pendingRequests.remove(id, request)) {
+      subject.onError(CancellationException("The answers are not dispatched anymore"))
+    }
+    return subject
+  }
+
+  /**
+   * Hand a received answer to the request waiting for it.
+   *
+   * @param answer received on the connection
+   * @return true if a request was waiting for the answer, false otherwise (e.g. the request already
+   *   expired or the answer is a copy received from another peer)
+   */
+  fun dispatch(answer: Answer): Boolean {
+    val request = pendingRequests.remove(answer.id)
+    if (request == null) {
+      Timber.tag(TAG).d("No pending request for answer with id %d", answer.id)
+      return false
+    }
+
+    Timber.tag(TAG).d("request id: %s", answer.id)
+    request.subject.onSuccess(answer)
+    return true
+  }
+
+  private fun tick() {
+    val tick = currentTick.incrementAndGet()
+    val bucket = wheel[bucketOf(tick)]
+
+    val notExpired = ArrayList<Int>()
+    var id = bucket.poll()
+    while (id != null) {
+      val request = pendingRequests[id]
+      // The request was either already answered or not expired yet
+      if (request != null) {
+        if (request.deadline <= tick) {
+          if (pendingRequests.remove(id, request)) {
+            request.subject.onError(TimeoutException("No answer received for request $id"))
+          }
+        } else {
+          notExpired.add(id)
+        }
+      }
+      id = bucket.poll()
+    }
+
+    bucket.addAll(notExpired)
+
+    // The wheel stops once no request is pending, the next request starts it again
+    synchronized(lock) {
+      if (pendingRequests.isEmpty()) {
+        ticker?.dispose()
+        ticker = null
+      }
+    }
+  }
+
+  private fun startTicker() {
+    synchronized(lock) {
+      if (ticker == null && !disposed) {
+        ticker =
+            Observable.interval(TICK_MS, TICK_MS, TimeUnit.MILLISECONDS, scheduler)
+                .subscribe(
+                    { tick() },
+                    { error: Throwable -> Timber.tag(TAG).e(error, "Error in the timer wheel") })
+      }
+    }
+  }
+
+  private fun bucketOf(tick: Long): Int {
+    return (tick % wheel.size).toInt()
+  }
+
+  override fun dispose() {
+    synchronized(lock) {
+      disposed = true
+      ticker?.dispose()
+      ticker = null
+    }
+
+    // The requests still waiting would otherwise never complete
+    pendingRequests.keys.toList().forEach { id: Int ->
+      pendingRequests.remove(id)?.subject?.onError(
+          CancellationException("The answer to request $id will not be dispatched"))
+    }
+    wheel.forEach { it.clear() }
+  }
+
+  override fun isDisposed(): Boolean {
+    return disposed
+  }
+
+  private class PendingRequest(val subject: SingleSubject<Answer>, val deadline: Long)
+
+  companion object {
+    private val TAG = AnswerDispatcher::class.java.simpleName
+
+    /** Granularity of the timer wheel */
+    const val TICK_MS = 250L
+  }
+}
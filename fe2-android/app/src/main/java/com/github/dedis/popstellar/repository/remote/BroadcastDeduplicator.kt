@@ -0,0 +1,45 @@
+package com.github.dedis.popstellar.repository.remote
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * This class keeps track of the broadcasts received on the connections to the different peers.
+ *
+ * Every server re-sends the same broadcasts, this is used to process each message once, from
+ * whichever server delivered it first. Only the last [capacity] message ids are remembered.
+ */
+class BroadcastDeduplicator(private val capacity: Int = DEFAULT_CAPACITY) {
+  private val seenIds =
+      object : LinkedHashMap<String, Boolean>() {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Boolean>?): Boolean {
+          return size > capacity
+        }
+      }
+
+  /** Number of duplicated broadcasts dropped, by peer address */
+  private val duplicates = ConcurrentHashMap<String, AtomicLong>()
+
+  /**
+   * Register the reception of a broadcast from a peer.
+   *
+   * @param messageId id of the broadcast message
+   * @param peer address of the peer the broadcast was received from
+   * @return true if this is the first copy of the message, false if it was already received
+   */
+  fun isFirstCopy(messageId: String, peer: String): Boolean {
+    val isFirst = synchronized(seenIds) { seenIds.put(messageId, true) == null }
+    if (!isFirst) {
+      duplicates.computeIfAbsent(peer) { AtomicLong() }.incrementAndGet()
+    }
+    return isFirst
+  }
+
+  /** @return the number of duplicated broadcasts dropped so far, by peer address */
+  val duplicateCounts: Map<String, Long>
+    get() = duplicates.mapValues { it.value.get() }
+
+  companion object {
+    const val DEFAULT_CAPACITY = 10_000
+  }
+}
@@ -0,0 +1,304 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.method.Broadcast
+import io.reactivex.Scheduler
+import io.reactivex.disposables.Disposable
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import timber.log.Timber
+
+/**
+ * This class spreads the handling of the broadcasts over a fixed number of lanes.
+ *
+ * The lane of a broadcast is chosen from the hash of its channel, so the broadcasts of a channel
+ * are always handled by the same lane, in the order they were received, while broadcasts of
+ * unrelated channels are handled in parallel. Each lane holds up to [capacity] broadcasts : once
+ * it is full, [dispatch] waits at most [offerTimeoutMs] for a broadcast to be handled, which slows
+ * down the reading of the connection. A broadcast still not admitted after that is queued over the
+ * capacity and counted as overflowed, so that the thread reading the connection, which also
+ * delivers the answers to the requests, is never held for long.
+ *
+ * Within a lane, the broadcasts are queued by [MessagePriority] and the most urgent ones are
+ * handled first. As a channel only carries messages of one class, this does not reorder a channel.
+ * To prevent starvation, a class that was passed over [maxSkips] times in a row is served next.
+ *
+ * @param scheduler on which the lanes run, each lane uses its own worker
+ * @param laneCount number of lanes
+ * @param capacity maximum number of broadcasts waiting in a lane
+ * @param maxSkips number of times a waiting class can be passed over by more urgent ones
+ * @param offerTimeoutMs maximum time a dispatch waits for a full lane to have room
+ * @param handler function handling a broadcast
+ */
+class ChannelLaneDispatcher(
+    scheduler: Scheduler,
+    laneCount: Int = DEFAULT_LANE_COUNT,
+    private val capacity: Int = DEFAULT_CAPACITY,
+    private val maxSkips: Int = DEFAULT_MAX_SKIPS,
+    private val offerTimeoutMs: Long = DEFAULT_OFFER_TIMEOUT_MS,
+    private val handler: (Broadcast) -> Unit
+) : Disposable {
+
+  private val lanes = Array(laneCount) { Lane(scheduler.createWorker()) }
+
+  /**
+   * Queue a broadcast in the lane of its channel.
+   *
+   * @param broadcast to handle
+   * @param blocking whether to wait, for a bounded time, for the lane to have room. Broadcasts
+   *   queued from a lane, such as the reprocessed ones, must not wait as the lane could be waiting
+   *   for itself
+   */
+  @JvmOverloads
+  fun dispatch(broadcast: Broadcast, blocking: Boolean = true) {
+    laneOf(broadcast).submit(broadcast, MessagePriority.of(broadcast), blocking)
+  }
+
+  /** @return a snapshot of the metrics of every lane */
+  val stats: List<LaneStats>
+    get() = lanes.map { lane: Lane -> lane.stats() }
+
+  /**
+   * @param priority class of the broadcasts
+   * @return the number of broadcasts of this class currently waiting in all the lanes
+   */
+  fun depthOf(priority: MessagePriority): Int {
+    return lanes.sumOf { lane: Lane -> lane.depthOf(priority) }
+  }
+
+  private fun laneOf(broadcast: Broadcast): Lane {
+    return lanes[Math.floorMod(broadcast.channel.hashCode(), lanes.size)]
+  }
+
+  override fun dispose() {
+    lanes.forEach { lane: Lane -> lane.close() }
+  }
+
+  override fun isDisposed(): Boolean {
+    return lanes.all { lane: Lane -> lane.worker.isDisposed }
+  }
+
+  /** Metrics of a lane */
+  class LaneStats(
+      /** Number of broadcasts currently waiting in the lane */
+      val depth: Int,
+      /** Highest number of broadcasts that waited in the lane at the same time */
+      val maxDepth: Int,
+      /** Number of broadcasts handled by the lane */
+      val processed: Long,
+      /** Number of times a broadcast was dispatched to the lane while it was full */
+      val blocked: Long,
+      /** Number of broadcasts queued over the capacity, as the lane had no room in time */
+      val overflowed: Long,
+      /** Number of times a class was served ahead of more urgent ones to avoid its starvation */
+      val promoted: Long,
+      /** Metrics of each priority class of the lane */
+      val classes: Map<MessagePriority, ClassStats>
+  ) {
+    override fun toString(): String {
+      return "LaneStats{depth=$depth, maxDepth=$maxDepth, processed=$processed, " +
+          "blocked=$blocked, overflowed=$overflowed, promoted=$promoted, classes=$classes}"
+    }
+  }
+
+  /** Metrics of a priority class within a lane */
+  class ClassStats(
+      /** Number of broadcasts of the class currently waiting in the lane */
+      val depth: Int,
+      /** Highest number of broadcasts of the class that waited in the lane at the same time */
+      val maxDepth: Int,
+      /** Number of broadcasts of the class handled by the lane */
+      val processed: Long
+  ) {
+    override fun toString(): String {
+      return "ClassStats{depth=$depth, maxDepth=$maxDepth, processed=$processed}"
+    }
+  }
+
+  /** A queued broadcast, along with whether it holds one of the permits of the lane */
+  private class Entry(
+      val broadcast: Broadcast,
+      val priority: MessagePriority,
+      val hasPermit: Boolean
+  )
+
+  /** Queue and metrics of a priority class within a lane */
+  private class ClassQueue {
+    val queue = ConcurrentLinkedQueue<Entry>()
+    val depth = AtomicInteger()
+    val maxDepth = AtomicInteger()
+    val processed = AtomicLong()
+
+    /** Number of times in a row the class was passed over, only accessed by the draining thread */
+    var skips = 0
+
+    fun stats(): ClassStats {
+      return ClassStats(depth.get(), maxDepth.get(), processed.get())
+    }
+  }
+
+  private inner class Lane(val worker: Scheduler.Worker) {
+    // Indexed by the ordinal of the priority, the most urgent first
+    private val queues = Array(PRIORITIES.size) { ClassQueue() }
+    private val permits = Semaphore(capacity)
+    private val wip = AtomicInteger()
+
+    private val depth = AtomicInteger()
+    private val maxDepth = AtomicInteger()
+    private val processed = AtomicLong()
+    private val blocked = AtomicLong()
+    private val overflowed = AtomicLong()
+    private val promoted = AtomicLong()
+    @Volatile private var closed = false
+
+    fun submit(broadcast: Broadcast, priority: MessagePriority, blocking: Boolean) {
+      if (closed) {
+        return
+      }
+
+      var hasPermit = permits.tryAcquire()
+      if (!hasPermit) {
+        blocked.incrementAndGet()
+        if (blocking) {
+          Timber.tag(TAG).d("Lane full, waiting to queue %s", broadcast.message.messageId)
+          hasPermit = awaitPermit()
+          // The waiting producers are woken up when the lane is closed
+          if (closed) {
+            if (hasPermit) {
+              permits.release()
+            }
+            return
+          }
+          if (!hasPermit) {
+            overflowed.incrementAndGet()
+          }
+        }
+      }
+
+      val queue = queues[priority.ordinal]
+      queue.queue.offer(Entry(broadcast, priority, hasPermit))
+      queue.maxDepth.accumulateAndGet(queue.depth.incrementAndGet()) { a: Int, b: Int ->
+        maxOf(a, b)
+      }
+      maxDepth.accumulateAndGet(depth.incrementAndGet()) { a: Int, b: Int -> maxOf(a, b) }
+
+      // Only schedule a drain if none is running, the running one will pick up the broadcast
+      if (wip.getAndIncrement() == 0) {
+        worker.schedule { drain() }
+      }
+    }
+
+    /** @return true if a permit was acquired before the timeout */
+    private fun awaitPermit(): Boolean {
+      return try {
+        permits.tryAcquire(offerTimeoutMs, TimeUnit.MILLISECONDS)
+      } catch (e: InterruptedException) {
+        Thread.currentThread().interrupt()
+        false
+      }
+    }
+
+    /** Stop the lane and release the producers waiting for it to have room */
+    fun close() {
+      closed = true
+      worker.dispose()
+      permits.release(capacity)
+    }
+
+    private fun drain() {
+      var missed = 1
+      do {
+        var entry = poll()
+        while (entry != null) {
+          handle(entry)
+          entry = poll()
+        }
+        missed = wip.addAndGet(-missed)
+      } while (missed != 0)
+    }
+
+    /** @return the next broadcast to handle, null if the lane is empty */
+    private fun poll(): Entry? {
+      // A class passed over too many times is served first, whatever its priority
+      for (queue in queues) {
+        if (queue.skips >= maxSkips) {
+          val entry = queue.queue.poll()
+          if (entry != null) {
+            queue.skips = 0
+            promoted.incrementAndGet()
+            return entry
+          }
+        }
+      }
+
+      for (i in queues.indices) {
+        val entry = queues[i].queue.poll() ?: continue
+        queues[i].skips = 0
+        // The less urgent classes that have broadcasts waiting were passed over
+        for (j in i + 1 until queues.size) {
+          if (!queues[j].queue.isEmpty()) {
+            queues[j].skips++
+          }
+        }
+        return entry
+      }
+
+      return null
+    }
+
+    private fun handle(entry: Entry) {
+      try {
+        handler(entry.broadcast)
+      } catch (e: Exception) {
+        // A failing broadcast must not stop the lane
+        Timber.tag(TAG).e(e, "Error on processing message %s", entry.broadcast.message.messageId)
+      } finally {
+        val queue = queues[entry.priority.ordinal]
+        queue.depth.decrementAndGet()
+        queue.processed.incrementAndGet()
+        depth.decrementAndGet()
+        processed.incrementAndGet()
+        if (entry.hasPermit) {
+          permits.release()
+        }
+      }
+    }
+
+    fun depthOf(priority: MessagePriority): Int {
+      return queues[priority.ordinal].depth.get()
+    }
+
+    fun stats(): LaneStats {
+      return LaneStats(
+          depth.get(),
+          maxDepth.get(),
+          processed.get(),
+          blocked.get(),
+          overflowed.get(),
+          promoted.get(),
+          PRIORITIES.associateWith { priority: MessagePriority ->
+            queues[priority.ordinal].stats()
+          })
+    }
+  }
+
+  companion object {
+    private val TAG = ChannelLaneDispatcher::class.java.simpleName
+
+    /** Default number of lanes, the broadcasts of at most this many channels are handled at once */
+    val DEFAULT_LANE_COUNT = maxOf(2, Runtime.getRuntime().availableProcessors())
+
+    /** Default maximum number of broadcasts waiting in a lane */
+    const val DEFAULT_CAPACITY = 1024
+
+    /** Default number of times a waiting class can be passed over by more urgent ones */
+    const val DEFAULT_MAX_SKIPS = 16
+
+    /** Default maximum time, in milliseconds, a dispatch waits for a full lane to have room */
+    const val DEFAULT_OFFER_TIMEOUT_MS = 100L
+
+    private val PRIORITIES = MessagePriority.values().toList()
+  }
+}
@@ -1,6 +1,8 @@
 package com.github.dedis.popstellar.repository.remote
 
 import com.github.dedis.popstellar.model.network.GenericMessage
+import com.github.dedis.popstellar.model.network.answer.Answer
+import com.github.dedis.popstellar.model.network.method.Broadcast
 import com.github.dedis.popstellar.model.network.method.Message
 import com.tinder.scarlet.Lifecycle
 import com.tinder.scarlet.ShutdownReason
@@ -33,9 +35,9 @@ open class Connection {
     disposables.add(
         laoService
             .observeMessage()
-            .doOnNext { msg: GenericMessage ->
-              Timber.tag(TAG).d("Received a new message from remote: %s", msg)
-            }
+            // Broadcasts already received from another peer were not deserialized, drop them
+            .filter { msg: GenericMessage -> msg !is DeduplicatingMessageAdapterFactory.Duplicate }
+            .doOnNext { msg: GenericMessage -> logReceived(msg) }
             .subscribe(
                 { t: GenericMessage -> messagesSubject.onNext(t) },
                 { t: Throwable -> messagesSubject.onError(t) }))
@@ -56,6 +58,16 @@ open class Connection {
     messagesSubject = connection.messagesSubject
   }
 
+  private fun logReceived(msg: GenericMessage) {
+    // Only the ids are logged, printing the whole message would decode its data
+    when (msg) {
+      is Broadcast ->
+          Timber.tag(TAG).d("Received broadcast %s on %s", msg.message.messageId, msg.channel)
+      is Answer -> Timber.tag(TAG).d("Received the answer of request %d", msg.id)
+      else -> Timber.tag(TAG).d("Received a %s from remote", msg.javaClass.simpleName)
+    }
+  }
+
   private fun logEvent(event: WebSocket.Event, url: String) {
     val baseMsg = "Connection to $url"
     when (event) {
@@ -1,6 +1,7 @@
 package com.github.dedis.popstellar.repository.remote
 
 import android.app.Application
+import com.github.dedis.popstellar.model.network.serializer.ValidationPolicy
 import com.github.dedis.popstellar.utility.scheduler.SchedulerProvider
 import com.google.gson.Gson
 import com.tinder.scarlet.Lifecycle
@@ -22,9 +23,10 @@ constructor(
     private val application: Application,
     private val schedulerProvider: SchedulerProvider,
     private val okHttpClient: OkHttpClient,
-    private val gson: Gson
+    private val gson: Gson,
+    private val validationPolicy: ValidationPolicy
 ) {
-  private fun createConnection(url: String): Connection {
+  private fun createConnection(url: String, deduplicator: BroadcastDeduplicator): Connection {
     // Create a behavior subject that will be used to close or start the socket manually
     val manualState: BehaviorSubject<Lifecycle.State> =
         BehaviorSubject.createDefault(Lifecycle.State.Started)
@@ -33,7 +35,12 @@ constructor(
     val scarlet: Scarlet =
         Builder()
             .webSocketFactory(okHttpClient.newWebSocketFactory(url))
-            .addMessageAdapterFactory(GsonMessageAdapter.Factory(gson))
+            .addMessageAdapterFactory(
+                DeduplicatingMessageAdapterFactory(
+                    StreamingResultAdapterFactory(
+                        GsonMessageAdapter.Factory(gson), gson, validationPolicy),
+                    deduplicator,
+                    url))
             .addStreamAdapterFactory(RxJava2StreamAdapterFactory())
             .lifecycle(
                 ofApplicationForeground(application)
@@ -49,6 +56,12 @@ constructor(
   }
 
   fun createMultiConnection(url: String): MultiConnection {
-    return MultiConnection({ createConnection(url) }, url)
+    // The broadcasts are deduplicated across the connections to all the peers
+    val deduplicator = BroadcastDeduplicator()
+    return MultiConnection(
+        { peerUrl: String -> createConnection(peerUrl, deduplicator) },
+        url,
+        deduplicator,
+        PeerRouter(schedulerProvider.computation()))
   }
 }
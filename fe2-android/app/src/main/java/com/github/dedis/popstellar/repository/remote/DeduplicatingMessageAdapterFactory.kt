@@ -0,0 +1,143 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.GenericMessage
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.tinder.scarlet.Message
+import com.tinder.scarlet.MessageAdapter
+import java.io.IOException
+import java.io.StringReader
+import java.lang.reflect.Type
+import timber.log.Timber
+
+/**
+ * Message adapter factory dropping the broadcasts that were already received from another peer.
+ *
+ * The message id of an incoming broadcast is read from the raw frame with a streaming pass, before
+ * the frame is handed to Gson. A broadcast that was already received is mapped to [Duplicate]
+ * instead of being deserialized, and is then filtered out by the [Connection].
+ *
+ * @param delegate factory producing the adapters that actually (de)serialize the messages
+ * @param deduplicator shared by the connections to all the peers
+ * @param peer address of the peer the adapted connection is linked to
+ */
+class DeduplicatingMessageAdapterFactory(
+    private val delegate: MessageAdapter.Factory,
+    private val deduplicator: BroadcastDeduplicator,
+    private val peer: String
+) : MessageAdapter.Factory {
+
+  override fun create(type: Type, annotations: Array<Annotation>): MessageAdapter<*> {
+    val adapter = delegate.create(type, annotations)
+    if (type != GenericMessage::class.java) {
+      return adapter
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    return DeduplicatingMessageAdapter(adapter as MessageAdapter<GenericMessage>)
+  }
+
+  private inner class DeduplicatingMessageAdapter(
+      private val adapter: MessageAdapter<GenericMessage>
+  ) : MessageAdapter<GenericMessage> {
+
+    override fun fromMessage(message: Message): GenericMessage {
+      val text =
+          when (message) {
+            is Message.Text -> message.value
+            is Message.Bytes -> String(message.value, Charsets.UTF_8)
+          }
+
+      val messageId = readBroadcastId(text)
+      if (messageId != null && !deduplicator.isFirstCopy(messageId, peer)) {
+        Timber.tag(TAG).d("Dropping duplicated broadcast %s from %s", messageId, peer)
+        return Duplicate
+      }
+
+      return adapter.fromMessage(message)
+    }
+
+    override fun toMessage(data: GenericMessage): Message {
+      return adapter.toMessage(data)
+    }
+  }
+
+  /** Placeholder emitted in place of a dropped broadcast */
+  object Duplicate : GenericMessage
+
+  companion object {
+    private val TAG = DeduplicatingMessageAdapterFactory::class.java.simpleName
+
+    private const val METHOD = "method"
+    private const val PARAMS = "params"
+    private const val MESSAGE = "message"
+    private const val MESSAGE_ID = "message_id"
+    private const val BROADCAST = "broadcast"
+
+    /**
+     * Read the message id of a broadcast frame without building its json tree.
+     *
+     * @param frame raw json frame received on the websocket
+     * @return the message id if the frame is a broadcast, null otherwise or if it is malformed
+     */
+    @JvmStatic
+    fun readBroadcastId(frame: String): String? {
+      try {
+        JsonReader(StringReader(frame)).use { reader ->
+          var method: String? = null
+          var messageId: String? = null
+
+          reader.beginObject()
+          while (reader.hasNext()) {
+            when (reader.nextName()) {
+              METHOD -> method = nextStringOrSkip(reader)
+              PARAMS -> messageId = readParamsMessageId(reader)
+              else -> reader.skipValue()
+            }
+          }
+
+          return if (method == BROADCAST) messageId else null
+        }
+      } catch (e: IOException) {
+        return null
+      } catch (e: IllegalStateException) {
+        return null
+      }
+    }
+
+    private fun readParamsMessageId(reader: JsonReader): String? {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        reader.skipValue()
+        return null
+      }
+
+      var messageId: String? = null
+      reader.beginObject()
+      while (reader.hasNext()) {
+        if (reader.nextName() == MESSAGE && reader.peek() == JsonToken.BEGIN_OBJECT) {
+          reader.beginObject()
+          while (reader.hasNext()) {
+            if (reader.nextName() == MESSAGE_ID) {
+              messageId = nextStringOrSkip(reader)
+            } else {
+              reader.skipValue()
+            }
+          }
+          reader.endObject()
+        } else {
+          reader.skipValue()
+        }
+      }
+      reader.endObject()
+      return messageId
+    }
+
+    private fun nextStringOrSkip(reader: JsonReader): String? {
+      if (reader.peek() == JsonToken.STRING) {
+        return reader.nextString()
+      }
+      reader.skipValue()
+      return null
+    }
+  }
+}
@@ -0,0 +1,354 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.method.Broadcast
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.Data
+import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionSetup
+import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.model.network.method.message.data.lao.StateLao
+import com.github.dedis.popstellar.model.network.method.message.data.message.WitnessMessageSignature
+import com.github.dedis.popstellar.model.network.method.message.data.rollcall.CloseRollCall
+import com.github.dedis.popstellar.model.network.method.message.data.rollcall.CreateRollCall
+import com.github.dedis.popstellar.model.network.method.message.data.rollcall.OpenRollCall
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.utility.error.UnknownElectionException
+import com.github.dedis.popstellar.utility.error.UnknownLaoException
+import com.github.dedis.popstellar.utility.error.UnknownRollCallException
+import com.github.dedis.popstellar.utility.error.UnknownWitnessMessageException
+import com.github.dedis.popstellar.utility.error.keys.NoRollCallException
+import java.util.Objects
+import timber.log.Timber
+
+/**
+ * This class parks the broadcasts that could not be handled because an object they depend on is
+ * not known yet, typically because the messages were received out of order.
+ *
+ * A parked message is keyed by the [Dependency] it misses and is released as soon as a message
+ * committing this object is handled, instead of being retried blindly. The total size of the parked
+ * messages is bounded by [maxParkedBytes] : when it is exceeded, the oldest messages are dropped.
+ *
+ * @param maxParkedBytes memory budget, in bytes of encoded data, of the parked messages
+ * @param clock giving the current time in milliseconds
+ */
+class DependencyQueue(
+    private val maxParkedBytes: Long = MAX_PARKED_BYTES,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+
+  /** Kinds of objects a message can depend on */
+  enum class DependencyType {
+    LAO,
+    ROLL_CALL,
+    /** Any closed roll call in a given lao */
+    CLOSED_ROLL_CALL,
+    ELECTION,
+    WITNESS_MESSAGE
+  }
+
+  /** An object identified by its type and id that a message needs to be handled */
+  class Dependency(val type: DependencyType, val id: String) {
+    override fun equals(other: Any?): Boolean {
+      if (this === other) {
+        return true
+      }
+      if (other == null || javaClass != other.javaClass) {
+        return false
+      }
+      val that = other as Dependency
+      return type == that.type && id == that.id
+    }
+
+    override fun hashCode(): Int {
+      return Objects.hash(type, id)
+    }
+
+    override fun toString(): String {
+      return "Dependency{type=$type, id='$id'}"
+    }
+  }
+
+  /** Metrics of the parked messages */
+  class Stats(
+      /** Number of messages currently parked */
+      val parked: Int,
+      /** Number of parked messages that were released */
+      val released: Long,
+      /** Number of parked messages that were dropped */
+      val dropped: Long,
+      /** Average time in milliseconds the released messages were parked */
+      val averageWaitMs: Double,
+      /** Longest time in milliseconds a released message was parked */
+      val longestWaitMs: Long
+  ) {
+    override fun toString(): String {
+      return "DependencyStats{parked=$parked, released=$released, dropped=$dropped, " +
+          "averageWaitMs=$averageWaitMs, longestWaitMs=$longestWaitMs}"
+    }
+  }
+
+  private class ParkedMessage(
+      val dependency: Dependency,
+      val broadcast: Broadcast,
+      val size: Long,
+      val parkedAt: Long
+  )
+
+  /** Parked messages by the dependency they are waiting for */
+  private val parkedByDependency = HashMap<Dependency, MutableList<ParkedMessage>>()
+
+  /** All the parked messages, in parking order, used to evict the oldest ones */
+  private val parkingOrder = LinkedHashSet<ParkedMessage>()
+
+  /**
+   * Dependencies committed by the recently handled messages, by message id. This is used to release
+   * the dependencies again when the object is only committed once the message is witnessed.
+   */
+  private val committedByMessage =
+      object : LinkedHashMap<String, List<Dependency>>() {
+        override fun removeEldestEntry(
+            eldest: MutableMap.MutableEntry<String, List<Dependency>>?
+        ): Boolean {
+          return size > MAX_REMEMBERED_MESSAGES
+        }
+      }
+
+  /**
+   * Position, in the sequence of handled messages, of the last message that committed each
+   * dependency. Only the recent ones are kept, as they are only needed for the messages whose
+   * handling was running at the same time.
+   */
+  private val committedAt =
+      object : LinkedHashMap<Dependency, Long>() {
+        override fun removeEldestEntry(
+            eldest: MutableMap.MutableEntry<Dependency, Long>?
+        ): Boolean {
+          return size > MAX_REMEMBERED_DEPENDENCIES
+        }
+      }
+
+  private var handledCount = 0L
+  private var parkedBytes = 0L
+  private var releasedCount = 0L
+  private var droppedCount = 0L
+  private var totalWaitMs = 0L
+  private var maxWaitMs = 0L
+
+  /** @return the number of messages currently parked */
+  val parkedCount: Int
+    @Synchronized get() = parkingOrder.size
+
+  /** @return the number of parked messages that were released so far */
+  val released: Long
+    @Synchronized get() = releasedCount
+
+  /** @return the number of parked messages that were dropped so far */
+  val dropped: Long
+    @Synchronized get() = droppedCount
+
+  /** @return the average time in milliseconds the released messages were parked */
+  val averageWaitMs: Double
+    @Synchronized get() = if (releasedCount == 0L) 0.0 else totalWaitMs.toDouble() / releasedCount
+
+  /** @return the longest time in milliseconds a released message was parked */
+  val longestWaitMs: Long
+    @Synchronized get() = maxWaitMs
+
+  /** @return a snapshot of the metrics of the parked messages */
+  val stats: Stats
+    @Synchronized get() = Stats(parkedCount, released, dropped, averageWaitMs, longestWaitMs)
+
+  /**
+   * Marker of the messages handled so far, to take before handling a message and to give to [park]
+   * if the handling fails.
+   */
+  val checkpoint: Long
+    @Synchronized get() = handledCount
+
+  /**
+   * Park a broadcast until the given dependency is committed.
+   *
+   * The dependency may have been committed by another message after the handling of this one
+   * started, in which case it would never be released. It is not parked then, and can be handled
+   * again right away.
+   *
+   * @param dependency missing to handle the message
+   * @param broadcast that could not be handled
+   * @param checkpoint taken before handling the message
+   * @return true if the message is parked, false if the dependency was committed since the
+   *   checkpoint
+   */
+  @Synchronized
+  fun park(dependency: Dependency, broadcast: Broadcast, checkpoint: Long = handledCount): Boolean {
+    if ((committedAt[dependency] ?: 0L) > checkpoint) {
+      Timber.tag(TAG)
+          .d(
+              "%s was committed meanwhile, %s is not parked",
+              dependency,
+              broadcast.message.messageId)
+      return false
+    }
+
+    val parked =
+        ParkedMessage(
+            dependency, broadcast, broadcast.message.dataEncoded.encoded.length.toLong(), clock())
+    parkedByDependency.computeIfAbsent(dependency) { ArrayList() }.add(parked)
+    parkingOrder.add(parked)
+    parkedBytes += parked.size
+
+    // Drop the oldest messages if the budget is exceeded
+    while (parkedBytes > maxParkedBytes && parkingOrder.size > 1) {
+      val oldest = parkingOrder.first()
+      Timber.tag(TAG).d("Parking budget exceeded, dropping %s", oldest.broadcast.message.messageId)
+      remove(oldest)
+      droppedCount++
+    }
+    return true
+  }
+
+  /**
+   * Register that a message was handled and release the parked messages depending on the objects
+   * it committed.
+   *
+   * @param channel on which the message was handled
+   * @param message that was handled
+   * @return the released broadcasts, in parking order
+   */
+  @Synchronized
+  fun onHandled(channel: Channel, message: MessageGeneral): List<Broadcast> {
+    val data = message.data
+    val committed = committedDependencies(channel, message.messageId.encoded, data)
+
+    // An object may only be committed once its creation message is witnessed
+    val witnessed =
+        if (data is WitnessMessageSignature) {
+          committedByMessage[data.messageId.encoded].orEmpty()
+        } else {
+          committedByMessage[message.messageId.encoded] = committed
+          emptyList()
+        }
+
+    handledCount++
+    (committed + witnessed).forEach { dependency: Dependency ->
+      committedAt[dependency] = handledCount
+    }
+
+    if (parkingOrder.isEmpty()) {
+      return emptyList()
+    }
+
+    val now = clock()
+    val released =
+        (committed + witnessed)
+            .flatMap { dependency: Dependency -> parkedByDependency[dependency].orEmpty().toList() }
+            .sortedBy { parked: ParkedMessage -> parked.parkedAt }
+
+    released.forEach { parked: ParkedMessage ->
+      remove(parked)
+      val wait = now - parked.parkedAt
+      releasedCount++
+      totalWaitMs += wait
+      maxWaitMs = maxOf(maxWaitMs, wait)
+    }
+
+    return released.map { parked: ParkedMessage -> parked.broadcast }
+  }
+
+  /**
+   * Drop the messages that were parked for longer than the given time.
+   *
+   * @param maxAgeMs maximum time in milliseconds a message can stay parked
+   * @return the number of dropped messages
+   */
+  @Synchronized
+  fun dropOlderThan(maxAgeMs: Long): Int {
+    val limit = clock() - maxAgeMs
+    val expired = parkingOrder.takeWhile { parked: ParkedMessage -> parked.parkedAt < limit }
+    expired.forEach { parked: ParkedMessage ->
+      Timber.tag(TAG)
+          .d(
+              "Message %s waited too long for %s",
+              parked.broadcast.message.messageId,
+              parked.dependency)
+      remove(parked)
+    }
+    droppedCount += expired.size
+    return expired.size
+  }
+
+  private fun remove(parked: ParkedMessage) {
+    parkingOrder.remove(parked)
+    parkedBytes -= parked.size
+    val waiting = parkedByDependency[parked.dependency] ?: return
+    waiting.remove(parked)
+    if (waiting.isEmpty()) {
+      parkedByDependency.remove(parked.dependency)
+    }
+  }
+
+  companion object {
+    private val TAG = DependencyQueue::class.java.simpleName
+
+    /** Default memory budget of the parked messages */
+    const val MAX_PARKED_BYTES = 4L * 1024 * 1024
+
+    /** Number of handled messages whose committed objects are remembered for witnessing */
+    private const val MAX_REMEMBERED_MESSAGES = 1000
+
+    /** Number of recently committed objects remembered for the messages handled concurrently */
+    private const val MAX_REMEMBERED_DEPENDENCIES = 1000
+
+    /**
+     * Retrieve the object missing to handle a message from the error raised by the handler.
+     *
+     * @param error raised while handling the message
+     * @return the missing dependency or null if it cannot be identified
+     */
+    @JvmStatic
+    fun missingDependency(error: Exception): Dependency? {
+      return when (error) {
+        is UnknownLaoException -> error.laoId?.let { Dependency(DependencyType.LAO, it) }
+        is UnknownRollCallException -> Dependency(DependencyType.ROLL_CALL, error.id)
+        is UnknownElectionException -> Dependency(DependencyType.ELECTION, error.id)
+        is UnknownWitnessMessageException ->
+            Dependency(DependencyType.WITNESS_MESSAGE, error.id.encoded)
+        is NoRollCallException -> Dependency(DependencyType.CLOSED_ROLL_CALL, error.laoId)
+        else -> null
+      }
+    }
+
+    /**
+     * Retrieve the objects committed by the handling of a message.
+     *
+     * @param channel on which the message was handled
+     * @param messageId of the message
+     * @param data of the message
+     * @return the dependencies that are satisfied once the message is handled
+     */
+    private fun committedDependencies(
+        channel: Channel,
+        messageId: String,
+        data: Data
+    ): List<Dependency> {
+      // Every handled message can be witnessed
+      val witnessMessage = Dependency(DependencyType.WITNESS_MESSAGE, messageId)
+      return when (data) {
+        is CreateLao -> listOf(witnessMessage, Dependency(DependencyType.LAO, data.id))
+        is StateLao -> listOf(witnessMessage, Dependency(DependencyType.LAO, data.id))
+        is CreateRollCall -> listOf(witnessMessage, Dependency(DependencyType.ROLL_CALL, data.id))
+        is OpenRollCall ->
+            listOf(
+                witnessMessage,
+                Dependency(DependencyType.ROLL_CALL, data.updateId),
+                Dependency(DependencyType.ROLL_CALL, data.opens))
+        is CloseRollCall ->
+            listOf(
+                witnessMessage,
+                Dependency(DependencyType.ROLL_CALL, data.updateId),
+                Dependency(DependencyType.ROLL_CALL, data.closes),
+                Dependency(DependencyType.CLOSED_ROLL_CALL, channel.extractLaoId()))
+        is ElectionSetup -> listOf(witnessMessage, Dependency(DependencyType.ELECTION, data.id))
+        else -> listOf(witnessMessage)
+      }
+    }
+  }
+}
@@ -2,6 +2,8 @@ package com.github.dedis.popstellar.repository.remote
 
 import com.github.dedis.popstellar.BuildConfig
 import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.repository.CatchupWatermarkRepository
+import com.github.dedis.popstellar.repository.OutboxRepository
 import com.github.dedis.popstellar.utility.handler.MessageHandler
 import com.github.dedis.popstellar.utility.scheduler.SchedulerProvider
 import com.google.gson.Gson
@@ -17,7 +19,10 @@ constructor(
     private val messageHandler: MessageHandler,
     private val connectionFactory: ConnectionFactory,
     private val gson: Gson,
-    private val schedulerProvider: SchedulerProvider
+    private val schedulerProvider: SchedulerProvider,
+    private val outboxRepository: OutboxRepository,
+    private val watermarkRepository: CatchupWatermarkRepository,
+    private val signatureVerifier: SignatureVerifier = SignatureVerifier(SignatureVerifier.Mode.OFF)
 ) : Disposable {
   private var networkManager: MessageSender? = null
   var currentUrl: String? = null
@@ -37,7 +42,10 @@ constructor(
             connectionFactory.createMultiConnection(url),
             gson,
             schedulerProvider,
-            subscriptions)
+            subscriptions,
+            outboxRepository,
+            watermarkRepository,
+            signatureVerifier)
     currentUrl = url
   }
 
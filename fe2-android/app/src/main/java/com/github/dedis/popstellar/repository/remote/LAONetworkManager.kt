@@ -5,6 +5,7 @@ import com.github.dedis.popstellar.model.network.GenericMessage
 import com.github.dedis.popstellar.model.network.answer.Answer
 import com.github.dedis.popstellar.model.network.answer.Error
 import com.github.dedis.popstellar.model.network.answer.ResultMessages
+import com.github.dedis.popstellar.model.network.answer.StreamedResultMessages
 import com.github.dedis.popstellar.model.network.method.Broadcast
 import com.github.dedis.popstellar.model.network.method.Catchup
 import com.github.dedis.popstellar.model.network.method.Publish
@@ -16,6 +17,9 @@ import com.github.dedis.popstellar.model.network.method.message.data.Data
 import com.github.dedis.popstellar.model.objects.Channel
 import com.github.dedis.popstellar.model.objects.PeerAddress
 import com.github.dedis.popstellar.model.objects.security.KeyPair
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.repository.CatchupWatermarkRepository
+import com.github.dedis.popstellar.repository.OutboxRepository
 import com.github.dedis.popstellar.utility.error.DataHandlingException
 import com.github.dedis.popstellar.utility.error.JsonRPCErrorException
 import com.github.dedis.popstellar.utility.error.UnknownElectionException
@@ -26,12 +30,14 @@ import com.github.dedis.popstellar.utility.error.keys.NoRollCallException
 import com.github.dedis.popstellar.utility.handler.MessageHandler
 import com.github.dedis.popstellar.utility.scheduler.SchedulerProvider
 import com.google.gson.Gson
+import com.google.gson.JsonParseException
 import com.tinder.scarlet.WebSocket
 import io.reactivex.Completable
 import io.reactivex.Observable
 import io.reactivex.Single
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.observers.TestObserver
+import io.reactivex.subjects.CompletableSubject
 import io.reactivex.subjects.PublishSubject
 import io.reactivex.subjects.Subject
 import java.util.concurrent.ConcurrentHashMap
@@ -39,69 +45,199 @@ import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 import timber.log.Timber
 
-/** This class handles the JSON-RPC layer of the protocol */
-class LAONetworkManager(
+/**
+ * This class handles the JSON-RPC layer of the protocol
+ *
+ * When an [OutboxRepository] is given, published messages are persisted until the server
+ * acknowledges them. They are sent right away if the connection is open, and otherwise all at once
+ * when it opens again.
+ *
+ * When a [CatchupWatermarkRepository] is given, the messages of a catchup that were already applied
+ * by a previous catchup of the channel are not processed again.
+ *
+ * The signatures of the received messages are checked by the [SignatureVerifier] before they are
+ * handled, the messages of a catchup being verified in parallel.
+ */
+class LAONetworkManager
+@JvmOverloads
+constructor(
     private val messageHandler: MessageHandler,
     private val multiConnection: MultiConnection,
     private val gson: Gson,
     private val schedulerProvider: SchedulerProvider,
-    subscribedChannels: Set<Channel>
+    subscribedChannels: Set<Channel>,
+    private val outbox: OutboxRepository? = null,
+    private val watermarks: CatchupWatermarkRepository? = null,
+    private val signatureVerifier: SignatureVerifier = SignatureVerifier(SignatureVerifier.Mode.OFF)
 ) : MessageSender {
   private val requestCounter = AtomicInteger()
 
   // A subject that represents unprocessed messages
   private val unprocessed: Subject<GenericMessage> = PublishSubject.create()
   private val reprocessingCounter = ConcurrentHashMap<GenericMessage, Int>()
+
+  // Messages waiting for an object they depend on, and the subject on which they are released
+  private val dependencyQueue = DependencyQueue {
+    schedulerProvider.computation().now(TimeUnit.MILLISECONDS)
+  }
+  private val released: Subject<GenericMessage> = PublishSubject.create()
+
+  // Lanes handling the broadcasts of unrelated channels in parallel
+  private val lanes =
+      ChannelLaneDispatcher(schedulerProvider.computation()) { broadcast: Broadcast ->
+        handleBroadcast(broadcast)
+      }
   private val subscribedChannels: MutableSet<Channel> = HashSet(subscribedChannels)
   private val disposables = CompositeDisposable()
 
+  // Subscriptions to the streams of the connections, re-created when the connection is extended
+  private val streamDisposables = CompositeDisposable()
+
+  // Routes the answers to the pending requests by their id
+  private val answerDispatcher =
+      AnswerDispatcher(
+          schedulerProvider.computation(), REPROCESSING_DELAY.toLong(), TimeUnit.SECONDS)
+
+  // Publishes waiting for the acknowledgement of the server, and the ones being sent
+  private val pendingPublishes = ConcurrentHashMap<MessageID, CompletableSubject>()
+  private val inFlightPublishes: MutableSet<MessageID> = ConcurrentHashMap.newKeySet()
+
+  // Addresses of the servers whose connection is currently open
+  private val openConnections: MutableSet<String> = ConcurrentHashMap.newKeySet()
+
   init {
     // Start the incoming message processing
     processIncomingMessages()
+    // Start the routing of answers to their requests
+    dispatchAnswers()
+    // Start tracking the state of the connection to flush the outbox
+    trackConnection()
     // Start the routine aimed at resubscribing to channels when the connection is lost
     resubscribeToChannelOnReconnection()
   }
 
   private fun resubscribeToChannelOnReconnection() {
-    disposables.add(
+    streamDisposables.add(
         multiConnection
-            .observeConnectionEvents() // Observe the events of a connection
+            .observePeerConnectionEvents() // Observe the events of each connection
             .subscribeOn(
                 schedulerProvider.io()) // Filter out events that are not related to a reconnection
-            .filter { event: WebSocket.Event -> event is WebSocket.Event.OnConnectionOpened<*> }
-            // Subscribe to the stream and when a connection event is received, send a subscribe
-            // message for each channel we are supposed to be subscribed to.
+            .filter { (_, event) -> event is WebSocket.Event.OnConnectionOpened<*> }
+            // Subscribe to the stream and when a connection is opened, send on that connection a
+            // subscribe message for all the channels we are supposed to be subscribed to at once.
             .subscribe(
-                {
-                  subscribedChannels.forEach { channel: Channel ->
-                    disposables.add(
-                        subscribe(channel)
-                            .subscribe(
-                                { Timber.tag(TAG).d("resubscription successful to : %s", channel) },
-                                { error: Throwable ->
-                                  Timber.tag(TAG).e(error, "error on resubscription to")
-                                }))
-                  }
+                { (address, _) ->
+                  disposables.add(
+                      subscribeAll(HashSet(subscribedChannels), address)
+                          .subscribe(
+                              { failures: Map<Channel, Throwable> ->
+                                Timber.tag(TAG)
+                                    .d(
+                                        "resubscription to %s done, failed on : %s",
+                                        address,
+                                        failures.keys)
+                              },
+                              { error: Throwable ->
+                                Timber.tag(TAG).e(error, "error on resubscription to %s", address)
+                              }))
                 },
                 { error: Throwable -> Timber.tag(TAG).e(error, "Error on resubscription") }))
   }
 
   private fun processIncomingMessages() {
-    disposables.add(
-        Observable.merge( // Normal message received over the wire
-                multiConnection
-                    .observeMessage(), // Packets that could not be processed (maybe due to a
-                // reordering), this is merged into incoming message, with a delay of 5 seconds to
-                // give
-                // priority to new messages.
-                unprocessed.delay(
-                    REPROCESSING_DELAY.toLong(), TimeUnit.SECONDS, schedulerProvider.computation()))
+    // Normal messages received over the wire. Dispatching them waits, for a bounded time, for
+    // their lane to have room, which slows down the reading of the connection when the handling
+    // cannot keep up
+    streamDisposables.add(
+        multiConnection
+            .observeMessage()
             .filter { obj: GenericMessage -> obj is Broadcast } // Filter the Broadcast
             .map { obj: GenericMessage -> obj as Broadcast }
             .subscribeOn(schedulerProvider.newThread())
             .subscribe(
-                { broadcast: Broadcast -> handleBroadcast(broadcast) },
+                { broadcast: Broadcast -> lanes.dispatch(broadcast) },
                 { error: Throwable -> Timber.tag(TAG).e(error, "Error on processing message") }))
+
+    // Messages queued again by the lanes themselves, they must not wait for a lane to have room
+    streamDisposables.add(
+        Observable.merge( // Packets that could not be processed (maybe due to a reordering), this
+                // is merged into incoming message, with a delay of 5 seconds to give priority to
+                // new messages.
+                unprocessed.delay(
+                    REPROCESSING_DELAY.toLong(), TimeUnit.SECONDS, schedulerProvider.computation()),
+                // Messages whose dependency was just handled, they are reprocessed right away
+                released)
+            .filter { obj: GenericMessage -> obj is Broadcast }
+            .map { obj: GenericMessage -> obj as Broadcast }
+            .subscribe(
+                { broadcast: Broadcast -> lanes.dispatch(broadcast, false) },
+                { error: Throwable -> Timber.tag(TAG).e(error, "Error on reprocessing message") }))
+
+    // Periodically drop the messages whose dependency never arrived
+    streamDisposables.add(
+        Observable.interval(
+                REPROCESSING_DELAY.toLong(),
+                REPROCESSING_DELAY.toLong(),
+                TimeUnit.SECONDS,
+                schedulerProvider.computation())
+            .subscribe(
+                { dependencyQueue.dropOlderThan(MAX_PARKING_TIME_MS) },
+                { error: Throwable -> Timber.tag(TAG).e(error, "Error on dropping messages") }))
+  }
+
+  private fun dispatchAnswers() {
+    // A single subscription handles the answers of every request. It is not moved to another
+    // scheduler so that it is active before any request can be sent.
+    streamDisposables.add(
+        multiConnection
+            .observeMessage()
+            .filter { obj: GenericMessage -> obj is Answer } // Filter for Answers
+            .map { obj: GenericMessage -> obj as Answer }
+            .subscribe(
+                { answer: Answer -> answerDispatcher.dispatch(answer) },
+                { error: Throwable -> Timber.tag(TAG).e(error, "Error on dispatching answer") }))
+  }
+
+  private fun trackConnection() {
+    if (outbox == null) {
+      return
+    }
+
+    // The state of each connection is tracked on its own, so that losing a peer does not hold the
+    // publishes back while another connection is still open
+    streamDisposables.add(
+        multiConnection
+            .observePeerConnectionEvents()
+            .subscribe(
+                { (address, event) ->
+                  when (event) {
+                    is WebSocket.Event.OnConnectionOpened<*> -> {
+                      openConnections.add(address)
+                      flushOutbox(outbox)
+                    }
+                    is WebSocket.Event.OnConnectionClosing,
+                    is WebSocket.Event.OnConnectionClosed,
+                    is WebSocket.Event.OnConnectionFailed -> openConnections.remove(address)
+                    else -> {}
+                  }
+                },
+                { error: Throwable -> Timber.tag(TAG).e(error, "Error on connection events") }))
+  }
+
+  /** Send every message of the outbox at once, their answers are matched by request id */
+  private fun flushOutbox(outbox: OutboxRepository) {
+    disposables.add(
+        outbox
+            .getPending()
+            .subscribeOn(schedulerProvider.io())
+            .subscribe(
+                { pending: List<Pair<Channel, MessageGeneral>> ->
+                  Timber.tag(TAG).d("Flushing %d messages from the outbox", pending.size)
+                  // The messages are sent in the order they were published, so the order is kept
+                  // on every channel
+                  pending.forEach { (channel, msg) -> sendQueuedPublish(channel, msg) }
+                },
+                { error: Throwable -> Timber.tag(TAG).e(error, "Error reading the outbox") }))
   }
 
   override fun catchup(channel: Channel): Completable {
@@ -109,13 +245,11 @@ class LAONetworkManager(
 
     val catchup = Catchup(channel, requestCounter.incrementAndGet())
     return request(catchup)
-        .map { obj: Answer -> (obj as ResultMessages).messages }
         .doOnError { error: Throwable -> Timber.tag(TAG).e(error, "Error in catchup") }
-        .doOnSuccess { msgs: List<MessageGeneral> ->
-          Timber.tag(TAG).d("Received catchup response on %s, retrieved : %s", channel, msgs)
+        .doOnSuccess { answer: Answer ->
+          Timber.tag(TAG).d("Received catchup response %d on %s", answer.id, channel)
         }
-        .doOnSuccess { messages: List<MessageGeneral> -> handleMessages(messages, channel) }
-        .ignoreElement()
+        .flatMapCompletable { answer: Answer -> handleCatchup(answer, channel) }
   }
 
   override fun publish(keyPair: KeyPair, channel: Channel, data: Data): Completable {
@@ -125,9 +259,92 @@ class LAONetworkManager(
   override fun publish(channel: Channel, msg: MessageGeneral): Completable {
     Timber.tag(TAG).d("sending a publish %s to the channel %s", msg.data.javaClass, channel)
 
+    if (outbox == null) {
+      return sendPublish(channel, msg)
+    }
+
+    return Completable.defer {
+          val acknowledgement =
+              pendingPublishes.computeIfAbsent(msg.messageId) { CompletableSubject.create() }
+          outbox
+              .add(channel, msg)
+              .andThen(
+                  Completable.fromAction {
+                    // Otherwise the message is sent once a connection opens again
+                    if (openConnections.isNotEmpty()) {
+                      sendQueuedPublish(channel, msg)
+                    }
+                  })
+              .andThen(acknowledgement)
+        }
+        // The message stays in the outbox after the timeout, it is sent again on the next
+        // connection
+        .timeout(PUBLISH_TIMEOUT.toLong(), TimeUnit.SECONDS, schedulerProvider.computation())
+        .subscribeOn(schedulerProvider.io())
+        .observeOn(schedulerProvider.mainThread())
+  }
+
+  private fun sendPublish(channel: Channel, msg: MessageGeneral): Completable {
     val publish = Publish(channel, requestCounter.incrementAndGet(), msg)
     return request(publish).ignoreElement().doOnComplete {
-      Timber.tag(TAG).d("Successfully published %s", msg)
+      Timber.tag(TAG).d("Successfully published %s", msg.messageId)
+    }
+  }
+
+  /**
+   * Send a message of the outbox, and remove it from the outbox once the server answered.
+   *
+   * A failure that is not an answer of the server, such as a timeout, keeps the message in the
+   * outbox so that it is sent again on the next connection.
+   */
+  private fun sendQueuedPublish(channel: Channel, msg: MessageGeneral) {
+    // A message is sent only once at a time, be it from a publish or from a flush
+    if (!inFlightPublishes.add(msg.messageId)) {
+      return
+    }
+
+    disposables.add(
+        sendPublish(channel, msg)
+            .doFinally { inFlightPublishes.remove(msg.messageId) }
+            .subscribe(
+                { acknowledgePublish(msg.messageId, null) },
+                { error: Throwable ->
+                  when {
+                    // The server already has the message, from a previous attempt
+                    error is JsonRPCErrorException && error.errorCode == ALREADY_EXISTS ->
+                        acknowledgePublish(msg.messageId, null)
+                    // Sending the message again would not change the answer of the server
+                    error is JsonRPCErrorException -> acknowledgePublish(msg.messageId, error)
+                    else ->
+                        Timber.tag(TAG)
+                            .d(error, "Publish of %s failed, kept in the outbox", msg.messageId)
+                  }
+                }))
+  }
+
+  /**
+   * Remove a message from the outbox and notify its publisher, if any.
+   *
+   * @param messageId of the published message
+   * @param error rejecting the message, null if it was accepted
+   */
+  private fun acknowledgePublish(messageId: MessageID, error: Throwable?) {
+    val outbox = outbox ?: return
+    disposables.add(
+        outbox
+            .remove(messageId)
+            .subscribeOn(schedulerProvider.io())
+            .subscribe(
+                {},
+                { err: Throwable ->
+                  Timber.tag(TAG).e(err, "Error removing %s from the outbox", messageId)
+                }))
+
+    val acknowledgement = pendingPublishes.remove(messageId) ?: return
+    if (error == null) {
+      acknowledgement.onComplete()
+    } else {
+      acknowledgement.onError(error)
     }
   }
 
@@ -150,6 +367,70 @@ class LAONetworkManager(
         }
   }
 
+  override fun subscribeAll(channels: Collection<Channel>): Single<Map<Channel, Throwable>> {
+    return subscribeAll(channels, null)
+  }
+
+  /**
+   * Subscribe to the given channels and handle their messages
+   *
+   * @param channels to subscribe to
+   * @param address of the server to subscribe on, or null to subscribe on all of them
+   * @return a [Single] emitting the channels that could not be subscribed to, with their error
+   */
+  private fun subscribeAll(
+      channels: Collection<Channel>,
+      address: String?
+  ): Single<Map<Channel, Throwable>> {
+    Timber.tag(TAG).d("sending a subscribe on %d channels", channels.size)
+
+    val failures: MutableMap<Channel, Throwable> = ConcurrentHashMap()
+    return Observable.fromIterable(LinkedHashSet(channels))
+        // Pipeline the subscribe and catchup requests, with a bounded number of them in flight
+        .flatMap(
+            { channel: Channel ->
+              subscribeAndFetch(channel, address)
+                  .toMaybe()
+                  .doOnError { error: Throwable ->
+                    Timber.tag(TAG).e(error, "error in subscribe to %s", channel)
+                    failures[channel] = error
+                  }
+                  // A failing channel must not prevent the subscription to the others
+                  .onErrorComplete()
+                  .toObservable()
+            },
+            MAX_IN_FLIGHT_SUBSCRIPTIONS)
+        .toList()
+        .flatMap { catchups: List<Pair<Channel, Answer>> ->
+          // Handle the messages retrieved on all the channels in a single pass, the channels
+          // holding the state of the LAOs first so that it is not delayed by the bulk traffic
+          Observable.fromIterable(
+                  catchups.sortedBy { catchup: Pair<Channel, Answer> ->
+                    MessagePriority.of(catchup.first)
+                  })
+              .concatMapCompletable { (channel, answer) -> handleCatchup(answer, channel) }
+              .toSingle {
+                Timber.tag(TAG)
+                    .d("Subscribed to %d channels, %d failed", catchups.size, failures.size)
+                failures.toMap()
+              }
+        }
+  }
+
+  /**
+   * Subscribe to the given channel and retrieve its messages, without handling them
+   *
+   * @param channel to subscribe to
+   * @param address of the server to subscribe on, or null to subscribe on all of them
+   * @return a [Single] emitting the channel along with the answer to the catchup
+   */
+  private fun subscribeAndFetch(channel: Channel, address: String?): Single<Pair<Channel, Answer>> {
+    return request(Subscribe(channel, requestCounter.incrementAndGet()), address)
+        .doOnSuccess { subscribedChannels.add(channel) }
+        .flatMap { request(Catchup(channel, requestCounter.incrementAndGet()), address) }
+        .map { answer: Answer -> Pair(channel, answer) }
+  }
+
   override fun unsubscribe(channel: Channel): Completable {
     Timber.tag(TAG).d("sending an unsubscribe on the channel %s", channel)
     val unsubscribe = Unsubscribe(channel, requestCounter.incrementAndGet())
@@ -173,24 +454,39 @@ class LAONetworkManager(
     if (!multiConnection.connectToPeers(peerAddressList)) {
       return
     }
-    // First dispose the previous connections
-    disposables.clear()
+    // First dispose the subscriptions to the previous connections, the requests and publishes in
+    // flight are kept
+    streamDisposables.clear()
     // Start the incoming message processing for all the new connections
     processIncomingMessages()
+    dispatchAnswers()
+    trackConnection()
     // Start the routine aimed at resubscribing to channels when the connection is lost
     resubscribeToChannelOnReconnection()
   }
 
   private fun handleBroadcast(broadcast: Broadcast) {
+    // Taken before handling, to know if the missing dependency is committed meanwhile
+    val checkpoint = dependencyQueue.checkpoint
+
     fun handleError(e: Exception) {
       Timber.tag(TAG).e(e, "Error while handling received message, will try to reprocess it later")
-      reprocessMessage(broadcast)
+      parkOrReprocess(broadcast, e, checkpoint)
     }
 
-    Timber.tag(TAG).d("handling broadcast msg : %s", broadcast)
+    Timber.tag(TAG)
+        .d("handling broadcast msg %s on %s", broadcast.message.messageId, broadcast.channel)
+
+    // The copies of a handled message are discarded by the handler, they are not verified again
+    if (!messageHandler.isHandled(broadcast.message.messageId) &&
+        !signatureVerifier.accept(broadcast.message)) {
+      return
+    }
 
     try {
       messageHandler.handleMessage(this, broadcast.channel, broadcast.message)
+      reprocessingCounter.remove(broadcast)
+      releaseDependents(broadcast.channel, broadcast.message)
     } catch (e: Exception) {
       when (e) {
         is DataHandlingException,
@@ -204,14 +500,113 @@ class LAONetworkManager(
     }
   }
 
+  /**
+   * Handle the messages retrieved by a catchup on the computation scheduler, as verifying them
+   * blocks. Large answers are decoded progressively, as they are handled.
+   *
+   * @param answer to the catchup
+   * @param channel on which the catchup was made
+   * @return a [Completable] completing once all the messages are handled
+   */
+  private fun handleCatchup(answer: Answer, channel: Channel): Completable {
+    return when (answer) {
+      is StreamedResultMessages ->
+          Completable.fromAction { handleStreamedMessages(answer, channel) }
+              .subscribeOn(schedulerProvider.computation())
+              .observeOn(schedulerProvider.mainThread())
+      is ResultMessages ->
+          Completable.fromAction { handleMessages(answer.messages, channel) }
+              .subscribeOn(schedulerProvider.computation())
+              .observeOn(schedulerProvider.mainThread())
+      else -> Completable.error(IllegalStateException("Unexpected answer to a catchup : $answer"))
+    }
+  }
+
   private fun handleMessages(messages: List<MessageGeneral>, channel: Channel) {
-    fun handleError(e: Exception) {
-      Timber.tag(TAG).e(e, "Error while handling received catchup message")
+    // Skip the messages applied by the previous catchups of the channel
+    val messageIds = messages.map { msg -> msg.messageId }
+    val start = watermarks?.firstUnappliedPosition(channel, messageIds) ?: 0
+    val catchup = CatchupState(channel, messageIds, start)
+    for (batchStart in start until messages.size step CATCHUP_BATCH_SIZE) {
+      val batchEnd = minOf(batchStart + CATCHUP_BATCH_SIZE, messages.size)
+      catchup.handleBatch(batchStart, messages.subList(batchStart, batchEnd))
+    }
+    catchup.finish()
+  }
+
+  private fun handleStreamedMessages(result: StreamedResultMessages, channel: Channel) {
+    // Only the ids are read to find the messages applied by the previous catchups
+    val start = watermarks?.firstUnappliedPosition(channel, result.messageIds) ?: 0
+    val catchup = CatchupState(channel, result.messageIds, start)
+
+    // The messages are handled by batches as they are decoded, so only one batch is held in memory
+    // at a time
+    val messages = result.decode(start)
+    val batch = ArrayList<MessageGeneral>(CATCHUP_BATCH_SIZE)
+    var position = start
+    while (messages.hasNext()) {
+      batch.add(messages.next())
+      if (batch.size == CATCHUP_BATCH_SIZE || !messages.hasNext()) {
+        catchup.handleBatch(position, batch)
+        position += batch.size
+        batch.clear()
+        Timber.tag(TAG).d("Handled %d messages of the catchup on %s", position, channel)
+      }
     }
+    catchup.finish()
+  }
+
+  /**
+   * Handling of the messages of a catchup, keeping track of the high-water mark of the channel
+   *
+   * @param channel on which the catchup was made
+   * @param messageIds ids of all the messages of the catchup, in the order of the server
+   * @param start position of the first message handled
+   */
+  private inner class CatchupState(
+      private val channel: Channel,
+      private val messageIds: List<MessageID>,
+      private val start: Int
+  ) {
+    /** Position of the last message such that it and all the preceding ones are applied */
+    private var lastApplied = start - 1
 
-    for (msg in messages) {
+    init {
+      if (start > 0) {
+        Timber.tag(TAG).d("Skipping %d already applied messages on %s", start, channel)
+      }
+    }
+
+    /**
+     * Handle a batch of consecutive messages, after verifying their signatures in parallel.
+     *
+     * @param position of the first message of the batch in the catchup
+     * @param batch of messages
+     */
+    fun handleBatch(position: Int, batch: List<MessageGeneral>) {
+      // The messages already handled are discarded by the handler, only the others are verified
+      val unknown = batch.indices.filter { i: Int -> !messageHandler.isHandled(batch[i].messageId) }
+      val accepted = BooleanArray(batch.size) { true }
+      signatureVerifier
+          .acceptAll(unknown.map { i: Int -> batch[i] }, schedulerProvider.computation())
+          .forEachIndexed { j: Int, valid: Boolean -> accepted[unknown[j]] = valid }
+
+      for (i in batch.indices) {
+        // A rejected message is not applied, the high-water mark stays before it
+        if (accepted[i]) {
+          handle(position + i, batch[i])
+        }
+      }
+    }
+
+    private fun handle(position: Int, msg: MessageGeneral) {
+      val checkpoint = dependencyQueue.checkpoint
       try {
-        messageHandler.handleMessage(this, channel, msg)
+        messageHandler.handleMessage(this@LAONetworkManager, channel, msg)
+        releaseDependents(channel, msg)
+        if (lastApplied == position - 1) {
+          lastApplied = position
+        }
       } catch (e: Exception) {
         when (e) {
           is DataHandlingException,
@@ -219,31 +614,72 @@ class LAONetworkManager(
           is UnknownRollCallException,
           is NoRollCallException,
           is UnknownElectionException,
-          is UnknownWitnessMessageException -> handleError(e)
+          is UnknownWitnessMessageException,
+          // The data of a message is only decoded when handled, skip the invalid ones
+          is JsonParseException -> handleError(msg, e, checkpoint)
           else -> throw e
         }
       }
     }
+
+    fun finish() {
+      // The high-water mark did not move
+      if (lastApplied < start) {
+        return
+      }
+      watermarks?.updateWatermark(channel, messageIds, lastApplied)
+    }
+
+    private fun handleError(msg: MessageGeneral, e: Exception, checkpoint: Long) {
+      Timber.tag(TAG).e(e, "Error while handling received catchup message")
+      // A catchup message may depend on an object received later on, wait for it
+      val dependency = DependencyQueue.missingDependency(e) ?: return
+      val broadcast = Broadcast(channel, msg)
+      if (!dependencyQueue.park(dependency, broadcast, checkpoint)) {
+        released.onNext(broadcast)
+      }
+    }
   }
 
-  private fun request(query: Query): Single<Answer> {
-    return multiConnection
-        .observeMessage() // Observe incoming messages
-        // Send the message upon subscription the the incoming messages. That way we are
-        // certain the reply will be processed and the message is only sent when an observer
-        // subscribes to the request answer.
-        .doOnSubscribe { multiConnection.sendMessage(query) }
-        .filter { obj: GenericMessage -> obj is Answer } // Filter for Answers
-        .map { obj: GenericMessage ->
-          obj as Answer
-        } // This specific request has an id, only let the related Answer pass
-        .filter { answer: Answer -> answer.id == query.requestId }
-        .doOnNext { answer: Answer ->
-          Timber.tag(TAG).d("request id: %s", answer.id)
-        } // Transform from an Observable to a Single
-        // This Means that we expect a result before the source is disposed and an error
-        // will be produced if no value is received.
-        .firstOrError() // If we receive an error, transform the flow to a Failure
+  /**
+   * Reprocess the messages that were waiting for the objects committed by a handled message, and
+   * acknowledge the message if it was published from the outbox.
+   *
+   * @param channel on which the message was handled
+   * @param message that was successfully handled
+   */
+  private fun releaseDependents(channel: Channel, message: MessageGeneral) {
+    // Receiving a message of the outbox means the server accepted it
+    if (outbox?.isPending(message.messageId) == true) {
+      acknowledgePublish(message.messageId, null)
+    }
+
+    dependencyQueue.onHandled(channel, message).forEach { broadcast: Broadcast ->
+      Timber.tag(TAG)
+          .d("Dependency of %s is now known, reprocessing it", broadcast.message.messageId)
+      released.onNext(broadcast)
+    }
+  }
+
+  /**
+   * Send a request and wait for its answer
+   *
+   * @param query to send
+   * @param address of the server to send it to, or null to let the connection select the servers
+   * @return a [Single] emitting the answer, or failing if it is an error
+   */
+  private fun request(query: Query, address: String? = null): Single<Answer> {
+    return Single.defer {
+          // Register the request before sending it, that way we are certain the answer will be
+          // routed to it even if it is received right away
+          val answer = answerDispatcher.register(query.requestId)
+          if (address == null) {
+            multiConnection.sendMessage(query)
+          } else {
+            multiConnection.sendMessage(query, address)
+          }
+          answer
+        } // If we receive an error, transform the flow to a Failure
         .flatMap { answer: Answer ->
           if (answer is Error) {
             return@flatMap Single.error<Answer>(JsonRPCErrorException(answer))
@@ -252,14 +688,44 @@ class LAONetworkManager(
           }
         }
         .subscribeOn(schedulerProvider.io())
-        .observeOn(
-            schedulerProvider
-                .mainThread()) // Add a timeout to automatically dispose of the flow and end with a
-        // failure
-        .timeout(REPROCESSING_DELAY.toLong(), TimeUnit.SECONDS)
+        // The timeout is handled by the dispatcher, which fails the request if no answer is
+        // received in time
+        .observeOn(schedulerProvider.mainThread())
         .cache()
   }
 
+  /**
+   * Park a message until the object it is missing is handled. If this object cannot be identified
+   * from the error, the message is reprocessed after a delay instead.
+   *
+   * @param broadcast that failed to be handled
+   * @param error raised while handling the message
+   * @param checkpoint of the dependency queue taken before handling the message
+   */
+  private fun parkOrReprocess(broadcast: Broadcast, error: Exception, checkpoint: Long) {
+    val dependency = DependencyQueue.missingDependency(error)
+    if (dependency == null) {
+      reprocessMessage(broadcast)
+      return
+    }
+
+    // The same bound applies, as the message may be released by an object that does not satisfy it
+    val count = reprocessingCounter.getOrDefault(broadcast, 0)
+    if (count < MAX_REPROCESSING) {
+      reprocessingCounter[broadcast] = count + 1
+      // The dependency may have been committed by another lane while the message was handled
+      if (!dependencyQueue.park(dependency, broadcast, checkpoint)) {
+        released.onNext(broadcast)
+      }
+    } else {
+      Timber.tag(TAG)
+          .d(
+              "Message %s has been reprocessed too many times, it's now dropped",
+              broadcast.message.messageId)
+      reprocessingCounter.remove(broadcast)
+    }
+  }
+
   /**
    * This function distinguishes an unrecoverable failure according to the number of reprocessing
    * attempts.
@@ -282,13 +748,24 @@ class LAONetworkManager(
 
   override fun dispose() {
     multiConnection.close()
+    streamDisposables.dispose()
     disposables.dispose()
+    answerDispatcher.dispose()
+    lanes.dispose()
   }
 
   override fun isDisposed(): Boolean {
     return disposables.isDisposed
   }
 
+  /** @return the metrics of the lanes handling the broadcasts */
+  val laneStats: List<ChannelLaneDispatcher.LaneStats>
+    get() = lanes.stats
+
+  /** @return the metrics of the messages waiting for an object they depend on */
+  val dependencyStats: DependencyQueue.Stats
+    get() = dependencyQueue.stats
+
   @VisibleForTesting
   fun testUnprocessed(): TestObserver<GenericMessage?> {
     return unprocessed.test()
@@ -300,5 +777,23 @@ class LAONetworkManager(
     /** Constants to tune the reprocessing of unhandled messages */
     const val MAX_REPROCESSING = 5
     const val REPROCESSING_DELAY = 5
+
+    /** Time after which a message still waiting for its dependency is dropped */
+    const val MAX_PARKING_TIME_MS = MAX_REPROCESSING * REPROCESSING_DELAY * 1000L
+
+    /** Time, in seconds, after which a publish not acknowledged by the server fails */
+    const val PUBLISH_TIMEOUT = 30
+
+    /** Error code of the protocol answered when the published message is already known */
+    private const val ALREADY_EXISTS = -3
+
+    /**
+     * Number of messages of a catchup verified together, after which the progress of a streamed
+     * catchup is reported
+     */
+    private const val CATCHUP_BATCH_SIZE = 500
+
+    /** Maximum number of channels being subscribed at the same time by [subscribeAll] */
+    const val MAX_IN_FLIGHT_SUBSCRIPTIONS = 32
   }
 }
@@ -0,0 +1,85 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.method.Broadcast
+import com.github.dedis.popstellar.model.network.method.message.data.Objects
+import com.github.dedis.popstellar.model.objects.Channel
+
+/**
+ * Priority classes of the received messages, from the most to the least urgent.
+ *
+ * The class of a message is keyed on its object. All the actions of an object share its class as
+ * they are published on the same channels : giving them different classes would reorder the
+ * messages of a channel (e.g. an election end handled before the votes preceding it). For the same
+ * reason, the meetings, which live on the LAO channel, are handled along with the LAO state.
+ */
+enum class MessagePriority {
+  /** State changes of the LAO, its roll calls and elections, and their witnessing */
+  CRITICAL,
+
+  /** Other protocol messages (consensus, PoPCHA, federation, ...) */
+  NORMAL,
+
+  /** Bulk traffic of the social media and the digital cash */
+  BULK;
+
+  companion object {
+    private const val SOCIAL = "social"
+    private const val COIN = "coin"
+
+    /**
+     * Find the priority class of a message given its object.
+     *
+     * @param object of the message
+     * @return the class of the message, [NORMAL] if the object is unknown
+     */
+    @JvmStatic
+    fun of(`object`: Objects?): MessagePriority {
+      return when (`object`) {
+        Objects.LAO,
+        Objects.MEETING,
+        Objects.ROLL_CALL,
+        Objects.ELECTION,
+        Objects.MESSAGE -> CRITICAL
+        Objects.CHIRP,
+        Objects.REACTION,
+        Objects.COIN -> BULK
+        else -> NORMAL
+      }
+    }
+
+    /**
+     * Find the priority class of a received broadcast. It is found from its channel, which only
+     * carries messages of one class, so that the data of the message does not have to be decoded.
+     *
+     * @param broadcast received
+     * @return the class of its message
+     */
+    @JvmStatic
+    fun of(broadcast: Broadcast): MessagePriority {
+      return of(broadcast.channel)
+    }
+
+    /**
+     * Find the priority class of the messages published on a channel, based on its well-known
+     * segments. This is used when the messages themselves are not known yet.
+     *
+     * @param channel on which the messages are published
+     * @return the class of the messages of the channel
+     */
+    @JvmStatic
+    fun of(channel: Channel): MessagePriority {
+      // The channels are of the form /root/lao_id[/kind[/...]]
+      val segments = channel.asString.split("/")
+      return when {
+        segments.size <= 3 -> CRITICAL
+        segments[3] == SOCIAL || segments[3] == COIN -> BULK
+        segments[3] in NORMAL_CHANNELS -> NORMAL
+        // Election channels, /root/lao_id/election_id
+        else -> CRITICAL
+      }
+    }
+
+    /** Channels, right under a LAO channel, carrying [NORMAL] messages */
+    private val NORMAL_CHANNELS = setOf("consensus", "federation", "authentication")
+  }
+}
@@ -8,6 +8,7 @@ import com.github.dedis.popstellar.model.objects.security.KeyPair
 import com.tinder.scarlet.WebSocket
 import io.reactivex.Completable
 import io.reactivex.Observable
+import io.reactivex.Single
 import io.reactivex.disposables.Disposable
 
 /**
@@ -54,6 +55,19 @@ interface MessageSender : Disposable {
    */
   fun subscribe(channel: Channel): Completable
 
+  /**
+   * Subscribe to all the given channels at once
+   *
+   * The subscriptions and their catchups are pipelined with a bounded number of requests in flight
+   * and the retrieved messages are handled in a single pass once every channel is done. The failure
+   * of a channel does not prevent the subscription to the others.
+   *
+   * @param channels to subscribe to
+   * @return a [Single] emitting the channels whose subscription or catchup failed, mapped to the
+   *   error that occurred. The map is empty if every subscription succeeded.
+   */
+  fun subscribeAll(channels: Collection<Channel>): Single<Map<Channel, Throwable>>
+
   /**
    * Unsubscribe of given channel
    *
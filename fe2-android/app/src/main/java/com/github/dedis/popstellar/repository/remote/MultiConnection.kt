@@ -1,10 +1,16 @@
 package com.github.dedis.popstellar.repository.remote
 
 import com.github.dedis.popstellar.model.network.GenericMessage
+import com.github.dedis.popstellar.model.network.answer.Answer
+import com.github.dedis.popstellar.model.network.method.Catchup
 import com.github.dedis.popstellar.model.network.method.Message
+import com.github.dedis.popstellar.model.network.method.Publish
+import com.github.dedis.popstellar.model.network.method.Query
 import com.github.dedis.popstellar.model.objects.PeerAddress
 import com.tinder.scarlet.WebSocket
 import io.reactivex.Observable
+import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.schedulers.Schedulers
 import java.util.concurrent.ConcurrentHashMap
 import java.util.function.Consumer
 import java.util.function.Function
@@ -19,7 +25,12 @@ import java.util.stream.Collectors
 class MultiConnection(
     /** Caller method for the connectionFactory to instantiate connections */
     private val connectionProvider: Function<String, Connection>,
-    url: String
+    /** Address of the main server */
+    private val url: String,
+    /** Drops the broadcasts received more than once, shared by all the connections */
+    private val deduplicator: BroadcastDeduplicator = BroadcastDeduplicator(),
+    /** Selects the servers the requests are sent to */
+    private val router: PeerRouter = PeerRouter(Schedulers.computation())
 ) :
     Connection(
         // Instantiate the first connection to the main server
@@ -27,6 +38,21 @@ class MultiConnection(
   /** Map a PeerAddress (url for now) to its connection */
   private val connectionMap: ConcurrentHashMap<PeerAddress, Connection> = ConcurrentHashMap()
 
+  /** Subscriptions feeding the answers and connection events of each server to the router */
+  private val answerTracking = CompositeDisposable()
+
+  init {
+    trackAnswers(url, super.observeMessage())
+    trackEvents(url, super.observeConnectionEvents())
+  }
+
+  /** Policy used to select the servers the requests are sent to */
+  var routingPolicy: PeerRouter.RoutingPolicy
+    get() = router.policy
+    set(value) {
+      router.policy = value
+    }
+
   /**
    * Function called upon the GreetLao, it extends the connection for all the new peers.
    *
@@ -46,25 +72,44 @@ class MultiConnection(
     }
 
     newPeers.forEach(
-        Consumer { p: PeerAddress -> connectionMap[p] = connectionProvider.apply(p.address) })
+        Consumer { p: PeerAddress ->
+          val connection = connectionProvider.apply(p.address)
+          connectionMap[p] = connection
+          trackAnswers(p.address, connection.observeMessage())
+          trackEvents(p.address, connection.observeConnectionEvents())
+        })
     return true
   }
 
+  private fun trackAnswers(address: String, messages: Observable<GenericMessage>) {
+    answerTracking.add(
+        messages
+            .filter { msg: GenericMessage -> msg is Answer }
+            .subscribe(
+                { answer: GenericMessage -> router.onAnswer(address, answer as Answer) },
+                { /* Errors are handled by the subscribers of the connection */ }))
+  }
+
+  private fun trackEvents(address: String, events: Observable<WebSocket.Event>) {
+    answerTracking.add(
+        events.subscribe(
+            { event: WebSocket.Event -> router.onConnectionEvent(address, event) },
+            { /* Errors are handled by the subscribers of the connection */ }))
+  }
+
   /**
    * Function to observe messages on the connections.
    *
+   * The connections are merged so that messages are consumed as soon as they arrive, whichever peer
+   * they come from. Broadcasts already received from another peer are dropped before reaching this
+   * stream.
+   *
    * @return an Observable of GenericMessage received on the connections
    */
   override fun observeMessage(): Observable<GenericMessage> {
-    return super.observeMessage()
-        .concatWith(
-            connectionMap.values
-                .stream()
-                .map { obj: Connection -> obj.observeMessage() }
-                .reduce { obj: Observable<GenericMessage>, other: Observable<GenericMessage> ->
-                  obj.concatWith(other)
-                }
-                .orElse(Observable.empty()))
+    return Observable.merge(
+        connectionMap.values.map { obj: Connection -> obj.observeMessage() } +
+            super.observeMessage())
   }
 
   /**
@@ -73,23 +118,67 @@ class MultiConnection(
    * @return an Observable of Events happening on the connection
    */
   override fun observeConnectionEvents(): Observable<WebSocket.Event> {
-    return super.observeConnectionEvents()
-        .concatWith(
-            connectionMap.values
-                .stream()
-                .map { obj: Connection -> obj.observeConnectionEvents() }
-                .reduce { obj: Observable<WebSocket.Event>, other: Observable<WebSocket.Event> ->
-                  obj.concatWith(other)
-                }
-                .orElse(Observable.empty()))
+    return Observable.merge(
+        connectionMap.values.map { obj: Connection -> obj.observeConnectionEvents() } +
+            super.observeConnectionEvents())
+  }
+
+  /**
+   * Function to observe events on the connections, along with the address of the server whose
+   * connection emitted them.
+   *
+   * @return an Observable of pairs of server address and Event happening on its connection
+   */
+  fun observePeerConnectionEvents(): Observable<Pair<String, WebSocket.Event>> {
+    return Observable.merge(
+        connectionMap.entries.map { (peer, connection) ->
+          connection.observeConnectionEvents().map { event: WebSocket.Event ->
+            Pair(peer.address, event)
+          }
+        } +
+            super.observeConnectionEvents().map { event: WebSocket.Event -> Pair(url, event) })
   }
 
+  /** @return the number of duplicated broadcasts dropped so far, by peer address */
+  val duplicateCounts: Map<String, Long>
+    get() = deduplicator.duplicateCounts
+
+  /**
+   * Send a message to the servers.
+   *
+   * Publishes and catchups are sent to the servers selected by the [routingPolicy], as any server
+   * can answer them. Other messages are sent to all of them : subscriptions in particular are kept
+   * by each server for its own connection.
+   *
+   * @param msg to send
+   */
   override fun sendMessage(msg: Message) {
-    super.sendMessage(msg)
-    connectionMap.values.forEach(Consumer { peer: Connection -> peer.sendMessage(msg) })
+    if (msg !is Query || (msg !is Publish && msg !is Catchup)) {
+      super.sendMessage(msg)
+      connectionMap.values.forEach(Consumer { peer: Connection -> peer.sendMessage(msg) })
+      return
+    }
+
+    val addresses = listOf(url) + connectionMap.keys.map { peer: PeerAddress -> peer.address }
+    router.route(msg, addresses) { address: String -> sendMessage(msg, address) }
+  }
+
+  /**
+   * Send a message to a single server.
+   *
+   * @param msg to send
+   * @param address of the server, the message is dropped if there is no connection to it
+   */
+  fun sendMessage(msg: Message, address: String) {
+    if (address == url) {
+      super.sendMessage(msg)
+    } else {
+      connectionMap[PeerAddress(address)]?.sendMessage(msg)
+    }
   }
 
   override fun close() {
+    answerTracking.dispose()
     super.close()
     connectionMap.values.forEach(Consumer { obj: Connection -> obj.close() })
   }
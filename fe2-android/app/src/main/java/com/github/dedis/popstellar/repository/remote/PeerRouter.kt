@@ -0,0 +1,197 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.answer.Answer
+import com.github.dedis.popstellar.model.network.answer.Error
+import com.github.dedis.popstellar.model.network.method.Query
+import com.tinder.scarlet.WebSocket
+import io.reactivex.Scheduler
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import timber.log.Timber
+
+/**
+ * This class selects the peers to which the requests of a [MultiConnection] are sent.
+ *
+ * It keeps track of the round trip time and of the error rate of every peer from the answers they
+ * send. With [RoutingPolicy.BEST_PEER], a request is only sent to the best peer and, if it did not
+ * answer after [hedgeDelayMs], to the second best one as well. With [RoutingPolicy.BROADCAST],
+ * requests are sent to every peer as before. In both cases, the peers whose connection is closed
+ * are left out.
+ *
+ * @param scheduler used to trigger the hedged requests and the expiry of the requests
+ * @param hedgeDelayMs delay after which a request is also sent to the second best peer
+ */
+class PeerRouter(
+    private val scheduler: Scheduler,
+    private val hedgeDelayMs: Long = HEDGE_DELAY_MS
+) {
+
+  /** The ways requests can be routed to the peers */
+  enum class RoutingPolicy {
+    /** Send the request to the best peer, and to the second best if the first is too slow */
+    BEST_PEER,
+    /** Send the request to every peer */
+    BROADCAST
+  }
+
+  @Volatile var policy = RoutingPolicy.BEST_PEER
+
+  private val stats = ConcurrentHashMap<String, PeerStats>()
+  private val inFlight = ConcurrentHashMap<Int, InFlightRequest>()
+
+  // Peers whose connection is currently closed, the requests are not sent to them
+  private val closedPeers: MutableSet<String> = ConcurrentHashMap.newKeySet()
+
+  /**
+   * Send the given query to the peers selected by the current policy. The peers whose connection is
+   * closed are left out, unless none of them is connected.
+   *
+   * @param query to send
+   * @param candidates addresses of the peers the query can be sent to
+   * @param send function sending the query to the peer with the given address
+   */
+  fun route(query: Query, candidates: List<String>, send: (String) -> Unit) {
+    val peers = candidates.filter { peer: String -> peer !in closedPeers }.ifEmpty { candidates }
+    if (peers.size <= 1) {
+      peers.forEach(send)
+      return
+    }
+
+    val request = InFlightRequest()
+    inFlight[query.requestId] = request
+
+    if (policy == RoutingPolicy.BROADCAST) {
+      peers.forEach { peer: String -> sendTo(request, peer, send) }
+    } else {
+      val ranked = peers.sortedBy { peer: String -> score(peer) }
+      sendTo(request, ranked[0], send)
+      scheduler.scheduleDirect(
+          { hedge(query.requestId, ranked[0], ranked[1], send) },
+          hedgeDelayMs,
+          TimeUnit.MILLISECONDS)
+    }
+
+    scheduler.scheduleDirect({ expire(query.requestId) }, EXPIRY_MS, TimeUnit.MILLISECONDS)
+  }
+
+  /**
+   * Update the statistics of a peer upon the reception of an answer.
+   *
+   * @param peer address of the peer that sent the answer
+   * @param answer received
+   */
+  fun onAnswer(peer: String, answer: Answer) {
+    val request = inFlight[answer.id] ?: return
+    val sentAt = request.sentAt.remove(peer) ?: return
+
+    request.answered = true
+    statsOf(peer).record(now() - sentAt, answer is Error)
+    if (request.sentAt.isEmpty()) {
+      inFlight.remove(answer.id, request)
+    }
+  }
+
+  /**
+   * Update the state of the connection to a peer upon one of its events.
+   *
+   * @param peer address of the peer whose connection emitted the event
+   * @param event of the connection
+   */
+  fun onConnectionEvent(peer: String, event: WebSocket.Event) {
+    when (event) {
+      is WebSocket.Event.OnConnectionOpened<*> -> closedPeers.remove(peer)
+      is WebSocket.Event.OnConnectionClosing,
+      is WebSocket.Event.OnConnectionClosed,
+      is WebSocket.Event.OnConnectionFailed -> closedPeers.add(peer)
+      else -> {}
+    }
+  }
+
+  /** @return the smoothed round trip time in milliseconds of the given peer */
+  fun roundTripTime(peer: String): Double {
+    return stats[peer]?.smoothedRtt ?: 0.0
+  }
+
+  /** @return the proportion, smoothed over the last answers, of errors sent by the given peer */
+  fun errorRate(peer: String): Double {
+    return stats[peer]?.errorRate ?: 0.0
+  }
+
+  private fun sendTo(request: InFlightRequest, peer: String, send: (String) -> Unit) {
+    // The send time is stored before sending, as the answer may be received right away
+    request.sentAt[peer] = now()
+    send(peer)
+  }
+
+  private fun hedge(requestId: Int, primary: String, secondary: String, send: (String) -> Unit) {
+    val request = inFlight[requestId] ?: return
+    if (request.answered) {
+      return
+    }
+
+    Timber.tag(TAG)
+        .d("No answer from %s for request %d, sending it to %s", primary, requestId, secondary)
+    // The primary peer was at least this slow, account for it right away
+    statsOf(primary).record(hedgeDelayMs, false)
+    sendTo(request, secondary, send)
+  }
+
+  private fun expire(requestId: Int) {
+    val request = inFlight.remove(requestId) ?: return
+    // Every peer that did not answer in time counts as a failure
+    request.sentAt.keys.forEach { peer: String -> statsOf(peer).record(EXPIRY_MS, true) }
+  }
+
+  private fun score(peer: String): Double {
+    // Peers without any measurement get a score of 0, so that they are tried out
+    return stats[peer]?.score() ?: 0.0
+  }
+
+  private fun statsOf(peer: String): PeerStats {
+    return stats.computeIfAbsent(peer) { PeerStats() }
+  }
+
+  private fun now(): Long {
+    return scheduler.now(TimeUnit.MILLISECONDS)
+  }
+
+  private class InFlightRequest {
+    /** Time at which the request was sent, by peer address */
+    val sentAt = ConcurrentHashMap<String, Long>()
+    @Volatile var answered = false
+  }
+
+  /** Exponentially weighted moving averages of the round trip time and error rate of a peer */
+  private class PeerStats {
+    @Volatile var smoothedRtt = 0.0
+    @Volatile var errorRate = 0.0
+    private var samples = 0
+
+    @Synchronized
+    fun record(rtt: Long, isError: Boolean) {
+      smoothedRtt = if (samples == 0) rtt.toDouble() else smoothedRtt + (rtt - smoothedRtt) * GAIN
+      errorRate += ((if (isError) 1.0 else 0.0) - errorRate) * GAIN
+      samples++
+    }
+
+    fun score(): Double {
+      return (smoothedRtt + 1) * (1 + ERROR_PENALTY * errorRate)
+    }
+  }
+
+  companion object {
+    private val TAG = PeerRouter::class.java.simpleName
+
+    /** Delay after which an unanswered request is also sent to the second best peer */
+    const val HEDGE_DELAY_MS = 1000L
+
+    /** Delay after which an unanswered request is considered lost */
+    const val EXPIRY_MS = 5000L
+
+    /** Weight of a new sample in the moving averages */
+    private const val GAIN = 0.125
+
+    /** How much a peer that only answers errors is penalized compared to a flawless one */
+    private const val ERROR_PENALTY = 4.0
+  }
+}
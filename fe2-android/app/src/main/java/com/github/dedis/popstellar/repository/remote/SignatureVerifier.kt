@@ -0,0 +1,191 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.google.gson.JsonParseException
+import io.reactivex.Scheduler
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import timber.log.Timber
+
+/**
+ * This class checks the signatures of the received messages before they are handled, so that a
+ * server cannot forge messages on behalf of the users.
+ *
+ * A message is valid if its id is the hash of its data and signature, if its signature was made by
+ * its sender and, for a witness signature, if the signature of the witnessed message is valid too.
+ * As the id binds the content of the message, the ids of the valid messages are remembered, the
+ * copies received later, from other peers or catchups, are accepted without being verified again.
+ * Only the last [cacheSize] ids are remembered.
+ *
+ * @param mode of verification
+ * @param cacheSize number of ids of valid messages remembered
+ */
+class SignatureVerifier
+@JvmOverloads
+constructor(val mode: Mode, private val cacheSize: Int = DEFAULT_CACHE_SIZE) {
+
+  enum class Mode {
+    /** Invalid messages are dropped */
+    ENFORCE,
+
+    /** Invalid messages are reported but still handled */
+    LOG_ONLY,
+
+    /** No verification */
+    OFF
+  }
+
+  private val verifiedIds =
+      object : LinkedHashMap<MessageID, Boolean>() {
+        override fun removeEldestEntry(
+            eldest: MutableMap.MutableEntry<MessageID, Boolean>?
+        ): Boolean {
+          return size > cacheSize
+        }
+      }
+
+  private val verified = AtomicLong()
+  private val cached = AtomicLong()
+  private val invalid = AtomicLong()
+  private val verificationNanos = AtomicLong()
+
+  /**
+   * Verify a message, if the mode requires it.
+   *
+   * @param message to verify
+   * @return true if the message can be handled
+   */
+  fun accept(message: MessageGeneral): Boolean {
+    if (mode == Mode.OFF) {
+      return true
+    }
+    return decide(message, isValid(message))
+  }
+
+  /**
+   * Verify a batch of messages, such as the result of a catchup. The messages are verified in
+   * parallel on the given scheduler, with the help of the calling thread. It takes part in the
+   * verification and never waits for a verification that has not started yet, so this is safe to
+   * call from a thread of the scheduler itself.
+   *
+   * @param messages to verify
+   * @param scheduler on which the messages are verified in parallel
+   * @param parallelism maximum number of threads verifying the messages, the caller included
+   * @return for each message, whether it can be handled
+   */
+  @JvmOverloads
+  fun acceptAll(
+      messages: List<MessageGeneral>,
+      scheduler: Scheduler,
+      parallelism: Int = DEFAULT_PARALLELISM
+  ): BooleanArray {
+    if (mode == Mode.OFF) {
+      return BooleanArray(messages.size) { true }
+    }
+
+    // A message whose verification failed unexpectedly stays rejected
+    val accepted = BooleanArray(messages.size)
+
+    val next = AtomicInteger()
+    val remaining = CountDownLatch(messages.size)
+    val verify = Runnable {
+      var i = next.getAndIncrement()
+      while (i < messages.size) {
+        try {
+          accepted[i] = decide(messages[i], isValid(messages[i]))
+        } catch (e: Exception) {
+          // Not thrown from the helpers, that would crash the scheduler
+          Timber.tag(TAG).e(e, "Failed to verify message %s", messages[i].messageId)
+        } finally {
+          remaining.countDown()
+        }
+        i = next.getAndIncrement()
+      }
+    }
+
+    // The helpers are only worth it if there are several messages for each thread
+    val helpers = minOf(parallelism - 1, messages.size / MIN_MESSAGES_PER_THREAD)
+    repeat(helpers) { scheduler.scheduleDirect(verify) }
+    verify.run()
+    // Only waits for the messages the helpers already started to verify
+    remaining.await()
+
+    return accepted
+  }
+
+  private fun isValid(message: MessageGeneral): Boolean {
+    val messageId = message.messageId
+    if (synchronized(verifiedIds) { verifiedIds.containsKey(messageId) }) {
+      cached.incrementAndGet()
+      return true
+    }
+
+    val start = System.nanoTime()
+    val valid =
+        try {
+          messageId == MessageID(message.dataEncoded, message.signature) && message.verify()
+        } catch (e: JsonParseException) {
+          // The data of a witness signature could not be decoded
+          Timber.tag(TAG).d(e, "Could not decode the data of message %s", messageId)
+          false
+        }
+    verificationNanos.addAndGet(System.nanoTime() - start)
+    verified.incrementAndGet()
+
+    if (valid) {
+      synchronized(verifiedIds) { verifiedIds[messageId] = true }
+    } else {
+      invalid.incrementAndGet()
+    }
+    return valid
+  }
+
+  private fun decide(message: MessageGeneral, valid: Boolean): Boolean {
+    if (valid) {
+      return true
+    }
+    return if (mode == Mode.ENFORCE) {
+      Timber.tag(TAG).e("Dropping message %s, its signature is invalid", message.messageId)
+      false
+    } else {
+      Timber.tag(TAG).w("The signature of message %s is invalid", message.messageId)
+      true
+    }
+  }
+
+  /** @return a snapshot of the verification counters */
+  val stats: VerificationStats
+    get() =
+        VerificationStats(verified.get(), cached.get(), invalid.get(), verificationNanos.get())
+
+  /** Counters of the verifications performed */
+  class VerificationStats(
+      /** Number of messages verified */
+      val verified: Long,
+      /** Number of messages accepted as they were already verified */
+      val cached: Long,
+      /** Number of messages found invalid */
+      val invalid: Long,
+      /** Total time spent verifying, in nanoseconds, summed over all the threads */
+      val verificationNanos: Long
+  ) {
+    override fun toString(): String {
+      return "VerificationStats{verified=$verified, cached=$cached, invalid=$invalid, " +
+          "verificationNanos=$verificationNanos}"
+    }
+  }
+
+  companion object {
+    private val TAG = SignatureVerifier::class.java.simpleName
+
+    /** Default number of ids of valid messages remembered */
+    const val DEFAULT_CACHE_SIZE = 20_000
+
+    /** Default number of threads verifying a batch */
+    val DEFAULT_PARALLELISM = maxOf(1, Runtime.getRuntime().availableProcessors())
+
+    private const val MIN_MESSAGES_PER_THREAD = 16
+  }
+}
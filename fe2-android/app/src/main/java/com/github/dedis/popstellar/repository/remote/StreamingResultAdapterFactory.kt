@@ -0,0 +1,126 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.GenericMessage
+import com.github.dedis.popstellar.model.network.answer.StreamedResultMessages
+import com.github.dedis.popstellar.model.network.serializer.JsonUtils
+import com.github.dedis.popstellar.model.network.serializer.ValidationPolicy
+import com.google.gson.Gson
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.tinder.scarlet.Message
+import com.tinder.scarlet.MessageAdapter
+import java.io.IOException
+import java.io.StringReader
+import java.lang.reflect.Type
+import timber.log.Timber
+
+/**
+ * Message adapter factory that defers the decoding of large answers containing a list of messages.
+ *
+ * Such an answer, typically the result of a catchup on a busy channel, is mapped to a
+ * [StreamedResultMessages] instead of being deserialized as a whole by Gson. Its messages are then
+ * decoded one at a time while they are handled, and validated one at a time under the
+ * [validationPolicy]. Smaller frames are handed to the delegate as before.
+ *
+ * @param delegate factory producing the adapters that actually (de)serialize the messages
+ * @param gson used to decode the messages of the streamed answers
+ * @param validationPolicy deciding which messages of the streamed answers are validated
+ * @param threshold size in characters from which an answer is streamed
+ */
+class StreamingResultAdapterFactory(
+    private val delegate: MessageAdapter.Factory,
+    private val gson: Gson,
+    private val validationPolicy: ValidationPolicy,
+    private val threshold: Int = STREAMING_THRESHOLD
+) : MessageAdapter.Factory {
+
+  override fun create(type: Type, annotations: Array<Annotation>): MessageAdapter<*> {
+    val adapter = delegate.create(type, annotations)
+    if (type != GenericMessage::class.java) {
+      return adapter
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    return StreamingResultAdapter(adapter as MessageAdapter<GenericMessage>)
+  }
+
+  private inner class StreamingResultAdapter(private val adapter: MessageAdapter<GenericMessage>) :
+      MessageAdapter<GenericMessage> {
+
+    override fun fromMessage(message: Message): GenericMessage {
+      val text =
+          when (message) {
+            is Message.Text -> message.value
+            is Message.Bytes -> String(message.value, Charsets.UTF_8)
+          }
+
+      if (text.length >= threshold) {
+        val id = readResultMessagesId(text)
+        if (id != null) {
+          Timber.tag(TAG).d("Streaming the %d characters answer to request %d", text.length, id)
+          return StreamedResultMessages(id, text, gson, validationPolicy)
+        }
+      }
+
+      return adapter.fromMessage(message)
+    }
+
+    override fun toMessage(data: GenericMessage): Message {
+      return adapter.toMessage(data)
+    }
+  }
+
+  companion object {
+    private val TAG = StreamingResultAdapterFactory::class.java.simpleName
+
+    /** Answers smaller than this are cheap enough to be decoded at once */
+    const val STREAMING_THRESHOLD = 64 * 1024
+
+    private const val RESULT = "result"
+    private const val METHOD = "method"
+
+    /**
+     * Read the id of an answer whose result is a list of messages, without building its json tree.
+     *
+     * @param frame raw json frame received on the websocket
+     * @return the id of the answer, null if the frame is not such an answer or is malformed
+     */
+    @JvmStatic
+    fun readResultMessagesId(frame: String): Int? {
+      try {
+        JsonReader(StringReader(frame)).use { reader ->
+          var id: Int? = null
+          var version: String? = null
+          var hasMessages = false
+
+          reader.beginObject()
+          while (reader.hasNext()) {
+            val name = reader.nextName()
+            val token = reader.peek()
+            when {
+              // Queries are never streamed
+              name == METHOD -> return null
+              name == JsonUtils.JSON_REQUEST_ID && token == JsonToken.NUMBER ->
+                  id = reader.nextInt()
+              name == JsonUtils.JSON_RPC && token == JsonToken.STRING ->
+                  version = reader.nextString()
+              name == RESULT && token == JsonToken.BEGIN_ARRAY -> {
+                hasMessages = true
+                reader.skipValue()
+              }
+              else -> reader.skipValue()
+            }
+          }
+
+          return if (hasMessages && version == JsonUtils.JSON_RPC_VERSION) id else null
+        }
+      } catch (e: IOException) {
+        return null
+      } catch (e: IllegalStateException) {
+        return null
+      } catch (e: NumberFormatException) {
+        return null
+      }
+    }
+  }
+}
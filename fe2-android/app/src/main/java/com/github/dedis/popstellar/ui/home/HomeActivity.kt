@@ -17,8 +17,6 @@ import androidx.lifecycle.LifecycleOwner
 import androidx.lifecycle.ViewModelProvider
 import com.github.dedis.popstellar.R
 import com.github.dedis.popstellar.databinding.HomeActivityBinding
-import com.github.dedis.popstellar.model.network.serializer.JsonUtils
-import com.github.dedis.popstellar.model.network.serializer.JsonUtils.loadSchema
 import com.github.dedis.popstellar.ui.home.wallet.SeedWalletFragment
 import com.github.dedis.popstellar.ui.lao.witness.WitnessingViewModel
 import com.github.dedis.popstellar.utility.ActivityUtils.buildBackButtonCallback
@@ -27,9 +25,6 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder
 import dagger.hilt.android.AndroidEntryPoint
 import java.security.GeneralSecurityException
 import java.util.function.Supplier
-import kotlinx.coroutines.DelicateCoroutinesApi
-import kotlinx.coroutines.GlobalScope
-import kotlinx.coroutines.launch
 import timber.log.Timber
 
 /** HomeActivity represents the entry point for the application. */
@@ -40,7 +35,6 @@ class HomeActivity : AppCompatActivity() {
   private lateinit var viewModel: HomeViewModel
   private lateinit var binding: HomeActivityBinding
 
-  @OptIn(DelicateCoroutinesApi::class)
   override fun onCreate(savedInstanceState: Bundle?) {
     super.onCreate(savedInstanceState)
     binding = HomeActivityBinding.inflate(layoutInflater)
@@ -53,13 +47,6 @@ class HomeActivity : AppCompatActivity() {
 
     handleTopAppBar()
 
-    // Load all the json schemas in background when the app is started.
-    GlobalScope.launch {
-      loadSchema(JsonUtils.ROOT_SCHEMA)
-      loadSchema(JsonUtils.DATA_SCHEMA)
-      loadSchema(JsonUtils.GENERAL_MESSAGE_SCHEMA)
-    }
-
     // At start of Activity we display home fragment
     setCurrentFragment(supportFragmentManager, R.id.fragment_home) { HomeFragment.newInstance() }
 
@@ -11,7 +11,10 @@ import com.github.dedis.popstellar.model.objects.Wallet
 import com.github.dedis.popstellar.model.objects.view.LaoView
 import com.github.dedis.popstellar.model.qrcode.ConnectToLao
 import com.github.dedis.popstellar.model.qrcode.ConnectToLao.Companion.extractFrom
+import com.github.dedis.popstellar.repository.CatchupWatermarkRepository
 import com.github.dedis.popstellar.repository.LAORepository
+import com.github.dedis.popstellar.repository.MessageRepository
+import com.github.dedis.popstellar.repository.OutboxRepository
 import com.github.dedis.popstellar.repository.database.AppDatabase
 import com.github.dedis.popstellar.repository.remote.GlobalNetworkManager
 import com.github.dedis.popstellar.ui.PopViewModel
@@ -41,6 +44,9 @@ constructor(
     private val gson: Gson,
     private val wallet: Wallet,
     private val laoRepository: LAORepository,
+    private val messageRepository: MessageRepository,
+    private val outboxRepository: OutboxRepository,
+    private val watermarkRepository: CatchupWatermarkRepository,
     private val networkManager: GlobalNetworkManager,
     private val appDatabase: AppDatabase
 ) : AndroidViewModel(application), QRCodeScanningViewModel, PopViewModel {
@@ -150,12 +156,17 @@ constructor(
   }
 
   fun clearStorage() {
+    networkManager.dispose()
+    laoRepository.clearRepository()
+    watermarkRepository.clear()
+    outboxRepository.clear()
     Executors.newCachedThreadPool().execute {
+      // Drops the queued messages and waits for the batch being written, which would otherwise
+      // reach the tables after they are cleared
+      messageRepository.clearRepository()
       appDatabase.clearAllTables()
       Timber.tag(TAG).d("All the tables in the database have been cleared")
     }
-    networkManager.dispose()
-    laoRepository.clearRepository()
   }
 
   @Throws(GeneralSecurityException::class, SeedValidationException::class)
@@ -126,7 +126,14 @@ constructor(
 
     val channel = election.channel
     val laoViewId = laoView.id
-    val electionEnd = ElectionEnd(election.id, laoViewId, election.computeRegisteredVotesHash())
+    val votesHash =
+        try {
+          electionRepo.getTally(laoViewId, election.id).registeredVotesHash
+        } catch (e: UnknownElectionException) {
+          Timber.tag(TAG).w(e, "No tally for election %s, its votes are hashed again", election.id)
+          election.computeRegisteredVotesHash()
+        }
+    val electionEnd = ElectionEnd(election.id, laoViewId, votesHash)
     return networkManager.messageSender.publish(keyManager.mainKeyPair, channel, electionEnd)
   }
 
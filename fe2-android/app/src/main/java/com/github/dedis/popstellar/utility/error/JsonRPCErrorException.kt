@@ -6,7 +6,8 @@ import com.github.dedis.popstellar.model.network.answer.Error
 /** This exception is thrown when an [Error] response is received from a server */
 class JsonRPCErrorException(error: Error) :
     GenericException("Error " + error.error.code + " - " + error.error.description) {
-  private val errorCode: Int
+  /** Code of the error, as defined by the protocol */
+  val errorCode: Int
   private val errorDesc: String
 
   init {
@@ -1,4 +1,9 @@
 package com.github.dedis.popstellar.utility.error
 
-abstract class UnknownEventException protected constructor(eventType: String, id: String) :
+abstract class UnknownEventException
+protected constructor(
+    eventType: String,
+    /** Id of the unknown event */
+    val id: String
+) :
     GenericException("$eventType with id $id is unknown.")
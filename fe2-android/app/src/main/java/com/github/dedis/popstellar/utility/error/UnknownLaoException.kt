@@ -4,9 +4,16 @@ import com.github.dedis.popstellar.R
 
 /** An exception that indicates the lao with the specified id is not known to the app */
 class UnknownLaoException : GenericException {
-  constructor(laoId: String) : super("Lao with id $laoId is unknown")
+  /** Id of the unknown lao, null if it is not known */
+  val laoId: String?
 
-  constructor() : super("Could not find a valid Lao")
+  constructor(laoId: String) : super("Lao with id $laoId is unknown") {
+    this.laoId = laoId
+  }
+
+  constructor() : super("Could not find a valid Lao") {
+    this.laoId = null
+  }
 
   override val userMessage: Int
     get() = R.string.unknown_lao_exception
@@ -3,7 +3,10 @@ package com.github.dedis.popstellar.utility.error
 import com.github.dedis.popstellar.R
 import com.github.dedis.popstellar.model.objects.security.MessageID
 
-class UnknownWitnessMessageException(id: MessageID) :
+class UnknownWitnessMessageException(
+    /** Id of the unknown witness message */
+    val id: MessageID
+) :
     GenericException("Witness message with id " + id.encoded + " is unknown") {
   override val userMessage: Int
     get() = R.string.unknown_witness_message_exception
@@ -5,7 +5,10 @@ import com.github.dedis.popstellar.model.objects.Lao
 import com.github.dedis.popstellar.model.objects.view.LaoView
 
 /** Exception thrown when a rollcall is expected to be found in an LAO and none exist */
-class NoRollCallException(laoId: String) : KeyException("No RollCall exist in the LAO : $laoId") {
+class NoRollCallException(
+    /** Id of the lao in which no roll call exists */
+    val laoId: String
+) : KeyException("No RollCall exist in the LAO : $laoId") {
   constructor(lao: Lao) : this(lao.id)
 
   constructor(laoView: LaoView) : this(laoView.id)
@@ -5,6 +5,7 @@ import com.github.dedis.popstellar.model.network.method.message.data.Action
 import com.github.dedis.popstellar.model.network.method.message.data.DataRegistry
 import com.github.dedis.popstellar.model.network.method.message.data.Objects
 import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.repository.MessageRepository
 import com.github.dedis.popstellar.repository.remote.MessageSender
 import com.github.dedis.popstellar.utility.error.DataHandlingException
@@ -39,6 +40,13 @@ constructor(private val messageRepo: MessageRepository, private val registry: Da
       NoRollCallException::class,
       UnknownWitnessMessageException::class)
   fun handleMessage(messageSender: MessageSender, channel: Channel, message: MessageGeneral) {
+    // Duplicates, frequent with catchups and multiple peers, are discarded on their id alone,
+    // before their data is decoded
+    if (isHandled(message.messageId)) {
+      Timber.tag(TAG).d("The message %s has already been handled in the past", message.messageId)
+      return
+    }
+
     val data = message.data
 
     val dataObj = Objects.find(data.`object`)
@@ -50,15 +58,6 @@ constructor(private val messageRepo: MessageRepository, private val registry: Da
     val toPersist = dataObj.hasToBePersisted()
     val toBeStored = dataAction.isStoreNeededByAction
 
-    if (messageRepo.isMessagePresent(message.messageId, toPersist)) {
-      Timber.tag(TAG)
-          .d(
-              "The message with class %s has already been handled in the past",
-              data.javaClass.simpleName)
-      return
-    }
-
-    Timber.tag(TAG).d("Handling incoming message, data with class: %s", data.javaClass.simpleName)
     registry.handle(
         HandlerContext(message.messageId, message.sender, channel, messageSender),
         data,
@@ -69,6 +68,17 @@ constructor(private val messageRepo: MessageRepository, private val registry: Da
     messageRepo.addMessage(message, toBeStored, toPersist)
   }
 
+  /**
+   * Tell whether a message was already handled, only from its id. Handling it again does nothing,
+   * so it does not need to be verified nor decoded.
+   *
+   * @param messageId id of the message
+   * @return true if the message was already handled
+   */
+  fun isHandled(messageId: MessageID): Boolean {
+    return messageRepo.isMessagePresent(messageId)
+  }
+
   companion object {
     val TAG: String = MessageHandler::class.java.simpleName
   }
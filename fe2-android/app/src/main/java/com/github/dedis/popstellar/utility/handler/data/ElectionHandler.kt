@@ -143,6 +143,7 @@ constructor(
             .setState(EventState.RESULTS_READY)
             .build()
     val laoId = channel.extractLaoId()
+    checkTally(laoId, election)
 
     witnessingRepository.addWitnessMessage(laoId, electionResultWitnessMessage(messageId, election))
     if (witnessingRepository.areWitnessesEmpty(laoId)) {
@@ -252,13 +253,26 @@ constructor(
       senderPk: PublicKey,
       election: Election
   ) {
-    val updated =
-        election
-            .builder()
-            .updateMessageMap(senderPk, messageId)
-            .updateVotes(senderPk, castVote.votes)
-            .build()
-    electionRepository.updateElection(updated)
+    electionRepository.updateVotes(election, senderPk, messageId, castVote.votes)
+  }
+
+  /**
+   * Compare the results of an election to the tally of the votes received by this client. They may
+   * differ if some votes were not received, so the results are kept either way.
+   */
+  @Throws(UnknownElectionException::class)
+  private fun checkTally(laoId: String, election: Election) {
+    val tally = electionRepository.getTally(laoId, election.id)
+    if (tally.matches(election.results)) {
+      Timber.tag(TAG).d("Results of election %s match the local tally", election.id)
+    } else {
+      Timber.tag(TAG)
+          .w(
+              "Results of election %s differ from the tally of the %d voters received: %s",
+              election.id,
+              tally.voters,
+              tally.results())
+    }
   }
 
   private fun computeResults(
@@ -186,9 +186,7 @@ constructor(
 
     // Now we're going to remove all pending updates which came prior to this state lao
     val targetTime = stateLao.lastModified
-    lao.pendingUpdates.removeIf { pendingUpdate: PendingUpdate ->
-      pendingUpdate.modificationTime <= targetTime
-    }
+    lao.removePendingUpdatesUntil(targetTime)
 
     laoRepo.updateLao(lao)
     consensusRepo.updateNodesByChannel(channel)
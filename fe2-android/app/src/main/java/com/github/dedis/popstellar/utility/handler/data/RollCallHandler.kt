@@ -3,6 +3,7 @@ package com.github.dedis.popstellar.utility.handler.data
 import com.github.dedis.popstellar.model.network.method.message.data.rollcall.CloseRollCall
 import com.github.dedis.popstellar.model.network.method.message.data.rollcall.CreateRollCall
 import com.github.dedis.popstellar.model.network.method.message.data.rollcall.OpenRollCall
+import com.github.dedis.popstellar.model.objects.Channel
 import com.github.dedis.popstellar.model.objects.RollCall
 import com.github.dedis.popstellar.model.objects.WitnessMessage
 import com.github.dedis.popstellar.model.objects.event.EventState
@@ -18,7 +19,6 @@ import com.github.dedis.popstellar.utility.GeneralUtils.generateMnemonicWordFrom
 import com.github.dedis.popstellar.utility.error.UnknownLaoException
 import com.github.dedis.popstellar.utility.error.UnknownRollCallException
 import java.util.Date
-import java.util.function.Consumer
 import javax.inject.Inject
 import timber.log.Timber
 
@@ -134,8 +134,7 @@ constructor(
       // if both lists have different attendees, we merge them even though we lose the order
       // We are not ordering it because it is important to keep the order that we received to know
       // if we face de-anonymization
-      currentAttendees = existingRollCall.attendees
-      currentAttendees.addAll(closeRollCall.attendees)
+      currentAttendees = existingRollCall.attendees + closeRollCall.attendees
     }
 
     val builder = RollCallBuilder()
@@ -161,25 +160,24 @@ constructor(
       witnessingRepo.addPendingEntity(PendingEntity(messageId, laoId, rollCall))
     }
 
-    // Subscribe to the social media channels
+    // Subscribe to the social media channels and to the reactions
     // (this is not the expected behavior as users should be able to choose who to subscribe to. But
     // as this part is not implemented, currently, it subscribes to everyone)
-    rollCall.attendees.forEach(
-        Consumer { token: PublicKey ->
-          rollCallRepo.addDisposable(
-              context.messageSender
-                  .subscribe(channel.subChannel("social").subChannel(token.encoded))
-                  .subscribe(
-                      { Timber.tag(TAG).d("subscription a success") },
-                      { error: Throwable -> Timber.tag(TAG).e(error, "subscription error") }))
-        })
-
-    // Subscribe to reactions
+    val socialChannel = channel.subChannel("social")
+    val channels =
+        rollCall.attendees.map { token: PublicKey -> socialChannel.subChannel(token.encoded) } +
+            socialChannel.subChannel("reactions")
     rollCallRepo.addDisposable(
         context.messageSender
-            .subscribe(channel.subChannel("social").subChannel("reactions"))
+            .subscribeAll(channels)
             .subscribe(
-                { Timber.tag(TAG).d("subscription a success") },
+                { failures: Map<Channel, Throwable> ->
+                  if (failures.isEmpty()) {
+                    Timber.tag(TAG).d("subscription a success")
+                  } else {
+                    Timber.tag(TAG).e("subscription error on channels %s", failures.keys)
+                  }
+                },
                 { error: Throwable -> Timber.tag(TAG).e(error, "subscription error") }))
   }
 
@@ -0,0 +1,28 @@
+package com.github.dedis.popstellar.testutils
+
+import java.lang.management.ManagementFactory
+import org.junit.Assume.assumeTrue
+
+/**
+ * Helpers shared by the benchmarks. They are skipped unless requested with `-Pbenchmark`, which
+ * sets the [BENCHMARK_PROPERTY] system property.
+ */
+object BenchmarkUtils {
+  const val BENCHMARK_PROPERTY = "benchmark"
+
+  /** Skip the calling test unless the benchmarks were requested */
+  @JvmStatic
+  fun assumeBenchmarkRequested() {
+    assumeTrue(System.getProperty(BENCHMARK_PROPERTY) != null)
+  }
+
+  /** @return the bytes allocated by the current thread to run the action */
+  @JvmStatic
+  fun allocatedBytes(action: () -> Unit): Long {
+    val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+    val threadId = Thread.currentThread().id
+    val before = threads.getThreadAllocatedBytes(threadId)
+    action()
+    return threads.getThreadAllocatedBytes(threadId) - before
+  }
+}
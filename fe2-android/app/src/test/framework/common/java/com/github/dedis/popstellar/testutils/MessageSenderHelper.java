@@ -5,10 +5,12 @@ import com.github.dedis.popstellar.repository.remote.MessageSender;
 import org.mockito.Mockito;
 import org.mockito.stubbing.Answer;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 import io.reactivex.Completable;
+import io.reactivex.Single;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.lenient;
@@ -19,6 +21,7 @@ public class MessageSenderHelper {
 
   private final MessageSender sender = Mockito.mock(MessageSender.class);
   private final Set<Completable> producedCompletable = new HashSet<>();
+  private final Set<Single<?>> producedSingles = new HashSet<>();
 
   /** Returns the mocked MessageSender */
   public MessageSender getMockedSender() {
@@ -40,10 +43,19 @@ public class MessageSenderHelper {
     lenient().when(sender.subscribe(any())).thenAnswer(answer);
     lenient().when(sender.unsubscribe(any())).thenAnswer(answer);
     lenient().when(sender.catchup(any())).thenAnswer(answer);
+    lenient()
+        .when(sender.subscribeAll(any()))
+        .thenAnswer(
+            i -> {
+              Single<?> single = Single.just(Collections.emptyMap());
+              producedSingles.add(single);
+              return single;
+            });
   }
 
   /** Assert that the generated Completables' subscribe() function was called */
   public void assertSubscriptions() {
     producedCompletable.forEach(c -> c.test().assertSubscribed());
+    producedSingles.forEach(s -> s.test().assertSubscribed());
   }
 }
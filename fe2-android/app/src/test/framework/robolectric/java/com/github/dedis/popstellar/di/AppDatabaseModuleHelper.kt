@@ -2,6 +2,7 @@ package com.github.dedis.popstellar.di
 
 import android.content.Context
 import androidx.room.Room.inMemoryDatabaseBuilder
+import com.github.dedis.popstellar.model.network.serializer.ValidationPolicy
 import com.github.dedis.popstellar.repository.database.AppDatabase
 import com.github.dedis.popstellar.repository.database.CustomTypeConverters
 
@@ -13,7 +14,10 @@ object AppDatabaseModuleHelper {
       .fallbackToDestructiveMigration()
       .addTypeConverter(
         CustomTypeConverters(
-          JsonModule.provideGson(DataRegistryModule.provideDataRegistryForGson())
+          JsonModule.provideGson(
+            DataRegistryModule.provideDataRegistryForGson(),
+            ValidationPolicy(ValidationPolicy.Mode.OFF)
+          )
         )
       )
       .build()
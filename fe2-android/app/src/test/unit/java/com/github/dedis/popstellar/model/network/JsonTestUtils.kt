@@ -8,6 +8,11 @@ import com.github.dedis.popstellar.model.network.serializer.JsonUtils.verifyJson
 import com.google.gson.JsonParseException
 import java.io.BufferedReader
 import java.io.InputStreamReader
+import java.nio.file.FileSystemNotFoundException
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
 import java.util.Objects
 import java.util.stream.Collectors
 import org.junit.Assert
@@ -23,6 +28,38 @@ object JsonTestUtils {
     return reader.lines().collect(Collectors.joining("\n"))
   }
 
+  /**
+   * List the json files of a resource directory, recursively.
+   *
+   * @param dir path of the directory inside the resources, such as "protocol/examples"
+   * @return the resource paths of the json files, sorted
+   */
+  @JvmStatic
+  fun listJsonFiles(dir: String): List<String> {
+    val uri =
+      Objects.requireNonNull(JsonTestUtils::class.java.classLoader).getResource(dir).toURI()
+    val root =
+      if (uri.scheme == "jar") {
+        val fileSystem =
+          try {
+            FileSystems.getFileSystem(uri)
+          } catch (e: FileSystemNotFoundException) {
+            FileSystems.newFileSystem(uri, emptyMap<String, Any>())
+          }
+        fileSystem.getPath(dir)
+      } else {
+        Paths.get(uri)
+      }
+
+    Files.walk(root).use { paths ->
+      return paths
+        .filter { path: Path -> path.toString().endsWith(".json") }
+        .map { path: Path -> dir + "/" + root.relativize(path).toString().replace('\\', '/') }
+        .sorted()
+        .collect(Collectors.toList())
+    }
+  }
+
   /**
    * Convert the given data to a json String, convert it back to a Data and compare them.
    *
@@ -1,10 +1,14 @@
 package com.github.dedis.popstellar.model.network.method
 
+import com.github.dedis.popstellar.model.network.GenericMessage
+import com.github.dedis.popstellar.model.network.JsonTestUtils
 import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
 import com.github.dedis.popstellar.model.network.method.message.data.rollcall.CreateRollCall
 import com.github.dedis.popstellar.model.objects.Channel.Companion.fromString
 import com.github.dedis.popstellar.testutils.Base64DataUtils
 import com.google.gson.Gson
+import com.google.gson.JsonObject
+import com.google.gson.JsonParseException
 import org.junit.Assert
 import org.junit.Test
 import java.time.Instant
@@ -58,6 +62,40 @@ class BroadcastTest {
     Assert.assertThrows(IllegalArgumentException::class.java) { Broadcast(CHANNEL, null) }
   }
 
+  @Test
+  fun broadcastIsReadAsGenericMessage() {
+    val broadcast = Broadcast(CHANNEL, MessageGeneral(KEYPAIR, DATA, JsonTestUtils.GSON))
+    val json = JsonTestUtils.GSON.toJson(broadcast, Message::class.java)
+
+    Assert.assertEquals(broadcast, JsonTestUtils.GSON.fromJson(json, GenericMessage::class.java))
+  }
+
+  @Test
+  fun broadcastWithParamsBeforeMethodIsRead() {
+    val broadcast = Broadcast(CHANNEL, MessageGeneral(KEYPAIR, DATA, JsonTestUtils.GSON))
+    val tree = JsonTestUtils.GSON.toJsonTree(broadcast, Message::class.java).asJsonObject
+    val reordered = JsonObject()
+    reordered.add("params", tree["params"])
+    reordered.add("method", tree["method"])
+    reordered.add("jsonrpc", tree["jsonrpc"])
+
+    Assert.assertEquals(
+      broadcast,
+      JsonTestUtils.GSON.fromJson(reordered.toString(), GenericMessage::class.java)
+    )
+  }
+
+  @Test
+  fun broadcastWithWrongVersionIsRejected() {
+    val broadcast = Broadcast(CHANNEL, MessageGeneral(KEYPAIR, DATA, JsonTestUtils.GSON))
+    val tree = JsonTestUtils.GSON.toJsonTree(broadcast, Message::class.java).asJsonObject
+    tree.addProperty("jsonrpc", "1.0")
+
+    Assert.assertThrows(JsonParseException::class.java) {
+      JsonTestUtils.GSON.fromJson(tree.toString(), GenericMessage::class.java)
+    }
+  }
+
   companion object {
     private val CHANNEL = fromString("root/stuff")
     private const val LAO_ID = "fEvAfdtNrykd9NPYl9ReHLX-6IP6SFLKTZJLeGUHZ_U="
@@ -5,6 +5,7 @@ import com.github.dedis.popstellar.di.DataRegistryModuleHelper.buildRegistry
 import com.github.dedis.popstellar.di.JsonModule.provideGson
 import com.github.dedis.popstellar.model.network.method.message.data.Data
 import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.model.network.method.message.data.message.WitnessMessageSignature
 import com.github.dedis.popstellar.model.objects.Lao.Companion.generateLaoId
 import com.github.dedis.popstellar.model.objects.security.Base64URLData
 import com.github.dedis.popstellar.model.objects.security.KeyPair
@@ -12,6 +13,8 @@ import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.model.objects.security.Signature
 import com.github.dedis.popstellar.model.objects.security.privatekey.PlainPrivateKey
+import com.google.gson.JsonParseException
+import com.google.gson.JsonParser
 import net.i2p.crypto.eddsa.Utils
 import org.hamcrest.CoreMatchers
 import org.hamcrest.MatcherAssert
@@ -100,13 +103,99 @@ class MessageGeneralTest {
       KEY_PAIR.publicKey, DATA_ENCODED, DATA, SIGNATURE, MESSAGE_ID, WITNESS_SIGNATURES
     )
     val expected = String.format(
-      "MessageGeneral{sender='%s', data='%s', signature='%s', messageId='%s', "
+      "MessageGeneral{sender='%s', dataEncoded='%s', signature='%s', messageId='%s', "
           + "witnessSignatures='%s'}",
-      KEY_PAIR.publicKey.toString(), DATA, SIGNATURE, MESSAGE_ID, WITNESS_SIGNATURES
+      KEY_PAIR.publicKey.toString(), DATA_ENCODED, SIGNATURE, MESSAGE_ID, WITNESS_SIGNATURES
     )
     Assert.assertEquals(expected, msg.toString())
   }
 
+  @Test
+  fun printingAndComparingDoNotDecodeTheData() {
+    val decoder: () -> Data = { throw JsonParseException("The data should not be decoded") }
+    val msg = MessageGeneral(
+      KEY_PAIR.publicKey, DATA_ENCODED, decoder, SIGNATURE, MESSAGE_ID, WITNESS_SIGNATURES
+    )
+    val decoded = MessageGeneral(
+      KEY_PAIR.publicKey, DATA_ENCODED, DATA, SIGNATURE, MESSAGE_ID, WITNESS_SIGNATURES
+    )
+
+    msg.toString()
+    Assert.assertEquals(decoded, msg)
+    Assert.assertEquals(decoded.hashCode(), msg.hashCode())
+  }
+
+  @Test
+  fun verifyDoesNotDecodeDataThatCannotBeAWitnessSignature() {
+    val decoder: () -> Data = { throw JsonParseException("The data should not be decoded") }
+    val msg = MessageGeneral(
+      KEY_PAIR.publicKey, DATA_ENCODED, decoder, SIGNATURE, MESSAGE_ID, WITNESS_SIGNATURES
+    )
+
+    Assert.assertTrue(msg.verify())
+  }
+
+  @Test
+  fun verifyChecksTheSignatureOfUndecodedWitnessSignature() {
+    val witness = MessageGeneral(
+      KEY_PAIR, WitnessMessageSignature(MESSAGE_ID, SIGNATURE), GSON
+    )
+    val received = MessageGeneral(
+      witness.sender,
+      witness.dataEncoded,
+      { GSON.fromJson(String(witness.dataEncoded.data), Data::class.java) },
+      witness.signature,
+      witness.messageId,
+      ArrayList()
+    )
+
+    // The sender signed the message, but the witness signature is not over the witnessed id
+    Assert.assertFalse(received.verify())
+  }
+
+  @Test
+  fun jsonRoundTrip() {
+    val msg = MessageGeneral(
+      KEY_PAIR.publicKey, DATA_ENCODED, DATA, SIGNATURE, MESSAGE_ID, WITNESS_SIGNATURES
+    )
+    val json = GSON.toJson(msg)
+
+    val pair = WITNESS_SIGNATURES[0]
+    val expected =
+      "{\"data\":\"${DATA_ENCODED.encoded}\",\"sender\":\"${KEY_PAIR.publicKey.encoded}\"," +
+        "\"signature\":\"${SIGNATURE.encoded}\",\"message_id\":\"${MESSAGE_ID.encoded}\"," +
+        "\"witness_signatures\":[{\"witness\":\"${pair.witness.encoded}\"," +
+        "\"signature\":\"${pair.signature.encoded}\"}]}"
+    Assert.assertEquals(expected, json)
+    Assert.assertEquals(msg, GSON.fromJson(json, MessageGeneral::class.java))
+    // Reading from a tree gives the same message
+    val tree = JsonParser.parseString(json)
+    Assert.assertEquals(msg, GSON.fromJson(tree, MessageGeneral::class.java))
+  }
+
+  @Test
+  fun jsonMissingFieldIsRejected() {
+    val json = "{\"data\":\"${DATA_ENCODED.encoded}\",\"sender\":\"${KEY_PAIR.publicKey.encoded}\"}"
+
+    Assert.assertThrows(JsonParseException::class.java) {
+      GSON.fromJson(json, MessageGeneral::class.java)
+    }
+  }
+
+  @Test
+  fun receivedDataIsDecodedOnFirstAccess() {
+    val msg = MessageGeneral(KEY_PAIR, DATA, GSON)
+    val invalidData = Base64URLData("{}".toByteArray(StandardCharsets.UTF_8))
+    val json = GSON.toJson(msg).replace(msg.dataEncoded.encoded, invalidData.encoded)
+
+    // The envelope is read without looking at the data
+    val received = GSON.fromJson(json, MessageGeneral::class.java)
+    Assert.assertEquals(msg.messageId, received.messageId)
+    Assert.assertThrows(JsonParseException::class.java) { received.data }
+    // A valid data is decoded once accessed
+    Assert.assertEquals(DATA, GSON.fromJson(GSON.toJson(msg), MessageGeneral::class.java).data)
+  }
+
   companion object {
     private val GSON = provideGson(buildRegistry())
     private val ORGANIZER = PublicKey("Z3DYtBxooGs6KxOAqCWD3ihR8M6ZPBjAmWp_w5VBaws=")
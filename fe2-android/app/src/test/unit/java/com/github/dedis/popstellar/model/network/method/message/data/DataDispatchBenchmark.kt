@@ -0,0 +1,90 @@
+package com.github.dedis.popstellar.model.network.method.message.data
+
+import com.github.dedis.popstellar.di.DataRegistryModuleHelper
+import com.github.dedis.popstellar.di.JsonModule
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.repository.MessageRepository
+import com.github.dedis.popstellar.repository.remote.MessageSender
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.allocatedBytes
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.assumeBenchmarkRequested
+import com.github.dedis.popstellar.utility.handler.MessageHandler
+import java.time.Instant
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.withSettings
+
+/**
+ * Measure the handling of a decoded message by [MessageHandler.handleMessage], from the lookup of
+ * its object and action names to the call of its handler, and check that it only allocates the
+ * context given to the handler.
+ *
+ * The repository is a mock, the cost of its calls is measured apart and left out of the result.
+ *
+ * Run it with `./gradlew testDebugUnitTest --tests '*DataDispatchBenchmark' -Pbenchmark`
+ */
+class DataDispatchBenchmark {
+
+  @Before
+  fun onlyWhenRequested() {
+    assumeBenchmarkRequested()
+  }
+
+  @Test
+  fun handlingOnlyAllocatesTheHandlerContext() {
+    val handled = LongArray(1)
+    val registry =
+        DataRegistry.Builder()
+            .add(Objects.CHIRP, Action.ADD, AddChirp::class.java) { _, _ -> handled[0]++ }
+            .build()
+    // The message is never found, so that it is handled every time
+    val messageRepo = mock(MessageRepository::class.java, withSettings().stubOnly())
+    val messageHandler = MessageHandler(messageRepo, registry)
+    val messageSender = mock(MessageSender::class.java)
+    val message =
+        MessageGeneral(
+            Base64DataUtils.generateKeyPair(),
+            AddChirp("text", null, Instant.now().epochSecond),
+            GSON)
+
+    // The data is decoded once, on the first handling
+    repeat(WARMUP_ROUNDS) { messageHandler.handleMessage(messageSender, Channel.ROOT, message) }
+    repeat(WARMUP_ROUNDS) { repositoryCalls(messageRepo, message) }
+
+    val repository = allocatedBytes {
+      repeat(MEASURED_ROUNDS) { repositoryCalls(messageRepo, message) }
+    }
+    val start = System.nanoTime()
+    val handling = allocatedBytes {
+      repeat(MEASURED_ROUNDS) { messageHandler.handleMessage(messageSender, Channel.ROOT, message) }
+    }
+    val elapsed = System.nanoTime() - start
+    val perMessage = (handling - repository) / MEASURED_ROUNDS
+
+    println("Handling of $MEASURED_ROUNDS messages : ${elapsed / MEASURED_ROUNDS} ns per message")
+    println("$perMessage bytes allocated per message, out of the repository")
+    assertEquals((WARMUP_ROUNDS + MEASURED_ROUNDS).toLong(), handled[0])
+    assertTrue("$perMessage bytes were allocated per message", perMessage <= HANDLER_CONTEXT_BYTES)
+  }
+
+  /** The calls made by MessageHandler to the repository for a message that was not handled yet */
+  private fun repositoryCalls(messageRepo: MessageRepository, message: MessageGeneral) {
+    messageRepo.isMessagePresent(message.messageId)
+    messageRepo.addMessage(message, isContentNeeded = true, toPersist = true)
+  }
+
+  companion object {
+    private const val WARMUP_ROUNDS = 100_000
+    private const val MEASURED_ROUNDS = 1_000_000
+
+    /** Upper bound of the size of a HandlerContext : a header and four references */
+    private const val HANDLER_CONTEXT_BYTES = 48L
+
+    private val GSON = JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry())
+  }
+}
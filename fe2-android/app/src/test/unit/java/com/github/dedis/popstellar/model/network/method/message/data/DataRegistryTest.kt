@@ -0,0 +1,80 @@
+package com.github.dedis.popstellar.model.network.method.message.data
+
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.DeleteChirp
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.repository.remote.MessageSender
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.utility.error.UnhandledDataTypeException
+import com.github.dedis.popstellar.utility.handler.data.HandlerContext
+import java.time.Instant
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import org.mockito.Mockito.mock
+
+class DataRegistryTest {
+  private val handled = ArrayList<AddChirp>()
+  private val registry =
+      DataRegistry.Builder()
+          .add(Objects.CHIRP, Action.ADD, AddChirp::class.java) { _, data: AddChirp ->
+            handled.add(data)
+          }
+          .add(Objects.CHIRP, Action.DELETE, DeleteChirp::class.java, null)
+          .build()
+
+  @Test
+  fun typeIsFoundForEveryRegisteredPair() {
+    assertEquals(AddChirp::class.java, registry.getType(Objects.CHIRP, Action.ADD))
+    assertEquals(DeleteChirp::class.java, registry.getType(Objects.CHIRP, Action.DELETE))
+    assertNull(registry.getType(Objects.CHIRP, Action.NOTIFY_ADD))
+    assertNull(registry.getType(Objects.LAO, Action.ADD))
+  }
+
+  @Test
+  fun dataIsGivenToItsHandler() {
+    registry.handle(CONTEXT, CHIRP, Objects.CHIRP, Action.ADD)
+
+    assertEquals(1, handled.size)
+    assertSame(CHIRP, handled[0])
+  }
+
+  @Test
+  fun pairsWithoutHandlerAreRejected() {
+    assertThrows(UnhandledDataTypeException::class.java) {
+      registry.handle(CONTEXT, CHIRP, Objects.CHIRP, Action.DELETE)
+    }
+    assertThrows(UnhandledDataTypeException::class.java) {
+      registry.handle(CONTEXT, CHIRP, Objects.LAO, Action.CREATE)
+    }
+  }
+
+  @Test
+  fun pairCanOnlyBeRegisteredOnce() {
+    assertThrows(IllegalArgumentException::class.java) {
+      DataRegistry.Builder()
+          .add(Objects.CHIRP, Action.ADD, AddChirp::class.java, null)
+          .add(Objects.CHIRP, Action.ADD, AddChirp::class.java, null)
+    }
+  }
+
+  @Test
+  fun valuesAreFoundByName() {
+    Objects.values().forEach { obj: Objects -> assertSame(obj, Objects.find(obj.`object`)) }
+    Action.values().forEach { action: Action -> assertSame(action, Action.find(action.action)) }
+    assertNull(Objects.find("not an object"))
+    assertNull(Action.find("not an action"))
+  }
+
+  companion object {
+    private val CHIRP = AddChirp("text", null, Instant.now().epochSecond)
+    private val CONTEXT =
+        HandlerContext(
+            Base64DataUtils.generateMessageID(),
+            Base64DataUtils.generatePublicKey(),
+            Channel.ROOT,
+            mock(MessageSender::class.java))
+  }
+}
@@ -49,6 +49,18 @@ class PostTransactionCoinTest {
     Assert.assertEquals(POST_TRANSACTION, res)
   }
 
+  @Test
+  fun receivedTransactionIdIsKeptTest() {
+    val GSON = provideGson(buildRegistry())
+    val receivedId = "2jmj7l5rSw0yVb-vlWAYkK-YBwk="
+    val json = GSON.toJsonTree(POST_TRANSACTION, Data::class.java).asJsonObject
+    json.addProperty("transaction_id", receivedId)
+
+    val res = GSON.fromJson(json.toString(), Data::class.java) as PostTransactionCoin
+    Assert.assertEquals(receivedId, res.transactionId)
+    Assert.assertEquals(TRANSACTION, res.transaction)
+  }
+
   @Test
   fun testHashCode() {
     val trans = Transaction(VERSION, TX_INS, TX_OUTS, TIMESTAMP)
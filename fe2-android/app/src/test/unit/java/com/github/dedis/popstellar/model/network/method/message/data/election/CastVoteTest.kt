@@ -1,15 +1,18 @@
 package com.github.dedis.popstellar.model.network.method.message.data.election
 
 import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.github.dedis.popstellar.model.network.JsonTestUtils.GSON
 import com.github.dedis.popstellar.model.network.JsonTestUtils.loadFile
 import com.github.dedis.popstellar.model.network.JsonTestUtils.parse
 import com.github.dedis.popstellar.model.network.JsonTestUtils.testData
+import com.github.dedis.popstellar.model.network.method.message.data.Data
 import com.github.dedis.popstellar.model.objects.Election.Companion.generateElectionQuestionId
 import com.github.dedis.popstellar.model.objects.Election.Companion.generateElectionSetupId
 import com.github.dedis.popstellar.model.objects.Lao.Companion.generateLaoId
 import com.github.dedis.popstellar.model.objects.security.Base64URLData
 import com.github.dedis.popstellar.testutils.Base64DataUtils
 import com.google.gson.JsonParseException
+import java.time.Duration
 import java.time.Instant
 import org.hamcrest.CoreMatchers
 import org.hamcrest.MatcherAssert
@@ -140,4 +143,16 @@ class CastVoteTest {
     val jsonInvalid1 = loadFile(pathDir + "wrong_vote_cast_vote_created_at_negative.json")
     Assert.assertThrows(JsonParseException::class.java) { parse(jsonInvalid1) }
   }
+
+  @Test
+  fun votesCastLongAgoAreStillReadTest() {
+    // On a catchup, votes are received long after they were cast
+    val castLongAgo = creation - Duration.ofDays(365).seconds
+    val json = GSON.toJsonTree(castOpenVote, Data::class.java).asJsonObject
+    json.addProperty("created_at", castLongAgo)
+
+    val read = parse(json.toString()) as CastVote
+    Assert.assertEquals(castLongAgo, read.creation)
+    Assert.assertEquals(plainVotes, read.votes)
+  }
 }
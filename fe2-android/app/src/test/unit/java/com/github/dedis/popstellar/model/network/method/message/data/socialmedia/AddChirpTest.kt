@@ -1,10 +1,12 @@
 package com.github.dedis.popstellar.model.network.method.message.data.socialmedia
 
 import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.github.dedis.popstellar.model.network.JsonTestUtils.GSON
 import com.github.dedis.popstellar.model.network.JsonTestUtils.loadFile
 import com.github.dedis.popstellar.model.network.JsonTestUtils.parse
 import com.github.dedis.popstellar.model.network.JsonTestUtils.testData
 import com.github.dedis.popstellar.model.network.method.message.data.Action
+import com.github.dedis.popstellar.model.network.method.message.data.Data
 import com.github.dedis.popstellar.model.network.method.message.data.Objects
 import com.github.dedis.popstellar.testutils.Base64DataUtils
 import com.google.gson.JsonParseException
@@ -73,6 +75,15 @@ class AddChirpTest {
     Assert.assertThrows(JsonParseException::class.java) { parse(invalidJson) }
   }
 
+  @Test
+  fun chirpWithoutParentIsWrittenWithoutParentIdTest() {
+    val chirp = AddChirp(TEXT, null, TIMESTAMP)
+    val json = GSON.toJsonTree(chirp, Data::class.java).asJsonObject
+
+    Assert.assertFalse(json.has("parent_id"))
+    Assert.assertEquals(chirp, parse(json.toString()))
+  }
+
   companion object {
     private const val TEXT = "Hello guys"
     private val PARENT_ID = Base64DataUtils.generateMessageID()
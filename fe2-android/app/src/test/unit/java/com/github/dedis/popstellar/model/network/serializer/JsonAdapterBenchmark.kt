@@ -0,0 +1,67 @@
+package com.github.dedis.popstellar.model.network.serializer
+
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.allocatedBytes
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.assumeBenchmarkRequested
+import com.google.gson.JsonParser
+import com.google.gson.reflect.TypeToken
+import java.time.Instant
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Compare the decoding of a list of messages, as found in a catchup answer, read straight from its
+ * text by the streaming adapters with the decoding of the same list once materialized as a tree.
+ *
+ * Run it with `./gradlew testDebugUnitTest --tests '*JsonAdapterBenchmark' -Pbenchmark`
+ */
+class JsonAdapterBenchmark {
+
+  @Before
+  fun onlyWhenRequested() {
+    assumeBenchmarkRequested()
+  }
+
+  @Test
+  fun streamingAgainstTreeDecoding() {
+    val gson = JsonTestUtils.GSON
+    val keyPair = Base64DataUtils.generateKeyPair()
+    val messages =
+      (0 until MESSAGES).map { i: Int ->
+        MessageGeneral(keyPair, AddChirp("chirp $i", null, Instant.now().epochSecond), gson)
+      }
+    val json = gson.toJson(messages)
+
+    val streamed = measure { gson.fromJson<List<MessageGeneral>>(json, LIST_TYPE) }
+    val tree =
+      measure { gson.fromJson<List<MessageGeneral>>(JsonParser.parseString(json), LIST_TYPE) }
+    assertEquals(messages, gson.fromJson<List<MessageGeneral>>(json, LIST_TYPE))
+
+    println("Decoding of $MESSAGES messages (${json.length} characters)")
+    println("Streaming : ${streamed.first / 1000} µs and ${streamed.second} bytes per message")
+    println("Tree      : ${tree.first / 1000} µs and ${tree.second} bytes per message")
+  }
+
+  /** @return the average time in nanoseconds and allocated bytes to decode one message */
+  private fun measure(decode: () -> Unit): Pair<Long, Long> {
+    repeat(WARMUP_ROUNDS) { decode() }
+
+    val start = System.nanoTime()
+    val allocated = allocatedBytes { repeat(MEASURED_ROUNDS) { decode() } }
+    val elapsed = System.nanoTime() - start
+
+    val decoded = MEASURED_ROUNDS.toLong() * MESSAGES
+    return Pair(elapsed / decoded, allocated / decoded)
+  }
+
+  companion object {
+    private const val MESSAGES = 1000
+    private const val WARMUP_ROUNDS = 10
+    private const val MEASURED_ROUNDS = 20
+    private val LIST_TYPE = object : TypeToken<List<MessageGeneral>>() {}.type
+  }
+}
@@ -0,0 +1,86 @@
+package com.github.dedis.popstellar.model.network.serializer
+
+import com.fasterxml.jackson.core.JsonProcessingException
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.google.gson.JsonParseException
+import com.google.gson.JsonParser
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertThrows
+import org.junit.Test
+
+class JsonUtilsTest {
+
+  @Test
+  fun treeIsConvertedToTheNodesJacksonWouldParse() {
+    val json = "{\"a\":[1,-2147483649,123456789012345678901234,1.5,2e3],\"b\":null,\"c\":true}"
+
+    assertEquals(MAPPER.readTree(json), JsonUtils.toJsonNode(JsonParser.parseString(json)))
+  }
+
+  @Test
+  fun examplesAreConvertedToTheNodesJacksonWouldParse() {
+    for (path in EXAMPLES) {
+      val json = JsonTestUtils.loadFile(path)
+      assertEquals(path, MAPPER.readTree(json), JsonUtils.toJsonNode(JsonParser.parseString(json)))
+    }
+  }
+
+  @Test
+  fun treeValidationAgreesWithStringValidation() {
+    var invalid = 0
+    for (path in EXAMPLES) {
+      val json = JsonTestUtils.loadFile(path)
+      val schema = schemaOf(path)
+
+      val stringValid = isValid { JsonUtils.verifyJson(schema, json) }
+      val treeValid = isValid { JsonUtils.verifyJson(schema, JsonParser.parseString(json)) }
+      assertEquals(path, stringValid, treeValid)
+      if (!treeValid) invalid++
+    }
+
+    // The corpus contains wrong examples, make sure they are detected
+    assertFalse(invalid == 0)
+  }
+
+  @Test
+  fun invalidTreeIsRejected() {
+    val json = JsonParser.parseString("{\"object\":\"lao\",\"action\":\"unknown\"}")
+
+    assertThrows(JsonParseException::class.java) {
+      JsonUtils.verifyJson(JsonUtils.DATA_SCHEMA, json)
+    }
+  }
+
+  companion object {
+    private val MAPPER = ObjectMapper()
+
+    const val EXAMPLES_DIR = "protocol/examples"
+
+    /** Examples of the corpus that are well-formed json, the others never reach the validation */
+    val EXAMPLES =
+      JsonTestUtils.listJsonFiles(EXAMPLES_DIR).filter { path: String ->
+        try {
+          val node = MAPPER.readTree(JsonTestUtils.loadFile(path))
+          node != null && !node.isMissingNode
+        } catch (e: JsonProcessingException) {
+          false
+        }
+      }
+
+    /** @return the schema the example at the given path is written against */
+    fun schemaOf(path: String): String {
+      return if (path.contains("/messageData/")) JsonUtils.DATA_SCHEMA else JsonUtils.ROOT_SCHEMA
+    }
+
+    private fun isValid(validation: () -> Unit): Boolean {
+      return try {
+        validation()
+        true
+      } catch (e: JsonParseException) {
+        false
+      }
+    }
+  }
+}
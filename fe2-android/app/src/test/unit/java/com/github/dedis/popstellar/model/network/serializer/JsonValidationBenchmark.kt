@@ -0,0 +1,67 @@
+package com.github.dedis.popstellar.model.network.serializer
+
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.assumeBenchmarkRequested
+import com.google.gson.JsonElement
+import com.google.gson.JsonParseException
+import com.google.gson.JsonParser
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Compare the cost of validating the messages of the protocol examples from their parsed Gson tree
+ * with the former String round trip.
+ *
+ * Run it with `./gradlew testDebugUnitTest --tests '*JsonValidationBenchmark' -Pbenchmark`
+ */
+class JsonValidationBenchmark {
+
+  @Before
+  fun onlyWhenRequested() {
+    assumeBenchmarkRequested()
+  }
+
+  @Test
+  fun validationFromTreeAgainstStringRoundTrip() {
+    val examples =
+      JsonUtilsTest.EXAMPLES.map { path: String ->
+        Pair(JsonUtilsTest.schemaOf(path), JsonParser.parseString(JsonTestUtils.loadFile(path)))
+      }
+    // Load the schemas beforehand
+    examples.forEach { (schema, _) -> JsonUtils.loadSchema(schema) }
+
+    val roundTrip =
+      measure(examples) { schema, json -> JsonUtils.verifyJson(schema, json.toString()) }
+    val tree = measure(examples) { schema, json -> JsonUtils.verifyJson(schema, json) }
+
+    println("Validation of ${examples.size} examples from ${JsonUtilsTest.EXAMPLES_DIR}")
+    println("String round trip : ${roundTrip / 1000} µs per message")
+    println("Parsed tree       : ${tree / 1000} µs per message")
+  }
+
+  /** @return the average time in nanoseconds spent to validate one message */
+  private fun measure(
+    examples: List<Pair<String, JsonElement>>,
+    validation: (String, JsonElement) -> Unit
+  ): Long {
+    fun round() {
+      for ((schema, json) in examples) {
+        try {
+          validation(schema, json)
+        } catch (e: JsonParseException) {
+          // The corpus contains wrong examples on purpose
+        }
+      }
+    }
+
+    repeat(WARMUP_ROUNDS) { round() }
+    val start = System.nanoTime()
+    repeat(MEASURED_ROUNDS) { round() }
+    return (System.nanoTime() - start) / (MEASURED_ROUNDS.toLong() * examples.size)
+  }
+
+  companion object {
+    private const val WARMUP_ROUNDS = 20
+    private const val MEASURED_ROUNDS = 100
+  }
+}
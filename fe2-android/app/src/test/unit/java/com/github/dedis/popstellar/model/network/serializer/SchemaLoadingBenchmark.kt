@@ -0,0 +1,58 @@
+package com.github.dedis.popstellar.model.network.serializer
+
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.assumeBenchmarkRequested
+import com.google.gson.JsonParser
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Measure the latency of the validation of the first message received, when the schemas are loaded
+ * from the resources on first use and when they were preloaded from the bundle at startup.
+ *
+ * Each measure uses a new registry, the classes of the validator being loaded by a first untimed
+ * registry. Run it with `./gradlew testDebugUnitTest --tests '*SchemaLoadingBenchmark'
+ * -Pbenchmark`
+ */
+class SchemaLoadingBenchmark {
+
+  @Before
+  fun onlyWhenRequested() {
+    assumeBenchmarkRequested()
+  }
+
+  @Test
+  fun firstMessageLatency() {
+    val message =
+        JsonUtils.toJsonNode(JsonParser.parseString(JsonTestUtils.loadFile(FIRST_MESSAGE)))
+    SchemaRegistry.fromResources().get(JsonUtils.ROOT_SCHEMA).validate(message)
+
+    var lazy = 0L
+    var preload = 0L
+    var preloaded = 0L
+    repeat(ROUNDS) {
+      val resources = SchemaRegistry.fromResources()
+      var start = System.nanoTime()
+      resources.get(JsonUtils.ROOT_SCHEMA).validate(message)
+      lazy += System.nanoTime() - start
+
+      val bundled = SchemaRegistry.fromBundle()
+      start = System.nanoTime()
+      bundled.preload(listOf(JsonUtils.ROOT_SCHEMA))
+      preload += System.nanoTime() - start
+      start = System.nanoTime()
+      bundled.get(JsonUtils.ROOT_SCHEMA).validate(message)
+      preloaded += System.nanoTime() - start
+    }
+
+    println("First message validation of $FIRST_MESSAGE, average over $ROUNDS registries")
+    println("Schemas loaded on first use   : ${lazy / ROUNDS / 1000} µs")
+    println("Preloaded from the bundle     : ${preloaded / ROUNDS / 1000} µs")
+    println("Preloading, in background     : ${preload / ROUNDS / 1000} µs")
+  }
+
+  companion object {
+    private const val FIRST_MESSAGE = "protocol/examples/query/subscribe/subscribe.json"
+    private const val ROUNDS = 20
+  }
+}
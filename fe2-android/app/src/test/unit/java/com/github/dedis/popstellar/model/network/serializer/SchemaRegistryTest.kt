@@ -0,0 +1,37 @@
+package com.github.dedis.popstellar.model.network.serializer
+
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.google.gson.JsonParser
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class SchemaRegistryTest {
+
+  @Test
+  fun bundleIsGenerated() {
+    assertNotNull(javaClass.classLoader?.getResource(SchemaRegistry.BUNDLE))
+  }
+
+  @Test
+  fun bundleValidatesLikeTheResources() {
+    val bundled = SchemaRegistry.fromBundle()
+    val resources = SchemaRegistry.fromResources()
+
+    for (path in JsonUtilsTest.EXAMPLES) {
+      val json = JsonUtils.toJsonNode(JsonParser.parseString(JsonTestUtils.loadFile(path)))
+      val schema = JsonUtilsTest.schemaOf(path)
+
+      assertEquals(path, resources.get(schema).validate(json), bundled.get(schema).validate(json))
+    }
+  }
+
+  @Test
+  fun preloadedSchemasAreKept() {
+    val registry = SchemaRegistry.fromBundle()
+    registry.preload(listOf(JsonUtils.ROOT_SCHEMA, JsonUtils.DATA_SCHEMA))
+
+    assertSame(registry.get(JsonUtils.DATA_SCHEMA), registry.get(JsonUtils.DATA_SCHEMA))
+  }
+}
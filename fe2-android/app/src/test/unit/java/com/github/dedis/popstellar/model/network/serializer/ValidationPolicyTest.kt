@@ -0,0 +1,106 @@
+package com.github.dedis.popstellar.model.network.serializer
+
+import com.github.dedis.popstellar.di.DataRegistryModuleHelper
+import com.github.dedis.popstellar.di.JsonModule
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.github.dedis.popstellar.model.network.method.message.data.Data
+import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.google.gson.JsonElement
+import com.google.gson.JsonParseException
+import com.google.gson.JsonParser
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Test
+
+class ValidationPolicyTest {
+
+  @Test
+  fun strictValidatesBothDirections() {
+    val policy = ValidationPolicy(ValidationPolicy.Mode.STRICT)
+
+    policy.verifyOutbound(JsonUtils.DATA_SCHEMA, VALID)
+    policy.verifyInbound(JsonUtils.DATA_SCHEMA, VALID, KIND)
+    assertThrows(JsonParseException::class.java) {
+      policy.verifyInbound(JsonUtils.DATA_SCHEMA, INVALID, KIND)
+    }
+
+    val stats = policy.stats
+    assertEquals(3L, stats.validated)
+    assertEquals(0L, stats.skipped)
+    assertEquals(1L, stats.failures)
+  }
+
+  @Test
+  fun skipOutboundOnlyValidatesInbound() {
+    val policy = ValidationPolicy(ValidationPolicy.Mode.SKIP_OUTBOUND)
+
+    policy.verifyOutbound(JsonUtils.DATA_SCHEMA, INVALID)
+    assertThrows(JsonParseException::class.java) {
+      policy.verifyInbound(JsonUtils.DATA_SCHEMA, INVALID, KIND)
+    }
+
+    assertEquals(1L, policy.stats.validated)
+    assertEquals(1L, policy.stats.skipped)
+  }
+
+  @Test
+  fun sampledValidatesFirstOfEachKindAndOneInN() {
+    val policy = ValidationPolicy(ValidationPolicy.Mode.SAMPLED, 4)
+
+    // First of its kind, validated
+    assertThrows(JsonParseException::class.java) {
+      policy.verifyInbound(JsonUtils.DATA_SCHEMA, INVALID, KIND)
+    }
+    // Then only the fourth one is
+    repeat(2) { policy.verifyInbound(JsonUtils.DATA_SCHEMA, INVALID, KIND) }
+    assertThrows(JsonParseException::class.java) {
+      policy.verifyInbound(JsonUtils.DATA_SCHEMA, INVALID, KIND)
+    }
+    // A new kind is validated right away
+    assertThrows(JsonParseException::class.java) {
+      policy.verifyInbound(JsonUtils.DATA_SCHEMA, INVALID, "other")
+    }
+    policy.verifyOutbound(JsonUtils.DATA_SCHEMA, INVALID)
+
+    val stats = policy.stats
+    assertEquals(3L, stats.validated)
+    assertEquals(3L, stats.skipped)
+    assertEquals(3L, stats.failures)
+  }
+
+  @Test
+  fun offValidatesNothing() {
+    val policy = ValidationPolicy(ValidationPolicy.Mode.OFF)
+
+    policy.verifyInbound(JsonUtils.DATA_SCHEMA, INVALID, KIND)
+    policy.verifyOutbound(JsonUtils.DATA_SCHEMA, INVALID)
+
+    assertEquals(0L, policy.stats.validated)
+    assertEquals(2L, policy.stats.skipped)
+  }
+
+  @Test
+  fun gsonAppliesItsPolicy() {
+    val policy = ValidationPolicy(ValidationPolicy.Mode.SKIP_OUTBOUND)
+    val gson = JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry(), policy)
+    val keyPair = Base64DataUtils.generateKeyPair()
+    val createLao = CreateLao("lao", keyPair.publicKey, ArrayList())
+
+    val json = gson.toJson(createLao, Data::class.java)
+    assertEquals(createLao, gson.fromJson(json, Data::class.java))
+
+    assertEquals(1L, policy.stats.validated)
+    assertEquals(1L, policy.stats.skipped)
+  }
+
+  companion object {
+    private const val KIND = "lao#create"
+    private val VALID: JsonElement =
+      JsonParser.parseString(
+        JsonTestUtils.loadFile("protocol/examples/messageData/lao_create/lao_create.json")
+      )
+    private val INVALID: JsonElement =
+      JsonParser.parseString("{\"object\":\"lao\",\"action\":\"unknown\"}")
+  }
+}
@@ -0,0 +1,92 @@
+package com.github.dedis.popstellar.model.objects
+
+import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
+import com.github.dedis.popstellar.model.objects.Election.ElectionBuilder
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.model.objects.security.PublicKey
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.allocatedBytes
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.assumeBenchmarkRequested
+import java.time.Instant
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Report the memory allocated to add the votes of an election one by one, as done when handling
+ * each CastVote, compared to maps copied on each read and each update.
+ *
+ * Run it with `./gradlew testDebugUnitTest --tests '*ElectionAllocationBenchmark' -Pbenchmark`
+ */
+class ElectionAllocationBenchmark {
+
+  @Before
+  fun onlyWhenRequested() {
+    assumeBenchmarkRequested()
+  }
+
+  @Test
+  fun allocationPerVote() {
+    val senders = List(VOTES) { Base64DataUtils.generatePublicKey() }
+    val messageIds = List(VOTES) { Base64DataUtils.generateMessageID() }
+    val votes: List<Vote> = listOf(PlainVote(QUESTION_ID, 1, false, null, ELECTION.id))
+
+    // Warm up both, so that the allocations of the class loading are not counted
+    persistent(senders, messageIds, votes)
+    copying(senders, messageIds, votes)
+
+    val persistent = allocatedBytes { persistent(senders, messageIds, votes) }
+    val copying = allocatedBytes { copying(senders, messageIds, votes) }
+
+    println("Votes added            : $VOTES")
+    println("Persistent collections : ${persistent / VOTES} bytes per vote")
+    println("Copied collections     : ${copying / VOTES} bytes per vote")
+  }
+
+  /** Add the votes to the election, as the election handler does */
+  private fun persistent(
+    senders: List<PublicKey>,
+    messageIds: List<MessageID>,
+    votes: List<Vote>,
+  ) {
+    var election = ELECTION
+    for (i in 0 until VOTES) {
+      check(election.messageMap[senders[i]] == null)
+      election =
+        election
+          .builder()
+          .updateMessageMap(senders[i], messageIds[i])
+          .updateVotes(senders[i], votes)
+          .build()
+    }
+    check(election.votesBySender.size == VOTES)
+  }
+
+  /** Add the votes to maps copied on each read, in the builder and on build */
+  private fun copying(senders: List<PublicKey>, messageIds: List<MessageID>, votes: List<Vote>) {
+    var votesBySender: Map<PublicKey, List<Vote>> = HashMap()
+    var messageMap: Map<PublicKey, MessageID> = HashMap()
+    for (i in 0 until VOTES) {
+      check(HashMap(messageMap)[senders[i]] == null)
+      val builderVotes = HashMap(votesBySender)
+      val builderMessages = HashMap(messageMap)
+      builderVotes[senders[i]] = ArrayList(votes)
+      builderMessages[senders[i]] = messageIds[i]
+      votesBySender = builderVotes.mapValues { (_, senderVotes) -> ArrayList(senderVotes) }
+      messageMap = HashMap(builderMessages)
+    }
+    check(votesBySender.size == VOTES)
+  }
+
+  companion object {
+    private const val VOTES = 5_000
+
+    private val CREATION = Instant.now().epochSecond
+    private val ELECTION =
+      ElectionBuilder("lao_id", CREATION, "Election")
+        .setElectionVersion(ElectionVersion.OPEN_BALLOT)
+        .build()
+    private val QUESTION_ID = Election.generateElectionQuestionId(ELECTION.id, "Question")
+  }
+}
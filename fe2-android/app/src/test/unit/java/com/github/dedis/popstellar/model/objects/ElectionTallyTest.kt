@@ -0,0 +1,114 @@
+package com.github.dedis.popstellar.model.objects
+
+import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionQuestion
+import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
+import com.github.dedis.popstellar.model.network.method.message.data.election.EncryptedVote
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
+import com.github.dedis.popstellar.model.network.method.message.data.election.QuestionResult
+import com.github.dedis.popstellar.model.objects.Election.ElectionBuilder
+import com.github.dedis.popstellar.model.objects.security.PublicKey
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.utility.security.HashSHA256.hash
+import java.time.Instant
+import org.junit.Assert
+import org.junit.Test
+
+class ElectionTallyTest {
+
+  @Test
+  fun votesOfASenderReplaceTheirPreviousVotes() {
+    val tally = ElectionTally(listOf(QUESTION), ElectionVersion.OPEN_BALLOT)
+    val sender = Base64DataUtils.generatePublicKey()
+
+    tally.update(sender, listOf(vote(0)))
+    tally.update(Base64DataUtils.generatePublicKey(), listOf(vote(0)))
+    tally.update(sender, listOf(vote(1)))
+
+    Assert.assertEquals(2, tally.voters)
+    Assert.assertEquals(
+      mapOf(QUESTION.id to setOf(QuestionResult(YES, 1), QuestionResult(NO, 1))),
+      tally.results(),
+    )
+  }
+
+  @Test
+  fun registeredVotesHashIsTheHashOfTheElection() {
+    val senders = List(3) { Base64DataUtils.generatePublicKey() }
+    val builder = ELECTION.builder()
+    // Two senders cast the same vote, which has the same id
+    senders.forEachIndexed { i: Int, sender: PublicKey ->
+      builder
+        .updateVotes(sender, listOf(vote(i % 2)))
+        .updateMessageMap(sender, Base64DataUtils.generateMessageID())
+    }
+    val election = builder.build()
+
+    val tally = ElectionTally.of(election)
+
+    Assert.assertEquals(election.computeRegisteredVotesHash(), tally.registeredVotesHash)
+  }
+
+  @Test
+  fun registeredVotesHashIsEmptyWithoutVotes() {
+    Assert.assertEquals("", ElectionTally.of(ELECTION).registeredVotesHash)
+  }
+
+  @Test
+  fun registeredVotesHashFollowsTheVotes() {
+    val tally = ElectionTally(listOf(QUESTION), ElectionVersion.OPEN_BALLOT)
+    val sender = Base64DataUtils.generatePublicKey()
+    tally.update(sender, listOf(vote(0)))
+    val firstHash = tally.registeredVotesHash
+
+    tally.update(sender, listOf(vote(1)))
+
+    Assert.assertNotEquals(firstHash, tally.registeredVotesHash)
+    Assert.assertEquals(hash(vote(1).id), tally.registeredVotesHash)
+  }
+
+  @Test
+  fun resultsWithoutTheEmptyOptionsMatch() {
+    val tally = ElectionTally(listOf(QUESTION), ElectionVersion.OPEN_BALLOT)
+    tally.update(Base64DataUtils.generatePublicKey(), listOf(vote(0)))
+
+    Assert.assertTrue(tally.matches(mapOf(QUESTION.id to setOf(QuestionResult(YES, 1)))))
+    Assert.assertTrue(
+      tally.matches(
+        mapOf(QUESTION.id to setOf(QuestionResult(YES, 1), QuestionResult(NO, 0))),
+      ),
+    )
+    Assert.assertFalse(tally.matches(mapOf(QUESTION.id to setOf(QuestionResult(NO, 1)))))
+    Assert.assertFalse(tally.matches(emptyMap()))
+  }
+
+  @Test
+  fun encryptedVotesAreNotTallied() {
+    val tally = ElectionTally(listOf(QUESTION), ElectionVersion.SECRET_BALLOT)
+    val encrypted = Base64DataUtils.generateRandomBase64String()
+    val vote = EncryptedVote(QUESTION.id, encrypted, false, null, ELECTION.id)
+    tally.update(Base64DataUtils.generatePublicKey(), listOf(vote))
+
+    Assert.assertNull(tally.results())
+    Assert.assertTrue(tally.matches(mapOf(QUESTION.id to setOf(QuestionResult(NO, 1)))))
+    Assert.assertEquals(hash(vote.id), tally.registeredVotesHash)
+  }
+
+  private fun vote(option: Int): PlainVote {
+    return PlainVote(QUESTION.id, option, false, null, ELECTION.id)
+  }
+
+  companion object {
+    private const val YES = "Yes"
+    private const val NO = "No"
+
+    private val ELECTION =
+      ElectionBuilder("lao_id", Instant.now().epochSecond, "Election")
+        .setElectionVersion(ElectionVersion.OPEN_BALLOT)
+        .build()
+    private val QUESTION =
+      ElectionQuestion(
+        ELECTION.id,
+        ElectionQuestion.Question("Question", "Plurality", listOf(YES, NO), false),
+      )
+  }
+}
@@ -8,6 +8,7 @@ import com.github.dedis.popstellar.model.objects.Election.ElectionBuilder
 import com.github.dedis.popstellar.model.objects.event.EventType
 import com.github.dedis.popstellar.model.objects.security.Base64URLData
 import com.github.dedis.popstellar.model.objects.security.elGamal.ElectionKeyPair.Companion.generateKeyPair
+import com.github.dedis.popstellar.testutils.Base64DataUtils
 import java.time.Instant
 import org.hamcrest.CoreMatchers
 import org.hamcrest.MatcherAssert
@@ -75,4 +76,31 @@ class ElectionTest {
   fun typeTest() {
     Assert.assertEquals(EventType.ELECTION, election.type)
   }
+
+  @Test
+  fun updatingTheVotesDoesNotModifyTheElection() {
+    val sender = Base64DataUtils.generatePublicKey()
+    val messageId = Base64DataUtils.generateMessageID()
+    val withVotes =
+      election.builder().updateVotes(sender, plainVotes).updateMessageMap(sender, messageId).build()
+    val otherSender = Base64DataUtils.generatePublicKey()
+    val withMoreVotes = withVotes.builder().updateVotes(otherSender, plainVotes).build()
+
+    Assert.assertTrue(election.votesBySender.isEmpty())
+    Assert.assertEquals(mapOf(sender to plainVotes), withVotes.votesBySender)
+    Assert.assertEquals(mapOf(sender to messageId), withVotes.messageMap)
+    Assert.assertEquals(
+      mapOf(sender to plainVotes, otherSender to plainVotes),
+      withMoreVotes.votesBySender,
+    )
+  }
+
+  @Test
+  fun encryptedVotesAreRejectedInAnOpenBallotElection() {
+    val encryptedVotes = election.encrypt(plainVotes)
+    val sender = Base64DataUtils.generatePublicKey()
+    val builder = election.builder().updateVotes(sender, encryptedVotes)
+
+    Assert.assertThrows(IllegalArgumentException::class.java) { builder.build() }
+  }
 }
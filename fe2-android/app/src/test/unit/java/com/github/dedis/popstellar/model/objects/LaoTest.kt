@@ -85,6 +85,22 @@ class LaoTest {
     Assert.assertTrue(LAO_1.pendingUpdates.contains(update))
   }
 
+  @Test
+  fun removePendingUpdatesUntilTest() {
+    val lao = Lao(LAO_NAME_1, ORGANIZER, Instant.now().epochSecond)
+    val old = PendingUpdate(1L, MessageID("foo"))
+    val recent = PendingUpdate(3L, MessageID("bar"))
+    lao.addPendingUpdate(old)
+    lao.addPendingUpdate(recent)
+    val copy = lao.copy()
+
+    lao.removePendingUpdatesUntil(2L)
+
+    Assert.assertEquals(setOf(recent), lao.pendingUpdates)
+    // The copy is not affected
+    Assert.assertEquals(setOf(old, recent), copy.pendingUpdates)
+  }
+
   companion object {
     private const val LAO_NAME_1 = "LAO name 1"
     private val ORGANIZER = Base64DataUtils.generatePublicKey()
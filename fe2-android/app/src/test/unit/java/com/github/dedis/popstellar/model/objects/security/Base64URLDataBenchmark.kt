@@ -0,0 +1,83 @@
+package com.github.dedis.popstellar.model.objects.security
+
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.allocatedBytes
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.assumeBenchmarkRequested
+import com.google.gson.reflect.TypeToken
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Measure the allocations made while looking up the ids and senders of the messages of a typical
+ * catchup in maps keyed by [MessageID] and [PublicKey], as the repositories do.
+ *
+ * Run it with `./gradlew testDebugUnitTest --tests '*Base64URLDataBenchmark' -Pbenchmark`
+ */
+class Base64URLDataBenchmark {
+
+  @Before
+  fun onlyWhenRequested() {
+    assumeBenchmarkRequested()
+  }
+
+  @Test
+  fun catchupLookups() {
+    val gson = JsonTestUtils.GSON
+    val senders = (0 until SENDERS).map { Base64DataUtils.generateKeyPair() }
+    val sent =
+        (0 until MESSAGES).map { i: Int ->
+          MessageGeneral(
+              senders[i % SENDERS], AddChirp("chirp $i", null, Instant.now().epochSecond), gson)
+        }
+
+    // The repositories hold the handled messages and the known users
+    val messages = ConcurrentHashMap<MessageID, MessageGeneral>()
+    val users = ConcurrentHashMap<PublicKey, Int>()
+    sent.forEach { msg: MessageGeneral ->
+      messages[msg.messageId] = msg
+      users.merge(msg.sender, 1) { a: Int, b: Int -> a + b }
+    }
+
+    // The same messages received again in a catchup are distinct but equal objects
+    val catchup = gson.fromJson<List<MessageGeneral>>(gson.toJson(sent), LIST_TYPE)
+
+    var found = 0
+    repeat(WARMUP_ROUNDS) { found += lookup(catchup, messages, users) }
+
+    val start = System.nanoTime()
+    val allocated = allocatedBytes {
+      repeat(MEASURED_ROUNDS) { found += lookup(catchup, messages, users) }
+    }
+    val elapsed = System.nanoTime() - start
+
+    val lookups = MEASURED_ROUNDS.toLong() * MESSAGES * 2
+    println("Lookups of the ids and senders of a $MESSAGES messages catchup ($found found)")
+    println("${elapsed / lookups} ns and ${allocated / lookups} bytes allocated per lookup")
+  }
+
+  private fun lookup(
+      catchup: List<MessageGeneral>,
+    messages: Map<MessageID, MessageGeneral>,
+    users: Map<PublicKey, Int>
+  ): Int {
+    var found = 0
+    for (msg in catchup) {
+      if (messages.containsKey(msg.messageId)) found++
+      if (users.containsKey(msg.sender)) found++
+    }
+    return found
+  }
+
+  companion object {
+    private const val MESSAGES = 1000
+    private const val SENDERS = 50
+    private const val WARMUP_ROUNDS = 50
+    private const val MEASURED_ROUNDS = 200
+    private val LIST_TYPE = object : TypeToken<List<MessageGeneral>>() {}.type
+  }
+}
@@ -61,6 +61,29 @@ class Base64URLDataTest {
     Assert.assertEquals("Signature($ENCODED_1)", signature.toString())
   }
 
+  @Test
+  fun encodedIsComputedOnce() {
+    val data = Base64URLData(DATA_1)
+
+    Assert.assertSame(data.encoded, data.encoded)
+  }
+
+  @Test
+  fun viewsDoNotExposeTheData() {
+    val source = DATA_1.copyOf()
+    val data = Base64URLData(source)
+    source[0] = 0
+    data.data[0] = 0
+
+    Assert.assertEquals(DATA_1.size, data.size)
+    Assert.assertTrue(data.contentEquals(DATA_1))
+    Assert.assertFalse(data.contentEquals(DATA_2))
+
+    val buffer = data.asReadOnlyBuffer()
+    Assert.assertTrue(buffer.isReadOnly)
+    Assert.assertEquals(DATA_1[0], buffer.get(0))
+  }
+
   companion object {
     private val DATA_1 = byteArrayOf(43, 12, -65, 24)
     private const val ENCODED_1 = "Kwy_GA=="
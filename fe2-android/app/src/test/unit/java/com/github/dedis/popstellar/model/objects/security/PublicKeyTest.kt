@@ -0,0 +1,47 @@
+package com.github.dedis.popstellar.model.objects.security
+
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import org.junit.Assert
+import org.junit.Test
+
+class PublicKeyTest {
+  @Test
+  fun internReturnsTheSameInstanceForEqualKeys() {
+    val key = Base64DataUtils.generatePublicKey()
+    val interned = PublicKey.intern(key.encoded)
+
+    Assert.assertEquals(key, interned)
+    Assert.assertSame(interned, PublicKey.intern(String(key.encoded.toCharArray())))
+    Assert.assertNotSame(interned, PublicKey.intern(Base64DataUtils.generatePublicKey().encoded))
+  }
+
+  @Test
+  fun internedKeyVerifiesSignatures() {
+    val keyPair = Base64DataUtils.generateKeyPair()
+    val data = Base64URLData("data".toByteArray())
+    val signature = keyPair.sign(data)
+
+    Assert.assertTrue(PublicKey.intern(keyPair.publicKey.encoded).verify(signature, data))
+  }
+
+  @Test
+  fun labelAndHashAreComputedOnce() {
+    val key = Base64DataUtils.generatePublicKey()
+
+    Assert.assertSame(key.getLabel(), key.getLabel())
+    Assert.assertSame(key.computeHash(), key.computeHash())
+    Assert.assertEquals(PublicKey(key.data).computeHash(), key.computeHash())
+  }
+
+  @Test
+  fun keyOfWrongLengthIsRejected() {
+    Assert.assertThrows(IllegalArgumentException::class.java) {
+      PublicKey(ByteArray(KEY_LENGTH - 1))
+    }
+    Assert.assertThrows(IllegalArgumentException::class.java) { PublicKey.intern("") }
+  }
+
+  companion object {
+    private const val KEY_LENGTH = 32
+  }
+}
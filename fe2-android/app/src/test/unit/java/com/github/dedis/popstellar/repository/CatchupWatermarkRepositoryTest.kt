@@ -0,0 +1,96 @@
+package com.github.dedis.popstellar.repository
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.github.dedis.popstellar.di.DataRegistryModuleHelper
+import com.github.dedis.popstellar.di.JsonModule
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.repository.database.AppDatabase
+import com.github.dedis.popstellar.repository.database.catchup.CatchupWatermarkDao
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.testutils.MockitoKotlinHelpers
+import io.reactivex.Completable
+import io.reactivex.Single
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mock
+import org.mockito.Mockito
+import org.mockito.junit.MockitoJUnit
+import org.mockito.junit.MockitoRule
+
+@RunWith(AndroidJUnit4::class)
+class CatchupWatermarkRepositoryTest {
+  @Mock private lateinit var appDatabase: AppDatabase
+
+  @Mock private lateinit var watermarkDao: CatchupWatermarkDao
+  private lateinit var watermarkRepository: CatchupWatermarkRepository
+
+  @JvmField @Rule(order = 0) val mockitoRule: MockitoRule = MockitoJUnit.rule()
+
+  @Before
+  fun setUp() {
+    Mockito.`when`(appDatabase.catchupWatermarkDao()).thenReturn(watermarkDao)
+    Mockito.`when`(watermarkDao.getAll()).thenReturn(Single.just(emptyList()))
+    Mockito.`when`(watermarkDao.insert(MockitoKotlinHelpers.any()))
+      .thenReturn(Completable.complete())
+
+    watermarkRepository = CatchupWatermarkRepository(appDatabase)
+  }
+
+  @Test
+  fun unknownChannelIsProcessedEntirely() {
+    Assert.assertEquals(0, watermarkRepository.firstUnappliedPosition(CHANNEL, IDS))
+  }
+
+  @Test
+  fun appliedMessagesAreSkipped() {
+    watermarkRepository.updateWatermark(CHANNEL, IDS, 1)
+
+    Assert.assertEquals(2, watermarkRepository.firstUnappliedPosition(CHANNEL, IDS))
+    // Other channels are not affected
+    Assert.assertEquals(0, watermarkRepository.firstUnappliedPosition(Channel.ROOT, IDS))
+    Mockito.verify(watermarkDao).insert(MockitoKotlinHelpers.any())
+  }
+
+  @Test
+  fun changedHistoryIsProcessedEntirely() {
+    watermarkRepository.updateWatermark(CHANNEL, IDS, 1)
+
+    val reordered = listOf(IDS[1], IDS[0], IDS[2])
+    Assert.assertEquals(0, watermarkRepository.firstUnappliedPosition(CHANNEL, reordered))
+    Assert.assertEquals(0, watermarkRepository.firstUnappliedPosition(CHANNEL, IDS.take(1)))
+  }
+
+  @Test
+  fun historyWithAnotherPrefixIsProcessedEntirely() {
+    watermarkRepository.updateWatermark(CHANNEL, IDS, 1)
+
+    // Another server may hold the same message at the high-water mark, after other messages
+    val otherServer = listOf(IDS[3], IDS[1], IDS[2])
+    Assert.assertEquals(0, watermarkRepository.firstUnappliedPosition(CHANNEL, otherServer))
+  }
+
+  @Test
+  fun clearedWatermarksAreForgotten() {
+    watermarkRepository.updateWatermark(CHANNEL, IDS, 1)
+
+    watermarkRepository.clear()
+
+    Assert.assertEquals(0, watermarkRepository.firstUnappliedPosition(CHANNEL, IDS))
+  }
+
+  companion object {
+    private val GSON = JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry())
+    private val KEY_PAIR = Base64DataUtils.generateKeyPair()
+    private val CHANNEL = Channel.ROOT.subChannel("channel")
+    private val MESSAGES =
+      listOf("first", "second", "third", "fourth").map { name: String ->
+        MessageGeneral(KEY_PAIR, CreateLao(name, KEY_PAIR.publicKey, ArrayList()), GSON)
+      }
+    private val IDS = MESSAGES.map { msg: MessageGeneral -> msg.messageId }
+  }
+}
@@ -4,11 +4,13 @@ import android.app.Application
 import androidx.test.core.app.ApplicationProvider
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
 import com.github.dedis.popstellar.model.objects.Election.ElectionBuilder
 import com.github.dedis.popstellar.model.objects.Lao.Companion.generateLaoId
 import com.github.dedis.popstellar.model.objects.event.EventState
 import com.github.dedis.popstellar.repository.database.AppDatabase
 import com.github.dedis.popstellar.repository.database.event.election.ElectionDao
+import com.github.dedis.popstellar.repository.database.event.election.ElectionVoteDao
 import com.github.dedis.popstellar.testutils.Base64DataUtils
 import com.github.dedis.popstellar.testutils.MockitoKotlinHelpers
 import com.github.dedis.popstellar.testutils.ObservableUtils
@@ -35,6 +37,7 @@ class ElectionRepositoryTest {
   @Mock private lateinit var appDatabase: AppDatabase
 
   @Mock private lateinit var electionDao: ElectionDao
+  @Mock private lateinit var electionVoteDao: ElectionVoteDao
   private lateinit var repo: ElectionRepository
 
   @JvmField @Rule(order = 0) val mockitoRule: MockitoRule = MockitoJUnit.rule()
@@ -48,6 +51,11 @@ class ElectionRepositoryTest {
       .thenReturn(Single.just(emptyList()))
     Mockito.`when`(electionDao.insert(MockitoKotlinHelpers.any()))
       .thenReturn(Completable.complete())
+    Mockito.`when`(appDatabase.electionVoteDao()).thenReturn(electionVoteDao)
+    Mockito.`when`(electionVoteDao.getVotesByLaoId(ArgumentMatchers.anyString()))
+      .thenReturn(Single.just(emptyList()))
+    Mockito.`when`(electionVoteDao.insert(MockitoKotlinHelpers.any()))
+      .thenReturn(Completable.complete())
   }
 
   @Test
@@ -87,6 +95,25 @@ class ElectionRepositoryTest {
     )
   }
 
+  @Test
+  @Throws(UnknownElectionException::class)
+  fun votesArePersistedWithoutTheElection() {
+    repo.updateElection(ELECTION)
+    val sender = Base64DataUtils.generatePublicKey()
+    val messageId = Base64DataUtils.generateMessageID()
+    val votes =
+      listOf(PlainVote(Base64DataUtils.generateRandomBase64String(), 1, false, null, ELECTION.id))
+
+    repo.updateVotes(ELECTION, sender, messageId, votes)
+
+    val election = repo.getElection(LAO_ID, ELECTION.id)
+    Assert.assertEquals(votes, election.votesBySender[sender])
+    Assert.assertEquals(messageId, election.messageMap[sender])
+    Mockito.verify(electionVoteDao).insert(MockitoKotlinHelpers.any())
+    // The election itself is only persisted by its first update
+    Mockito.verify(electionDao, Mockito.times(1)).insert(MockitoKotlinHelpers.any())
+  }
+
   @Test
   fun retrievingAnInvalidElectionThrowsAnException() {
     Assert.assertThrows(UnknownElectionException::class.java) {
@@ -0,0 +1,66 @@
+package com.github.dedis.popstellar.repository
+
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.assumeBenchmarkRequested
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Report the memory taken by the index of the message ids and the cost of its lookups, compared to
+ * a set of [MessageID].
+ *
+ * Run it with `./gradlew testDebugUnitTest --tests '*MessageIdIndexBenchmark' -Pbenchmark`
+ */
+class MessageIdIndexBenchmark {
+
+  @Before
+  fun onlyWhenRequested() {
+    assumeBenchmarkRequested()
+  }
+
+  @Test
+  fun memoryAndLookups() {
+    val ids = List(IDS) { Base64DataUtils.generateMessageID() }
+    // Lookups of copies, as the ids of the received messages are new instances
+    val present = ids.map { id: MessageID -> MessageID(id.encoded) }
+    val absent = List(IDS) { Base64DataUtils.generateMessageID() }
+
+    val index = MessageIdIndex()
+    index.addAll(ids)
+    val set = HashSet(ids)
+
+    val indexLookup = measure(present, absent) { id: MessageID -> id in index }
+    val setLookup = measure(present, absent) { id: MessageID -> id in set }
+
+    println("Message ids indexed : $IDS")
+    println("Index table         : ${index.memoryBytes / 1024} KiB")
+    println("Index lookups       : $indexLookup ns per id")
+    println("Set lookups         : $setLookup ns per id")
+  }
+
+  /** @return the average time in nanoseconds of a lookup */
+  private fun measure(
+      present: List<MessageID>,
+      absent: List<MessageID>,
+      lookup: (MessageID) -> Boolean
+  ): Long {
+    fun round(): Int {
+      var found = 0
+      present.forEach { id: MessageID -> if (lookup(id)) found++ }
+      absent.forEach { id: MessageID -> if (lookup(id)) found++ }
+      return found
+    }
+
+    repeat(WARMUP_ROUNDS) { round() }
+    val start = System.nanoTime()
+    repeat(MEASURED_ROUNDS) { check(round() == present.size) }
+    return (System.nanoTime() - start) / (MEASURED_ROUNDS.toLong() * (present.size + absent.size))
+  }
+
+  companion object {
+    private const val IDS = 100_000
+    private const val WARMUP_ROUNDS = 5
+    private const val MEASURED_ROUNDS = 20
+  }
+}
@@ -0,0 +1,68 @@
+package com.github.dedis.popstellar.repository
+
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import java.util.Base64
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class MessageIdIndexTest {
+
+  @Test
+  fun addedIdsArePresent() {
+    val index = MessageIdIndex()
+    val ids = List(IDS) { Base64DataUtils.generateMessageID() }
+
+    ids.forEach { id: MessageID -> assertTrue(index.add(id)) }
+
+    // Enough ids for the table to grow several times
+    assertEquals(IDS, index.size)
+    ids.forEach { id: MessageID -> assertTrue(index.contains(MessageID(id.encoded))) }
+    repeat(IDS) { assertFalse(index.contains(Base64DataUtils.generateMessageID())) }
+  }
+
+  @Test
+  fun idsAreOnlyAddedOnce() {
+    val index = MessageIdIndex()
+    val id = Base64DataUtils.generateMessageID()
+
+    assertTrue(index.add(id))
+    assertFalse(index.add(MessageID(id.encoded)))
+    index.addAll(listOf(id, id))
+    assertEquals(1, index.size)
+  }
+
+  @Test
+  fun zeroAndShortIdsAreSupported() {
+    val index = MessageIdIndex()
+    val zero = MessageID(Base64.getUrlEncoder().encodeToString(ByteArray(MessageIdIndex.ID_BYTES)))
+    val short = MessageID(Base64.getUrlEncoder().encodeToString(ByteArray(SHORT_ID_BYTES) { 1 }))
+
+    assertFalse(index.contains(zero))
+    assertFalse(index.contains(short))
+    assertTrue(index.add(zero))
+    assertTrue(index.add(short))
+    assertTrue(index.contains(zero))
+    assertTrue(index.contains(short))
+    assertEquals(2, index.size)
+  }
+
+  @Test
+  fun clearRemovesAllIds() {
+    val index = MessageIdIndex()
+    val ids = List(IDS) { Base64DataUtils.generateMessageID() }
+    index.addAll(ids)
+
+    index.clear()
+
+    assertEquals(0, index.size)
+    ids.forEach { id: MessageID -> assertFalse(index.contains(id)) }
+  }
+
+  companion object {
+    private const val IDS = 10_000
+    private const val SHORT_ID_BYTES = 20
+  }
+}
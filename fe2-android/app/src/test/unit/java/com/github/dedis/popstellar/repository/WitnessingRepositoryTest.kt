@@ -15,6 +15,7 @@ import com.github.dedis.popstellar.repository.database.AppDatabase
 import com.github.dedis.popstellar.repository.database.digitalcash.HashDao
 import com.github.dedis.popstellar.repository.database.digitalcash.TransactionDao
 import com.github.dedis.popstellar.repository.database.event.election.ElectionDao
+import com.github.dedis.popstellar.repository.database.event.election.ElectionVoteDao
 import com.github.dedis.popstellar.repository.database.event.meeting.MeetingDao
 import com.github.dedis.popstellar.repository.database.event.rollcall.RollCallDao
 import com.github.dedis.popstellar.repository.database.witnessing.PendingDao
@@ -51,6 +52,7 @@ class WitnessingRepositoryTest {
   @Mock private lateinit var transactionDao: TransactionDao
   @Mock private lateinit var hashDao: HashDao
   @Mock private lateinit var electionDao: ElectionDao
+  @Mock private lateinit var electionVoteDao: ElectionVoteDao
   @Mock private lateinit var meetingDao: MeetingDao
 
   private lateinit var witnessingRepository: WitnessingRepository
@@ -118,6 +120,11 @@ class WitnessingRepositoryTest {
       .thenReturn(Single.just(emptyList()))
     Mockito.`when`(electionDao.insert(MockitoKotlinHelpers.any()))
       .thenReturn(Completable.complete())
+    Mockito.`when`(appDatabase.electionVoteDao()).thenReturn(electionVoteDao)
+    Mockito.`when`(electionVoteDao.getVotesByLaoId(ArgumentMatchers.anyString()))
+      .thenReturn(Single.just(emptyList()))
+    Mockito.`when`(electionVoteDao.insert(MockitoKotlinHelpers.any()))
+      .thenReturn(Completable.complete())
 
     Mockito.`when`(meetingDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
     Mockito.`when`(meetingDao.getMeetingsByLaoId(ArgumentMatchers.anyString()))
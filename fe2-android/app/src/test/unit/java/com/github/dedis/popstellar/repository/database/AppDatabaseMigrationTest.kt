@@ -0,0 +1,136 @@
+package com.github.dedis.popstellar.repository.database
+
+import android.content.ContentValues
+import android.database.sqlite.SQLiteDatabase
+import androidx.room.Room
+import androidx.room.testing.MigrationTestHelper
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.github.dedis.popstellar.di.DataRegistryModule
+import com.github.dedis.popstellar.di.JsonModule
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
+import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.model.network.serializer.ValidationPolicy
+import com.github.dedis.popstellar.model.objects.Election
+import com.github.dedis.popstellar.model.objects.Election.ElectionBuilder
+import com.github.dedis.popstellar.model.objects.Lao.Companion.generateLaoId
+import com.github.dedis.popstellar.model.objects.security.MessageID
+import com.github.dedis.popstellar.model.objects.security.PublicKey
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import java.time.Instant
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class AppDatabaseMigrationTest {
+  @JvmField
+  @Rule
+  val helper =
+    MigrationTestHelper(InstrumentationRegistry.getInstrumentation(), AppDatabase::class.java)
+
+  @Test
+  fun migrateFromReleasedVersionKeepsTheRows() {
+    // Rows as written by the released app, the objects being stored as json text
+    helper.createDatabase(DB, 4).use { db ->
+      val message = ContentValues()
+      message.put("message_id", GSON.toJson(MESSAGE.messageId, MessageID::class.java))
+      message.put("message", GSON.toJson(MESSAGE, MessageGeneral::class.java))
+      db.insert("messages", SQLiteDatabase.CONFLICT_ABORT, message)
+
+      val election = ContentValues()
+      election.put("election_id", ELECTION.id)
+      election.put("lao_id", LAO_ID)
+      election.put("election", GSON.toJson(ELECTION, Election::class.java))
+      db.insert("elections", SQLiteDatabase.CONFLICT_ABORT, election)
+    }
+
+    // The outbox only exists from the version 5
+    helper.runMigrationsAndValidate(DB, 5, true, OutboxMigration()).use { db ->
+      val outbox = ContentValues()
+      outbox.put("message_id", GSON.toJson(MESSAGE.messageId, MessageID::class.java))
+      outbox.put("channel", "/root/$LAO_ID")
+      outbox.put("message", GSON.toJson(MESSAGE, MessageGeneral::class.java))
+      db.insert("outbox", SQLiteDatabase.CONFLICT_ABORT, outbox)
+    }
+
+    helper.runMigrationsAndValidate(DB, 6, true, CatchupWatermarksMigration()).close()
+    helper.runMigrationsAndValidate(DB, 7, true, BinaryStorageMigration()).close()
+    helper.runMigrationsAndValidate(DB, 8, true, ElectionVotesMigration()).close()
+
+    // The rows are read back through Room, with the converters of the app
+    val appDatabase = openMigratedDatabase()
+    val messageEntity = appDatabase.messageDao().getMessageById(MESSAGE.messageId)
+    Assert.assertNotNull(messageEntity)
+    Assert.assertEquals(MESSAGE, messageEntity!!.content)
+
+    val outbox = appDatabase.outboxDao().getAll().blockingGet()
+    Assert.assertEquals(1, outbox.size)
+    Assert.assertEquals(MESSAGE.messageId, outbox[0].messageId)
+    Assert.assertEquals(MESSAGE, outbox[0].message)
+
+    val elections = appDatabase.electionDao().getElectionsByLaoId(LAO_ID).blockingGet()
+    Assert.assertEquals(listOf(ELECTION.withoutVotes()), elections)
+
+    val votes = appDatabase.electionVoteDao().getVotesByLaoId(LAO_ID).blockingGet()
+    Assert.assertEquals(1, votes.size)
+    Assert.assertEquals(ELECTION.id, votes[0].electionId)
+    Assert.assertEquals(SENDER, votes[0].sender)
+    Assert.assertEquals(VOTE_MESSAGE_ID, votes[0].messageId)
+    Assert.assertEquals(VOTES, votes[0].votes)
+  }
+
+  private fun openMigratedDatabase(): AppDatabase {
+    val appDatabase =
+      Room.databaseBuilder(ApplicationProvider.getApplicationContext(), AppDatabase::class.java, DB)
+        .allowMainThreadQueries()
+        .addTypeConverter(CustomTypeConverters(GSON))
+        .addMigrations(
+          OutboxMigration(),
+          CatchupWatermarksMigration(),
+          BinaryStorageMigration(),
+          ElectionVotesMigration()
+        )
+        .build()
+    helper.closeWhenFinished(appDatabase)
+    return appDatabase
+  }
+
+  companion object {
+    private const val DB = "migration-test"
+
+    private val GSON =
+      JsonModule.provideGson(
+        DataRegistryModule.provideDataRegistryForGson(),
+        ValidationPolicy(ValidationPolicy.Mode.OFF)
+      )
+
+    private val CREATION = Instant.now().epochSecond
+    private val LAO_ID = generateLaoId(Base64DataUtils.generatePublicKey(), CREATION, "Lao")
+
+    private val MESSAGE =
+      MessageGeneral(
+        Base64DataUtils.generateKeyPair(),
+        CreateLao("Lao", Base64DataUtils.generatePublicKey(), ArrayList()),
+        GSON
+      )
+
+    private val SENDER: PublicKey = Base64DataUtils.generatePublicKey()
+    private val VOTE_MESSAGE_ID = Base64DataUtils.generateMessageID()
+    private val ELECTION_ID =
+      Election.generateElectionSetupId(LAO_ID, CREATION + 10, "Election1")
+    private val VOTES: List<Vote> =
+      listOf(PlainVote(Base64DataUtils.generateRandomBase64String(), 1, false, null, ELECTION_ID))
+    private val ELECTION =
+      ElectionBuilder(LAO_ID, CREATION + 10, "Election1")
+        .setElectionVersion(ElectionVersion.OPEN_BALLOT)
+        .updateVotes(SENDER, VOTES)
+        .updateMessageMap(SENDER, VOTE_MESSAGE_ID)
+        .build()
+  }
+}
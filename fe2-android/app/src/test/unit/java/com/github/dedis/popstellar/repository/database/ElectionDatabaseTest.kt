@@ -4,11 +4,13 @@ import androidx.test.core.app.ApplicationProvider
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import com.github.dedis.popstellar.di.AppDatabaseModuleHelper.getAppDatabase
 import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
 import com.github.dedis.popstellar.model.objects.Election
 import com.github.dedis.popstellar.model.objects.Election.ElectionBuilder
 import com.github.dedis.popstellar.model.objects.Lao.Companion.generateLaoId
 import com.github.dedis.popstellar.repository.database.event.election.ElectionDao
 import com.github.dedis.popstellar.repository.database.event.election.ElectionEntity
+import com.github.dedis.popstellar.repository.database.event.election.ElectionVoteEntity
 import com.github.dedis.popstellar.testutils.Base64DataUtils
 import io.reactivex.observers.TestObserver
 import java.time.Instant
@@ -54,6 +56,31 @@ class ElectionDatabaseTest {
     testObserver2.assertComplete()
   }
 
+  @Test
+  fun votesReplaceThePreviousVotesOfTheSender() {
+    val voteDao = appDatabase.electionVoteDao()
+    val sender = Base64DataUtils.generatePublicKey()
+    val questionId = Base64DataUtils.generateRandomBase64String()
+    val first = listOf(PlainVote(questionId, 0, false, null, ELECTION.id))
+    val second = listOf(PlainVote(questionId, 1, false, null, ELECTION.id))
+    val messageId = Base64DataUtils.generateMessageID()
+
+    val testObserver =
+      voteDao
+        .insert(ElectionVoteEntity(ELECTION.id, LAO_ID, sender, messageId, first))
+        .andThen(voteDao.insert(ElectionVoteEntity(ELECTION.id, LAO_ID, sender, messageId, second)))
+        .test()
+    testObserver.awaitTerminalEvent()
+    testObserver.assertComplete()
+
+    voteDao.getVotesByLaoId(LAO_ID).test().assertValue { votes: List<ElectionVoteEntity> ->
+      votes.size == 1 &&
+        votes[0].sender == sender &&
+        votes[0].messageId == messageId &&
+        votes[0].votes == second
+    }
+  }
+
   companion object {
     private val CREATION = Instant.now().epochSecond
     private val LAO_ID = generateLaoId(Base64DataUtils.generatePublicKey(), CREATION, "Lao")
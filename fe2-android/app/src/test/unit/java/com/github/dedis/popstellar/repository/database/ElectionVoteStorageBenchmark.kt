@@ -0,0 +1,91 @@
+package com.github.dedis.popstellar.repository.database
+
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
+import com.github.dedis.popstellar.model.network.method.message.data.election.Vote
+import com.github.dedis.popstellar.model.objects.Election
+import com.github.dedis.popstellar.model.objects.Election.ElectionBuilder
+import com.github.dedis.popstellar.model.objects.Lao.Companion.generateLaoId
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.assumeBenchmarkRequested
+import java.time.Instant
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Compare the bytes written to store the votes of an election, when the whole election is written
+ * again for each vote and when each vote is written as its own row of the election_votes table.
+ *
+ * The first grows with the square of the number of voters, the second linearly.
+ *
+ * Run it with `./gradlew testDebugUnitTest --tests '*ElectionVoteStorageBenchmark' -Pbenchmark`
+ */
+class ElectionVoteStorageBenchmark {
+
+  @Before
+  fun onlyWhenRequested() {
+    assumeBenchmarkRequested()
+  }
+
+  @Test
+  fun bytesWrittenPerVoter() {
+    println("Voters | whole election : bytes, ms | vote rows : bytes, ms")
+    VOTERS.forEach { voters: Int ->
+      val election = electionWriter(voters)
+      val rows = voteRowsWriter(voters)
+      println(
+        "%6d | %12d, %5d | %10d, %5d"
+          .format(voters, election.first, election.second, rows.first, rows.second))
+    }
+  }
+
+  /** @return the bytes written and the time taken, in ms, to write the election after each vote */
+  private fun electionWriter(voters: Int): Pair<Long, Long> {
+    val builder =
+      ElectionBuilder(LAO_ID, CREATION, "Election").setElectionVersion(ElectionVersion.OPEN_BALLOT)
+    var bytes = 0L
+    var nanos = 0L
+    repeat(voters) {
+      val sender = Base64DataUtils.generatePublicKey()
+      builder
+        .updateVotes(sender, votes())
+        .updateMessageMap(sender, Base64DataUtils.generateMessageID())
+      val election = builder.build()
+
+      val start = System.nanoTime()
+      bytes += CONVERTERS.electionToBytes(election).size
+      nanos += System.nanoTime() - start
+    }
+    return Pair(bytes, nanos / 1_000_000)
+  }
+
+  /** @return the bytes written and the time taken, in ms, to write a row per vote */
+  private fun voteRowsWriter(voters: Int): Pair<Long, Long> {
+    var bytes = 0L
+    var nanos = 0L
+    repeat(voters) {
+      val votes = votes()
+
+      val start = System.nanoTime()
+      bytes += CONVERTERS.votesToBytes(votes).size
+      nanos += System.nanoTime() - start
+    }
+    return Pair(bytes, nanos / 1_000_000)
+  }
+
+  private fun votes(): List<Vote> {
+    return listOf(PlainVote(QUESTION_ID, 1, false, null, ELECTION_ID))
+  }
+
+  companion object {
+    private val VOTERS = listOf(500, 1000, 2000, 4000)
+
+    private val CREATION = Instant.now().epochSecond
+    private val LAO_ID = generateLaoId(Base64DataUtils.generatePublicKey(), CREATION, "Lao")
+    private val ELECTION_ID = Election.generateElectionSetupId(LAO_ID, CREATION, "Election")
+    private val QUESTION_ID = Base64DataUtils.generateRandomBase64String()
+
+    private val CONVERTERS = CustomTypeConverters(JsonTestUtils.GSON)
+  }
+}
@@ -7,6 +7,7 @@ import com.github.dedis.popstellar.model.network.JsonTestUtils
 import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
 import com.github.dedis.popstellar.model.network.method.message.data.Data
 import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.model.objects.security.MessageID
 import com.github.dedis.popstellar.repository.database.message.MessageDao
 import com.github.dedis.popstellar.repository.database.message.MessageEntity
 import com.github.dedis.popstellar.testutils.Base64DataUtils
@@ -101,4 +102,21 @@ class MessageDatabaseTest {
         messageEntities[2].messageId == messageID3)
     }
   }
+
+  @Test
+  fun retrieveAllMessageIdsTest() {
+    val messageID1 = Base64DataUtils.generateMessageID()
+    val messageID2 = Base64DataUtils.generateMessageID()
+    val testObserver =
+      messageDao
+        .insert(MessageEntity(messageID1, null))
+        .andThen(messageDao.insert(MessageEntity(messageID2, null)))
+        .test()
+    testObserver.awaitTerminalEvent()
+    testObserver.assertComplete()
+
+    messageDao.getAllMessageIds().test().assertValue { ids: List<MessageID> ->
+      ids.toSet() == setOf(messageID1, messageID2)
+    }
+  }
 }
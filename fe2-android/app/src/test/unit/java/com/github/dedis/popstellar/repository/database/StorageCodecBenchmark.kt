@@ -0,0 +1,97 @@
+package com.github.dedis.popstellar.repository.database
+
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.election.ElectionVersion
+import com.github.dedis.popstellar.model.network.method.message.data.election.PlainVote
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp
+import com.github.dedis.popstellar.model.objects.Election
+import com.github.dedis.popstellar.model.objects.Election.ElectionBuilder
+import com.github.dedis.popstellar.model.objects.Lao.Companion.generateLaoId
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.assumeBenchmarkRequested
+import java.nio.charset.StandardCharsets
+import java.time.Instant
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Compare the size and the loading time of the rows stored as json text and in the binary form of
+ * [StorageCodec], for an election holding many votes and for the messages of a catchup.
+ *
+ * Run it with `./gradlew testDebugUnitTest --tests '*StorageCodecBenchmark' -Pbenchmark`
+ */
+class StorageCodecBenchmark {
+
+  @Before
+  fun onlyWhenRequested() {
+    assumeBenchmarkRequested()
+  }
+
+  @Test
+  fun electionRows() {
+    val creation = Instant.now().epochSecond
+    val laoId = generateLaoId(Base64DataUtils.generatePublicKey(), creation, "Lao")
+    val builder =
+        ElectionBuilder(laoId, creation, "Election").setElectionVersion(ElectionVersion.OPEN_BALLOT)
+    val electionId = builder.build().id
+    val questionId = Base64DataUtils.generateRandomBase64String()
+    repeat(VOTERS) { i: Int ->
+      val voter = Base64DataUtils.generatePublicKey()
+      val vote = PlainVote(questionId, i % 4, false, null, electionId)
+      builder.updateVotes(voter, listOf(vote))
+      builder.updateMessageMap(voter, Base64DataUtils.generateMessageID())
+    }
+
+    compare("election with $VOTERS votes", listOf(builder.build()), Election::class.java)
+  }
+
+  @Test
+  fun messageRows() {
+    val keyPair = Base64DataUtils.generateKeyPair()
+    val messages =
+        (0 until MESSAGES).map { i: Int ->
+          MessageGeneral(
+              keyPair,
+              AddChirp("chirp number $i", null, Instant.now().epochSecond),
+              JsonTestUtils.GSON)
+        }
+
+    compare("$MESSAGES messages", messages, MessageGeneral::class.java)
+  }
+
+  private fun <T> compare(name: String, rows: List<T>, type: Class<T>) {
+    val gson = JsonTestUtils.GSON
+    val texts = rows.map { row: T -> gson.toJson(row, type).toByteArray(StandardCharsets.UTF_8) }
+    val binaries = rows.map { row: T -> StorageCodec.encode(gson.toJsonTree(row, type)) }
+
+    val textLoad =
+        measure(texts) { bytes: ByteArray ->
+          gson.fromJson(String(bytes, StandardCharsets.UTF_8), type)
+        }
+    val binaryLoad =
+        measure(binaries) { bytes: ByteArray -> gson.fromJson(StorageCodec.decode(bytes), type) }
+
+    val textSize = texts.sumOf { bytes: ByteArray -> bytes.size }
+    val binarySize = binaries.sumOf { bytes: ByteArray -> bytes.size }
+    println("Rows of the $name")
+    println("  json text : $textSize bytes, loaded in ${textLoad / 1000} us")
+    println("  binary    : $binarySize bytes, loaded in ${binaryLoad / 1000} us")
+  }
+
+  /** @return the average time to load all the rows, in nanoseconds */
+  private fun measure(rows: List<ByteArray>, load: (ByteArray) -> Any?): Long {
+    repeat(WARMUP_ROUNDS) { rows.forEach { bytes: ByteArray -> load(bytes) } }
+
+    val start = System.nanoTime()
+    repeat(MEASURED_ROUNDS) { rows.forEach { bytes: ByteArray -> load(bytes) } }
+    return (System.nanoTime() - start) / MEASURED_ROUNDS
+  }
+
+  companion object {
+    private const val VOTERS = 2000
+    private const val MESSAGES = 1000
+    private const val WARMUP_ROUNDS = 20
+    private const val MEASURED_ROUNDS = 50
+  }
+}
@@ -0,0 +1,76 @@
+package com.github.dedis.popstellar.repository.database
+
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.google.gson.JsonParseException
+import com.google.gson.JsonParser
+import java.nio.charset.StandardCharsets
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class StorageCodecTest {
+
+  @Test
+  fun encodingIsLossless() {
+    val json =
+        JsonParser.parseString(
+            """
+            {"int": -42, "long": 9007199254740993, "double": 1.5, "exponent": 1e3,
+             "zero": 0.0, "bool": true, "none": null, "text": "héllo",
+             "base64": "${Base64DataUtils.generateRandomBase64String()}",
+             "word": "abcdefgh", "padded": "YWJj", "notCanonical": "YWJjZB==",
+             "array": [{"int": 1}, {"int": 2, "text": ""}], "empty": {}}
+            """)
+
+    val decoded = StorageCodec.decode(StorageCodec.encode(json))
+
+    assertEquals(json, decoded)
+    assertEquals(JsonTestUtils.GSON.toJson(json), JsonTestUtils.GSON.toJson(decoded))
+  }
+
+  @Test
+  fun messageIsSmallerThanItsJson() {
+    val keyPair = Base64DataUtils.generateKeyPair()
+    val message =
+        MessageGeneral(
+            keyPair, CreateLao("lao", keyPair.publicKey, ArrayList()), JsonTestUtils.GSON)
+    val json = JsonTestUtils.GSON.toJsonTree(message)
+
+    val encoded = StorageCodec.encode(json)
+
+    assertTrue(StorageCodec.isBinary(encoded))
+    assertTrue(encoded.size < JsonTestUtils.GSON.toJson(json).length)
+    assertEquals(
+        message,
+        JsonTestUtils.GSON.fromJson(StorageCodec.decode(encoded), MessageGeneral::class.java))
+  }
+
+  @Test
+  fun jsonTextIsStillDecoded() {
+    val text = "{\"a\":[1,\"b\"]}"
+    val bytes = text.toByteArray(StandardCharsets.UTF_8)
+
+    assertFalse(StorageCodec.isBinary(bytes))
+    assertEquals(JsonParser.parseString(text), StorageCodec.decode(bytes))
+  }
+
+  @Test
+  fun invalidEncodingIsRejected() {
+    val encoded = StorageCodec.encode(JsonParser.parseString("{\"a\":\"some text\"}"))
+
+    assertArrayEquals(byteArrayOf(StorageCodec.MAGIC, StorageCodec.VERSION), encoded.copyOf(2))
+    assertThrows(JsonParseException::class.java) {
+      StorageCodec.decode(encoded.copyOf(encoded.size - 1))
+    }
+    assertThrows(JsonParseException::class.java) { StorageCodec.decode(encoded + 0.toByte()) }
+    assertThrows(JsonParseException::class.java) {
+      StorageCodec.decode(byteArrayOf(StorageCodec.MAGIC, (StorageCodec.VERSION + 1).toByte(), 0))
+    }
+  }
+}
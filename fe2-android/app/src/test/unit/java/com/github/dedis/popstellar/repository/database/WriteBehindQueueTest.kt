@@ -0,0 +1,144 @@
+package com.github.dedis.popstellar.repository.database
+
+import io.reactivex.Completable
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.schedulers.TestScheduler
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class WriteBehindQueueTest {
+  private val scheduler = TestScheduler()
+  private val written = ArrayList<List<String>>()
+  private var failing = false
+  private val queue =
+      WriteBehindQueue<Int, String>(scheduler, BATCH_SIZE, DELAY_MS) { rows: List<String> ->
+        Completable.fromAction {
+          if (failing) throw IllegalStateException("Write failed")
+          written.add(rows)
+        }
+      }
+
+  @Test
+  fun rowsAreWrittenInBatchesWhenFull() {
+    repeat(BATCH_SIZE * 2 + 1) { i: Int -> queue.offer(i, "row$i") }
+    scheduler.triggerActions()
+
+    assertEquals(listOf(BATCH_SIZE, BATCH_SIZE), written.map { rows: List<String> -> rows.size })
+    assertEquals("row0", written[0][0])
+    assertEquals("row${BATCH_SIZE}", written[1][0])
+
+    // The last row is written at the end of the time window
+    scheduler.advanceTimeBy(DELAY_MS, TimeUnit.MILLISECONDS)
+    assertEquals(listOf("row${BATCH_SIZE * 2}"), written[2])
+  }
+
+  @Test
+  fun rowsAreWrittenAfterTheDelay() {
+    queue.offer(1, "a")
+    scheduler.advanceTimeBy(DELAY_MS / 2, TimeUnit.MILLISECONDS)
+    queue.offer(2, "b")
+    assertEquals(0, written.size)
+
+    scheduler.advanceTimeBy(DELAY_MS / 2, TimeUnit.MILLISECONDS)
+    assertEquals(listOf(listOf("a", "b")), written)
+
+    val stats = queue.stats
+    assertEquals(1, stats.batches)
+    assertEquals(2, stats.rows)
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(DELAY_MS), stats.maxLatencyNanos)
+  }
+
+  @Test
+  fun pendingRowsCanBeReadUntilWritten() {
+    queue.offer(1, "a")
+    queue.offer(1, "b")
+
+    assertEquals("b", queue[1])
+    queue.flush()
+    scheduler.triggerActions()
+
+    assertNull(queue[1])
+    assertEquals(listOf(listOf("b")), written)
+  }
+
+  @Test
+  fun failedBatchIsWrittenAgainBeforeTheNextOnes() {
+    failing = true
+    queue.offer(1, "a")
+    queue.flush()
+    scheduler.triggerActions()
+
+    // The rows of the failed batch can still be read until they are written
+    assertEquals("a", queue[1])
+    failing = false
+    queue.offer(2, "b")
+    queue.flush()
+    scheduler.advanceTimeBy(DELAY_MS, TimeUnit.MILLISECONDS)
+
+    assertEquals(listOf(listOf("a"), listOf("b")), written)
+    assertEquals(1, queue.stats.retriedBatches)
+    assertEquals(0, queue.stats.failedBatches)
+    assertNull(queue[1])
+  }
+
+  @Test
+  fun failedBatchesAreDroppedAfterTheLastAttempt() {
+    failing = true
+    queue.offer(1, "a")
+    queue.flush()
+    scheduler.advanceTimeBy(DELAY_MS * WriteBehindQueue.MAX_ATTEMPTS, TimeUnit.MILLISECONDS)
+
+    assertEquals(0, queue.stats.batches)
+    assertEquals(WriteBehindQueue.MAX_ATTEMPTS - 1L, queue.stats.retriedBatches)
+    assertEquals(1, queue.stats.failedBatches)
+    assertNull(queue[1])
+  }
+
+  @Test
+  fun clearedRowsAreNotWritten() {
+    queue.offer(1, "a")
+    queue.clear()
+    scheduler.advanceTimeBy(DELAY_MS, TimeUnit.MILLISECONDS)
+
+    assertEquals(0, written.size)
+  }
+
+  @Test
+  fun clearWaitsForTheBatchBeingWritten() {
+    val writing = CountDownLatch(1)
+    val release = CountDownLatch(1)
+    val slowQueue =
+        WriteBehindQueue<Int, String>(Schedulers.newThread(), 1, DELAY_MS) { rows: List<String> ->
+          Completable.fromAction {
+            writing.countDown()
+            release.await()
+            written.add(rows)
+          }
+        }
+    // The batch is full, it is written right away
+    slowQueue.offer(1, "a")
+    assertTrue(writing.await(1, TimeUnit.SECONDS))
+
+    val cleared = CountDownLatch(1)
+    Thread {
+          slowQueue.clear()
+          cleared.countDown()
+        }
+        .start()
+    assertFalse(cleared.await(DELAY_MS, TimeUnit.MILLISECONDS))
+
+    release.countDown()
+    assertTrue(cleared.await(1, TimeUnit.SECONDS))
+    assertEquals(listOf(listOf("a")), written)
+  }
+
+  companion object {
+    private const val BATCH_SIZE = 3
+    private const val DELAY_MS = 100L
+  }
+}
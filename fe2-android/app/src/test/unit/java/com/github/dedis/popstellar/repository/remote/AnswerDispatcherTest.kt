@@ -0,0 +1,113 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.answer.Result
+import io.reactivex.Scheduler
+import io.reactivex.schedulers.TestScheduler
+import java.util.concurrent.CancellationException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class AnswerDispatcherTest {
+  private val scheduler = TestScheduler()
+  private val dispatcher = AnswerDispatcher(scheduler, TIMEOUT, TimeUnit.SECONDS)
+
+  @Test
+  fun answersAreRoutedToTheirRequest() {
+    val first = dispatcher.register(1).test()
+    val second = dispatcher.register(2).test()
+
+    assertTrue(dispatcher.dispatch(Result(2)))
+    assertTrue(dispatcher.dispatch(Result(1)))
+
+    first.assertValue(Result(1))
+    second.assertValue(Result(2))
+    assertEquals(0, dispatcher.pendingCount)
+  }
+
+  @Test
+  fun unknownAndDuplicateAnswersAreIgnored() {
+    val request = dispatcher.register(1).test()
+
+    assertFalse(dispatcher.dispatch(Result(3)))
+    assertTrue(dispatcher.dispatch(Result(1)))
+    assertFalse(dispatcher.dispatch(Result(1)))
+
+    request.assertValueCount(1)
+  }
+
+  @Test
+  fun requestsExpireAfterTimeout() {
+    val request = dispatcher.register(1).test()
+
+    scheduler.advanceTimeBy(TIMEOUT - 1, TimeUnit.SECONDS)
+    request.assertNoErrors().assertNoValues()
+
+    scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+    request.assertError(TimeoutException::class.java)
+    assertEquals(0, dispatcher.pendingCount)
+
+    // A late answer is not delivered anymore
+    assertFalse(dispatcher.dispatch(Result(1)))
+  }
+
+  @Test
+  fun answeredRequestsDoNotExpire() {
+    val request = dispatcher.register(1).test()
+    dispatcher.dispatch(Result(1))
+
+    scheduler.advanceTimeBy(2 * TIMEOUT, TimeUnit.SECONDS)
+    request.assertNoErrors().assertValue(Result(1))
+  }
+
+  @Test
+  fun timerOnlyRunsWhileRequestsArePending() {
+    val counting = CountingScheduler(scheduler)
+    val dispatcher = AnswerDispatcher(counting, TIMEOUT, TimeUnit.SECONDS)
+    assertEquals(0, counting.started)
+
+    // The timer is started by the first request, and kept for the following ones
+    dispatcher.register(1).test()
+    dispatcher.register(2).test()
+    assertEquals(1, counting.started)
+
+    // It stops once every request is answered
+    dispatcher.dispatch(Result(1))
+    dispatcher.dispatch(Result(2))
+    scheduler.advanceTimeBy(AnswerDispatcher.TICK_MS, TimeUnit.MILLISECONDS)
+
+    // And is started again for the next request, which still expires in time
+    val request = dispatcher.register(3).test()
+    assertEquals(2, counting.started)
+    scheduler.advanceTimeBy(TIMEOUT, TimeUnit.SECONDS)
+    request.assertError(TimeoutException::class.java)
+  }
+
+  @Test
+  fun disposeFailsThePendingRequests() {
+    val request = dispatcher.register(1).test()
+
+    dispatcher.dispose()
+
+    request.assertError(CancellationException::class.java)
+    dispatcher.register(2).test().assertError(CancellationException::class.java)
+    assertEquals(0, dispatcher.pendingCount)
+  }
+
+  /** Counts the timers started on the test scheduler */
+  private class CountingScheduler(private val delegate: Scheduler) : Scheduler() {
+    var started = 0
+
+    override fun createWorker(): Worker {
+      started++
+      return delegate.createWorker()
+    }
+  }
+
+  companion object {
+    private const val TIMEOUT = 5L
+  }
+}
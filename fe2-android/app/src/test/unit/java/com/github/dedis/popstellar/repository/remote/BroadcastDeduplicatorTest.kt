@@ -0,0 +1,59 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.repository.remote.DeduplicatingMessageAdapterFactory.Companion.readBroadcastId
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class BroadcastDeduplicatorTest {
+  @Test
+  fun onlyFirstCopyIsAccepted() {
+    val deduplicator = BroadcastDeduplicator()
+
+    assertTrue(deduplicator.isFirstCopy("id1", PEER_1))
+    assertFalse(deduplicator.isFirstCopy("id1", PEER_2))
+    assertFalse(deduplicator.isFirstCopy("id1", PEER_2))
+    assertTrue(deduplicator.isFirstCopy("id2", PEER_2))
+
+    assertEquals(mapOf(PEER_2 to 2L), deduplicator.duplicateCounts)
+  }
+
+  @Test
+  fun oldestIdsAreForgotten() {
+    val deduplicator = BroadcastDeduplicator(2)
+
+    assertTrue(deduplicator.isFirstCopy("id1", PEER_1))
+    assertTrue(deduplicator.isFirstCopy("id2", PEER_1))
+    assertTrue(deduplicator.isFirstCopy("id3", PEER_1))
+    assertTrue(deduplicator.isFirstCopy("id1", PEER_1))
+  }
+
+  @Test
+  fun broadcastIdIsReadFromFrame() {
+    val frame =
+        """{"jsonrpc":"2.0","params":{"channel":"/root/lao","message":{"data":"ZGF0YQ==",
+          "sender":"key","signature":"sig","message_id":"id","witness_signatures":[]}},
+          "method":"broadcast"}"""
+
+    assertEquals("id", readBroadcastId(frame))
+  }
+
+  @Test
+  fun otherFramesHaveNoBroadcastId() {
+    val publish =
+        """{"jsonrpc":"2.0","method":"publish","id":3,"params":{"channel":"/root",
+          "message":{"message_id":"id"}}}"""
+    val result = """{"jsonrpc":"2.0","id":3,"result":[{"message_id":"id"}]}"""
+
+    assertNull(readBroadcastId(publish))
+    assertNull(readBroadcastId(result))
+    assertNull(readBroadcastId("not a json"))
+  }
+
+  companion object {
+    private const val PEER_1 = "ws://peer1"
+    private const val PEER_2 = "ws://peer2"
+  }
+}
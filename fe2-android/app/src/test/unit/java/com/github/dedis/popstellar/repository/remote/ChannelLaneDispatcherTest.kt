@@ -0,0 +1,202 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.di.DataRegistryModuleHelper
+import com.github.dedis.popstellar.di.JsonModule
+import com.github.dedis.popstellar.model.network.method.Broadcast
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import io.reactivex.schedulers.TestScheduler
+import java.time.Instant
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Test
+
+class ChannelLaneDispatcherTest {
+
+  @Test
+  fun broadcastsOfAChannelAreHandledInOrder() {
+    val scheduler = TestScheduler()
+    val handled = ArrayList<Broadcast>()
+    val dispatcher = ChannelLaneDispatcher(scheduler, 4) { broadcast: Broadcast ->
+      synchronized(handled) { handled.add(broadcast) }
+    }
+
+    val first = (0 until 5).map { i: Int -> broadcast(CHANNEL_1, "first $i") }
+    val second = (0 until 5).map { i: Int -> broadcast(CHANNEL_2, "second $i") }
+    first.zip(second).forEach { (a: Broadcast, b: Broadcast) ->
+      dispatcher.dispatch(a)
+      dispatcher.dispatch(b)
+    }
+    scheduler.triggerActions()
+
+    assertEquals(first, handled.filter { b: Broadcast -> b.channel == CHANNEL_1 })
+    assertEquals(second, handled.filter { b: Broadcast -> b.channel == CHANNEL_2 })
+    dispatcher.dispose()
+  }
+
+  @Test
+  fun statsReportQueuedAndProcessedBroadcasts() {
+    val scheduler = TestScheduler()
+    val dispatcher = ChannelLaneDispatcher(scheduler, 1) {}
+
+    repeat(3) { i: Int -> dispatcher.dispatch(broadcast(CHANNEL_1, "lao $i")) }
+    assertEquals(3, dispatcher.stats[0].depth)
+
+    scheduler.triggerActions()
+    val stats = dispatcher.stats[0]
+    assertEquals(0, stats.depth)
+    assertEquals(3, stats.maxDepth)
+    assertEquals(3L, stats.processed)
+    assertEquals(0L, stats.blocked)
+    dispatcher.dispose()
+  }
+
+  @Test
+  fun nonBlockingDispatchOnFullLaneStillQueues() {
+    val scheduler = TestScheduler()
+    val handled = ArrayList<Broadcast>()
+    val dispatcher =
+      ChannelLaneDispatcher(scheduler, 1, 1) { broadcast: Broadcast -> handled.add(broadcast) }
+
+    val broadcasts = (0 until 3).map { i: Int -> broadcast(CHANNEL_1, "lao $i") }
+    dispatcher.dispatch(broadcasts[0])
+    dispatcher.dispatch(broadcasts[1], false)
+    dispatcher.dispatch(broadcasts[2], false)
+    assertEquals(2L, dispatcher.stats[0].blocked)
+
+    scheduler.triggerActions()
+    assertEquals(broadcasts, handled)
+
+    // All the permits were given back
+    dispatcher.dispatch(broadcast(CHANNEL_1, "lao 3"))
+    assertEquals(2L, dispatcher.stats[0].blocked)
+    dispatcher.dispose()
+  }
+
+  @Test
+  fun blockingDispatchOnFullLaneOverflowsAfterTheTimeout() {
+    val scheduler = TestScheduler()
+    val handled = ArrayList<Broadcast>()
+    val dispatcher =
+      ChannelLaneDispatcher(scheduler, 1, 1, offerTimeoutMs = 10) { broadcast: Broadcast ->
+        handled.add(broadcast)
+      }
+
+    // Nothing is handled until the scheduler runs, the second dispatch cannot get any room
+    val broadcasts = (0 until 2).map { i: Int -> broadcast(CHANNEL_1, "lao $i") }
+    broadcasts.forEach { broadcast: Broadcast -> dispatcher.dispatch(broadcast) }
+    assertEquals(1L, dispatcher.stats[0].overflowed)
+
+    scheduler.triggerActions()
+    assertEquals(broadcasts, handled)
+    dispatcher.dispose()
+  }
+
+  @Test
+  fun disposeReleasesTheWaitingProducers() {
+    val scheduler = TestScheduler()
+    val dispatcher =
+      ChannelLaneDispatcher(scheduler, 1, 1, offerTimeoutMs = 60_000) { _: Broadcast -> }
+    dispatcher.dispatch(broadcast(CHANNEL_1, "lao 0"))
+
+    val producer = Thread { dispatcher.dispatch(broadcast(CHANNEL_1, "lao 1")) }
+    producer.start()
+    while (dispatcher.stats[0].blocked == 0L) {
+      Thread.yield()
+    }
+
+    dispatcher.dispose()
+    producer.join(5_000)
+    assertFalse(producer.isAlive)
+    assertEquals(0L, dispatcher.stats[0].overflowed)
+  }
+
+  @Test
+  fun failingBroadcastDoesNotStopTheLane() {
+    val scheduler = TestScheduler()
+    val handled = ArrayList<Broadcast>()
+    val failing = broadcast(CHANNEL_1, "failing")
+    val dispatcher =
+      ChannelLaneDispatcher(scheduler, 1) { broadcast: Broadcast ->
+        if (broadcast == failing) throw IllegalStateException("failure")
+        handled.add(broadcast)
+      }
+
+    val next = broadcast(CHANNEL_1, "next")
+    dispatcher.dispatch(failing)
+    dispatcher.dispatch(next)
+    scheduler.triggerActions()
+
+    assertEquals(listOf(next), handled)
+    assertEquals(2L, dispatcher.stats[0].processed)
+    dispatcher.dispose()
+  }
+
+  @Test
+  fun urgentBroadcastsAreHandledFirst() {
+    val scheduler = TestScheduler()
+    val handled = ArrayList<Broadcast>()
+    val dispatcher =
+      ChannelLaneDispatcher(scheduler, 1) { broadcast: Broadcast -> handled.add(broadcast) }
+
+    val chirps = (0 until 3).map { i: Int -> chirp("chirp $i") }
+    val lao = broadcast(CHANNEL_1, "lao")
+    chirps.forEach { chirp: Broadcast -> dispatcher.dispatch(chirp) }
+    dispatcher.dispatch(lao)
+    assertEquals(3, dispatcher.depthOf(MessagePriority.BULK))
+    assertEquals(1, dispatcher.depthOf(MessagePriority.CRITICAL))
+
+    scheduler.triggerActions()
+    assertEquals(listOf(lao) + chirps, handled)
+
+    val classes = dispatcher.stats[0].classes
+    assertEquals(3L, classes[MessagePriority.BULK]!!.processed)
+    assertEquals(3, classes[MessagePriority.BULK]!!.maxDepth)
+    assertEquals(1L, classes[MessagePriority.CRITICAL]!!.processed)
+    assertEquals(0, dispatcher.depthOf(MessagePriority.BULK))
+    dispatcher.dispose()
+  }
+
+  @Test
+  fun waitingClassIsNotStarved() {
+    val scheduler = TestScheduler()
+    val handled = ArrayList<Broadcast>()
+    val dispatcher =
+      ChannelLaneDispatcher(scheduler, 1, maxSkips = 2) { broadcast: Broadcast ->
+        handled.add(broadcast)
+      }
+
+    val chirp = chirp("chirp")
+    val laos = (0 until 5).map { i: Int -> broadcast(CHANNEL_1, "lao $i") }
+    dispatcher.dispatch(chirp)
+    laos.forEach { lao: Broadcast -> dispatcher.dispatch(lao) }
+    scheduler.triggerActions()
+
+    assertEquals(laos.take(2) + chirp + laos.drop(2), handled)
+    assertEquals(1L, dispatcher.stats[0].promoted)
+    dispatcher.dispose()
+  }
+
+  companion object {
+    private val GSON = JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry())
+    private val KEY_PAIR = Base64DataUtils.generateKeyPair()
+    private val CHANNEL_1 = Channel.ROOT.subChannel("first")
+    private val CHANNEL_2 = Channel.ROOT.subChannel("second")
+    private val SOCIAL_CHANNEL = CHANNEL_1.subChannel("social").subChannel("chirps")
+
+    private fun broadcast(channel: Channel, name: String): Broadcast {
+      val message =
+        MessageGeneral(KEY_PAIR, CreateLao(name, KEY_PAIR.publicKey, ArrayList()), GSON)
+      return Broadcast(channel, message)
+    }
+
+    private fun chirp(text: String): Broadcast {
+      val message =
+        MessageGeneral(KEY_PAIR, AddChirp(text, null, Instant.now().epochSecond), GSON)
+      return Broadcast(SOCIAL_CHANNEL, message)
+    }
+  }
+}
@@ -2,15 +2,19 @@ package com.github.dedis.popstellar.repository.remote
 
 import com.github.dedis.popstellar.model.network.GenericMessage
 import com.github.dedis.popstellar.model.network.answer.Result
+import com.github.dedis.popstellar.model.network.method.Catchup
 import com.github.dedis.popstellar.model.network.method.Message
 import com.github.dedis.popstellar.model.network.method.Subscribe
+import com.github.dedis.popstellar.model.network.method.Unsubscribe
 import com.github.dedis.popstellar.model.objects.Channel
 import com.github.dedis.popstellar.model.objects.PeerAddress
 import com.tinder.scarlet.Lifecycle
 import com.tinder.scarlet.ShutdownReason
 import com.tinder.scarlet.WebSocket
 import io.reactivex.Observable
+import io.reactivex.schedulers.TestScheduler
 import io.reactivex.subjects.BehaviorSubject
+import java.util.concurrent.TimeUnit
 import java.util.function.Function
 import org.junit.Assert
 import org.junit.Test
@@ -117,6 +121,7 @@ class ConnectionTest {
       BehaviorSubject.createDefault(Lifecycle.State.Started)
     val provider = Function { url: String -> Connection(url, service, manualState) }
     val multiConnection = MultiConnection(provider, "url")
+    multiConnection.routingPolicy = PeerRouter.RoutingPolicy.BROADCAST
 
     // Extend the connections with a new peer
     val peers: MutableList<PeerAddress> = ArrayList()
@@ -128,10 +133,161 @@ class ConnectionTest {
 
     Mockito.verify(service, Mockito.times(2)).sendMessage(msg)
     Mockito.verify(service, Mockito.times(2)).observeMessage()
-    Mockito.verify(service, Mockito.times(2)).observeWebsocket()
+    // Observed by each connection and by the router of the requests
+    Mockito.verify(service, Mockito.times(4)).observeWebsocket()
     Mockito.verifyNoMoreInteractions(service)
   }
 
+  @Test
+  fun multiConnectionMergesPeerMessages() {
+    val mainService = Mockito.mock(LAOService::class.java)
+    val peerService = Mockito.mock(LAOService::class.java)
+    val mainMessages = BehaviorSubject.create<GenericMessage>()
+    val peerMessages = BehaviorSubject.create<GenericMessage>()
+
+    Mockito.`when`(mainService.observeMessage()).thenReturn(mainMessages)
+    Mockito.`when`(mainService.observeWebsocket()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(peerService.observeMessage()).thenReturn(peerMessages)
+    Mockito.`when`(peerService.observeWebsocket()).thenReturn(BehaviorSubject.create())
+
+    val provider = Function { url: String ->
+      Connection(url, if (url == URL) mainService else peerService, BehaviorSubject.create())
+    }
+    val multiConnection = MultiConnection(provider, URL)
+    multiConnection.connectToPeers(listOf(PeerAddress("url2")))
+
+    val observer = multiConnection.observeMessage().test()
+
+    // The messages of the peer are received while the main connection is still open
+    val peerMessage: GenericMessage = Result(4)
+    val mainMessage: GenericMessage = Result(5)
+    peerMessages.onNext(peerMessage)
+    mainMessages.onNext(mainMessage)
+
+    observer.assertValues(peerMessage, mainMessage).assertNotComplete()
+  }
+
+  @Test
+  fun requestsAreSentToBestPeerAndHedged() {
+    val mainService = Mockito.mock(LAOService::class.java)
+    val peerService = Mockito.mock(LAOService::class.java)
+    val mainMessages = BehaviorSubject.create<GenericMessage>()
+    val peerMessages = BehaviorSubject.create<GenericMessage>()
+
+    Mockito.`when`(mainService.observeMessage()).thenReturn(mainMessages)
+    Mockito.`when`(mainService.observeWebsocket()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(peerService.observeMessage()).thenReturn(peerMessages)
+    Mockito.`when`(peerService.observeWebsocket()).thenReturn(BehaviorSubject.create())
+
+    val scheduler = TestScheduler()
+    val provider = Function { url: String ->
+      Connection(url, if (url == URL) mainService else peerService, BehaviorSubject.create())
+    }
+    val multiConnection =
+      MultiConnection(provider, URL, BroadcastDeduplicator(), PeerRouter(scheduler))
+    multiConnection.connectToPeers(listOf(PeerAddress("url2")))
+
+    // Measure both servers, the main server answers faster and becomes the best peer
+    multiConnection.routingPolicy = PeerRouter.RoutingPolicy.BROADCAST
+    val first = Catchup(Channel.ROOT, 1)
+    multiConnection.sendMessage(first)
+    scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS)
+    mainMessages.onNext(Result(1))
+    scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS)
+    peerMessages.onNext(Result(1))
+    scheduler.advanceTimeBy(PeerRouter.EXPIRY_MS, TimeUnit.MILLISECONDS)
+    Mockito.verify(mainService).sendMessage(first)
+    Mockito.verify(peerService).sendMessage(first)
+    multiConnection.routingPolicy = PeerRouter.RoutingPolicy.BEST_PEER
+
+    // Requests now only go to the main server as long as it answers in time
+    val second = Catchup(Channel.ROOT, 2)
+    multiConnection.sendMessage(second)
+    mainMessages.onNext(Result(2))
+    scheduler.advanceTimeBy(PeerRouter.HEDGE_DELAY_MS, TimeUnit.MILLISECONDS)
+    Mockito.verify(mainService).sendMessage(second)
+    Mockito.verify(peerService, Mockito.never()).sendMessage(second)
+
+    // Without an answer, the request is also sent to the other peer
+    val third = Catchup(Channel.ROOT, 3)
+    multiConnection.sendMessage(third)
+    Mockito.verify(mainService).sendMessage(third)
+    Mockito.verify(peerService, Mockito.never()).sendMessage(third)
+    scheduler.advanceTimeBy(PeerRouter.HEDGE_DELAY_MS, TimeUnit.MILLISECONDS)
+    Mockito.verify(peerService).sendMessage(third)
+  }
+
+  @Test
+  fun requestsAreNotRoutedToClosedPeers() {
+    val mainService = Mockito.mock(LAOService::class.java)
+    val peerService = Mockito.mock(LAOService::class.java)
+    val mainEvents = BehaviorSubject.create<WebSocket.Event>()
+    val scheduler = TestScheduler()
+
+    Mockito.`when`(mainService.observeMessage()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(mainService.observeWebsocket()).thenReturn(mainEvents)
+    Mockito.`when`(peerService.observeMessage()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(peerService.observeWebsocket()).thenReturn(BehaviorSubject.create())
+
+    val provider = Function { url: String ->
+      Connection(url, if (url == URL) mainService else peerService, BehaviorSubject.create())
+    }
+    val multiConnection =
+      MultiConnection(provider, URL, BroadcastDeduplicator(), PeerRouter(scheduler))
+    multiConnection.connectToPeers(listOf(PeerAddress("url2")))
+
+    // The main server is never sent the request while its connection is closed, not even hedged
+    mainEvents.onNext(WebSocket.Event.OnConnectionClosed(ShutdownReason.GRACEFUL))
+    val catchup = Catchup(Channel.ROOT, 1)
+    multiConnection.sendMessage(catchup)
+    scheduler.advanceTimeBy(PeerRouter.HEDGE_DELAY_MS, TimeUnit.MILLISECONDS)
+    Mockito.verify(peerService).sendMessage(catchup)
+    Mockito.verify(mainService, Mockito.never()).sendMessage(catchup)
+
+    // Once reopened, it is a candidate again
+    mainEvents.onNext(WebSocket.Event.OnConnectionOpened("Fake WebSocket"))
+    multiConnection.routingPolicy = PeerRouter.RoutingPolicy.BROADCAST
+    val other = Catchup(Channel.ROOT, 2)
+    multiConnection.sendMessage(other)
+    Mockito.verify(mainService).sendMessage(other)
+    Mockito.verify(peerService).sendMessage(other)
+  }
+
+  @Test
+  fun subscriptionsAreSentToEveryPeer() {
+    val mainService = Mockito.mock(LAOService::class.java)
+    val peerService = Mockito.mock(LAOService::class.java)
+
+    Mockito.`when`(mainService.observeMessage()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(mainService.observeWebsocket()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(peerService.observeMessage()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(peerService.observeWebsocket()).thenReturn(BehaviorSubject.create())
+
+    val provider = Function { url: String ->
+      Connection(url, if (url == URL) mainService else peerService, BehaviorSubject.create())
+    }
+    val multiConnection =
+      MultiConnection(provider, URL, BroadcastDeduplicator(), PeerRouter(TestScheduler()))
+    multiConnection.connectToPeers(listOf(PeerAddress("url2")))
+
+    // Each server only sends the broadcasts of the channels subscribed on its own connection
+    val subscribe = Subscribe(Channel.ROOT, 1)
+    multiConnection.sendMessage(subscribe)
+    Mockito.verify(mainService).sendMessage(subscribe)
+    Mockito.verify(peerService).sendMessage(subscribe)
+
+    val unsubscribe = Unsubscribe(Channel.ROOT, 2)
+    multiConnection.sendMessage(unsubscribe)
+    Mockito.verify(mainService).sendMessage(unsubscribe)
+    Mockito.verify(peerService).sendMessage(unsubscribe)
+
+    // Unless a single server is targeted, e.g. to subscribe again on a connection that reopened
+    val resubscribe = Subscribe(Channel.ROOT, 3)
+    multiConnection.sendMessage(resubscribe, "url2")
+    Mockito.verify(mainService, Mockito.never()).sendMessage(resubscribe)
+    Mockito.verify(peerService).sendMessage(resubscribe)
+  }
+
   companion object {
     const val URL = "url"
   }
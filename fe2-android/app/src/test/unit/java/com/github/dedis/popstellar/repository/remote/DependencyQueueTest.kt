@@ -0,0 +1,113 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.di.DataRegistryModuleHelper
+import com.github.dedis.popstellar.di.JsonModule
+import com.github.dedis.popstellar.model.network.method.Broadcast
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.rollcall.CreateRollCall
+import com.github.dedis.popstellar.model.network.method.message.data.rollcall.OpenRollCall
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.objects.event.EventState
+import com.github.dedis.popstellar.repository.remote.DependencyQueue.Dependency
+import com.github.dedis.popstellar.repository.remote.DependencyQueue.DependencyType
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.utility.error.UnknownLaoException
+import com.github.dedis.popstellar.utility.error.UnknownRollCallException
+import java.time.Instant
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class DependencyQueueTest {
+  private var now = 0L
+  private val queue = DependencyQueue { now }
+
+  @Test
+  fun parkedMessageIsReleasedWhenItsDependencyIsHandled() {
+    val dependency = DependencyQueue.missingDependency(UnknownRollCallException(CREATE.id))!!
+    queue.park(dependency, OPEN_BROADCAST)
+    assertEquals(1, queue.parkedCount)
+
+    now += 100
+    val released = queue.onHandled(CHANNEL, CREATE_MESSAGE)
+
+    assertEquals(listOf(OPEN_BROADCAST), released)
+    assertEquals(0, queue.parkedCount)
+    assertEquals(1, queue.released)
+    assertEquals(100, queue.longestWaitMs)
+  }
+
+  @Test
+  fun dependencyCommittedDuringTheHandlingIsNotWaitedFor() {
+    val dependency = DependencyQueue.missingDependency(UnknownRollCallException(CREATE.id))!!
+    val checkpoint = queue.checkpoint
+
+    // The roll call is created by another lane before the failed message is parked
+    queue.onHandled(CHANNEL, CREATE_MESSAGE)
+
+    assertFalse(queue.park(dependency, OPEN_BROADCAST, checkpoint))
+    assertEquals(0, queue.parkedCount)
+    // A message handled afterwards was missing something else, it waits for it
+    assertTrue(queue.park(dependency, OPEN_BROADCAST, queue.checkpoint))
+    assertEquals(1, queue.stats.parked)
+  }
+
+  @Test
+  fun unrelatedMessageDoesNotReleaseAnything() {
+    queue.park(Dependency(DependencyType.ELECTION, CREATE.id), OPEN_BROADCAST)
+
+    assertTrue(queue.onHandled(CHANNEL, CREATE_MESSAGE).isEmpty())
+    assertEquals(1, queue.parkedCount)
+  }
+
+  @Test
+  fun oldMessagesAreDropped() {
+    queue.park(Dependency(DependencyType.ROLL_CALL, CREATE.id), OPEN_BROADCAST)
+
+    now += 1000
+    assertEquals(0, queue.dropOlderThan(1000))
+    now += 1
+    assertEquals(1, queue.dropOlderThan(1000))
+    assertEquals(0, queue.parkedCount)
+    assertEquals(1, queue.dropped)
+  }
+
+  @Test
+  fun oldestMessagesAreEvictedWhenBudgetIsExceeded() {
+    val size = OPEN_MESSAGE.dataEncoded.encoded.length.toLong()
+    val smallQueue = DependencyQueue(size) { now }
+
+    smallQueue.park(Dependency(DependencyType.ROLL_CALL, "first"), OPEN_BROADCAST)
+    smallQueue.park(Dependency(DependencyType.ROLL_CALL, CREATE.id), OPEN_BROADCAST)
+
+    assertEquals(1, smallQueue.parkedCount)
+    assertEquals(1, smallQueue.dropped)
+    // The most recent message is kept
+    assertEquals(listOf(OPEN_BROADCAST), smallQueue.onHandled(CHANNEL, CREATE_MESSAGE))
+  }
+
+  @Test
+  fun dependencyIsOnlyKnownForIdentifiedObjects() {
+    assertEquals(
+        Dependency(DependencyType.LAO, LAO_ID),
+        DependencyQueue.missingDependency(UnknownLaoException(LAO_ID)))
+    assertNull(DependencyQueue.missingDependency(UnknownLaoException()))
+    assertNull(DependencyQueue.missingDependency(IllegalStateException()))
+  }
+
+  companion object {
+    private val GSON = JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry())
+    private val KEY_PAIR = Base64DataUtils.generateKeyPair()
+    private const val LAO_ID = "fEvAfdtNrykd9NPYl9ReHLX-6IP6SFLKTZJLeGUHZ_U="
+    private val CHANNEL = Channel.getLaoChannel(LAO_ID)
+    private val NOW = Instant.now().epochSecond
+
+    private val CREATE = CreateRollCall("name", NOW, NOW, NOW + 30, "location", null, LAO_ID)
+    private val CREATE_MESSAGE = MessageGeneral(KEY_PAIR, CREATE, GSON)
+    private val OPEN_MESSAGE =
+        MessageGeneral(KEY_PAIR, OpenRollCall(LAO_ID, CREATE.id, NOW, EventState.CREATED), GSON)
+    private val OPEN_BROADCAST = Broadcast(CHANNEL, OPEN_MESSAGE)
+  }
+}
@@ -1,6 +1,8 @@
 package com.github.dedis.popstellar.repository.remote
 
 import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.repository.CatchupWatermarkRepository
+import com.github.dedis.popstellar.repository.OutboxRepository
 import com.github.dedis.popstellar.testutils.MockitoKotlinHelpers
 import com.github.dedis.popstellar.utility.handler.MessageHandler
 import com.github.dedis.popstellar.utility.scheduler.TestSchedulerProvider
@@ -20,6 +22,10 @@ class GlobalNetworkManagerTest {
 
   @Mock lateinit var gson: Gson
 
+  @Mock lateinit var outboxRepository: OutboxRepository
+
+  @Mock lateinit var watermarkRepository: CatchupWatermarkRepository
+
   @Test
   fun initializationProducesAValidConnection() {
     val schedulerProvider = TestSchedulerProvider()
@@ -29,10 +35,15 @@ class GlobalNetworkManagerTest {
 
     Mockito.`when`(firstConnection.observeMessage()).thenReturn(BehaviorSubject.create())
     Mockito.`when`(firstConnection.observeConnectionEvents()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(firstConnection.observePeerConnectionEvents())
+      .thenReturn(BehaviorSubject.create())
     Mockito.`when`(factory.createMultiConnection(ArgumentMatchers.anyString()))
       .thenReturn(firstConnection)
 
-    val networkManager = GlobalNetworkManager(handler, factory, gson, schedulerProvider)
+    val networkManager =
+      GlobalNetworkManager(
+        handler, factory, gson, schedulerProvider, outboxRepository, watermarkRepository
+      )
     Mockito.verify(factory).createMultiConnection(ArgumentMatchers.anyString())
 
     val sendMessage = networkManager.messageSender.unsubscribe(Channel.ROOT)
@@ -52,15 +63,22 @@ class GlobalNetworkManagerTest {
 
     Mockito.`when`(firstConnection.observeMessage()).thenReturn(BehaviorSubject.create())
     Mockito.`when`(firstConnection.observeConnectionEvents()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(firstConnection.observePeerConnectionEvents())
+      .thenReturn(BehaviorSubject.create())
     Mockito.`when`(factory.createMultiConnection(ArgumentMatchers.anyString()))
       .thenReturn(firstConnection)
 
-    val networkManager = GlobalNetworkManager(handler, factory, gson, TestSchedulerProvider())
+    val networkManager =
+      GlobalNetworkManager(
+        handler, factory, gson, TestSchedulerProvider(), outboxRepository, watermarkRepository
+      )
     Mockito.verify(factory).createMultiConnection(ArgumentMatchers.anyString())
 
     val secondConnection = Mockito.mock(MultiConnection::class.java)
     Mockito.`when`(secondConnection.observeMessage()).thenReturn(BehaviorSubject.create())
     Mockito.`when`(secondConnection.observeConnectionEvents()).thenReturn(BehaviorSubject.create())
+    Mockito.`when`(secondConnection.observePeerConnectionEvents())
+      .thenReturn(BehaviorSubject.create())
     Mockito.`when`(factory.createMultiConnection(ArgumentMatchers.anyString()))
       .thenReturn(secondConnection)
 
@@ -20,6 +20,7 @@ import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateL
 import com.github.dedis.popstellar.model.objects.Channel;
 import com.github.dedis.popstellar.model.objects.PeerAddress;
 import com.github.dedis.popstellar.model.objects.security.KeyPair;
+import com.github.dedis.popstellar.repository.OutboxRepository;
 import com.github.dedis.popstellar.testutils.Base64DataUtils;
 import com.github.dedis.popstellar.utility.error.*;
 import com.github.dedis.popstellar.utility.error.keys.NoRollCallException;
@@ -29,14 +30,19 @@ import com.google.gson.Gson;
 import com.tinder.scarlet.WebSocket;
 import dagger.hilt.android.testing.HiltAndroidRule;
 import dagger.hilt.android.testing.HiltAndroidTest;
+import io.reactivex.Completable;
+import io.reactivex.Single;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.observers.TestObserver;
 import io.reactivex.schedulers.TestScheduler;
 import io.reactivex.subjects.BehaviorSubject;
+import io.reactivex.subjects.PublishSubject;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.inject.Inject;
+import kotlin.Pair;
 import org.junit.*;
 import org.junit.rules.RuleChain;
 import org.junit.runner.RunWith;
@@ -48,6 +54,7 @@ import org.mockito.stubbing.Answer;
 @RunWith(AndroidJUnit4.class)
 public class LAONetworkManagerTest {
 
+  private static final String URL = "url";
   private static final Channel CHANNEL = Channel.ROOT.subChannel("channel");
   private static final KeyPair KEY_PAIR = Base64DataUtils.generateKeyPair();
   private static final Data DATA =
@@ -72,6 +79,8 @@ public class LAONetworkManagerTest {
     hiltRule.inject();
     when(connection.observeMessage()).thenReturn(messages);
     when(connection.observeConnectionEvents()).thenReturn(events);
+    when(connection.observePeerConnectionEvents())
+        .thenReturn(events.map(event -> new Pair<>(URL, event)));
     when(connection.connectToPeers(any())).thenReturn(true);
 
     // Default behavior : success
@@ -87,6 +96,7 @@ public class LAONetworkManagerTest {
         };
 
     doAnswer(answer).when(connection).sendMessage(any());
+    doAnswer(answer).when(connection).sendMessage(any(), eq(URL));
   }
 
   @Test
@@ -120,7 +130,7 @@ public class LAONetworkManagerTest {
     verify(connection).sendMessage(any(Subscribe.class));
     verify(connection).sendMessage(any(Catchup.class));
     verify(connection, atLeastOnce()).observeMessage();
-    verify(connection).observeConnectionEvents();
+    verify(connection).observePeerConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
   }
@@ -155,7 +165,7 @@ public class LAONetworkManagerTest {
 
     verify(connection).sendMessage(any(Unsubscribe.class));
     verify(connection, atLeastOnce()).observeMessage();
-    verify(connection).observeConnectionEvents();
+    verify(connection).observePeerConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
   }
@@ -192,7 +202,7 @@ public class LAONetworkManagerTest {
 
     verify(connection).sendMessage(any(Publish.class));
     verify(connection, atLeastOnce()).observeMessage();
-    verify(connection).observeConnectionEvents();
+    verify(connection).observePeerConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
   }
@@ -235,7 +245,7 @@ public class LAONetworkManagerTest {
 
     verify(connection).sendMessage(any(Subscribe.class));
     verify(connection, atLeastOnce()).observeMessage();
-    verify(connection).observeConnectionEvents();
+    verify(connection).observePeerConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
   }
@@ -266,7 +276,7 @@ public class LAONetworkManagerTest {
           messages.onNext(new Result(subscribe.getRequestId())); // Return a positive result
           return null;
         };
-    doAnswer(answer).when(connection).sendMessage(any(Subscribe.class));
+    doAnswer(answer).when(connection).sendMessage(any(Subscribe.class), eq(URL));
 
     // Push Connection open event
     events.onNext(new WebSocket.Event.OnConnectionOpened<>(mock(WebSocket.class)));
@@ -274,10 +284,13 @@ public class LAONetworkManagerTest {
 
     networkManager.dispose();
 
-    verify(connection, times(2)).sendMessage(any(Subscribe.class));
-    verify(connection, times(2)).sendMessage(any(Catchup.class));
+    // The channel is subscribed to and fetched again only on the connection that was opened
+    verify(connection).sendMessage(any(Subscribe.class));
+    verify(connection).sendMessage(any(Subscribe.class), eq(URL));
+    verify(connection).sendMessage(any(Catchup.class));
+    verify(connection).sendMessage(any(Catchup.class), eq(URL));
     verify(connection, atLeastOnce()).observeMessage();
-    verify(connection).observeConnectionEvents();
+    verify(connection).observePeerConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
   }
@@ -340,11 +353,80 @@ public class LAONetworkManagerTest {
     verify(connection, times(2)).sendMessage(any(Subscribe.class));
     verify(connection, times(2)).sendMessage(any(Catchup.class));
     verify(connection, atLeastOnce()).observeMessage();
-    verify(connection).observeConnectionEvents();
+    verify(connection).observePeerConnectionEvents();
     verify(connection).close();
     verifyNoMoreInteractions(connection);
   }
 
+  @Test
+  public void subscribeAllSubscribesToEveryChannel() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    Channel other = Channel.ROOT.subChannel("other");
+    TestObserver<Map<Channel, Throwable>> observer =
+        networkManager.subscribeAll(Arrays.asList(CHANNEL, other)).test();
+    testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    observer.assertValue(Collections.emptyMap());
+    assertEquals(new HashSet<>(Arrays.asList(CHANNEL, other)), networkManager.getSubscriptions());
+
+    networkManager.dispose();
+
+    verify(connection, times(2)).sendMessage(any(Subscribe.class));
+    verify(connection, times(2)).sendMessage(any(Catchup.class));
+  }
+
+  @Test
+  public void subscribeAllReportsFailuresPerChannel() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>());
+
+    Channel failing = Channel.ROOT.subChannel("failing");
+    ErrorCode error = new ErrorCode(3, "error");
+
+    // Subscribes to the failing channel are answered with an error
+    Answer<?> answer =
+        args -> {
+          Subscribe subscribe = args.getArgument(0);
+          if (failing.equals(subscribe.getChannel())) {
+            messages.onNext(new Error(subscribe.getRequestId(), error));
+          } else {
+            messages.onNext(new Result(subscribe.getRequestId()));
+          }
+          return null;
+        };
+    doAnswer(answer).when(connection).sendMessage(any(Subscribe.class));
+
+    TestObserver<Map<Channel, Throwable>> observer =
+        networkManager.subscribeAll(Arrays.asList(CHANNEL, failing)).test();
+    testScheduler.advanceTimeBy(REPROCESSING_DELAY, TimeUnit.SECONDS);
+
+    observer.assertValue(
+        failures ->
+            failures.size() == 1 && failures.get(failing) instanceof JsonRPCErrorException);
+    assertEquals(Collections.singleton(CHANNEL), networkManager.getSubscriptions());
+
+    networkManager.dispose();
+
+    verify(connection, times(2)).sendMessage(any(Subscribe.class));
+    verify(connection).sendMessage(any(Catchup.class));
+  }
+
   @Test
   public void identifyUnrecoverableFailures()
       throws UnknownElectionException,
@@ -400,6 +482,191 @@ public class LAONetworkManagerTest {
     networkManager.dispose();
   }
 
+  @Test
+  public void publishesAreQueuedWhileOfflineAndFlushedOnReconnection() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    OutboxRepository outbox = mock(OutboxRepository.class);
+    MessageGeneral msg = new MessageGeneral(KEY_PAIR, DATA, gson);
+
+    when(outbox.add(any(), any())).thenReturn(Completable.complete());
+    when(outbox.remove(any())).thenReturn(Completable.complete());
+    when(outbox.getPending())
+        .thenReturn(Single.just(Collections.singletonList(new Pair<>(CHANNEL, msg))));
+
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>(),
+            outbox);
+
+    // The connection is not open yet, so the message is only stored
+    TestObserver<Void> published = networkManager.publish(CHANNEL, msg).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+    verify(outbox).add(CHANNEL, msg);
+    verify(connection, never()).sendMessage(any());
+    published.assertNotComplete();
+
+    // Once it opens, the outbox is flushed and the message removed upon the answer of the server
+    events.onNext(new WebSocket.Event.OnConnectionOpened<>(mock(WebSocket.class)));
+    testScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+    verify(connection).sendMessage(any(Publish.class));
+    verify(outbox).remove(msg.getMessageId());
+    published.assertComplete();
+
+    networkManager.dispose();
+  }
+
+  @Test
+  public void publishesAreSentWhileAnotherConnectionIsOpen() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    OutboxRepository outbox = mock(OutboxRepository.class);
+    MessageGeneral msg = new MessageGeneral(KEY_PAIR, DATA, gson);
+    PublishSubject<Pair<String, WebSocket.Event>> peerEvents = PublishSubject.create();
+
+    when(connection.observePeerConnectionEvents()).thenReturn(peerEvents);
+    when(outbox.add(any(), any())).thenReturn(Completable.complete());
+    when(outbox.remove(any())).thenReturn(Completable.complete());
+    when(outbox.getPending()).thenReturn(Single.just(Collections.emptyList()));
+
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>(),
+            outbox);
+
+    // Losing a peer does not prevent the publishes on the connection to the main server
+    peerEvents.onNext(
+        new Pair<>(URL, new WebSocket.Event.OnConnectionOpened<>(mock(WebSocket.class))));
+    peerEvents.onNext(
+        new Pair<>("peer", new WebSocket.Event.OnConnectionOpened<>(mock(WebSocket.class))));
+    peerEvents.onNext(
+        new Pair<>("peer", new WebSocket.Event.OnConnectionFailed(new Exception("lost"))));
+
+    TestObserver<Void> published = networkManager.publish(CHANNEL, msg).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+    verify(connection).sendMessage(any(Publish.class));
+    published.assertComplete();
+
+    networkManager.dispose();
+  }
+
+  @Test
+  public void publishFailsWhenNotAcknowledgedInTime() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    OutboxRepository outbox = mock(OutboxRepository.class);
+    MessageGeneral msg = new MessageGeneral(KEY_PAIR, DATA, gson);
+
+    when(outbox.add(any(), any())).thenReturn(Completable.complete());
+
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>(),
+            outbox);
+
+    // The connection never opens, the message is kept in the outbox but the publish fails
+    TestObserver<Void> published = networkManager.publish(CHANNEL, msg).test();
+    testScheduler.advanceTimeBy(LAONetworkManager.PUBLISH_TIMEOUT, TimeUnit.SECONDS);
+
+    published.assertError(TimeoutException.class);
+    verify(outbox, never()).remove(any());
+
+    networkManager.dispose();
+  }
+
+  @Test
+  public void handledMessagesAreNotVerifiedAgain() throws Exception {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    SignatureVerifier verifier = new SignatureVerifier(SignatureVerifier.Mode.ENFORCE);
+    MessageGeneral known = new MessageGeneral(KEY_PAIR, DATA, gson);
+    MessageGeneral unknown =
+        new MessageGeneral(
+            KEY_PAIR, new CreateLao("Other", KEY_PAIR.getPublicKey(), new ArrayList<>()), gson);
+
+    when(handler.isHandled(known.getMessageId())).thenReturn(true);
+
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>(),
+            null,
+            null,
+            verifier);
+    // Let the network manager subscribe to the messages
+    testScheduler.triggerActions();
+
+    messages.onNext(new Broadcast(CHANNEL, known));
+    messages.onNext(new Broadcast(CHANNEL, unknown));
+    testScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+    // Only the new message is verified, the known one is left to the handler which discards it
+    assertEquals(1, verifier.getStats().getVerified());
+    verify(handler).handleMessage(networkManager, CHANNEL, known);
+    verify(handler).handleMessage(networkManager, CHANNEL, unknown);
+
+    networkManager.dispose();
+  }
+
+  @Test
+  public void publishInFlightSurvivesExtendingTheConnection() {
+    TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
+    TestScheduler testScheduler = schedulerProvider.testScheduler;
+    OutboxRepository outbox = mock(OutboxRepository.class);
+    MessageGeneral msg = new MessageGeneral(KEY_PAIR, DATA, gson);
+    List<Publish> sent = new ArrayList<>();
+
+    when(outbox.add(any(), any())).thenReturn(Completable.complete());
+    when(outbox.remove(any())).thenReturn(Completable.complete());
+    when(outbox.getPending()).thenReturn(Single.just(Collections.emptyList()));
+    // The server answers only later on
+    doAnswer(args -> sent.add(args.getArgument(0)))
+        .when(connection)
+        .sendMessage(any(Publish.class));
+
+    LAONetworkManager networkManager =
+        new LAONetworkManager(
+            handler,
+            connection,
+            JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry()),
+            schedulerProvider,
+            new HashSet<>(),
+            outbox);
+
+    events.onNext(new WebSocket.Event.OnConnectionOpened<>(mock(WebSocket.class)));
+    TestObserver<Void> published = networkManager.publish(CHANNEL, msg).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+    assertEquals(1, sent.size());
+
+    // The answer received after the extension still acknowledges the publish
+    networkManager.extendConnection(Collections.singletonList(new PeerAddress("url")));
+    messages.onNext(new Result(sent.get(0).getRequestId()));
+    testScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+    verify(outbox).remove(msg.getMessageId());
+    published.assertComplete();
+
+    networkManager.dispose();
+  }
+
   @Test
   public void testExtendConnection() {
     TestSchedulerProvider schedulerProvider = new TestSchedulerProvider();
@@ -434,7 +701,7 @@ public class LAONetworkManagerTest {
           messages.onNext(new Result(subscribe.getRequestId())); // Return a positive result
           return null;
         };
-    doAnswer(answer).when(connection).sendMessage(any(Subscribe.class));
+    doAnswer(answer).when(connection).sendMessage(any(Subscribe.class), eq(URL));
 
     // Push Connection open event
     events.onNext(new WebSocket.Event.OnConnectionOpened<>(mock(WebSocket.class)));
@@ -442,10 +709,13 @@ public class LAONetworkManagerTest {
 
     networkManager.dispose();
 
-    verify(connection, times(2)).sendMessage(any(Subscribe.class));
-    verify(connection, times(2)).sendMessage(any(Catchup.class));
+    // The channel is subscribed to and fetched again only on the connection that was opened
+    verify(connection).sendMessage(any(Subscribe.class));
+    verify(connection).sendMessage(any(Subscribe.class), eq(URL));
+    verify(connection).sendMessage(any(Catchup.class));
+    verify(connection).sendMessage(any(Catchup.class), eq(URL));
     verify(connection, atLeastOnce()).observeMessage();
-    verify(connection, times(2)).observeConnectionEvents();
+    verify(connection, times(2)).observePeerConnectionEvents();
     verify(connection).close();
   }
 }
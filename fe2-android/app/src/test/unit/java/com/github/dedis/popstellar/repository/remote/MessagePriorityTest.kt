@@ -0,0 +1,39 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.method.message.data.Objects
+import com.github.dedis.popstellar.model.objects.Channel
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class MessagePriorityTest {
+
+  @Test
+  fun stateChangesAreCritical() {
+    assertEquals(MessagePriority.CRITICAL, MessagePriority.of(Objects.LAO))
+    assertEquals(MessagePriority.CRITICAL, MessagePriority.of(Objects.ROLL_CALL))
+    assertEquals(MessagePriority.CRITICAL, MessagePriority.of(Objects.ELECTION))
+    assertEquals(MessagePriority.CRITICAL, MessagePriority.of(Objects.MESSAGE))
+  }
+
+  @Test
+  fun socialAndCoinTrafficIsBulk() {
+    assertEquals(MessagePriority.BULK, MessagePriority.of(Objects.CHIRP))
+    assertEquals(MessagePriority.BULK, MessagePriority.of(Objects.REACTION))
+    assertEquals(MessagePriority.BULK, MessagePriority.of(Objects.COIN))
+    assertEquals(MessagePriority.NORMAL, MessagePriority.of(Objects.CONSENSUS))
+    assertEquals(MessagePriority.NORMAL, MessagePriority.of(null))
+  }
+
+  @Test
+  fun channelsAreClassifiedByTheirSegments() {
+    val lao = Channel.getLaoChannel("lao")
+
+    assertEquals(MessagePriority.CRITICAL, MessagePriority.of(Channel.ROOT))
+    assertEquals(MessagePriority.CRITICAL, MessagePriority.of(lao))
+    assertEquals(MessagePriority.CRITICAL, MessagePriority.of(lao.subChannel("election")))
+    assertEquals(MessagePriority.NORMAL, MessagePriority.of(lao.subChannel("consensus")))
+    assertEquals(MessagePriority.BULK, MessagePriority.of(lao.subChannel("coin")))
+    assertEquals(
+      MessagePriority.BULK, MessagePriority.of(lao.subChannel("social").subChannel("chirps")))
+  }
+}
@@ -0,0 +1,64 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.testutils.BenchmarkUtils.assumeBenchmarkRequested
+import io.reactivex.schedulers.Schedulers
+import java.time.Instant
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Measure the throughput of the verification of the signatures of a 10k messages catchup, on one
+ * thread and on all the cores.
+ *
+ * Run it with `./gradlew testDebugUnitTest --tests '*SignatureVerifierBenchmark' -Pbenchmark`
+ */
+class SignatureVerifierBenchmark {
+
+  @Before
+  fun onlyWhenRequested() {
+    assumeBenchmarkRequested()
+  }
+
+  @Test
+  fun catchupVerification() {
+    val senders = (0 until SENDERS).map { Base64DataUtils.generateKeyPair() }
+    val catchup =
+        (0 until MESSAGES).map { i: Int ->
+          MessageGeneral(
+              senders[i % SENDERS],
+              AddChirp("chirp $i", null, Instant.now().epochSecond),
+              JsonTestUtils.GSON)
+        }
+
+    println("Verification of a catchup of $MESSAGES messages")
+    for (parallelism in listOf(1, SignatureVerifier.DEFAULT_PARALLELISM)) {
+      // The verification of the first rounds is only a warmup
+      var elapsed = 0L
+      repeat(WARMUP_ROUNDS + MEASURED_ROUNDS) { round: Int ->
+        // A new verifier each time, so that no message is already known
+        val verifier = SignatureVerifier(SignatureVerifier.Mode.ENFORCE)
+        val start = System.nanoTime()
+        verifier.acceptAll(catchup, Schedulers.computation(), parallelism)
+        if (round >= WARMUP_ROUNDS) {
+          elapsed += System.nanoTime() - start
+        }
+      }
+
+      val perRound = elapsed / MEASURED_ROUNDS
+      println(
+          "  $parallelism thread(s) : ${perRound / 1_000_000} ms, " +
+              "${MESSAGES * 1_000_000_000L / perRound} messages/s")
+    }
+  }
+
+  companion object {
+    private const val MESSAGES = 10_000
+    private const val SENDERS = 100
+    private const val WARMUP_ROUNDS = 2
+    private const val MEASURED_ROUNDS = 5
+  }
+}
@@ -0,0 +1,111 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.model.network.JsonTestUtils
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.socialmedia.AddChirp
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.schedulers.TestScheduler
+import java.time.Instant
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SignatureVerifierTest {
+
+  @Test
+  fun validMessageIsAcceptedAndRemembered() {
+    val verifier = SignatureVerifier(SignatureVerifier.Mode.ENFORCE)
+    val msg = message(0)
+
+    assertTrue(verifier.accept(msg))
+    assertTrue(verifier.accept(msg))
+    assertEquals(1, verifier.stats.verified)
+    assertEquals(1, verifier.stats.cached)
+  }
+
+  @Test
+  fun forgedMessageIsDroppedWhenEnforced() {
+    val verifier = SignatureVerifier(SignatureVerifier.Mode.ENFORCE)
+
+    assertFalse(verifier.accept(forged(message(0))))
+    assertFalse(verifier.accept(withOtherId(message(1))))
+    assertEquals(2, verifier.stats.invalid)
+  }
+
+  @Test
+  fun forgedMessageIsOnlyReportedInLogOnly() {
+    val verifier = SignatureVerifier(SignatureVerifier.Mode.LOG_ONLY)
+
+    assertTrue(verifier.accept(forged(message(0))))
+    assertEquals(1, verifier.stats.invalid)
+  }
+
+  @Test
+  fun nothingIsVerifiedWhenOff() {
+    val verifier = SignatureVerifier(SignatureVerifier.Mode.OFF)
+    val messages = listOf(forged(message(0)), message(1))
+
+    assertTrue(verifier.accept(messages[0]))
+    assertArrayEquals(
+        booleanArrayOf(true, true), verifier.acceptAll(messages, Schedulers.computation()))
+    assertEquals(0, verifier.stats.verified)
+  }
+
+  @Test
+  fun batchIsVerifiedInParallel() {
+    val verifier = SignatureVerifier(SignatureVerifier.Mode.ENFORCE)
+    val messages =
+        (0 until BATCH_SIZE).map { i: Int -> if (i % 10 == 0) forged(message(i)) else message(i) }
+
+    val accepted = verifier.acceptAll(messages, Schedulers.computation(), 4)
+
+    assertArrayEquals(BooleanArray(BATCH_SIZE) { i: Int -> i % 10 != 0 }, accepted)
+    assertEquals(BATCH_SIZE.toLong(), verifier.stats.verified)
+  }
+
+  @Test
+  fun batchIsVerifiedEvenIfTheHelpersDoNotRun() {
+    val verifier = SignatureVerifier(SignatureVerifier.Mode.ENFORCE)
+    val messages = (0 until BATCH_SIZE).map { i: Int -> message(i) }
+
+    // The helpers are queued on a scheduler that never runs them, the caller does all the work
+    val accepted = verifier.acceptAll(messages, TestScheduler(), 4)
+
+    assertArrayEquals(BooleanArray(BATCH_SIZE) { true }, accepted)
+  }
+
+  private fun message(i: Int): MessageGeneral {
+    return MessageGeneral(
+        KEY_PAIR, AddChirp("chirp $i", null, Instant.now().epochSecond), JsonTestUtils.GSON)
+  }
+
+  /** The same message, claimed to be sent by another user */
+  private fun forged(msg: MessageGeneral): MessageGeneral {
+    return MessageGeneral(
+        Base64DataUtils.generateKeyPair().publicKey,
+        msg.dataEncoded,
+        msg.data,
+        msg.signature,
+        msg.messageId,
+        msg.witnessSignatures)
+  }
+
+  /** A valid message given the id of another one */
+  private fun withOtherId(msg: MessageGeneral): MessageGeneral {
+    return MessageGeneral(
+        msg.sender,
+        msg.dataEncoded,
+        msg.data,
+        msg.signature,
+        Base64DataUtils.generateMessageIDOtherThan(msg.messageId),
+        msg.witnessSignatures)
+  }
+
+  companion object {
+    private const val BATCH_SIZE = 200
+    private val KEY_PAIR = Base64DataUtils.generateKeyPair()
+  }
+}
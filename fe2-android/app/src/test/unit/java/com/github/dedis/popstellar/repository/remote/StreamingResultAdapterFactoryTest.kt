@@ -0,0 +1,79 @@
+package com.github.dedis.popstellar.repository.remote
+
+import com.github.dedis.popstellar.di.DataRegistryModuleHelper
+import com.github.dedis.popstellar.di.JsonModule
+import com.github.dedis.popstellar.model.network.answer.StreamedResultMessages
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.model.network.serializer.ValidationPolicy
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.google.gson.JsonParseException
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertThrows
+import org.junit.Test
+
+class StreamingResultAdapterFactoryTest {
+
+  @Test
+  fun idIsReadFromResultMessagesFrame() {
+    assertEquals(ID, StreamingResultAdapterFactory.readResultMessagesId(FRAME))
+  }
+
+  @Test
+  fun otherFramesAreNotStreamed() {
+    assertNull(
+        StreamingResultAdapterFactory.readResultMessagesId(
+            "{\"jsonrpc\":\"2.0\",\"id\":$ID,\"result\":0}"))
+    assertNull(
+        StreamingResultAdapterFactory.readResultMessagesId(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"broadcast\",\"params\":{\"message\":[]}}"))
+    assertNull(StreamingResultAdapterFactory.readResultMessagesId("{\"result\":["))
+  }
+
+  @Test
+  fun messageIdsAreReadWithoutDecoding() {
+    val result = StreamedResultMessages(ID, FRAME, GSON, POLICY)
+
+    assertEquals(MESSAGES.map { msg: MessageGeneral -> msg.messageId }, result.messageIds)
+  }
+
+  @Test
+  fun messagesAreDecodedFromTheGivenPosition() {
+    val result = StreamedResultMessages(ID, FRAME, GSON, POLICY)
+
+    assertEquals(MESSAGES, result.decode().asSequence().toList())
+    assertEquals(MESSAGES.drop(2), result.decode(2).asSequence().toList())
+    assertEquals(emptyList<MessageGeneral>(), result.decode(MESSAGES.size).asSequence().toList())
+  }
+
+  @Test
+  fun messagesAreValidatedUnderThePolicy() {
+    val strict = ValidationPolicy(ValidationPolicy.Mode.STRICT)
+    StreamedResultMessages(ID, FRAME, GSON, strict).decode().forEach {}
+    assertEquals(MESSAGES.size.toLong(), strict.stats.validated)
+
+    // A message without its signature is rejected once reached
+    val invalid = FRAME.replaceFirst("\"signature\"", "\"unknown\"")
+    val messages = StreamedResultMessages(ID, invalid, GSON, strict).decode()
+    assertThrows(JsonParseException::class.java) { messages.next() }
+    assertEquals(1, strict.stats.failures)
+
+    val off = ValidationPolicy(ValidationPolicy.Mode.OFF)
+    StreamedResultMessages(ID, FRAME, GSON, off).decode().forEach {}
+    assertEquals(0, off.stats.validated)
+    assertEquals(MESSAGES.size.toLong(), off.stats.skipped)
+  }
+
+  companion object {
+    private const val ID = 42
+    private val GSON = JsonModule.provideGson(DataRegistryModuleHelper.buildRegistry())
+    private val POLICY = ValidationPolicy(ValidationPolicy.Mode.STRICT)
+    private val KEY_PAIR = Base64DataUtils.generateKeyPair()
+    private val MESSAGES =
+        (0 until 5).map { i: Int ->
+          MessageGeneral(KEY_PAIR, CreateLao("lao $i", KEY_PAIR.publicKey, ArrayList()), GSON)
+        }
+    private val FRAME = "{\"jsonrpc\":\"2.0\",\"id\":$ID,\"result\":${GSON.toJson(MESSAGES)}}"
+  }
+}
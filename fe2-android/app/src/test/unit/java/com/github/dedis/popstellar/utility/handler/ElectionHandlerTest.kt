@@ -43,6 +43,7 @@ import com.github.dedis.popstellar.repository.RollCallRepository
 import com.github.dedis.popstellar.repository.WitnessingRepository
 import com.github.dedis.popstellar.repository.database.AppDatabase
 import com.github.dedis.popstellar.repository.database.event.election.ElectionDao
+import com.github.dedis.popstellar.repository.database.event.election.ElectionVoteDao
 import com.github.dedis.popstellar.repository.database.lao.LAODao
 import com.github.dedis.popstellar.repository.database.message.MessageDao
 import com.github.dedis.popstellar.repository.database.witnessing.PendingDao
@@ -102,6 +103,8 @@ class ElectionHandlerTest {
 
   @Mock lateinit var electionDao: ElectionDao
 
+  @Mock lateinit var electionVoteDao: ElectionVoteDao
+
   @Mock lateinit var witnessingDao: WitnessingDao
 
   @Mock lateinit var witnessDao: WitnessDao
@@ -134,7 +137,10 @@ class ElectionHandlerTest {
     Mockito.`when`(appDatabase.messageDao()).thenReturn(messageDao)
     Mockito.`when`(messageDao.takeFirstNMessages(ArgumentMatchers.anyInt()))
       .thenReturn(Single.just(ArrayList()))
+    Mockito.`when`(messageDao.getAllMessageIds()).thenReturn(Single.just(ArrayList()))
     Mockito.`when`(messageDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
+    Mockito.`when`(messageDao.insertAll(MockitoKotlinHelpers.any()))
+      .thenReturn(Completable.complete())
     Mockito.`when`(messageDao.getMessageById(MockitoKotlinHelpers.any())).thenReturn(null)
 
     Mockito.`when`(appDatabase.electionDao()).thenReturn(electionDao)
@@ -142,6 +148,11 @@ class ElectionHandlerTest {
       .thenReturn(Completable.complete())
     Mockito.`when`(electionDao.getElectionsByLaoId(ArgumentMatchers.anyString()))
       .thenReturn(Single.just(ArrayList()))
+    Mockito.`when`(appDatabase.electionVoteDao()).thenReturn(electionVoteDao)
+    Mockito.`when`(electionVoteDao.getVotesByLaoId(ArgumentMatchers.anyString()))
+      .thenReturn(Single.just(emptyList()))
+    Mockito.`when`(electionVoteDao.insert(MockitoKotlinHelpers.any()))
+      .thenReturn(Completable.complete())
 
     Mockito.`when`(appDatabase.witnessDao()).thenReturn(witnessDao)
     Mockito.`when`(witnessDao.getWitnessesByLao(ArgumentMatchers.anyString()))
@@ -487,6 +498,10 @@ class ElectionHandlerTest {
     val voteIds = Stream.of(VOTE1, VOTE2).map(Vote::id).sorted().collect(Collectors.toList())
     val election = electionRepo.getElectionByChannel(OPEN_BALLOT_ELECTION.channel)
     Assert.assertEquals(hash(*voteIds.toTypedArray()), election.computeRegisteredVotesHash())
+
+    // The tally kept along the votes gives the same hash
+    val tally = electionRepo.getTally(LAO.id, election.id)
+    Assert.assertEquals(hash(*voteIds.toTypedArray()), tally.registeredVotesHash)
   }
 
   @Test
@@ -513,6 +528,10 @@ class ElectionHandlerTest {
     val voteIds = Stream.of(VOTE1, VOTE3).map(Vote::id).sorted().collect(Collectors.toList())
     val election = electionRepo.getElectionByChannel(OPEN_BALLOT_ELECTION.channel)
     Assert.assertEquals(hash(*voteIds.toTypedArray()), election.computeRegisteredVotesHash())
+
+    // The tally kept along the votes gives the same hash
+    val tally = electionRepo.getTally(LAO.id, election.id)
+    Assert.assertEquals(hash(*voteIds.toTypedArray()), tally.registeredVotesHash)
   }
 
   @Test
@@ -112,7 +112,10 @@ class MeetingHandlerTest {
     Mockito.`when`(appDatabase.messageDao()).thenReturn(messageDao)
     Mockito.`when`(messageDao.takeFirstNMessages(ArgumentMatchers.anyInt()))
       .thenReturn(Single.just(ArrayList()))
+    Mockito.`when`(messageDao.getAllMessageIds()).thenReturn(Single.just(ArrayList()))
     Mockito.`when`(messageDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
+    Mockito.`when`(messageDao.insertAll(MockitoKotlinHelpers.any()))
+      .thenReturn(Completable.complete())
     Mockito.`when`(messageDao.getMessageById(MockitoKotlinHelpers.any())).thenReturn(null)
 
     Mockito.`when`(appDatabase.meetingDao()).thenReturn(meetingDao)
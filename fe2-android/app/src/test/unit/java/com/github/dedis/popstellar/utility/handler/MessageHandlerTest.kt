@@ -0,0 +1,70 @@
+package com.github.dedis.popstellar.utility.handler
+
+import com.github.dedis.popstellar.di.DataRegistryModuleHelper.buildRegistry
+import com.github.dedis.popstellar.di.JsonModule.provideGson
+import com.github.dedis.popstellar.model.network.method.message.MessageGeneral
+import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateLao
+import com.github.dedis.popstellar.model.objects.Channel
+import com.github.dedis.popstellar.model.objects.security.Base64URLData
+import com.github.dedis.popstellar.repository.MessageRepository
+import com.github.dedis.popstellar.repository.remote.MessageSender
+import com.github.dedis.popstellar.testutils.Base64DataUtils
+import com.github.dedis.popstellar.testutils.MockitoKotlinHelpers
+import com.google.gson.JsonParseException
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.Mockito
+import org.mockito.junit.MockitoJUnit
+import org.mockito.junit.MockitoRule
+
+class MessageHandlerTest {
+  @Mock lateinit var messageRepo: MessageRepository
+  @Mock lateinit var messageSender: MessageSender
+
+  @JvmField @Rule val mockitoRule: MockitoRule = MockitoJUnit.rule()
+
+  private lateinit var messageHandler: MessageHandler
+
+  @Before
+  fun setup() {
+    messageHandler = MessageHandler(messageRepo, buildRegistry())
+  }
+
+  @Test
+  fun duplicateIsDiscardedWithoutDecodingItsData() {
+    val message = undecodableMessage()
+    Mockito.`when`(messageRepo.isMessagePresent(message.messageId)).thenReturn(true)
+
+    messageHandler.handleMessage(messageSender, Channel.ROOT, message)
+
+    Mockito.verify(messageRepo, Mockito.never())
+      .addMessage(MockitoKotlinHelpers.any(), Mockito.anyBoolean(), Mockito.anyBoolean())
+  }
+
+  @Test
+  fun newMessageHasItsDataDecoded() {
+    val message = undecodableMessage()
+    Mockito.`when`(messageRepo.isMessagePresent(message.messageId)).thenReturn(false)
+
+    Assert.assertThrows(JsonParseException::class.java) {
+      messageHandler.handleMessage(messageSender, Channel.ROOT, message)
+    }
+  }
+
+  companion object {
+    private val GSON = provideGson(buildRegistry())
+    private val KEY_PAIR = Base64DataUtils.generateKeyPair()
+
+    /** @return a received message whose data fails to decode */
+    private fun undecodableMessage(): MessageGeneral {
+      val valid = MessageGeneral(KEY_PAIR, CreateLao("lao", KEY_PAIR.publicKey, ArrayList()), GSON)
+      val invalid = Base64URLData("{}".toByteArray()).encoded
+      val json = GSON.toJson(valid).replace(valid.dataEncoded.encoded, invalid)
+
+      return GSON.fromJson(json, MessageGeneral::class.java)
+    }
+  }
+}
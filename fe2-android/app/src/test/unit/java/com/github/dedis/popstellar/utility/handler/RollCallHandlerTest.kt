@@ -11,10 +11,12 @@ import com.github.dedis.popstellar.model.network.method.message.data.lao.CreateL
 import com.github.dedis.popstellar.model.network.method.message.data.rollcall.CloseRollCall
 import com.github.dedis.popstellar.model.network.method.message.data.rollcall.CreateRollCall
 import com.github.dedis.popstellar.model.network.method.message.data.rollcall.OpenRollCall
+import com.github.dedis.popstellar.model.objects.Channel
 import com.github.dedis.popstellar.model.objects.Channel.Companion.getLaoChannel
 import com.github.dedis.popstellar.model.objects.Lao
 import com.github.dedis.popstellar.model.objects.RollCall
 import com.github.dedis.popstellar.model.objects.event.EventState
+import com.github.dedis.popstellar.model.objects.security.PublicKey
 import com.github.dedis.popstellar.repository.DigitalCashRepository
 import com.github.dedis.popstellar.repository.ElectionRepository
 import com.github.dedis.popstellar.repository.LAORepository
@@ -112,6 +114,9 @@ class RollCallHandlerTest {
     Mockito.lenient().`when`(messageSender.subscribe(MockitoKotlinHelpers.any())).then {
       Completable.complete()
     }
+    Mockito.lenient().`when`(messageSender.subscribeAll(MockitoKotlinHelpers.any())).then {
+      Single.just(emptyMap<Channel, Throwable>())
+    }
 
     Mockito.`when`(appDatabase.laoDao()).thenReturn(laoDao)
     Mockito.`when`(laoDao.allLaos).thenReturn(Single.just(ArrayList()))
@@ -120,7 +125,10 @@ class RollCallHandlerTest {
     Mockito.`when`(appDatabase.messageDao()).thenReturn(messageDao)
     Mockito.`when`(messageDao.takeFirstNMessages(ArgumentMatchers.anyInt()))
       .thenReturn(Single.just(ArrayList()))
+    Mockito.`when`(messageDao.getAllMessageIds()).thenReturn(Single.just(ArrayList()))
     Mockito.`when`(messageDao.insert(MockitoKotlinHelpers.any())).thenReturn(Completable.complete())
+    Mockito.`when`(messageDao.insertAll(MockitoKotlinHelpers.any()))
+      .thenReturn(Completable.complete())
     Mockito.`when`(messageDao.getMessageById(MockitoKotlinHelpers.any())).thenReturn(null)
 
     Mockito.`when`(appDatabase.rollCallDao()).thenReturn(rollCallDao)
@@ -351,6 +359,13 @@ class RollCallHandlerTest {
     val expectedMessage = closeRollCallWitnessMessage(message.messageId, rollCallCheck)
     Assert.assertEquals(expectedMessage.title, witnessMessage.get().title)
     Assert.assertEquals(expectedMessage.description, witnessMessage.get().description)
+
+    // Check the social media channels of the attendees and the reactions are subscribed to
+    val socialChannel = LAO_CHANNEL.subChannel("social")
+    val expectedChannels =
+      rollCallCheck.attendees.map { token: PublicKey -> socialChannel.subChannel(token.encoded) } +
+        socialChannel.subChannel("reactions")
+    Mockito.verify(messageSender).subscribeAll(expectedChannels)
   }
 
   companion object {